@@ -13,8 +13,6 @@ import com.almasb.fxgl.input.UserAction;
 import com.almasb.fxgl.physics.CollisionHandler;
 import com.almasb.fxgl.texture.Texture;
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
 import javafx.application.Platform;
@@ -36,21 +34,34 @@ import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 import javafx.util.Duration;
 import org.csu.pixelstrikejavafx.game.core.MusicManager;
+import org.csu.pixelstrikejavafx.game.network.BinaryProtocol;
+import org.csu.pixelstrikejavafx.game.network.GameMessages;
+import org.csu.pixelstrikejavafx.game.network.NetConditioner;
+import org.csu.pixelstrikejavafx.game.network.ServerMessageDispatcher;
+import org.csu.pixelstrikejavafx.game.network.StateDelta;
 import org.csu.pixelstrikejavafx.game.player.component.*;
+import org.csu.pixelstrikejavafx.game.replay.ReplayFile;
+import org.csu.pixelstrikejavafx.game.replay.ReplayPlayer;
 import org.csu.pixelstrikejavafx.game.services.NetworkService;
 import org.csu.pixelstrikejavafx.game.services.PlayerManager;
+import org.csu.pixelstrikejavafx.game.services.StateSendPolicy;
 import org.csu.pixelstrikejavafx.game.world.CameraFollow;
+import org.csu.pixelstrikejavafx.game.world.InterestArea;
 import org.csu.pixelstrikejavafx.game.core.GameConfig;
 import org.csu.pixelstrikejavafx.game.core.GameType;
 import org.csu.pixelstrikejavafx.game.world.MapBuilder;
 import org.csu.pixelstrikejavafx.game.player.Player;
+import org.csu.pixelstrikejavafx.game.player.PositionHistory;
 import org.csu.pixelstrikejavafx.game.player.RemoteAvatar;
+import org.csu.pixelstrikejavafx.game.player.SnapshotBuffer;
 import org.csu.pixelstrikejavafx.core.GlobalState;
 import org.csu.pixelstrikejavafx.core.PixelStrikeSceneFactory;
+import org.csu.pixelstrikejavafx.game.ui.NetStatsOverlay;
 import org.csu.pixelstrikejavafx.game.ui.PlayerHUD;
 import org.csu.pixelstrikejavafx.lobby.ui.UIManager;
 import org.csu.pixelstrikejavafx.lobby.ui.dialog.DialogManager;
 
+import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.List;
@@ -67,10 +78,32 @@ public class PixelGameApp extends GameApplication {
     // UI 和相机依然由主类管理
     private CameraFollow cameraFollow;
     private PlayerHUD hud;
+    // 开发者网络统计浮层（F9）
+    private NetStatsOverlay netOverlay;
+    private static boolean metricsHookInstalled = false;
 
-    // 定时发送器
+    // 回放模式（-Dpixelstrike.replay=...）：消息来自回放文件而不是服务器
+    private ReplayPlayer replay;
+    private int replayFollowId = 0;
+    private Text replayText;
+
+    // 兴趣范围：视野外的远端玩家只更新位置，视野外的远端射击不做表现
+    private final InterestArea interest = new InterestArea();
+
+    // 本机预测命中：先画白色标记，服务器确认伤害后变红
+    private int predictedVictim = 0;
+    private double predictedAtMs;
+    private Line[] predictedMarker;
+
+    // 下行消息解码：复用的消息对象 + 类型表
+    private final GameMessages messages = new GameMessages();
+    private final ServerMessageDispatcher dispatcher = createDispatcher();
+
+    // 定时发送器：SEND_INTERVAL 是上限频率，具体发不发由航位推测策略决定
     private double sendTimer = 0;
+    private double netClock = 0;
     private static final double SEND_INTERVAL = 1.0 / 60.0;
+    private final StateSendPolicy sendPolicy = new StateSendPolicy();
 
     // 用于显示倒计时的UI组件和变量
     private Text gameTimerText;
@@ -89,6 +122,16 @@ public class PixelGameApp extends GameApplication {
         public double lastVX, lastVY;
         public String anim, phase;
         public long lastUpdate = System.currentTimeMillis();
+        // 增量 state 的接收端基线
+        public final StateDelta.Baselines baselines = new StateDelta.Baselines();
+        // 带时间戳的快照，渲染时在其中插值
+        public final SnapshotBuffer snapshots = new SnapshotBuffer();
+        // 每帧实际渲染的位置（按渲染时刻记录），本机开枪时据此判定命中
+        public final PositionHistory history = new PositionHistory();
+        public long lastTs;
+        // 本帧收到的最新 state，帧末统一应用（同帧内更旧的被合并掉）
+        public final GameMessages.State pendingState = new GameMessages.State();
+        public boolean hasPendingState = false;
 
         public RemotePlayer(Entity e, RemoteAvatar a) {
             this.entity = e;
@@ -118,12 +161,26 @@ public class PixelGameApp extends GameApplication {
         playerManager = null;
         networkService = null;
         cameraFollow = null;
+        replay = null;
         if (hud != null) {
             getGameScene().removeUINode(hud.getRoot());
             hud = null;
         }
+        if (netOverlay != null) {
+            getGameScene().removeUINode(netOverlay.getRoot());
+            netOverlay = null;
+        }
         playerManager = new PlayerManager();
-        networkService = new NetworkService(this::handleServerMessage);
+        networkService = new NetworkService(this::handleServerMessage, messages, new BinaryMessageHandler());
+        dispatcher.setMetrics(networkService.getMetrics());
+        if (!metricsHookInstalled) {
+            // 直接关窗口退出时也打印一份流量报告
+            metricsHookInstalled = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                NetworkService ns = networkService;
+                if (ns != null) ns.dumpMetrics();
+            }));
+        }
         getGameWorld().getEntitiesCopy().forEach(Entity::removeFromWorld);
         getGameScene().clearGameViews();
         getPhysicsWorld().clear();
@@ -136,6 +193,7 @@ public class PixelGameApp extends GameApplication {
 
             int characterId = (GlobalState.selectedCharacterId != null) ? GlobalState.selectedCharacterId : 1;
             Player localPlayer = playerManager.createLocalPlayer(networkService, characterId);
+            playerManager.setHitListener(this::onPredictedHit);
 
             if (GlobalState.characterSelections != null) {
                 playerManager.setCharacterSelections(GlobalState.characterSelections);
@@ -151,7 +209,12 @@ public class PixelGameApp extends GameApplication {
             cameraFollow.setTarget(localPlayer.getEntity());
             setupCollisionHandlers();
             MusicManager.getInstance().playInGameMusic();
-            networkService.connect();
+            String replayPath = System.getProperty(ReplayPlayer.PROPERTY);
+            if (replayPath != null && !replayPath.isBlank()) {
+                startReplay(replayPath);
+            } else {
+                networkService.connect();
+            }
         }, Duration.ZERO);
 
     }
@@ -173,6 +236,34 @@ public class PixelGameApp extends GameApplication {
             });
         });
 
+        // 调试：在“每帧都发”和航位推测之间切换
+        onKey(KeyCode.F8, "切换全量发送", () -> {
+            sendPolicy.setAlwaysSend(!sendPolicy.isAlwaysSend());
+            System.out.println("[NET] alwaysSend=" + sendPolicy.isAlwaysSend());
+        });
+
+        // 调试：网络劣化模拟在预设之间切换（off / lan / wifi / mobile / awful），大厅连接同样生效
+        onKey(KeyCode.F7, "切换网络模拟", () -> NetConditioner.get().cyclePreset());
+
+        // 调试：网络统计浮层
+        onKey(KeyCode.F9, "网络统计", () -> {
+            if (netOverlay != null) netOverlay.toggle();
+        });
+
+        // 回放控制：P 暂停，逗号/句号 前后 5 秒，0~9 跳到 0%~90%，TAB 切换跟随的玩家，[ ] 调速
+        onKey(KeyCode.P, "回放暂停", () -> { if (replay != null) replay.togglePause(); });
+        onKey(KeyCode.COMMA, "回放后退", () -> { if (replay != null) replay.seekRelative(-5000); });
+        onKey(KeyCode.PERIOD, "回放前进", () -> { if (replay != null) replay.seekRelative(5000); });
+        onKey(KeyCode.OPEN_BRACKET, "回放减速", () -> { if (replay != null) replay.setSpeed(replay.getSpeed() / 2); });
+        onKey(KeyCode.CLOSE_BRACKET, "回放加速", () -> { if (replay != null) replay.setSpeed(replay.getSpeed() * 2); });
+        onKey(KeyCode.TAB, "回放切换视角", this::cycleReplayFollow);
+        KeyCode[] digits = {KeyCode.DIGIT0, KeyCode.DIGIT1, KeyCode.DIGIT2, KeyCode.DIGIT3, KeyCode.DIGIT4,
+                KeyCode.DIGIT5, KeyCode.DIGIT6, KeyCode.DIGIT7, KeyCode.DIGIT8, KeyCode.DIGIT9};
+        for (int i = 0; i < digits.length; i++) {
+            final double fraction = i / 10.0;
+            onKey(digits[i], "回放跳转 " + i, () -> { if (replay != null) replay.seekFraction(fraction); });
+        }
+
         getInput().addAction(new UserAction("Move Left") {
             @Override protected void onActionBegin() {
                 // 正确做法：在动作被触发时，才去获取玩家对象
@@ -284,29 +375,51 @@ public class PixelGameApp extends GameApplication {
             addUINode(fullscreenButton, 150, 80); // 往下移动一点，避免和TopBar重叠
             backButton.setOnAction(e -> {
                 networkService.sendLeaveMessage();
+                networkService.dumpMetrics();
                 MusicManager.getInstance().playMenuMusic();
                 getGameController().gotoMainMenu();
             });
             addUINode(backButton, 150, 40); // 往下移动一点
+
+            netOverlay = new NetStatsOverlay();
+            addUINode(netOverlay.getRoot(), 150, 130);
         });
     }
 
 
     @Override
     protected void onUpdate(double tpf) {
+        // 收网络消息：每帧一次，state 按玩家合并后再应用
+        if (replay != null) {
+            replay.update(tpf);
+            playerManager.applyPendingStates();
+        } else if (networkService != null) {
+            networkService.drainInbound(GameConfig.Net.INBOUND_DRAIN_BUDGET);
+            playerManager.applyPendingStates();
+        }
+
         Player localPlayer = playerManager.getLocalPlayer();
         if (localPlayer == null) return;
 
         double dt = Math.min(tpf, 1.0 / 30.0);
-        localPlayer.update(dt);
+        if (replay != null) {
+            followReplayTarget(localPlayer);
+        } else {
+            localPlayer.update(dt);
+        }
 
         if (cameraFollow != null) cameraFollow.update();
         if (hud != null) {
             hud.updateHP(localPlayer.getHealth().getHp(), localPlayer.getHealth().getMaxHp());
+            hud.updateConnection(networkService.getClockSync(), networkService.isReconnecting());
         }
 
-        pumpNetwork(tpf);
+        if (replay == null) pumpNetwork(tpf);
+        interest.update(getGameScene().getViewport(), GameConfig.INTEREST_MARGIN);
         updateRemotePlayers(tpf);
+        // 本帧产生的 state/shot/pickup 合成一帧发出
+        networkService.flush();
+        if (netOverlay != null) netOverlay.update(tpf, () -> networkService.buildStatsReport(12));
 
         if (gameTimerText != null) {
             int minutes = gameTimeRemainingSeconds / 60;
@@ -317,252 +430,394 @@ public class PixelGameApp extends GameApplication {
 
 
     private void pumpNetwork(double tpf) {
+        networkService.updateConnection(tpf);
+        networkService.updateClockSync(tpf);
         sendTimer += tpf;
+        netClock += tpf;
         if (sendTimer >= SEND_INTERVAL) {
             sendTimer = 0;
             Player localPlayer = playerManager.getLocalPlayer();
-            if (localPlayer != null) {
-                var e = localPlayer.getEntity();
+            if (localPlayer != null && networkService.isJoinedAck()) {
                 var phy = localPlayer.getPhysics();
-                networkService.sendState(
-                        e.getX(), e.getY(),
-                        phy.getVelocityX(), phy.getVelocityY(),
-                        localPlayer.getFacingRight(), localPlayer.isOnGround(),
-                        localPlayer.getNetAnim(), localPlayer.getNetPhase()
-                );
+                double x = localPlayer.getNetX(), y = localPlayer.getNetY();
+                double vx = phy.getVelocityX(), vy = phy.getVelocityY();
+                boolean facing = localPlayer.getFacingRight(), onGround = localPlayer.isOnGround();
+                Player.State state = localPlayer.getState();
+                String anim = localPlayer.getNetAnim(), phase = localPlayer.getNetPhase();
+
+                if (sendPolicy.shouldSend(netClock, x, y, vx, vy, facing, onGround, state, anim, phase)) {
+                    long sentSeq = networkService.sendState(x, y, vx, vy, facing, onGround, anim, phase);
+                    if (sentSeq >= 0) {
+                        localPlayer.markSent(sentSeq);
+                        playerManager.recordLocalHistory(networkService.getLastStateTs(), x, y);
+                    }
+                    sendPolicy.markSent(netClock, x, y, vx, vy, facing, onGround, state, anim, phase);
+                }
             }
         }
     }
 
+    /** 注册所有下行消息类型；每种类型一个复用的消息对象 */
+    private ServerMessageDispatcher createDispatcher() {
+        GameMessages m = messages;
+        return new ServerMessageDispatcher()
+                .on("welcome", m.welcome, this::onWelcome)
+                .on("join_broadcast", m.joinBroadcast, this::onJoinBroadcast)
+                .on("state", m.state, this::onRemoteState)
+                .on("state_ack", m.stateAck, msg -> networkService.acknowledgeState(msg.seq))
+                .on("correction", m.correction, this::onCorrection)
+                .on("pong", m.pong, msg -> networkService.onPong(msg))
+                .on("shot", m.shot, this::onRemoteShot)
+                .on("damage", m.damage, this::onDamage)
+                .on("respawn", m.respawn, this::onRespawn)
+                .on("game_over", m.gameOver, this::onGameOver)
+                .on("leave", m.leave, msg -> playerManager.removeRemotePlayer(msg.id))
+                .on("health_update", m.healthUpdate, this::onHealthUpdate)
+                .on("supply_spawn", m.supplySpawn, this::onSupplySpawn)
+                .on("supply_removed", m.supplyRemoved, msg -> removeSupplyDrop(msg.dropId))
+                .on("weapon_equip", m.weaponEquip, this::onWeaponEquip)
+                .on("player_bombed", m.playerBombed, this::onPlayerBombed)
+                .on("pickup_notification", m.pickupNotification, msg ->
+                        DialogManager.showInGameNotification(msg.pickerNickname + " 拾取了 " + msg.itemType + "!", "rgba(39, 174, 96, 0.8)"))
+                .on("player_poisoned", m.playerPoisoned, this::onPlayerPoisoned)
+                .on("scoreboard_update", m.scoreboard, this::onScoreboardUpdate);
+    }
+
+    /** 回放模式：不连服务器，本机玩家隐藏，只当作跟随镜头的锚点 */
+    private void startReplay(String path) {
+        try {
+            ReplayFile file = ReplayPlayer.open(path);
+            networkService.setMyPlayerId(-1);   // 录像里所有玩家都按远端处理
+            networkService.setJoinedAck(true);
+            replay = new ReplayPlayer(file, this::handleServerMessage, this::resetReplayWorld);
+            replayFollowId = file.getRecorderId();
+            playerManager.getLocalPlayer().getEntity().getViewComponent().setVisible(false);
+            replay.seek(0);
+            replayText = new Text();
+            replayText.setFont(Font.font("Consolas", 18));
+            replayText.setFill(Color.WHITE);
+            replayText.setStroke(Color.BLACK);
+            replayText.setStrokeWidth(0.6);
+            addUINode(replayText, 150, getAppHeight() - 40);
+            System.out.println("[REPLAY] " + path + " duration=" + file.getDurationMs() + "ms keyframes=" + file.getKeyframeCount());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[REPLAY] cannot open " + path + ": " + e);
+            FXGL.getDialogService().showMessageBox("无法打开回放文件：" + e.getMessage(), () -> getGameController().gotoMainMenu());
+        }
+    }
+
+    /** 定位前清空世界，随后由关键帧重建 */
+    private void resetReplayWorld() {
+        playerManager.clearAllRemotePlayers();
+        getGameWorld().getEntitiesByType(GameType.SUPPLY_DROP).forEach(Entity::removeFromWorld);
+        getGameWorld().getEntitiesByType(GameType.BULLET).forEach(Entity::removeFromWorld);
+    }
+
+    /** 镜头只能跟带物理组件的实体，所以把隐藏的本机玩家挪到被跟随的远端玩家身上 */
+    private void followReplayTarget(Player localPlayer) {
+        Map<Integer, RemotePlayer> remotes = playerManager.getRemotePlayers();
+        RemotePlayer rp = remotes.get(replayFollowId);
+        if (rp == null && !remotes.isEmpty()) {
+            replayFollowId = remotes.keySet().iterator().next();
+            rp = remotes.get(replayFollowId);
+        }
+        if (rp != null && rp.entity != null) {
+            localPlayer.getPhysics().overwritePosition(rp.entity.getPosition());
+            localPlayer.getPhysics().setLinearVelocity(0, 0);
+        }
+        if (replayText != null) {
+            long t = replay.getTimeMs() / 1000, d = replay.getDurationMs() / 1000;
+            replayText.setText(String.format("回放 %d:%02d / %d:%02d  x%.2g  跟随 #%d%s   [P]暂停 [,][.]±5s [0-9]跳转 [TAB]视角",
+                    t / 60, t % 60, d / 60, d % 60, replay.getSpeed(), replayFollowId, replay.isPaused() ? "  (暂停)" : ""));
+        }
+    }
+
+    private void cycleReplayFollow() {
+        if (replay == null) return;
+        List<Integer> ids = new ArrayList<>(playerManager.getRemotePlayers().keySet());
+        if (ids.isEmpty()) return;
+        java.util.Collections.sort(ids);
+        int i = ids.indexOf(replayFollowId);
+        replayFollowId = ids.get((i + 1) % ids.size());
+    }
+
     private void handleServerMessage(String json) {
         try {
-            String type = extractString(json, "\"type\":\"");
-            if (type == null) {
+            if (!dispatcher.dispatch(json)) {
                 System.err.println("Received a WebSocket message without a 'type' field: " + json);
-                return; // 忽略这条无法处理的消息，防止崩溃
+                // 忽略这条无法处理的消息，防止崩溃
             }
-            switch (type) {
-                case "welcome" -> {
-                    playerManager.clearAllRemotePlayers();
-                    networkService.setMyPlayerId(extractInt(json, "\"id\":"));
-                    networkService.setWelcomeSrvTS(extractLong(json, "\"serverTime\":"));
-                    networkService.setJoinedAck(true);
-                    System.out.println("WELCOME myId=" + networkService.getMyPlayerId() + " srvTS=" + networkService.getWelcomeSrvTS());
-                }
-                case "join_broadcast" -> {
-                    if (!networkService.isJoinedAck()) return;
-                    int id = extractInt(json, "\"id\":");
-                    if (networkService.getMyPlayerId() != null && id == networkService.getMyPlayerId()) return;
-                    playerManager.updateRemotePlayer(id, 0, 0, true, "IDLE", "IDLE", 0, 0, false, 0);
-                }
-                case "state" -> {
-                    if (!networkService.isJoinedAck()) return;
-                    long srvTS = readSrvTS(json);
-                    if (networkService.getWelcomeSrvTS() > 0 && srvTS > 0 && srvTS < networkService.getWelcomeSrvTS()) return;
-
-                    int id = extractInt(json, "\"id\":");
-                    if (id == 0 || (networkService.getMyPlayerId() != null && id == networkService.getMyPlayerId())) return;
-
-                    playerManager.updateRemotePlayer(
-                            id,
-                            extractDouble(json, "\"x\":"),
-                            extractDouble(json, "\"y\":"),
-                            json.contains("\"facing\":true"),
-                            extractString(json, "\"anim\":\""),
-                            extractString(json, "\"phase\":\""),
-                            extractDouble(json, "\"vx\":"),
-                            extractDouble(json, "\"vy\":"),
-                            json.contains("\"onGround\":true"),
-                            extractLong(json, "\"seq\":")
-                    );
-                }
-                case "shot" -> {
-                    if (!networkService.isJoinedAck()) return;
-                    int attackerId = extractInt(json, "\"attacker\":");
-                    if (networkService.getMyPlayerId() != null && attackerId != networkService.getMyPlayerId()) {
-                        double ox = extractDouble(json, "\"ox\":");
-                        double oy = extractDouble(json, "\"oy\":");
-                        double dx = extractDouble(json, "\"dx\":");
-                        double dy = extractDouble(json, "\"dy\":");
-                        String weaponType = extractString(json, "\"weaponType\":\"");
-                        switch (weaponType) {
-                            case "Pistol":
-                                play("pistol_shot.wav");
-                                spawnRemotePistolBullet(attackerId, ox, oy, new Point2D(dx, dy));
-                                break;
-                            case "MachineGun":
-                                play("machinegun_shot.wav");
-                                spawnRemoteMachineGunBullet(attackerId, ox, oy, new Point2D(dx, dy));
-                                break;
-                            case "Shotgun":
-                                play("shotgun_shot.wav");
-                                spawnRemoteShotgunBlast(attackerId, ox, oy);
-                                break;
-                            case "Railgun":
-                                play("railgun_shot.wav");
-                                spawnRemoteRailgunBeam(attackerId, ox, oy, new Point2D(dx, dy));
-                                break;
-                            default:
-                                System.err.println("Received unknown weaponType for remote shot: " + weaponType);
-                                break;
-                        }
-                    }
-                }
-                case "damage" -> {
-                    long srvTS = readSrvTS(json);
-                    if (networkService.getWelcomeSrvTS() > 0 && srvTS > 0 && srvTS < networkService.getWelcomeSrvTS()) return;
-
-                    int victimId = extractInt(json, "\"victim\":");
-                    boolean isDead = json.contains("\"dead\":true");
-
-                    // ★ 核心修复：无论是本地玩家还是远程玩家，都需要处理
-                    if (networkService.getMyPlayerId() != null && victimId == networkService.getMyPlayerId()) {
-                        // 是我被击中了
-                        double kx = json.contains("\"kx\":") ? extractDouble(json, "\"kx\":") : (playerManager.getLocalPlayer().getFacingRight() ? -220.0 : 220.0);
-                        double ky = json.contains("\"ky\":") ? extractDouble(json, "\"ky\":") : 0.0;
-                        playerManager.getLocalPlayer().applyHit(
-                                Math.max(1, extractInt(json, "\"damage\":")), kx, ky
-                        );
-                    } else {
-                        // 远程玩家被击中逻辑
-                        RemotePlayer remotePlayer = playerManager.getRemotePlayers().get(victimId);
-                        if (remotePlayer != null && remotePlayer.entity != null) {
-                            // 如果伤害消息表明该玩家已死亡，则触发他的死亡动画状态，而不是直接隐藏
-                            if (isDead) {
-                                System.out.println("Remote player " + victimId + " has died. Playing death animation.");
-                                remotePlayer.anim = "DIE"; // 强制设置动画状态为DIE
-                            }
-                            // （可选）在这里也可以为远程玩家添加受击特效
-                        }
-                    }
-                }
-                case "respawn" -> {
-                    int id = extractInt(json, "\"id\":");
-                    double x = extractDouble(json, "\"x\":");
-                    double y = extractDouble(json, "\"y\":");
-
-                    if (networkService.getMyPlayerId() != null && id == networkService.getMyPlayerId()) {
-                        playerManager.getLocalPlayer().reset(x, y);
-                        playerManager.getLocalPlayer().revive();
-                    } else {
-                        // ★ 核心修复：远程玩家复活时，不仅要更新位置，还要确保模型可见
-                        RemotePlayer remotePlayer = playerManager.getRemotePlayers().get(id);
-                        if (remotePlayer != null && remotePlayer.entity != null) {
-                            remotePlayer.entity.setPosition(x, y);
-                            remotePlayer.entity.setVisible(true); // 确保模型恢复可见
-                            System.out.println("Showing remote player " + id + " because they respawned.");
-                        } else {
-                            // 如果玩家不存在（可能是在死亡期间加入的），则直接创建
-                            playerManager.updateRemotePlayer(id, x, y, true, "IDLE", "IDLE", 0, 0, true, 0);
-                        }
-                    }
-                }
+        } catch (Exception e) {
+            System.err.println("handleServerMessage error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
-                case "game_over" -> {
-                    System.out.println("Received game over message from server.");
+    // —— 以下处理函数由 JSON 与二进制两条解码路径共用；参数是复用对象，不要保存引用 ——
 
-                    com.google.gson.JsonObject gameOverMsg = new com.google.gson.Gson().fromJson(json, com.google.gson.JsonObject.class);
+    private void onWelcome(GameMessages.Welcome msg) {
+        if (msg.resumed) {
+            // 会话恢复：远端玩家保留，重新计时，服务器随后补发快照
+            long now = System.currentTimeMillis();
+            playerManager.getRemotePlayers().values().forEach(rp -> rp.lastUpdate = now);
+        } else {
+            playerManager.clearAllRemotePlayers();
+        }
+        networkService.setMyPlayerId(msg.id);
+        networkService.setWelcomeSrvTS(msg.serverTime);
+        networkService.setBinaryMode(BinaryProtocol.PROTO_NAME.equals(msg.proto));
+        networkService.setDeltaMode(msg.delta);
+        networkService.setBatchMode(msg.batch);
+        networkService.setJoinedAck(true);
+        sendPolicy.reset();
+        networkService.getClockSync().reset();
+        System.out.println("WELCOME myId=" + networkService.getMyPlayerId() + " srvTS=" + networkService.getWelcomeSrvTS()
+                + " proto=" + (networkService.isBinaryMode() ? BinaryProtocol.PROTO_NAME : "json")
+                + " delta=" + networkService.isDeltaMode() + " batch=" + networkService.isBatchMode()
+                + (msg.resumed ? " (resumed)" : ""));
+    }
 
-                    if (gameOverMsg.has("results") && gameOverMsg.get("results").isJsonObject()) {
-                        org.csu.pixelstrikejavafx.core.MatchResultsModel.setMatchResults(
-                                gameOverMsg.getAsJsonObject("results")
-                        );
-                        System.out.println("Match results updated in the model.");
-                    } else {
-                        org.csu.pixelstrikejavafx.core.MatchResultsModel.setMatchResults(null);
-                    }
+    private void onJoinBroadcast(GameMessages.PlayerId msg) {
+        if (!networkService.isJoinedAck()) return;
+        if (networkService.getMyPlayerId() != null && msg.id == networkService.getMyPlayerId()) return;
+        playerManager.updateRemotePlayer(msg.id, 0, 0, true, "IDLE", "IDLE", 0, 0, false, 0);
+    }
 
-                    DialogManager.showFullScreenMessage("游戏结束!", "点击确认结算战绩", () -> {
-                        getGameController().gotoMainMenu();
-                    });
-                }
+    private void onRemoteState(GameMessages.State msg) {
+        if (!networkService.isJoinedAck()) return;
+        if (networkService.getWelcomeSrvTS() > 0 && msg.srvTS > 0 && msg.srvTS < networkService.getWelcomeSrvTS()) return;
+        if (msg.id == 0) return;
+        if (networkService.getMyPlayerId() != null && msg.id == networkService.getMyPlayerId()) {
+            // 服务器回显的本机 state 只视为确认：内容是我们自己发的，不是权威位置，
+            // 拿它校正只会把预测拉回旧值。校正只认服务器发的 correction（onCorrection）
+            networkService.acknowledgeState(msg.seq);
+            return;
+        }
 
-                case "leave" -> playerManager.removeRemotePlayer(extractInt(json, "\"id\":"));
-                case "health_update" -> {
-                    int userId = extractInt(json, "\"userId\":");
-                    int hp = extractInt(json, "\"hp\":");
-                    if (networkService.getMyPlayerId() != null && userId == networkService.getMyPlayerId()) {
-                        playerManager.getLocalPlayer().setHealth(hp);
-                        System.out.println("Local player health updated to: " + hp);
-                    }
-                }
-                case "supply_spawn" -> {
-                    long dropId = extractLong(json, "\"dropId\":");
-                    String dropType = extractString(json, "\"dropType\":\"");
-                    double x = extractDouble(json, "\"x\":");
-                    double y = extractDouble(json, "\"y\":");
-                    spawnSupplyDrop(dropId, dropType, x, y);
-                }
-                case "supply_removed" -> {
-                    long dropId = extractLong(json, "\"dropId\":");
-                    // 查找并移除对应的实体
-                    getGameWorld().getEntitiesByType(GameType.SUPPLY_DROP).stream()
-                            .filter(e -> e.getComponent(SupplyDropComponent.class).getDropId() == dropId)
-                            .findFirst()
-                            .ifPresent(Entity::removeFromWorld);
-                }
-                case "weapon_equip" -> {
-                    int userId = extractInt(json, "\"userId\":");
-                    String weaponType = extractString(json, "\"weaponType\":\"");
-
-                    if (networkService.getMyPlayerId() != null && userId == networkService.getMyPlayerId()) {
-                        // 如果是本地玩家，调用切换武器的方法
-                        playerManager.getLocalPlayer().getShootingSys().equipWeapon(weaponType);
-                        DialogManager.showInGameNotification("装备了 " + weaponType, "rgba(52, 152, 219, 0.8)");
-                    }
-                    // 对于远程玩家，目前我们不需要做任何视觉上的改变，
-                    // 但未来可以在这里更新他们手中的武器模型。
-                }
-                case "player_bombed" -> {
-                    int userId = extractInt(json, "\"userId\":");
-                    // 找到被炸的玩家实体
-                    Entity targetEntity = null;
-                    if (networkService.getMyPlayerId() != null && userId == networkService.getMyPlayerId()) {
-                        targetEntity = playerManager.getLocalPlayer().getEntity();
-                    } else {
-                        RemotePlayer rp = playerManager.getRemotePlayers().get(userId);
-                        if (rp != null) {
-                            targetEntity = rp.entity;
-                        }
-                    }
-                    // 如果找到了实体，就播放屏幕震动效果
-                    if (targetEntity != null) {
-                        getGameScene().getViewport().shakeTranslational(7.0);
-                    }
-                }
-                case "pickup_notification" -> {
-                    String pickerNickname = extractString(json, "\"pickerNickname\":\"");
-                    String itemType = extractString(json, "\"itemType\":\"");
-                    DialogManager.showInGameNotification(pickerNickname + " 拾取了 " + itemType + "!", "rgba(39, 174, 96, 0.8)");
-                }
-                case "player_poisoned" -> {
-                    int userId = extractInt(json, "\"userId\":");
-                    double duration = extractLong(json, "\"duration\":") / 1000.0; // 毫秒转秒
+        networkService.getMetrics().recordStateArrival(msg.id);
+        playerManager.updateRemotePlayer(msg);
+    }
 
-                    if (networkService.getMyPlayerId() != null && userId == networkService.getMyPlayerId()) {
-                        // 为本地玩家添加中毒组件
-                        playerManager.getLocalPlayer().getEntity().addComponent(new PoisonedComponent(duration));
-                    }
+    private void onCorrection(GameMessages.Correction msg) {
+        if (!networkService.isJoinedAck()) return;
+        Player localPlayer = playerManager.getLocalPlayer();
+        if (localPlayer != null) localPlayer.reconcile(msg.seq, msg.x, msg.y, msg.vx);
+    }
 
+    private void onRemoteShot(GameMessages.Shot msg) {
+        if (!networkService.isJoinedAck()) return;
+        int attackerId = msg.attacker;
+        if (networkService.getMyPlayerId() == null || attackerId == networkService.getMyPlayerId()) return;
+        String weaponType = msg.weaponType == null ? "" : msg.weaponType;
+        double ox = msg.ox, oy = msg.oy;
+        // 弹道飞不进视野的射击：不生成子弹也不放音效（伤害由服务器结算，不受影响）
+        if (!interest.segmentIntersects(ox, oy, msg.dx, msg.dy, GameConfig.INTEREST_SHOT_REACH)) return;
+        switch (weaponType) {
+            case "Pistol":
+                play("pistol_shot.wav");
+                spawnRemotePistolBullet(attackerId, ox, oy, new Point2D(msg.dx, msg.dy));
+                break;
+            case "MachineGun":
+                play("machinegun_shot.wav");
+                spawnRemoteMachineGunBullet(attackerId, ox, oy, new Point2D(msg.dx, msg.dy));
+                break;
+            case "Shotgun":
+                play("shotgun_shot.wav");
+                spawnRemoteShotgunBlast(attackerId, ox, oy);
+                break;
+            case "Railgun":
+                play("railgun_shot.wav");
+                spawnRemoteRailgunBeam(attackerId, ox, oy, new Point2D(msg.dx, msg.dy));
+                break;
+            default:
+                System.err.println("Received unknown weaponType for remote shot: " + weaponType);
+                break;
+        }
+    }
+
+    private void onDamage(GameMessages.Damage msg) {
+        if (networkService.getWelcomeSrvTS() > 0 && msg.srvTS > 0 && msg.srvTS < networkService.getWelcomeSrvTS()) return;
+
+        int victimId = msg.victim;
+        // ★ 核心修复：无论是本地玩家还是远程玩家，都需要处理
+        if (networkService.getMyPlayerId() != null && victimId == networkService.getMyPlayerId()) {
+            // 是我被击中了
+            Player localPlayer = playerManager.getLocalPlayer();
+            double kx = msg.hasKnockback ? msg.kx : (localPlayer.getFacingRight() ? -220.0 : 220.0);
+            double ky = msg.hasKnockback ? msg.ky : 0.0;
+            localPlayer.applyHit(Math.max(1, msg.damage), kx, ky);
+        } else {
+            confirmPredictedHit(msg);
+            // 远程玩家被击中逻辑
+            RemotePlayer remotePlayer = playerManager.getRemotePlayers().get(victimId);
+            if (remotePlayer != null && remotePlayer.entity != null) {
+                // 如果伤害消息表明该玩家已死亡，则触发他的死亡动画状态，而不是直接隐藏
+                if (msg.dead) {
+                    System.out.println("Remote player " + victimId + " has died. Playing death animation.");
+                    remotePlayer.anim = "DIE"; // 强制设置动画状态为DIE
                 }
-                case "scoreboard_update" -> {
-                    JsonObject scoreboardMsg = JsonParser.parseString(json).getAsJsonObject();
-                    if (scoreboardMsg.has("gameTimeRemainingSeconds")) {
-                        this.gameTimeRemainingSeconds = scoreboardMsg.get("gameTimeRemainingSeconds").getAsInt();
-                    }
-                    JsonArray scoresArray = scoreboardMsg.getAsJsonArray("scores");
-                    // 使用Gson将JsonArray解析为List<Map<String, Object>>
-                    Type listType = new TypeToken<List<Map<String, Object>>>() {}.getType();
-                    currentScoreboardData = new Gson().fromJson(scoresArray, listType);
-                    updateScoreboardUI(); // 收到新数据后立即更新UI
-                }
+                // （可选）在这里也可以为远程玩家添加受击特效
             }
-        } catch (Exception e) {
-            System.err.println("handleServerMessage error: " + e.getMessage());
-            e.printStackTrace();
         }
     }
 
+    /** 本机预测打中了人：立刻在命中点画一个白色 X，等服务器的 damage 确认 */
+    private void onPredictedHit(PlayerManager.HitPrediction hit) {
+        predictedVictim = hit.victimId;
+        predictedAtMs = System.nanoTime() / 1_000_000.0;
+        double r = 9;
+        Line a = new Line(hit.hitX - r, hit.hitY - r, hit.hitX + r, hit.hitY + r);
+        Line b = new Line(hit.hitX - r, hit.hitY + r, hit.hitX + r, hit.hitY - r);
+        for (Line l : new Line[]{a, b}) {
+            l.setStroke(Color.WHITE);
+            l.setStrokeWidth(3);
+        }
+        predictedMarker = new Line[]{a, b};
+        Entity marker = FXGL.entityBuilder()
+                .at(0, 0)
+                .view(a)
+                .view(b)
+                .zIndex(1001)
+                .buildAndAttach();
+        FXGL.getGameTimer().runOnceAfter(marker::removeFromWorld, Duration.seconds(0.4));
+    }
+
+    /** 服务器结算的伤害和本机预测对上了：标记变红 */
+    private void confirmPredictedHit(GameMessages.Damage msg) {
+        if (predictedVictim == 0 || msg.victim != predictedVictim) return;
+        Integer me = networkService.getMyPlayerId();
+        if (msg.attacker != 0 && (me == null || msg.attacker != me)) return;
+        if (System.nanoTime() / 1_000_000.0 - predictedAtMs > GameConfig.Net.HIT_CONFIRM_WINDOW_MS) return;
+        predictedVictim = 0;
+        for (Line l : predictedMarker) l.setStroke(Color.RED);
+    }
+
+    private void onRespawn(GameMessages.Respawn msg) {
+        int id = msg.id;
+        double x = msg.x, y = msg.y;
+        if (networkService.getMyPlayerId() != null && id == networkService.getMyPlayerId()) {
+            playerManager.getLocalPlayer().reset(x, y);
+            playerManager.getLocalPlayer().revive();
+            playerManager.getLocalHistory().clear();
+            sendPolicy.reset();
+        } else {
+            // ★ 核心修复：远程玩家复活时，不仅要更新位置，还要确保模型可见
+            RemotePlayer remotePlayer = playerManager.getRemotePlayers().get(id);
+            if (remotePlayer != null && remotePlayer.entity != null) {
+                remotePlayer.hasPendingState = false;   // 复活前的 state 已作废
+                remotePlayer.entity.setPosition(x, y);
+                remotePlayer.targetX = x;
+                remotePlayer.targetY = y;
+                remotePlayer.snapshots.reset(System.nanoTime() / 1_000_000.0, x, y);
+                remotePlayer.history.clear();
+                remotePlayer.entity.setVisible(true); // 确保模型恢复可见
+                System.out.println("Showing remote player " + id + " because they respawned.");
+            } else {
+                // 如果玩家不存在（可能是在死亡期间加入的），则直接创建
+                playerManager.updateRemotePlayer(id, x, y, true, "IDLE", "IDLE", 0, 0, true, 0);
+            }
+        }
+    }
+
+    private void onGameOver(GameMessages.GameOver msg) {
+        System.out.println("Received game over message from server.");
+        if (replay != null) {
+            // 回放到结尾：停在最后一帧，可以继续拖动
+            if (!replay.isPaused()) replay.togglePause();
+            return;
+        }
+        networkService.dumpMetrics();
+
+        if (msg.results != null) {
+            org.csu.pixelstrikejavafx.core.MatchResultsModel.setMatchResults(
+                    JsonParser.parseString(msg.results.toString()).getAsJsonObject()
+            );
+            System.out.println("Match results updated in the model.");
+        } else {
+            org.csu.pixelstrikejavafx.core.MatchResultsModel.setMatchResults(null);
+        }
+
+        DialogManager.showFullScreenMessage("游戏结束!", "点击确认结算战绩", () -> {
+            getGameController().gotoMainMenu();
+        });
+    }
+
+    private void onHealthUpdate(GameMessages.HealthUpdate msg) {
+        if (networkService.getMyPlayerId() != null && msg.userId == networkService.getMyPlayerId()) {
+            playerManager.getLocalPlayer().setHealth(msg.hp);
+            System.out.println("Local player health updated to: " + msg.hp);
+        }
+    }
+
+    private void onSupplySpawn(GameMessages.SupplySpawn msg) {
+        spawnSupplyDrop(msg.dropId, msg.dropType, msg.x, msg.y);
+    }
+
+    private void onWeaponEquip(GameMessages.WeaponEquip msg) {
+        if (networkService.getMyPlayerId() != null && msg.userId == networkService.getMyPlayerId()) {
+            // 如果是本地玩家，调用切换武器的方法
+            playerManager.getLocalPlayer().getShootingSys().equipWeapon(msg.weaponType);
+            DialogManager.showInGameNotification("装备了 " + msg.weaponType, "rgba(52, 152, 219, 0.8)");
+        }
+        // 对于远程玩家，目前我们不需要做任何视觉上的改变，
+        // 但未来可以在这里更新他们手中的武器模型。
+    }
+
+    private void onPlayerBombed(GameMessages.UserId msg) {
+        int userId = msg.userId;
+        // 找到被炸的玩家实体
+        Entity targetEntity = null;
+        if (networkService.getMyPlayerId() != null && userId == networkService.getMyPlayerId()) {
+            targetEntity = playerManager.getLocalPlayer().getEntity();
+        } else {
+            RemotePlayer rp = playerManager.getRemotePlayers().get(userId);
+            if (rp != null) {
+                targetEntity = rp.entity;
+            }
+        }
+        // 如果找到了实体，就播放屏幕震动效果
+        if (targetEntity != null) {
+            getGameScene().getViewport().shakeTranslational(7.0);
+        }
+    }
+
+    private void onPlayerPoisoned(GameMessages.PlayerPoisoned msg) {
+        double duration = msg.durationMs / 1000.0; // 毫秒转秒
+        if (networkService.getMyPlayerId() != null && msg.userId == networkService.getMyPlayerId()) {
+            // 为本地玩家添加中毒组件
+            playerManager.getLocalPlayer().getEntity().addComponent(new PoisonedComponent(duration));
+        }
+    }
+
+    private void onScoreboardUpdate(GameMessages.Scoreboard msg) {
+        if (msg.hasTimeRemaining) {
+            this.gameTimeRemainingSeconds = msg.gameTimeRemainingSeconds;
+        }
+        if (msg.scores == null) return;
+        // 使用Gson将JsonArray解析为List<Map<String, Object>>
+        Type listType = new TypeToken<List<Map<String, Object>>>() {}.getType();
+        currentScoreboardData = new Gson().fromJson(msg.scores.toString(), listType);
+        updateScoreboardUI(); // 收到新数据后立即更新UI
+    }
+
+    private void removeSupplyDrop(long dropId) {
+        // 查找并移除对应的实体
+        getGameWorld().getEntitiesByType(GameType.SUPPLY_DROP).stream()
+                .filter(e -> e.getComponent(SupplyDropComponent.class).getDropId() == dropId)
+                .findFirst()
+                .ifPresent(Entity::removeFromWorld);
+    }
+
+    /** 二进制帧（bin1）的下行回调，直接转给上面的共用处理函数 */
+    private final class BinaryMessageHandler implements BinaryProtocol.Handler {
+        @Override public void onState(GameMessages.State m) { onRemoteState(m); }
+        @Override public void onShot(GameMessages.Shot m) { onRemoteShot(m); }
+        @Override public void onDamage(GameMessages.Damage m) { PixelGameApp.this.onDamage(m); }
+        @Override public void onRespawn(GameMessages.Respawn m) { PixelGameApp.this.onRespawn(m); }
+        @Override public void onSupplySpawn(GameMessages.SupplySpawn m) { PixelGameApp.this.onSupplySpawn(m); }
+        @Override public void onSupplyRemoved(GameMessages.SupplyRemoved m) { removeSupplyDrop(m.dropId); }
+    }
+
     private void updateScoreboardUI() {
         Platform.runLater(() -> {
             if (scoreboardGrid == null) return;
@@ -635,28 +890,35 @@ public class PixelGameApp extends GameApplication {
 
     private void updateRemotePlayers(double tpf) {
         long now = System.currentTimeMillis();
+        double nowMs = System.nanoTime() / 1_000_000.0;
         playerManager.getRemotePlayers().entrySet().removeIf(entry -> {
             RemotePlayer rp = entry.getValue();
-            if (now - rp.lastUpdate > 3000) {
+            // 重连期间收不到消息是正常的，先不清人
+            if (replay == null && !networkService.isReconnecting() && now - rp.lastUpdate > 3000) {
                 if (rp.entity != null) rp.entity.removeFromWorld();
                 return true;
             }
             if (rp.entity == null) return false;
 
-            double curX = rp.entity.getX();
-            double curY = rp.entity.getY();
-            double dx = rp.targetX - curX;
-            double dy = rp.targetY - curY;
-
-            if (Math.abs(dx) < 0.8) curX = rp.targetX;
-            else curX = curX + dx * 10.0 * tpf;
-
-            if (Math.abs(dy) < 0.8) curY = rp.targetY;
-            else curY = curY + dy * 10.0 * tpf;
+            // 视野外：直接放到最新位置，不插值、不驱动动画
+            if (!interest.containsBox(rp.targetX + Player.HB_OFF_X, rp.targetY + Player.HB_OFF_Y, Player.HB_W, Player.HB_H)) {
+                rp.entity.setPosition(rp.targetX, rp.targetY);
+                if (rp.lastTs > 0) rp.history.record(rp.lastTs, rp.targetX, rp.targetY);
+                if (rp.avatar != null) rp.avatar.setDormant(true);
+                return false;
+            }
 
-            rp.entity.setPosition(curX, curY);
+            // 按发送端时间戳插值，与本地帧率无关
+            if (rp.snapshots.sample(nowMs)) {
+                rp.entity.setPosition(rp.snapshots.getX(), rp.snapshots.getY());
+                double renderTs = rp.snapshots.getRenderTs();
+                if (!Double.isNaN(renderTs)) rp.history.record(renderTs, rp.snapshots.getX(), rp.snapshots.getY());
+            } else {
+                rp.entity.setPosition(rp.targetX, rp.targetY);
+            }
 
             if (rp.avatar != null) {
+                rp.avatar.setDormant(false);
                 rp.avatar.setFacingRight(rp.targetFacing);
                 rp.avatar.playState(rp.anim, rp.phase, rp.lastVX, rp.onGround);
             }
@@ -742,7 +1004,7 @@ public class PixelGameApp extends GameApplication {
             @Override
             protected void onCollisionBegin(Entity playerEntity, Entity dropEntity) {
                 // 确保只有本地玩家的碰撞才会触发拾取
-                if (playerManager.getLocalPlayer() != null && playerEntity == playerManager.getLocalPlayer().getEntity()) {
+                if (replay == null && playerManager.getLocalPlayer() != null && playerEntity == playerManager.getLocalPlayer().getEntity()) {
                     SupplyDropComponent dropData = dropEntity.getComponent(SupplyDropComponent.class);
                     // 向服务器发送拾取请求
                     networkService.sendSupplyPickup(dropData.getDropId());
@@ -852,57 +1114,6 @@ public class PixelGameApp extends GameApplication {
     }
 
 
-    private String extractString(String json, String keyPrefix) {
-        int i = json.indexOf(keyPrefix);
-        if (i < 0) return null;
-        int s = i + keyPrefix.length();
-        int e = json.indexOf('"', s);
-        if (e < 0) return null;
-        return json.substring(s, e);
-    }
-
-    private int extractInt(String json, String key) {
-        int i = json.indexOf(key);
-        if (i < 0) return 0;
-        int s = i + key.length();
-        while (s < json.length() && (json.charAt(s) == ' ' || json.charAt(s) == '"')) s++;
-        int e = s;
-        while (e < json.length() && (Character.isDigit(json.charAt(e)) || json.charAt(e) == '-')) e++;
-        if (s == e) return 0;
-        try { return Integer.parseInt(json.substring(s, e)); } catch (NumberFormatException ex) { return 0; }
-    }
-
-    private long extractLong(String json, String key) {
-        int i = json.indexOf(key);
-        if (i < 0) return 0L;
-        int s = i + key.length();
-        while (s < json.length() && (json.charAt(s) == ' ' || json.charAt(s) == '"')) s++;
-        int e = s;
-        while (e < json.length() && (Character.isDigit(json.charAt(e)) || json.charAt(e) == '-')) e++;
-        if (s == e) return 0L;
-        try { return Long.parseLong(json.substring(s, e)); } catch (NumberFormatException ex) { return 0L; }
-    }
-
-    private double extractDouble(String json, String key) {
-        int i = json.indexOf(key);
-        if (i < 0) return 0.0;
-        int s = i + key.length();
-        while (s < json.length() && (json.charAt(s) == ' ' || json.charAt(s) == '"')) s++;
-        int e = s;
-        while (e < json.length()) {
-            char c = json.charAt(e);
-            if (("0123456789-+.eE").indexOf(c) >= 0) e++; else break;
-        }
-        if (s == e) return 0.0;
-        try { return Double.parseDouble(json.substring(s, e)); } catch (NumberFormatException ex) { return 0.0; }
-    }
-
-    private long readSrvTS(String json) {
-        long t = extractLong(json, "\"serverTime\":");
-        if (t == 0L) t = extractLong(json, "\"srvTS\":");
-        return t;
-    }
-
     private void centerText(Text text, double x, double y) {
         text.setX(x - text.getLayoutBounds().getWidth() / 2);
         text.setY(y);
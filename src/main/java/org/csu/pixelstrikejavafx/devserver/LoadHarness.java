@@ -0,0 +1,182 @@
+package org.csu.pixelstrikejavafx.devserver;
+
+import org.csu.pixelstrikejavafx.game.network.GameMessages;
+import org.csu.pixelstrikejavafx.game.network.LatencyHistogram;
+import org.csu.pixelstrikejavafx.game.network.NetClient;
+import org.csu.pixelstrikejavafx.game.network.ServerMessageDispatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对局流量压测：同一个 JVM 里起一个 LocalGameServer 当中继，再起 N 个无界面机器人。
+ * 每个机器人用真正的 NetClient 连上去，60Hz 发合成的移动 state、定期开枪，
+ * 并用客户端同款 ServerMessageDispatcher 解码收到的广播。
+ * 依次跑 2、4、8 … 64 个机器人，每档输出吞吐、单条解码耗时和 state 端到端延迟分位数。
+ *
+ * 端到端延迟：机器人把发送时的 nanoTime（微秒）写进 state 的 ts 字段，同进程的接收方直接相减。
+ *
+ * 用法：LoadHarness [--bots 2,4,8,16,32,64] [--seconds 5] [--warmup 1]
+ */
+public final class LoadHarness {
+
+    private static final double TICK_HZ = 60.0;
+    private static final int SHOT_EVERY_TICKS = 20;
+
+    /** 一个机器人；统计只在它自己的 WebSocket 回调线程上写 */
+    private static final class Bot {
+        final int index;
+        final NetClient client = new NetClient();
+        final ServerMessageDispatcher dispatcher = new ServerMessageDispatcher();
+        final GameMessages messages = new GameMessages();
+        final CountDownLatch welcomed = new CountDownLatch(1);
+        volatile boolean measuring = false;
+        volatile int myId = -1;
+        long seq = 0;
+
+        // 统计
+        long received, receivedBytes, states;
+        final LatencyHistogram decodeNanos = new LatencyHistogram();   // 这里记的是纳秒
+        final LatencyHistogram stateLatency = new LatencyHistogram();  // 微秒
+
+        Bot(int index) {
+            this.index = index;
+            dispatcher.on("welcome", messages.welcome, m -> {
+                myId = m.id;
+                client.setBatching(m.batch, false);
+                welcomed.countDown();
+            }).on("state", messages.state, m -> {
+                if (!measuring || m.id == myId) return;
+                states++;
+                stateLatency.record(System.nanoTime() / 1000 - m.ts);
+            }).on("shot", messages.shot, m -> { })
+                    .on("damage", messages.damage, m -> { })
+                    .on("state_ack", messages.stateAck, m -> { });
+        }
+
+        void connect(String url) {
+            client.connect(url + "?token=bot" + index + "&name=bot" + index, () -> { }, this::onText);
+        }
+
+        private void onText(String json) {
+            long t0 = System.nanoTime();
+            dispatcher.dispatch(json);
+            long cost = System.nanoTime() - t0;
+            if (!measuring) return;
+            received++;
+            receivedBytes += json.length();
+            decodeNanos.record(cost);
+        }
+
+        /** 60Hz：绕着出生点来回跑，偶尔开枪 */
+        void tick(long tick) {
+            if (myId < 0) return;
+            double t = tick / TICK_HZ + index * 0.7;
+            double x = 2300 + 1800 * Math.sin(t * 0.5);
+            double vx = 900 * Math.cos(t * 0.5);
+            double y = 2691 - Math.abs(Math.sin(t * 2.0)) * 200;
+            client.sendState(x, y, vx, 0, vx >= 0, y >= 2690, vx == 0 ? "IDLE" : "RUN", "IDLE",
+                    System.nanoTime() / 1000, ++seq);
+            if ((tick + index) % SHOT_EVERY_TICKS == 0) {
+                client.sendShot(x + 120, y + 90, vx >= 0 ? 1 : -1, 0, 1500, 10, System.currentTimeMillis(), seq);
+            }
+            client.flush();
+        }
+    }
+
+    /** 一档的汇总 */
+    private record Result(int bots, double seconds, long messages, long bytes, long states,
+                          LatencyHistogram decode, LatencyHistogram latency,
+                          long serverOut, long droppedFrames) { }
+
+    public static void main(String[] args) throws Exception {
+        int[] counts = {2, 4, 8, 16, 32, 64};
+        double seconds = 5, warmup = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--bots" -> {
+                    String[] parts = args[++i].split(",");
+                    counts = new int[parts.length];
+                    for (int k = 0; k < parts.length; k++) counts[k] = Integer.parseInt(parts[k].trim());
+                }
+                case "--seconds" -> seconds = Double.parseDouble(args[++i]);
+                case "--warmup" -> warmup = Double.parseDouble(args[++i]);
+                default -> {
+                    System.err.println("usage: LoadHarness [--bots 2,4,8,16,32,64] [--seconds 5] [--warmup 1]");
+                    return;
+                }
+            }
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (int n : counts) results.add(run(n, seconds, warmup));
+
+        System.out.println();
+        System.out.println(String.format(Locale.US, "%5s %10s %10s %9s %9s %9s %9s %9s %9s %9s %9s %8s",
+                "bots", "srv out/s", "msg/s", "KB/s", "state/s", "dec p50", "dec p99", "lat p50", "lat p99", "lat p999", "lat max", "dropped"));
+        System.out.println(String.format(Locale.US, "%5s %10s %10s %9s %9s %9s %9s %9s %9s %9s %9s %8s",
+                "", "", "(all bots)", "", "per bot", "ns", "ns", "ms", "ms", "ms", "ms", "frames"));
+        for (Result r : results) {
+            System.out.println(String.format(Locale.US, "%5d %10.0f %10.0f %9.1f %9.1f %9d %9d %9.2f %9.2f %9.2f %9.2f %8d",
+                    r.bots, r.serverOut / r.seconds, r.messages / r.seconds, r.bytes / 1024.0 / r.seconds, r.states / r.seconds / r.bots,
+                    r.decode.percentile(50), r.decode.percentile(99),
+                    r.latency.percentile(50) / 1000.0, r.latency.percentile(99) / 1000.0,
+                    r.latency.percentile(99.9) / 1000.0, r.latency.maxMicros() / 1000.0, r.droppedFrames));
+        }
+        System.exit(0);
+    }
+
+    private static Result run(int n, double seconds, double warmup) throws Exception {
+        System.out.println("[harness] " + n + " bots ...");
+        LocalGameServer server = new LocalGameServer().matchDuration(3600).start(0);
+        List<Bot> bots = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Bot b = new Bot(i);
+            b.connect(server.getUrl());
+            bots.add(b);
+        }
+        for (Bot b : bots) {
+            if (!b.welcomed.await(10, TimeUnit.SECONDS)) throw new IllegalStateException("bot " + b.index + " not welcomed");
+        }
+
+        ScheduledExecutorService clock = Executors.newSingleThreadScheduledExecutor();
+        long[] tick = {0};
+        ScheduledFuture<?> task = clock.scheduleAtFixedRate(() -> {
+            long t = tick[0]++;
+            for (Bot b : bots) b.tick(t);
+        }, 0, Math.round(1_000_000 / TICK_HZ), TimeUnit.MICROSECONDS);
+
+        Thread.sleep((long) (warmup * 1000));
+        long serverOut0 = server.getMessagesOut();
+        for (Bot b : bots) b.measuring = true;
+        long start = System.nanoTime();
+        Thread.sleep((long) (seconds * 1000));
+        for (Bot b : bots) b.measuring = false;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long serverOut = server.getMessagesOut() - serverOut0;
+
+        task.cancel(false);
+        clock.shutdown();
+        Thread.sleep(200);   // 让回调线程上正在记录的样本写完
+
+        LatencyHistogram decode = new LatencyHistogram(), latency = new LatencyHistogram();
+        long messages = 0, bytes = 0, states = 0, dropped = 0;
+        for (Bot b : bots) {
+            decode.add(b.decodeNanos);
+            latency.add(b.stateLatency);
+            messages += b.received;
+            bytes += b.receivedBytes;
+            states += b.states;
+            dropped += b.client.getDroppedStaleFrames() + b.client.getDroppedReliableFrames();
+            b.client.abort();
+        }
+        server.stop();
+        return new Result(n, elapsed, messages, bytes, states, decode, latency, serverOut, dropped);
+    }
+}
@@ -0,0 +1,623 @@
+package org.csu.pixelstrikejavafx.devserver;
+
+import org.csu.pixelstrikejavafx.game.core.GameConfig;
+import org.csu.pixelstrikejavafx.game.network.BinaryProtocol;
+import org.csu.pixelstrikejavafx.game.network.GameMessages;
+import org.csu.pixelstrikejavafx.game.network.JsonMessageReader;
+import org.csu.pixelstrikejavafx.game.network.StateDelta;
+import org.csu.pixelstrikejavafx.game.player.PositionHistory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地替身对局服务器：离线开发和压测用，不需要后端。
+ * 说的是客户端现有的 JSON 协议（welcome / join_broadcast / state / state_ack / shot / damage / health_update /
+ * respawn / supply_spawn / supply_removed / pickup_notification / weapon_equip / scoreboard_update / pong / leave / game_over），
+ * 支持增量 state、{"type":"batch"} 批量帧和带 resume/playerId 的断线重连。
+ * URL 上带 proto=bin1 的连接在 welcome 里确认 bin1：state / shot / pickup_supply 收二进制，
+ * state / shot / damage / respawn / supply_* 的下行也发二进制，其余消息仍是 JSON；同一局里两种连接可以混用。
+ * 命中判定做延迟补偿：按 shot 里的 vt（射手开枪时看到的 state 时刻）把其他玩家回退到当时的位置再算，
+ * 最多回退 GameConfig.Net.LAG_COMP_MAX_MS。
+ *
+ * 启动：java ... LocalGameServer --port 8090 --duration 300，
+ * 客户端加 -Dpixelstrike.gameServerUrl=ws://localhost:8090/game 即可连过来。
+ * 测试里用 new LocalGameServer().start(0) + getPort()。
+ */
+public final class LocalGameServer implements WebSocketServer.Handler {
+
+    private static final double GROUND_Y = GameConfig.MAP_H - 211;
+    private static final double SPAWN_Y = GROUND_Y - 128;
+    private static final int MAX_HP = 100;
+    private static final long RESPAWN_DELAY_MS = 3000;
+    private static final long RESUME_GRACE_MS = 10_000;
+    private static final long SUPPLY_INTERVAL_MS = 20_000;
+    private static final int MAX_SUPPLIES = 3;
+    private static final long TICK_MS = 100;
+    private static final String[] SUPPLY_TYPES = {"MachineGun", "Shotgun", "Railgun", "HEALTH_PACK"};
+
+    /** 服务器上的一个玩家 */
+    private static final class Slot {
+        final int id;
+        final String nickname;
+        WsConnection conn;
+        // 本连接协商了 bin1
+        boolean binary;
+        final GameMessages.State state = new GameMessages.State();
+        final StateDelta.Baselines baselines = new StateDelta.Baselines();
+        boolean hasState = false;
+        // 按 state.ts 记录的位置历史，判定命中时回退用
+        final PositionHistory history = new PositionHistory();
+        int hp = MAX_HP;
+        boolean dead = false;
+        long respawnAt = 0;
+        int kills, deaths;
+        long disconnectedAt = 0;
+
+        Slot(int id, String nickname) {
+            this.id = id;
+            this.nickname = nickname;
+        }
+    }
+
+    /** 场上的补给 */
+    private record Supply(long id, String type, double x, double y) { }
+
+    private final WebSocketServer ws = new WebSocketServer(this);
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "devserver-tick");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Random random = new Random();
+
+    // 以下状态都由 this 保护
+    private final Map<Integer, Slot> players = new LinkedHashMap<>();
+    private final Map<Long, Supply> supplies = new LinkedHashMap<>();
+    private int nextPlayerId = 1;
+    private long nextDropId = 1;
+    private long matchStartMs = 0;
+    private long lastSupplyMs = 0;
+    private long lastScoreboardMs = 0;
+    private long matchDurationMs = 300_000;
+    private boolean deltaEnabled = true;
+    private boolean batchEnabled = true;
+    private boolean binaryEnabled = true;
+    private boolean verbose = false;
+
+    // 统计（压测用）
+    private long messagesIn = 0, messagesOut = 0;
+
+    public LocalGameServer matchDuration(long seconds) { this.matchDurationMs = seconds * 1000; return this; }
+    public LocalGameServer delta(boolean on) { this.deltaEnabled = on; return this; }
+    public LocalGameServer batch(boolean on) { this.batchEnabled = on; return this; }
+    public LocalGameServer binary(boolean on) { this.binaryEnabled = on; return this; }
+    public LocalGameServer verbose(boolean on) { this.verbose = on; return this; }
+
+    /** @param port 0 表示随机端口 */
+    public LocalGameServer start(int port) throws IOException {
+        ws.start(port);
+        ticker.scheduleAtFixedRate(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    public void stop() {
+        ticker.shutdownNow();
+        ws.stop();
+        synchronized (this) {
+            for (Slot s : players.values()) if (s.conn != null) s.conn.close();
+            players.clear();
+        }
+    }
+
+    public int getPort() { return ws.getPort(); }
+
+    /** 客户端可直接用的对局地址（不含查询参数） */
+    public String getUrl() { return "ws://localhost:" + getPort() + "/game"; }
+
+    public synchronized int getPlayerCount() { return players.size(); }
+    public synchronized long getMessagesIn() { return messagesIn; }
+    public synchronized long getMessagesOut() { return messagesOut; }
+
+    // ================= 连接 =================
+
+    @Override
+    public void onOpen(WsConnection c) {
+        Map<String, String> q = c.query();
+        synchronized (this) {
+            Slot slot = null;
+            boolean resumed = false;
+            if (q.containsKey("resume") && q.containsKey("playerId")) {
+                slot = players.get(parseInt(q.get("playerId"), -1));
+                if (slot != null && slot.conn == null) {
+                    resumed = true;
+                } else {
+                    slot = null;
+                }
+            }
+            if (slot == null) {
+                int id = nextPlayerId++;
+                String name = q.getOrDefault("name", "Player" + id);
+                slot = new Slot(id, name);
+                players.put(id, slot);
+                if (matchStartMs == 0) {
+                    matchStartMs = System.currentTimeMillis();
+                    lastSupplyMs = matchStartMs;
+                }
+            }
+            slot.conn = c;
+            slot.disconnectedAt = 0;
+            slot.binary = binaryEnabled && BinaryProtocol.PROTO_NAME.equals(q.get("proto"));
+            c.attachment = slot;
+
+            send(slot, "{\"type\":\"welcome\",\"id\":" + slot.id + ",\"serverTime\":" + System.currentTimeMillis()
+                    + (slot.binary ? ",\"proto\":\"" + BinaryProtocol.PROTO_NAME + "\"" : "")
+                    + ",\"delta\":" + deltaEnabled + ",\"batch\":" + batchEnabled + ",\"resumed\":" + resumed + "}");
+
+            // 新人或重连者：补发场上的其他玩家、他们的最新状态和补给
+            for (Slot o : players.values()) {
+                if (o == slot) continue;
+                send(slot, "{\"type\":\"join_broadcast\",\"id\":" + o.id + ",\"nickname\":\"" + o.nickname + "\"}");
+                if (o.hasState && !o.dead) send(slot, keyframeJson(o));
+                send(slot, healthJson(o));
+            }
+            for (Supply s : supplies.values()) send(slot, supplyJson(s));
+            if (!resumed) {
+                broadcast(slot, "{\"type\":\"join_broadcast\",\"id\":" + slot.id + ",\"nickname\":\"" + slot.nickname + "\"}");
+            }
+            if (verbose) System.out.println("[devserver] " + (resumed ? "resumed " : "joined ") + slot.id + " from " + c.remote());
+        }
+    }
+
+    @Override
+    public void onClose(WsConnection c) {
+        Slot slot = (Slot) c.attachment;
+        if (slot == null) return;
+        synchronized (this) {
+            if (slot.conn != c) return;   // 已被新连接接管
+            slot.conn = null;
+            // 不立即移除：给断线重连留一段宽限期，tick() 里超时后才广播 leave
+            if (players.containsKey(slot.id)) slot.disconnectedAt = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public void onText(WsConnection c, String text) {
+        Slot slot = (Slot) c.attachment;
+        if (slot == null) return;
+        // 每个连接的回调都在各自的读线程上，读取器不能共享
+        JsonMessageReader r = READER.get();
+        if (!r.parse(text)) return;
+        synchronized (this) {
+            int typeField = r.indexOf("type");
+            if (typeField >= 0 && r.valueEquals(typeField, "batch")) {
+                CharSequence msgs = r.getRaw("msgs");
+                if (msgs == null) return;
+                List<CharSequence> items = splitArray(msgs);
+                for (CharSequence item : items) {
+                    if (r.parse(item)) handle(slot, r, item);
+                }
+            } else {
+                handle(slot, r, text);
+            }
+        }
+    }
+
+    private static final ThreadLocal<JsonMessageReader> READER = ThreadLocal.withInitial(JsonMessageReader::new);
+
+    @Override
+    public void onBinary(WsConnection c, byte[] data) {
+        Slot slot = (Slot) c.attachment;
+        if (slot == null) return;
+        Uplink u = uplink.get();
+        synchronized (this) {
+            u.slot = slot;
+            BinaryProtocol.decodeUplink(ByteBuffer.wrap(data), u.msgs, u);
+        }
+    }
+
+    // 同 READER，每个读线程一份；回调时持有 this
+    private final ThreadLocal<Uplink> uplink = ThreadLocal.withInitial(Uplink::new);
+
+    private final class Uplink implements BinaryProtocol.UplinkHandler {
+        final GameMessages msgs = new GameMessages();
+        Slot slot;
+
+        @Override public void onState(GameMessages.State m) {
+            messagesIn++;
+            LocalGameServer.this.onState(slot, m, null);
+        }
+
+        @Override public void onShot(GameMessages.Shot m) {
+            messagesIn++;
+            LocalGameServer.this.onShot(slot, m);
+        }
+
+        @Override public void onPickupSupply(long dropId) {
+            messagesIn++;
+            onPickup(slot, dropId);
+        }
+    }
+
+    // ================= 消息处理（持有 this） =================
+
+    private void handle(Slot slot, JsonMessageReader r, CharSequence json) {
+        messagesIn++;
+        String type = r.getString("type");
+        if (type == null) return;
+        switch (type) {
+            case "state" -> {
+                GameMessages.State incoming = new GameMessages.State();
+                incoming.read(r);
+                onState(slot, incoming, json);
+            }
+            case "shot" -> onShot(slot, readShot(r));
+            case "pickup_supply" -> onPickup(slot, r.getLong("dropId", -1L));
+            case "ping" -> send(slot, String.format(Locale.US, "{\"type\":\"pong\",\"t0\":%.3f,\"serverTime\":%d}",
+                    r.getDouble("t0", 0.0), System.currentTimeMillis()));
+            case "leave" -> {
+                removePlayer(slot);
+                if (slot.conn != null) slot.conn.close();
+            }
+            case "join" -> { }   // 旧客户端的 join，welcome 已经发过了
+            default -> {
+                if (verbose) System.out.println("[devserver] unhandled type " + type);
+            }
+        }
+    }
+
+    /** @param json 文本上行的原文，二进制上行时为 null */
+    private void onState(Slot slot, GameMessages.State incoming, CharSequence json) {
+        GameMessages.State m = slot.state;
+        long prevSeq = m.seq;
+        if (!slot.baselines.rebuild(incoming)) return;   // 基线丢了，等下一个关键帧
+        if (slot.hasState && incoming.seq <= prevSeq) return;
+        m.copyFrom(incoming);
+        m.id = slot.id;
+        slot.hasState = true;
+        slot.history.record(m.ts > 0 ? m.ts : System.currentTimeMillis(), m.x, m.y);
+
+        // 只确认真正转发出去的帧：死亡期间的 state 不转发，也不能被客户端当成增量基线
+        if (slot.dead) return;
+        send(slot, "{\"type\":\"state_ack\",\"seq\":" + m.seq + "}");
+
+        long now = System.currentTimeMillis();
+        CharSequence text;
+        if (json != null) {
+            // 原样转发，只在开头补上 id 和服务器时间
+            StringBuilder sb = new StringBuilder(json.length() + 40);
+            sb.append("{\"id\":").append(slot.id).append(",\"srvTS\":").append(now).append(',');
+            sb.append(json, 1, json.length());
+            text = sb;
+        } else {
+            // 二进制发来的转给文本连接时按全量发，对方不需要基线
+            text = keyframeJson(slot);
+        }
+        ByteBuffer b;
+        if (m.keyframe && m.mask == StateDelta.ALL) {
+            b = binaryRecord(BinaryProtocol.STATE_RELAY_BYTES);
+            BinaryProtocol.writeStateRelay(b, m, now);
+        } else {
+            b = binaryRecord(BinaryProtocol.STATE_DELTA_RELAY_HEAD + BinaryProtocol.deltaFieldBytes(m.mask));
+            BinaryProtocol.writeStateDeltaRelay(b, m, now);
+        }
+        broadcast(slot, text, b.array());
+    }
+
+    private static GameMessages.Shot readShot(JsonMessageReader r) {
+        GameMessages.Shot m = new GameMessages.Shot();
+        m.read(r);
+        m.range = r.getDouble("range", 1500.0);
+        m.damage = r.getInt("damage", 10);
+        m.ts = r.getLong("ts", 0L);
+        m.vt = r.getLong("vt", 0L);
+        m.seq = r.getLong("seq", 0L);
+        return m;
+    }
+
+    private void onShot(Slot shooter, GameMessages.Shot m) {
+        if (shooter.dead) return;
+        double ox = m.ox, oy = m.oy;
+        double dx = m.dx, dy = m.dy;
+        double range = m.range;
+        int damage = m.damage;
+        if (m.weaponType == null) m.weaponType = "Pistol";
+        m.attacker = shooter.id;
+
+        ByteBuffer b = binaryRecord(BinaryProtocol.SHOT_RELAY_BYTES);
+        BinaryProtocol.writeShotRelay(b, m);
+        broadcast(shooter, String.format(Locale.US,
+                "{\"type\":\"shot\",\"attacker\":%d,\"ox\":%.2f,\"oy\":%.2f,\"dx\":%.4f,\"dy\":%.4f,\"weaponType\":\"%s\"}",
+                shooter.id, ox, oy, dx, dy, m.weaponType), b.array());
+
+        double len = Math.hypot(dx, dy);
+        if (len < 1e-6) return;
+        dx /= len;
+        dy /= len;
+
+        // 回退到射手看到的时刻；没带 vt 的旧客户端按各自最新位置判。
+        // vt 和历史里的时间都是各客户端自己的时钟，回退上限按目标自己最新一条记录算，不和服务器时钟比
+        long vt = m.vt;
+
+        // 最近的被击中者
+        Slot victim = null;
+        double best = range;
+        for (Slot p : players.values()) {
+            if (p == shooter || p.dead || !p.hasState) continue;
+            double rewindTo = vt > 0 ? Math.max(vt, p.history.newestTime() - GameConfig.Net.LAG_COMP_MAX_MS) : Double.MAX_VALUE;
+            double t = p.history.rayHit(rewindTo, ox, oy, dx, dy);
+            if (t >= 0 && t <= best) {
+                best = t;
+                victim = p;
+            }
+        }
+        if (victim == null) return;
+
+        victim.hp = Math.max(0, victim.hp - damage);
+        boolean dead = victim.hp == 0;
+        if (dead) {
+            victim.dead = true;
+            victim.deaths++;
+            victim.respawnAt = System.currentTimeMillis() + RESPAWN_DELAY_MS;
+            shooter.kills++;
+        }
+        GameMessages.Damage d = new GameMessages.Damage();
+        d.victim = victim.id;
+        d.attacker = shooter.id;
+        d.damage = damage;
+        d.dead = dead;
+        d.kx = dx * 260.0;
+        d.ky = -120.0;
+        d.srvTS = System.currentTimeMillis();
+        b = binaryRecord(BinaryProtocol.DAMAGE_BYTES);
+        BinaryProtocol.writeDamage(b, d);
+        broadcastAll(String.format(Locale.US,
+                "{\"type\":\"damage\",\"victim\":%d,\"attacker\":%d,\"damage\":%d,\"dead\":%b,\"kx\":%.1f,\"ky\":%.1f,\"serverTime\":%d}",
+                d.victim, d.attacker, d.damage, d.dead, d.kx, d.ky, d.srvTS), b.array());
+        broadcastAll(healthJson(victim));
+    }
+
+    private void onPickup(Slot slot, long dropId) {
+        Supply s = supplies.remove(dropId);
+        if (s == null || slot.dead) return;
+        ByteBuffer b = binaryRecord(BinaryProtocol.SUPPLY_REMOVED_BYTES);
+        BinaryProtocol.writeSupplyRemoved(b, s.id);
+        broadcastAll("{\"type\":\"supply_removed\",\"dropId\":" + s.id + "}", b.array());
+        broadcastAll("{\"type\":\"pickup_notification\",\"pickerNickname\":\"" + slot.nickname + "\",\"itemType\":\"" + s.type + "\"}");
+        if ("HEALTH_PACK".equals(s.type)) {
+            slot.hp = Math.min(MAX_HP, slot.hp + 50);
+            broadcastAll(healthJson(slot));
+        } else {
+            broadcastAll("{\"type\":\"weapon_equip\",\"userId\":" + slot.id + ",\"weaponType\":\"" + s.type + "\"}");
+        }
+    }
+
+    private void removePlayer(Slot slot) {
+        if (players.remove(slot.id) == null) return;
+        broadcast(slot, "{\"type\":\"leave\",\"id\":" + slot.id + "}");
+        if (verbose) System.out.println("[devserver] left " + slot.id);
+    }
+
+    // ================= 定时 =================
+
+    private void tick() {
+        try {
+            synchronized (this) {
+                tickLocked(System.currentTimeMillis());
+            }
+        } catch (RuntimeException e) {
+            System.err.println("[devserver] tick failed: " + e);
+        }
+    }
+
+    private void tickLocked(long now) {
+        // 断线宽限期到了
+        for (Slot s : new ArrayList<>(players.values())) {
+            if (s.conn == null && s.disconnectedAt != 0 && now - s.disconnectedAt > RESUME_GRACE_MS) removePlayer(s);
+        }
+        if (players.isEmpty() || matchStartMs == 0) return;
+
+        // 复活
+        for (Slot s : players.values()) {
+            if (s.dead && now >= s.respawnAt) {
+                s.dead = false;
+                s.hp = MAX_HP;
+                s.history.clear();
+                GameMessages.Respawn r = new GameMessages.Respawn();
+                r.id = s.id;
+                r.x = 300 + random.nextDouble() * (GameConfig.MAP_W - 600);
+                r.y = SPAWN_Y;
+                ByteBuffer b = binaryRecord(BinaryProtocol.RESPAWN_BYTES);
+                BinaryProtocol.writeRespawn(b, r);
+                broadcastAll(String.format(Locale.US, "{\"type\":\"respawn\",\"id\":%d,\"x\":%.1f,\"y\":%.1f}", r.id, r.x, r.y),
+                        b.array());
+                broadcastAll(healthJson(s));
+            }
+        }
+
+        // 补给
+        if (now - lastSupplyMs >= SUPPLY_INTERVAL_MS && supplies.size() < MAX_SUPPLIES) {
+            lastSupplyMs = now;
+            Supply s = new Supply(nextDropId++, SUPPLY_TYPES[random.nextInt(SUPPLY_TYPES.length)],
+                    300 + random.nextDouble() * (GameConfig.MAP_W - 600), GROUND_Y - 60);
+            supplies.put(s.id(), s);
+            broadcastAll(supplyJson(s), supplyRecord(s));
+        }
+
+        long remaining = matchDurationMs - (now - matchStartMs);
+        if (remaining <= 0) {
+            endMatch(now);
+            return;
+        }
+
+        // 记分板
+        if (now - lastScoreboardMs >= 1000) {
+            lastScoreboardMs = now;
+            StringBuilder sb = new StringBuilder(64 + players.size() * 64);
+            sb.append("{\"type\":\"scoreboard_update\",\"gameTimeRemainingSeconds\":").append(remaining / 1000).append(",\"scores\":[");
+            boolean first = true;
+            for (Slot s : players.values()) {
+                if (!first) sb.append(',');
+                first = false;
+                sb.append("{\"id\":").append(s.id).append(",\"nickname\":\"").append(s.nickname)
+                        .append("\",\"kills\":").append(s.kills).append(",\"deaths\":").append(s.deaths).append('}');
+            }
+            sb.append("]}");
+            broadcastAll(sb);
+        }
+    }
+
+    private void endMatch(long now) {
+        List<Slot> ranked = new ArrayList<>(players.values());
+        ranked.sort((a, b) -> a.kills != b.kills ? Integer.compare(b.kills, a.kills) : Integer.compare(a.deaths, b.deaths));
+        LocalDateTime end = LocalDateTime.now().withNano(0);
+        LocalDateTime start = end.minusNanos((now - matchStartMs) * 1_000_000L);
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"type\":\"game_over\",\"results\":{\"gameMode\":\"LOCAL\",\"mapName\":\"local\",\"startTime\":\"")
+                .append(start).append("\",\"endTime\":\"").append(end).append("\",\"participants\":[");
+        for (int i = 0; i < ranked.size(); i++) {
+            Slot s = ranked.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"ranking\":").append(i + 1).append(",\"userId\":").append(s.id)
+                    .append(",\"nickname\":\"").append(s.nickname).append("\",\"characterName\":\"-\"")
+                    .append(",\"kills\":").append(s.kills).append(",\"deaths\":").append(s.deaths).append('}');
+        }
+        sb.append("]}}");
+        broadcastAll(sb);
+
+        // 新的一局从下一个连进来的玩家开始
+        for (Slot s : players.values()) if (s.conn != null) s.conn.close();
+        players.clear();
+        supplies.clear();
+        matchStartMs = 0;
+        if (verbose) System.out.println("[devserver] match over");
+    }
+
+    // ================= 工具 =================
+
+    private void send(Slot to, CharSequence json) {
+        if (to.conn == null) return;
+        to.conn.sendText(json);
+        messagesOut++;
+    }
+
+    /** 发给除 from 以外的所有人 */
+    private void broadcast(Slot from, CharSequence json) {
+        broadcast(from, json, null);
+    }
+
+    /** @param bin 同一条消息的 bin1 帧（含魔数），发给协商了 bin1 的连接；为 null 时所有人都发 JSON */
+    private void broadcast(Slot from, CharSequence json, byte[] bin) {
+        byte[] textFrame = null, binaryFrame = null;
+        for (Slot s : players.values()) {
+            if (s == from || s.conn == null) continue;
+            if (s.binary && bin != null) {
+                if (binaryFrame == null) binaryFrame = WsConnection.binaryFrame(bin);
+                s.conn.sendFrame(binaryFrame);
+            } else {
+                if (textFrame == null) textFrame = WsConnection.textFrame(json);
+                s.conn.sendFrame(textFrame);
+            }
+            messagesOut++;
+        }
+    }
+
+    private void broadcastAll(CharSequence json) {
+        broadcast(null, json, null);
+    }
+
+    private void broadcastAll(CharSequence json, byte[] bin) {
+        broadcast(null, json, bin);
+    }
+
+    /** 单条记录的 bin1 帧，魔数已写好；写完记录后用 array() 取出 */
+    private static ByteBuffer binaryRecord(int recordBytes) {
+        return ByteBuffer.allocate(1 + recordBytes).put(BinaryProtocol.FRAME_MAGIC);
+    }
+
+    private static byte[] supplyRecord(Supply s) {
+        GameMessages.SupplySpawn m = new GameMessages.SupplySpawn();
+        m.dropId = s.id();
+        m.dropType = s.type();
+        m.x = s.x();
+        m.y = s.y();
+        ByteBuffer b = binaryRecord(BinaryProtocol.SUPPLY_SPAWN_MIN + BinaryProtocol.supplyTypeBytes(s.type()).length);
+        BinaryProtocol.writeSupplySpawn(b, m);
+        return b.array();
+    }
+
+    private static String keyframeJson(Slot s) {
+        GameMessages.State m = s.state;
+        return String.format(Locale.US,
+                "{\"type\":\"state\",\"id\":%d,\"x\":%.2f,\"y\":%.2f,\"vx\":%.2f,\"vy\":%.2f,\"facing\":%b,\"onGround\":%b,"
+                        + "\"anim\":\"%s\",\"phase\":\"%s\",\"kf\":true,\"ts\":%d,\"seq\":%d,\"srvTS\":%d}",
+                s.id, m.x, m.y, m.vx, m.vy, m.facing, m.onGround,
+                m.anim == null ? "IDLE" : m.anim, m.phase == null ? "IDLE" : m.phase, m.ts, m.seq, System.currentTimeMillis());
+    }
+
+    private static String healthJson(Slot s) {
+        return "{\"type\":\"health_update\",\"userId\":" + s.id + ",\"hp\":" + s.hp + "}";
+    }
+
+    private static String supplyJson(Supply s) {
+        return String.format(Locale.US, "{\"type\":\"supply_spawn\",\"dropId\":%d,\"dropType\":\"%s\",\"x\":%.1f,\"y\":%.1f}",
+                s.id(), s.type(), s.x(), s.y());
+    }
+
+    /** 把 JSON 数组拆成元素区间（元素都是对象） */
+    private static List<CharSequence> splitArray(CharSequence arr) {
+        List<CharSequence> out = new ArrayList<>();
+        int i = 1, n = arr.length();
+        while (i < n) {
+            char c = arr.charAt(i);
+            if (c == '{') {
+                int end = JsonMessageReader.skipNested(arr, i);
+                if (end < 0) break;
+                out.add(arr.subSequence(i, end));
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return out;
+    }
+
+    private static int parseInt(String s, int def) {
+        try { return Integer.parseInt(s); } catch (RuntimeException e) { return def; }
+    }
+
+    // ================= 命令行 =================
+
+    public static void main(String[] args) throws Exception {
+        int port = 8090;
+        long duration = 300;
+        LocalGameServer server = new LocalGameServer().verbose(true);
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--duration" -> duration = Long.parseLong(args[++i]);
+                case "--no-delta" -> server.delta(false);
+                case "--no-batch" -> server.batch(false);
+                case "--no-bin1" -> server.binary(false);
+                case "--quiet" -> server.verbose(false);
+                default -> {
+                    System.err.println("usage: LocalGameServer [--port N] [--duration SECONDS] [--no-delta] [--no-batch] [--no-bin1] [--quiet]");
+                    return;
+                }
+            }
+        }
+        server.matchDuration(duration).start(port);
+        System.out.println("[devserver] listening on " + server.getUrl() + " (match " + duration + "s)");
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,237 @@
+package org.csu.pixelstrikejavafx.devserver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 只用 JDK 的极简 WebSocket 服务器（RFC 6455），给本地替身服务器和压测用。
+ * 每个连接一个虚拟线程读帧；支持分片、ping/pong、close，不支持扩展（permessage-deflate 等）。
+ */
+public final class WebSocketServer {
+
+    /** 连接事件回调；同一连接上的回调总在它自己的读线程上按顺序发生 */
+    public interface Handler {
+        void onOpen(WsConnection c);
+        void onText(WsConnection c, String text);
+        default void onBinary(WsConnection c, byte[] data) { }
+        void onClose(WsConnection c);
+    }
+
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int MAX_MESSAGE = 1 << 20;
+
+    private final Handler handler;
+    private ServerSocket serverSocket;
+    private volatile boolean running = false;
+
+    public WebSocketServer(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * 在 localhost 上监听。
+     * @param port 0 表示随机可用端口，实际端口用 getPort() 取
+     */
+    public void start(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        running = true;
+        Thread.ofPlatform().daemon().name("ws-accept").start(this::acceptLoop);
+    }
+
+    public int getPort() { return serverSocket.getLocalPort(); }
+
+    public void stop() {
+        running = false;
+        try { serverSocket.close(); } catch (IOException ignored) { }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket s = serverSocket.accept();
+                s.setTcpNoDelay(true);
+                Thread.ofVirtual().name("ws-reader-" + s.getPort()).start(() -> serve(s));
+            } catch (IOException e) {
+                if (running) System.err.println("[devserver] accept failed: " + e);
+            }
+        }
+    }
+
+    private void serve(Socket s) {
+        WsConnection c = null;
+        try {
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            BufferedOutputStream out = new BufferedOutputStream(s.getOutputStream());
+            c = handshake(s, in, out);
+            if (c == null) { s.close(); return; }
+            handler.onOpen(c);
+            readLoop(c, in);
+        } catch (IOException e) {
+            // 对端断开
+        } catch (RuntimeException e) {
+            System.err.println("[devserver] handler error: " + e);
+            e.printStackTrace();
+        } finally {
+            if (c != null) {
+                c.abort();
+                handler.onClose(c);
+            } else {
+                try { s.close(); } catch (IOException ignored) { }
+            }
+        }
+    }
+
+    // ================= 握手 =================
+
+    private WsConnection handshake(Socket s, InputStream in, BufferedOutputStream out) throws IOException {
+        String requestLine = readLine(in);
+        if (requestLine == null || !requestLine.startsWith("GET ")) return null;
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+        }
+        String key = headers.get("sec-websocket-key");
+        if (key == null) {
+            out.write("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            return null;
+        }
+
+        String target = requestLine.split(" ")[1];
+        int q = target.indexOf('?');
+        String path = q < 0 ? target : target.substring(0, q);
+        Map<String, String> query = parseQuery(q < 0 ? "" : target.substring(q + 1));
+
+        String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n";
+        out.write(response.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+        return new WsConnection(s, out, path, query);
+    }
+
+    static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return Base64.getEncoder().encodeToString(sha1.digest((key + GUID).getBytes(StandardCharsets.ISO_8859_1)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String qs) {
+        Map<String, String> m = new HashMap<>();
+        for (String part : qs.split("&")) {
+            if (part.isEmpty()) continue;
+            int eq = part.indexOf('=');
+            String k = eq < 0 ? part : part.substring(0, eq);
+            String v = eq < 0 ? "" : part.substring(eq + 1);
+            m.put(URLDecoder.decode(k, StandardCharsets.UTF_8), URLDecoder.decode(v, StandardCharsets.UTF_8));
+        }
+        return m;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int n = sb.length();
+                if (n > 0 && sb.charAt(n - 1) == '\r') sb.setLength(n - 1);
+                return sb.toString();
+            }
+            sb.append((char) b);
+            if (sb.length() > 8192) throw new IOException("header line too long");
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    // ================= 帧 =================
+
+    private void readLoop(WsConnection c, InputStream in) throws IOException {
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        int messageOp = -1;
+        byte[] mask = new byte[4];
+        while (c.isOpen()) {
+            int b0 = in.read();
+            if (b0 < 0) return;
+            int b1 = readByte(in);
+            boolean fin = (b0 & 0x80) != 0;
+            int op = b0 & 0x0F;
+            boolean masked = (b1 & 0x80) != 0;
+            long len = b1 & 0x7F;
+            if (len == 126) {
+                len = (readByte(in) << 8) | readByte(in);
+            } else if (len == 127) {
+                len = 0;
+                for (int i = 0; i < 8; i++) len = (len << 8) | readByte(in);
+            }
+            if (len > MAX_MESSAGE) throw new IOException("frame too large: " + len);
+            if (masked) readFully(in, mask, 4);
+            byte[] payload = new byte[(int) len];
+            readFully(in, payload, payload.length);
+            if (masked) {
+                for (int i = 0; i < payload.length; i++) payload[i] ^= mask[i & 3];
+            }
+
+            switch (op) {
+                case WsConnection.OP_PING -> c.sendPong(payload);
+                case WsConnection.OP_PONG -> { }
+                case WsConnection.OP_CLOSE -> {
+                    c.close();
+                    return;
+                }
+                case WsConnection.OP_TEXT, WsConnection.OP_BINARY, WsConnection.OP_CONT -> {
+                    if (op != WsConnection.OP_CONT) {
+                        messageOp = op;
+                        message.reset();
+                    }
+                    message.write(payload, 0, payload.length);
+                    if (message.size() > MAX_MESSAGE) throw new IOException("message too large");
+                    if (fin) {
+                        if (messageOp == WsConnection.OP_TEXT) {
+                            handler.onText(c, message.toString(StandardCharsets.UTF_8));
+                        } else if (messageOp == WsConnection.OP_BINARY) {
+                            handler.onBinary(c, message.toByteArray());
+                        }
+                        messageOp = -1;
+                    }
+                }
+                default -> throw new IOException("unknown opcode " + op);
+            }
+        }
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException();
+        return b;
+    }
+
+    private static void readFully(InputStream in, byte[] buf, int n) throws IOException {
+        int off = 0;
+        while (off < n) {
+            int r = in.read(buf, off, n - off);
+            if (r < 0) throw new EOFException();
+            off += r;
+        }
+    }
+}
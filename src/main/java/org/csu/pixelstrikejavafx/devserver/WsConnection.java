@@ -0,0 +1,126 @@
+package org.csu.pixelstrikejavafx.devserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 服务端的一条 WebSocket 连接（RFC 6455，服务端帧不加掩码）。
+ * send*() 只把编好的帧放进队列，由该连接自己的写线程写出；队列空时才 flush，
+ * 高峰期多帧自然合并成一次系统调用，业务线程也不会被慢客户端卡住。
+ */
+public final class WsConnection {
+
+    static final int OP_CONT = 0x0, OP_TEXT = 0x1, OP_BINARY = 0x2, OP_CLOSE = 0x8, OP_PING = 0x9, OP_PONG = 0xA;
+
+    private static final byte[] POISON = new byte[0];
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final String path;
+    private final Map<String, String> query;
+    private final LinkedBlockingQueue<byte[]> outbox = new LinkedBlockingQueue<>();
+    private volatile boolean open = true;
+
+    /** 业务层挂在连接上的对象（例如玩家槽位） */
+    public volatile Object attachment;
+
+    WsConnection(Socket socket, OutputStream out, String path, Map<String, String> query) {
+        this.socket = socket;
+        this.out = out;
+        this.path = path;
+        this.query = query;
+        Thread.ofVirtual().name("ws-writer-" + socket.getPort()).start(this::writeLoop);
+    }
+
+    public String path() { return path; }
+    /** 握手 URL 上的查询参数 */
+    public Map<String, String> query() { return query; }
+    public boolean isOpen() { return open; }
+    public String remote() { return String.valueOf(socket.getRemoteSocketAddress()); }
+
+    public void sendText(CharSequence text) {
+        enqueue(textFrame(text));
+    }
+
+    public void sendBinary(byte[] data) {
+        enqueue(encode(OP_BINARY, data));
+    }
+
+    /** 发一个已编码好的帧；广播时同一帧只编码一次 */
+    public void sendFrame(byte[] frame) {
+        enqueue(frame);
+    }
+
+    /** 把文本编码成一个完整的服务端文本帧 */
+    public static byte[] textFrame(CharSequence text) {
+        return encode(OP_TEXT, text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** 把字节编码成一个完整的服务端二进制帧 */
+    public static byte[] binaryFrame(byte[] data) {
+        return encode(OP_BINARY, data);
+    }
+
+    void sendPong(byte[] payload) {
+        enqueue(encode(OP_PONG, payload));
+    }
+
+    /** 发关闭帧后断开 */
+    public void close() {
+        if (!open) return;
+        enqueue(encode(OP_CLOSE, new byte[]{0x03, (byte) 0xE8}));   // 1000 normal closure
+        open = false;
+        outbox.offer(POISON);
+    }
+
+    /** 不发关闭帧，直接断开（读线程遇到错误时用） */
+    void abort() {
+        open = false;
+        outbox.offer(POISON);
+        try { socket.close(); } catch (IOException ignored) { }
+    }
+
+    private void enqueue(byte[] frame) {
+        if (open) outbox.offer(frame);
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                byte[] frame = outbox.take();
+                if (frame == POISON) break;
+                out.write(frame);
+                if (outbox.isEmpty()) out.flush();
+            }
+            out.flush();
+        } catch (IOException | InterruptedException ignored) {
+            // 对端已断开，读线程会负责清理
+        } finally {
+            open = false;
+            try { socket.close(); } catch (IOException ignored) { }
+        }
+    }
+
+    static byte[] encode(int opcode, byte[] payload) {
+        int n = payload.length;
+        int head = n < 126 ? 2 : (n < 65536 ? 4 : 10);
+        byte[] f = new byte[head + n];
+        f[0] = (byte) (0x80 | opcode);   // FIN
+        if (n < 126) {
+            f[1] = (byte) n;
+        } else if (n < 65536) {
+            f[1] = 126;
+            f[2] = (byte) (n >>> 8);
+            f[3] = (byte) n;
+        } else {
+            f[1] = 127;
+            for (int i = 0; i < 8; i++) f[2 + i] = (byte) ((long) n >>> (56 - 8 * i));
+        }
+        System.arraycopy(payload, 0, f, head, n);
+        return f;
+    }
+}
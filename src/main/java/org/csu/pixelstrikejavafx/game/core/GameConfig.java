@@ -19,6 +19,10 @@ public final class GameConfig {
     // --- 物理换算 ---
     public static final double PPM = 50.0;     // pixels per meter
 
+    // --- 兴趣范围：视野外扩这么多像素以内的远端玩家/子弹才做完整表现 ---
+    public static final double INTEREST_MARGIN = 300;
+    public static final double INTEREST_SHOT_REACH = 2500;  // 远端子弹/射线最远能飞进视野的距离
+
     // --- Tile 约定（后续贴图平铺会用到，可先不动） ---
     public static final int TILE = 64;
 
@@ -29,6 +33,59 @@ public final class GameConfig {
     public static final String G_BASE_STRIP = "ground_base.png";
 
 
+    // --- 对局网络同步 ---
+    public static final class Net {
+        private Net() {}
+        /** 增量 state 每隔多少次发送强制一次全量关键帧 */
+        public static final int STATE_KEYFRAME_INTERVAL = 30;
+
+        // 航位推测发送策略：误差超过阈值才发，静止时只剩心跳
+        public static final double DR_POSITION_THRESHOLD = 4.0;    // 像素
+        public static final double DR_VELOCITY_THRESHOLD = 60.0;   // 像素/秒
+        public static final double DR_HEARTBEAT_INTERVAL = 0.25;   // 秒，约 4 包/秒
+
+        // 远端插值缓冲：延迟 = 最小延迟 + 倍数 × 抖动，限制在 [MIN, MAX]
+        public static final double INTERP_MIN_DELAY_MS = 50.0;
+        public static final double INTERP_MAX_DELAY_MS = 250.0;
+        public static final double INTERP_JITTER_MULT = 2.5;
+        // 外推上限要盖过发送端心跳间隔，否则匀速移动的远端会在两次心跳之间停住
+        public static final double INTERP_MAX_EXTRAPOLATE_MS = 300.0;
+
+        // 本机预测与服务器校正：小误差按比例逐帧抹平，大误差直接瞬移
+        public static final double RECONCILE_EPSILON = 1.0;          // 像素，低于此值视为一致
+        public static final double RECONCILE_SNAP_DISTANCE = 200.0;  // 像素
+        public static final double RECONCILE_SMOOTH_RATE = 10.0;     // 每秒抹掉的误差比例
+
+        // 延迟补偿：命中判定最多把目标回退这么久；本机预测命中后等服务器确认的时限
+        public static final long LAG_COMP_MAX_MS = 250;
+        public static final double HIT_CONFIRM_WINDOW_MS = 1000.0;
+
+        // 时钟同步：连上后先按 BURST 间隔快速 ping 几次，之后按 PING 间隔
+        public static final double CLOCK_BURST_INTERVAL = 0.2;  // 秒
+        public static final double CLOCK_PING_INTERVAL = 2.0;   // 秒
+        // 连接质量分级（HUD 颜色）
+        public static final double PING_GOOD_MS = 80.0;
+        public static final double PING_FAIR_MS = 160.0;
+        public static final double JITTER_GOOD_MS = 15.0;
+        public static final double JITTER_FAIR_MS = 40.0;
+
+        // 入站队列：WS 线程写入，FX 线程每帧最多取 INBOUND_DRAIN_BUDGET 条，剩下的留到下一帧
+        public static final int INBOUND_QUEUE_CAPACITY = 4096;
+        public static final int INBOUND_DRAIN_BUDGET = 512;
+
+        // 出站队列上限（帧数）；满了先丢还没发出的 state，再拒绝新的可靠消息
+        public static final int SEND_QUEUE_CAPACITY = 256;
+
+        // 判活与重连：每 HEARTBEAT 秒发一个 WS ping，超过 LIVENESS_TIMEOUT 秒什么都没收到就判定断线；
+        // 重连间隔按 BASE × 2^n 指数退避（±20% 随机），封顶 MAX，最多 MAX_ATTEMPTS 次
+        public static final double HEARTBEAT_INTERVAL = 1.0;
+        public static final double LIVENESS_TIMEOUT = 5.0;
+        public static final double RECONNECT_BASE_DELAY = 0.5;
+        public static final double RECONNECT_MAX_DELAY = 8.0;
+        public static final int RECONNECT_MAX_ATTEMPTS = 8;
+        public static final double RECONNECT_ATTEMPT_TIMEOUT = 5.0;
+    }
+
     // --- ★ 武器数据配置中心 ★ ---
     public static final class Weapons {
         private Weapons() {}
@@ -0,0 +1,489 @@
+package org.csu.pixelstrikejavafx.game.network;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 对局 WebSocket 的二进制帧格式（bin1）。
+ * 一帧 = 1 字节魔数 + 若干条定长记录（大端序），每条记录以 1 字节类型开头。
+ * 坐标按 1/4 像素、速度按 1/2 像素每秒量化为 short，方向向量按 1/16384 量化。
+ * 只有在 welcome 中服务器确认 proto=bin1 后才启用，否则仍走 JSON。
+ * 客户端只用到上行编码和下行解码；下行编码和上行解码给本地替身服务器（LocalGameServer）用。
+ */
+public final class BinaryProtocol {
+    private BinaryProtocol() {}
+
+    /** 握手时在 URL 上声明、并由 welcome 回显的协议名 */
+    public static final String PROTO_NAME = "bin1";
+    public static final byte FRAME_MAGIC = (byte) 0xB1;
+
+    // --- 记录类型 ---
+    public static final byte T_STATE          = 0x01; // 客户端 → 服务器
+    public static final byte T_SHOT           = 0x02; // 客户端 → 服务器
+    public static final byte T_PICKUP_SUPPLY  = 0x03; // 客户端 → 服务器
+    public static final byte T_STATE_DELTA    = 0x04; // 客户端 → 服务器
+    public static final byte T_STATE_RELAY    = 0x11; // 服务器 → 客户端
+    public static final byte T_SHOT_RELAY     = 0x12;
+    public static final byte T_DAMAGE         = 0x13;
+    public static final byte T_RESPAWN        = 0x14;
+    public static final byte T_SUPPLY_SPAWN   = 0x15;
+    public static final byte T_SUPPLY_REMOVED = 0x16;
+    public static final byte T_STATE_DELTA_RELAY = 0x17;
+
+    // --- 记录长度（含类型字节） ---
+    public static final int STATE_BYTES          = 24;
+    public static final int SHOT_BYTES           = 34; // 末尾 8 字节是 vt
+    public static final int PICKUP_SUPPLY_BYTES  = 9;
+    public static final int STATE_RELAY_BYTES    = 36;
+    public static final int SHOT_RELAY_BYTES     = 30;
+    public static final int DAMAGE_BYTES         = 24;
+    public static final int RESPAWN_BYTES        = 10;
+    public static final int SUPPLY_SPAWN_MIN     = 14; // 之后跟 dropType 的 UTF-8 字节
+    public static final int SUPPLY_REMOVED_BYTES = 9;
+    // 增量记录：定长头 + 按掩码出现的字段（位置/速度各 2 字节，flags/anim/phase 各 1 字节）
+    public static final int STATE_DELTA_HEAD       = 18;
+    public static final int STATE_DELTA_RELAY_HEAD = 30;
+
+    // --- 量化系数 ---
+    private static final double POS_SCALE = 4.0;
+    private static final double VEL_SCALE = 2.0;
+    private static final double DIR_SCALE = 16384.0;
+
+    // --- 标志位 ---
+    private static final int F_FACING    = 1;
+    private static final int F_ON_GROUND = 1 << 1;
+    private static final int F_DEAD      = 1;
+
+    private static final String[] ANIMS   = GameMessages.ANIMS;
+    private static final String[] PHASES  = GameMessages.PHASES;
+    private static final String[] WEAPONS = GameMessages.WEAPONS;
+
+    /** 服务器下行记录的回调，全部在 FX 线程上调用；参数是复用对象，不要保存引用 */
+    public interface Handler {
+        void onState(GameMessages.State m);
+        void onShot(GameMessages.Shot m);
+        void onDamage(GameMessages.Damage m);
+        void onRespawn(GameMessages.Respawn m);
+        void onSupplySpawn(GameMessages.SupplySpawn m);
+        void onSupplyRemoved(GameMessages.SupplyRemoved m);
+    }
+
+    /** 客户端上行记录的回调（服务器端用）；参数是复用对象，不要保存引用 */
+    public interface UplinkHandler {
+        /** 全量和增量 state 都走这里，增量的 keyframe/mask/baseSeq 已填好，缺失字段需要调用方按基线补齐 */
+        void onState(GameMessages.State m);
+        void onShot(GameMessages.Shot m);
+        void onPickupSupply(long dropId);
+    }
+
+    // ================= 编码（上行） =================
+
+    public static ByteBuffer encodeState(double x, double y, double vx, double vy, boolean facing, boolean onGround,
+                                         String anim, String phase, long ts, long seq) {
+        ByteBuffer b = ByteBuffer.allocate(1 + STATE_BYTES);
+        b.put(FRAME_MAGIC);
+        writeState(b, x, y, vx, vy, facing, onGround, anim, phase, ts, seq);
+        return b.flip();
+    }
+
+    public static void writeState(ByteBuffer b, double x, double y, double vx, double vy, boolean facing, boolean onGround,
+                                  String anim, String phase, long ts, long seq) {
+        b.put(T_STATE);
+        b.put((byte) ((facing ? F_FACING : 0) | (onGround ? F_ON_GROUND : 0)));
+        b.put(indexOf(ANIMS, anim));
+        b.put(indexOf(PHASES, phase));
+        b.putInt((int) seq);
+        b.putLong(ts);
+        b.putShort(quantPos(x));
+        b.putShort(quantPos(y));
+        b.putShort(quantVel(vx));
+        b.putShort(quantVel(vy));
+    }
+
+    /** 按 StateDelta 掩码只写变化字段；关键帧时 mask 为 ALL */
+    public static ByteBuffer encodeStateDelta(StateDelta.Snapshot s, int mask, boolean keyframe, long baseSeq, long ts) {
+        ByteBuffer b = ByteBuffer.allocate(1 + STATE_DELTA_HEAD + deltaFieldBytes(mask));
+        b.put(FRAME_MAGIC);
+        writeStateDelta(b, s, mask, keyframe, baseSeq, ts);
+        return b.flip();
+    }
+
+    public static void writeStateDelta(ByteBuffer b, StateDelta.Snapshot s, int mask, boolean keyframe, long baseSeq, long ts) {
+        b.put(T_STATE_DELTA);
+        b.put((byte) (mask | (keyframe ? StateDelta.F_KEYFRAME : 0)));
+        b.putInt((int) s.seq);
+        b.putInt((int) baseSeq);
+        b.putLong(ts);
+        if ((mask & StateDelta.F_X) != 0) b.putShort(quantPos(s.x));
+        if ((mask & StateDelta.F_Y) != 0) b.putShort(quantPos(s.y));
+        if ((mask & StateDelta.F_VX) != 0) b.putShort(quantVel(s.vx));
+        if ((mask & StateDelta.F_VY) != 0) b.putShort(quantVel(s.vy));
+        if ((mask & StateDelta.F_FLAGS) != 0) b.put((byte) ((s.facing ? F_FACING : 0) | (s.onGround ? F_ON_GROUND : 0)));
+        if ((mask & StateDelta.F_ANIM) != 0) b.put(indexOf(ANIMS, s.anim));
+        if ((mask & StateDelta.F_PHASE) != 0) b.put(indexOf(PHASES, s.phase));
+    }
+
+    public static int deltaFieldBytes(int mask) {
+        return 2 * Integer.bitCount(mask & 0x0F) + Integer.bitCount(mask & 0x70);
+    }
+
+    public static ByteBuffer encodeShot(double ox, double oy, double dx, double dy, double range, int damage,
+                                        long ts, long vt, long seq, String weaponType) {
+        ByteBuffer b = ByteBuffer.allocate(1 + SHOT_BYTES);
+        b.put(FRAME_MAGIC);
+        writeShot(b, ox, oy, dx, dy, range, damage, ts, vt, seq, weaponType);
+        return b.flip();
+    }
+
+    /** @param vt 开枪时看到的目标时刻（state 的 ts 域），服务器据此做延迟补偿；0 表示不知道 */
+    public static void writeShot(ByteBuffer b, double ox, double oy, double dx, double dy, double range, int damage,
+                                 long ts, long vt, long seq, String weaponType) {
+        b.put(T_SHOT);
+        b.put(indexOf(WEAPONS, weaponType));
+        b.putShort((short) clamp(damage, 0, 0xFFFF));
+        b.putInt((int) seq);
+        b.putLong(ts);
+        b.putShort(quantPos(ox));
+        b.putShort(quantPos(oy));
+        b.putShort(quantDir(dx));
+        b.putShort(quantDir(dy));
+        b.putShort((short) clamp(Math.round(range), 0, 0xFFFF));
+        b.putLong(vt);
+    }
+
+    public static ByteBuffer encodePickupSupply(long dropId) {
+        ByteBuffer b = ByteBuffer.allocate(1 + PICKUP_SUPPLY_BYTES);
+        b.put(FRAME_MAGIC);
+        b.put(T_PICKUP_SUPPLY);
+        b.putLong(dropId);
+        return b.flip();
+    }
+
+    // ================= 编码（下行，服务器端用） =================
+
+    /** 转发一条全量 state；m.id 是发送者 */
+    public static void writeStateRelay(ByteBuffer b, GameMessages.State m, long srvTS) {
+        b.put(T_STATE_RELAY);
+        b.put((byte) ((m.facing ? F_FACING : 0) | (m.onGround ? F_ON_GROUND : 0)));
+        b.put(indexOf(ANIMS, m.anim));
+        b.put(indexOf(PHASES, m.phase));
+        b.putInt(m.id);
+        b.putInt((int) m.seq);
+        b.putLong(m.ts);
+        b.putLong(srvTS);
+        b.putShort(quantPos(m.x));
+        b.putShort(quantPos(m.y));
+        b.putShort(quantVel(m.vx));
+        b.putShort(quantVel(m.vy));
+    }
+
+    /** 转发一条增量 state，只写 m.mask 中的字段；长度为 STATE_DELTA_RELAY_HEAD + deltaFieldBytes(m.mask) */
+    public static void writeStateDeltaRelay(ByteBuffer b, GameMessages.State m, long srvTS) {
+        int mask = m.mask & StateDelta.ALL;
+        b.put(T_STATE_DELTA_RELAY);
+        b.put((byte) (mask | (m.keyframe ? StateDelta.F_KEYFRAME : 0)));
+        b.putInt(m.id);
+        b.putInt((int) m.seq);
+        b.putInt((int) m.baseSeq);
+        b.putLong(m.ts);
+        b.putLong(srvTS);
+        if ((mask & StateDelta.F_X) != 0) b.putShort(quantPos(m.x));
+        if ((mask & StateDelta.F_Y) != 0) b.putShort(quantPos(m.y));
+        if ((mask & StateDelta.F_VX) != 0) b.putShort(quantVel(m.vx));
+        if ((mask & StateDelta.F_VY) != 0) b.putShort(quantVel(m.vy));
+        if ((mask & StateDelta.F_FLAGS) != 0) b.put((byte) ((m.facing ? F_FACING : 0) | (m.onGround ? F_ON_GROUND : 0)));
+        if ((mask & StateDelta.F_ANIM) != 0) b.put(indexOf(ANIMS, m.anim));
+        if ((mask & StateDelta.F_PHASE) != 0) b.put(indexOf(PHASES, m.phase));
+    }
+
+    public static void writeShotRelay(ByteBuffer b, GameMessages.Shot m) {
+        b.put(T_SHOT_RELAY);
+        b.put(indexOf(WEAPONS, m.weaponType));
+        b.putShort((short) clamp(m.damage, 0, 0xFFFF));
+        b.putInt(m.attacker);
+        b.putInt((int) m.seq);
+        b.putLong(m.ts);
+        b.putShort(quantPos(m.ox));
+        b.putShort(quantPos(m.oy));
+        b.putShort(quantDir(m.dx));
+        b.putShort(quantDir(m.dy));
+        b.putShort((short) clamp(Math.round(m.range), 0, 0xFFFF));
+    }
+
+    public static void writeDamage(ByteBuffer b, GameMessages.Damage m) {
+        b.put(T_DAMAGE);
+        b.put((byte) (m.dead ? F_DEAD : 0));
+        b.putShort((short) clamp(m.damage, 0, 0xFFFF));
+        b.putInt(m.victim);
+        b.putInt(m.attacker);
+        b.putLong(m.srvTS);
+        b.putShort(quantVel(m.kx));
+        b.putShort(quantVel(m.ky));
+    }
+
+    public static void writeRespawn(ByteBuffer b, GameMessages.Respawn m) {
+        b.put(T_RESPAWN);
+        b.put((byte) 0);
+        b.putInt(m.id);
+        b.putShort(quantPos(m.x));
+        b.putShort(quantPos(m.y));
+    }
+
+    /** 长度为 SUPPLY_SPAWN_MIN + dropType 的 UTF-8 字节数（最多 255） */
+    public static void writeSupplySpawn(ByteBuffer b, GameMessages.SupplySpawn m) {
+        byte[] type = supplyTypeBytes(m.dropType);
+        b.put(T_SUPPLY_SPAWN);
+        b.put((byte) type.length);
+        b.putLong(m.dropId);
+        b.putShort(quantPos(m.x));
+        b.putShort(quantPos(m.y));
+        b.put(type);
+    }
+
+    public static byte[] supplyTypeBytes(String dropType) {
+        byte[] type = dropType == null ? new byte[0] : dropType.getBytes(StandardCharsets.UTF_8);
+        return type.length <= 0xFF ? type : java.util.Arrays.copyOf(type, 0xFF);
+    }
+
+    public static void writeSupplyRemoved(ByteBuffer b, long dropId) {
+        b.put(T_SUPPLY_REMOVED);
+        b.putLong(dropId);
+    }
+
+    // ================= 解码（上行，服务器端用） =================
+
+    /**
+     * 逐条解析客户端发来的一帧（客户端会把一帧内的多条记录合并发送）。
+     * 遇到未知类型时丢弃该帧剩余部分。
+     * @return 成功解析的记录数
+     */
+    public static int decodeUplink(ByteBuffer b, GameMessages msgs, UplinkHandler h) {
+        if (!b.hasRemaining() || b.get() != FRAME_MAGIC) return 0;
+        int n = 0;
+        while (b.hasRemaining()) {
+            byte type = b.get();
+            switch (type) {
+                case T_STATE -> {
+                    if (b.remaining() < STATE_BYTES - 1) return n;
+                    GameMessages.State m = msgs.state;
+                    int flags = b.get();
+                    m.facing = (flags & F_FACING) != 0;
+                    m.onGround = (flags & F_ON_GROUND) != 0;
+                    m.anim = nameAt(ANIMS, b.get());
+                    m.phase = nameAt(PHASES, b.get());
+                    m.id = 0;
+                    m.seq = b.getInt() & 0xFFFFFFFFL;
+                    m.ts = b.getLong();
+                    m.srvTS = 0;
+                    m.x = b.getShort() / POS_SCALE;
+                    m.y = b.getShort() / POS_SCALE;
+                    m.vx = b.getShort() / VEL_SCALE;
+                    m.vy = b.getShort() / VEL_SCALE;
+                    m.keyframe = true;
+                    m.mask = StateDelta.ALL;
+                    m.baseSeq = -1;
+                    h.onState(m);
+                }
+                case T_STATE_DELTA -> {
+                    if (b.remaining() < STATE_DELTA_HEAD - 1) return n;
+                    GameMessages.State m = msgs.state;
+                    int maskByte = b.get() & 0xFF;
+                    int mask = maskByte & StateDelta.ALL;
+                    if (b.remaining() < STATE_DELTA_HEAD - 2 + deltaFieldBytes(mask)) return n;
+                    m.keyframe = (maskByte & StateDelta.F_KEYFRAME) != 0;
+                    m.mask = mask;
+                    m.id = 0;
+                    m.seq = b.getInt() & 0xFFFFFFFFL;
+                    m.baseSeq = b.getInt() & 0xFFFFFFFFL;
+                    m.ts = b.getLong();
+                    m.srvTS = 0;
+                    if ((mask & StateDelta.F_X) != 0) m.x = b.getShort() / POS_SCALE;
+                    if ((mask & StateDelta.F_Y) != 0) m.y = b.getShort() / POS_SCALE;
+                    if ((mask & StateDelta.F_VX) != 0) m.vx = b.getShort() / VEL_SCALE;
+                    if ((mask & StateDelta.F_VY) != 0) m.vy = b.getShort() / VEL_SCALE;
+                    if ((mask & StateDelta.F_FLAGS) != 0) {
+                        int flags = b.get();
+                        m.facing = (flags & F_FACING) != 0;
+                        m.onGround = (flags & F_ON_GROUND) != 0;
+                    }
+                    if ((mask & StateDelta.F_ANIM) != 0) m.anim = nameAt(ANIMS, b.get());
+                    if ((mask & StateDelta.F_PHASE) != 0) m.phase = nameAt(PHASES, b.get());
+                    h.onState(m);
+                }
+                case T_SHOT -> {
+                    if (b.remaining() < SHOT_BYTES - 1) return n;
+                    GameMessages.Shot m = msgs.shot;
+                    m.attacker = 0;
+                    m.weaponType = nameAt(WEAPONS, b.get());
+                    m.damage = b.getShort() & 0xFFFF;
+                    m.seq = b.getInt() & 0xFFFFFFFFL;
+                    m.ts = b.getLong();
+                    m.ox = b.getShort() / POS_SCALE;
+                    m.oy = b.getShort() / POS_SCALE;
+                    m.dx = b.getShort() / DIR_SCALE;
+                    m.dy = b.getShort() / DIR_SCALE;
+                    m.range = b.getShort() & 0xFFFF;
+                    m.vt = b.getLong();
+                    h.onShot(m);
+                }
+                case T_PICKUP_SUPPLY -> {
+                    if (b.remaining() < PICKUP_SUPPLY_BYTES - 1) return n;
+                    h.onPickupSupply(b.getLong());
+                }
+                default -> {
+                    System.err.println("[BIN] unknown uplink record type: " + type);
+                    return n;
+                }
+            }
+            n++;
+        }
+        return n;
+    }
+
+    // ================= 解码（下行） =================
+
+    /**
+     * 逐条解析一帧，填进 msgs 中对应的复用对象后回调给 handler。
+     * 遇到未知类型时丢弃该帧剩余部分（定长格式无法跳过）。
+     * @return 成功解析的记录数
+     */
+    public static int decode(ByteBuffer b, GameMessages msgs, Handler h) {
+        if (!b.hasRemaining() || b.get() != FRAME_MAGIC) return 0;
+        int n = 0;
+        while (b.hasRemaining()) {
+            byte type = b.get();
+            switch (type) {
+                case T_STATE_RELAY -> {
+                    if (b.remaining() < STATE_RELAY_BYTES - 1) return n;
+                    GameMessages.State m = msgs.state;
+                    int flags = b.get();
+                    m.facing = (flags & F_FACING) != 0;
+                    m.onGround = (flags & F_ON_GROUND) != 0;
+                    m.anim = nameAt(ANIMS, b.get());
+                    m.phase = nameAt(PHASES, b.get());
+                    m.id = b.getInt();
+                    m.seq = b.getInt() & 0xFFFFFFFFL;
+                    m.ts = b.getLong();
+                    m.srvTS = b.getLong();
+                    m.x = b.getShort() / POS_SCALE;
+                    m.y = b.getShort() / POS_SCALE;
+                    m.vx = b.getShort() / VEL_SCALE;
+                    m.vy = b.getShort() / VEL_SCALE;
+                    m.keyframe = true;
+                    m.mask = StateDelta.ALL;
+                    m.baseSeq = -1;
+                    h.onState(m);
+                }
+                case T_STATE_DELTA_RELAY -> {
+                    if (b.remaining() < STATE_DELTA_RELAY_HEAD - 1) return n;
+                    GameMessages.State m = msgs.state;
+                    int maskByte = b.get() & 0xFF;
+                    int mask = maskByte & StateDelta.ALL;
+                    if (b.remaining() < STATE_DELTA_RELAY_HEAD - 2 + deltaFieldBytes(mask)) return n;
+                    m.keyframe = (maskByte & StateDelta.F_KEYFRAME) != 0;
+                    m.mask = mask;
+                    m.id = b.getInt();
+                    m.seq = b.getInt() & 0xFFFFFFFFL;
+                    m.baseSeq = b.getInt() & 0xFFFFFFFFL;
+                    m.ts = b.getLong();
+                    m.srvTS = b.getLong();
+                    if ((mask & StateDelta.F_X) != 0) m.x = b.getShort() / POS_SCALE;
+                    if ((mask & StateDelta.F_Y) != 0) m.y = b.getShort() / POS_SCALE;
+                    if ((mask & StateDelta.F_VX) != 0) m.vx = b.getShort() / VEL_SCALE;
+                    if ((mask & StateDelta.F_VY) != 0) m.vy = b.getShort() / VEL_SCALE;
+                    if ((mask & StateDelta.F_FLAGS) != 0) {
+                        int flags = b.get();
+                        m.facing = (flags & F_FACING) != 0;
+                        m.onGround = (flags & F_ON_GROUND) != 0;
+                    }
+                    if ((mask & StateDelta.F_ANIM) != 0) m.anim = nameAt(ANIMS, b.get());
+                    if ((mask & StateDelta.F_PHASE) != 0) m.phase = nameAt(PHASES, b.get());
+                    h.onState(m);
+                }
+                case T_SHOT_RELAY -> {
+                    if (b.remaining() < SHOT_RELAY_BYTES - 1) return n;
+                    GameMessages.Shot m = msgs.shot;
+                    m.weaponType = nameAt(WEAPONS, b.get());
+                    m.damage = b.getShort() & 0xFFFF;   // 远端射击只做表现，后面几个字段客户端用不到
+                    m.attacker = b.getInt();
+                    m.seq = b.getInt() & 0xFFFFFFFFL;
+                    m.ts = b.getLong();
+                    m.ox = b.getShort() / POS_SCALE;
+                    m.oy = b.getShort() / POS_SCALE;
+                    m.dx = b.getShort() / DIR_SCALE;
+                    m.dy = b.getShort() / DIR_SCALE;
+                    m.range = b.getShort() & 0xFFFF;
+                    m.vt = 0;
+                    h.onShot(m);
+                }
+                case T_DAMAGE -> {
+                    if (b.remaining() < DAMAGE_BYTES - 1) return n;
+                    GameMessages.Damage m = msgs.damage;
+                    m.dead = (b.get() & F_DEAD) != 0;
+                    m.damage = b.getShort() & 0xFFFF;
+                    m.victim = b.getInt();
+                    m.attacker = b.getInt();
+                    m.srvTS = b.getLong();
+                    m.hasKnockback = true;
+                    m.kx = b.getShort() / VEL_SCALE;
+                    m.ky = b.getShort() / VEL_SCALE;
+                    h.onDamage(m);
+                }
+                case T_RESPAWN -> {
+                    if (b.remaining() < RESPAWN_BYTES - 1) return n;
+                    GameMessages.Respawn m = msgs.respawn;
+                    b.get();                      // 保留
+                    m.id = b.getInt();
+                    m.x = b.getShort() / POS_SCALE;
+                    m.y = b.getShort() / POS_SCALE;
+                    h.onRespawn(m);
+                }
+                case T_SUPPLY_SPAWN -> {
+                    if (b.remaining() < SUPPLY_SPAWN_MIN - 1) return n;
+                    GameMessages.SupplySpawn m = msgs.supplySpawn;
+                    int len = b.get() & 0xFF;
+                    m.dropId = b.getLong();
+                    m.x = b.getShort() / POS_SCALE;
+                    m.y = b.getShort() / POS_SCALE;
+                    if (b.remaining() < len) return n;
+                    m.dropType = new String(b.array(), b.arrayOffset() + b.position(), len, StandardCharsets.UTF_8);
+                    b.position(b.position() + len);
+                    h.onSupplySpawn(m);
+                }
+                case T_SUPPLY_REMOVED -> {
+                    if (b.remaining() < SUPPLY_REMOVED_BYTES - 1) return n;
+                    msgs.supplyRemoved.dropId = b.getLong();
+                    h.onSupplyRemoved(msgs.supplyRemoved);
+                }
+                default -> {
+                    System.err.println("[BIN] unknown record type: " + type);
+                    return n;
+                }
+            }
+            n++;
+        }
+        return n;
+    }
+
+    // ================= 量化工具 =================
+
+    static short quantPos(double v) { return (short) clamp(Math.round(v * POS_SCALE), Short.MIN_VALUE, Short.MAX_VALUE); }
+    static short quantVel(double v) { return (short) clamp(Math.round(v * VEL_SCALE), Short.MIN_VALUE, Short.MAX_VALUE); }
+    static short quantDir(double v) { return (short) clamp(Math.round(v * DIR_SCALE), Short.MIN_VALUE, Short.MAX_VALUE); }
+
+    private static long clamp(long v, long lo, long hi) { return Math.max(lo, Math.min(hi, v)); }
+
+    private static byte indexOf(String[] table, String name) {
+        if (name != null) {
+            for (int i = 0; i < table.length; i++) {
+                if (table[i].equals(name)) return (byte) i;
+            }
+        }
+        return 0;
+    }
+
+    private static String nameAt(String[] table, byte code) {
+        int i = code & 0xFF;
+        return i < table.length ? table[i] : table[0];
+    }
+}
@@ -0,0 +1,84 @@
+package org.csu.pixelstrikejavafx.game.network;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 顺序读取 CaptureRecorder 写出的抓包文件（只读映射，只读到头里记录的已提交长度）。
+ * 用法：while (r.next()) { if (r.isInbound() && r.isText()) dispatcher.dispatch(r.text()); }
+ */
+public final class CaptureReader implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buf;
+    private final long startEpochMillis;
+    private final int limit;
+    private int pos = CaptureRecorder.HEADER_SIZE;
+
+    // 当前记录
+    private byte dir;
+    private long timeNanos;
+    private int payloadOff, payloadLen;
+
+    public CaptureReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        long size = channel.size();
+        if (size < CaptureRecorder.HEADER_SIZE) throw new IOException("not a capture file: " + path);
+        MappedByteBuffer head = channel.map(FileChannel.MapMode.READ_ONLY, 0, CaptureRecorder.HEADER_SIZE);
+        head.order(ByteOrder.LITTLE_ENDIAN);
+        if (head.getLong(0) != CaptureRecorder.MAGIC) throw new IOException("not a capture file: " + path);
+        startEpochMillis = head.getLong(8);
+        long committed = Math.min(head.getLong(16), size);
+        if (committed > Integer.MAX_VALUE) throw new IOException("capture too large: " + committed);
+        limit = (int) committed;
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, limit);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** 前进到下一条记录；没有了返回 false */
+    public boolean next() {
+        if (pos + CaptureRecorder.RECORD_HEADER > limit) return false;
+        dir = buf.get(pos);
+        timeNanos = buf.getLong(pos + 1);
+        payloadLen = buf.getInt(pos + 9);
+        payloadOff = pos + CaptureRecorder.RECORD_HEADER;
+        if (payloadLen < 0 || payloadOff + payloadLen > limit) return false;
+        pos = payloadOff + payloadLen;
+        return true;
+    }
+
+    /** 回到第一条记录之前 */
+    public void rewind() { pos = CaptureRecorder.HEADER_SIZE; }
+
+    /** 抓包开始时的墙钟时间 */
+    public long getStartEpochMillis() { return startEpochMillis; }
+
+    public byte direction() { return dir; }
+    public boolean isInbound() { return dir == CaptureRecorder.IN_TEXT || dir == CaptureRecorder.IN_BINARY; }
+    public boolean isText() { return dir == CaptureRecorder.IN_TEXT || dir == CaptureRecorder.OUT_TEXT; }
+    /** 相对抓包开始的单调时间 */
+    public long timeNanos() { return timeNanos; }
+    public int length() { return payloadLen; }
+
+    public String text() {
+        byte[] b = new byte[payloadLen];
+        buf.get(payloadOff, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    public byte[] binary() {
+        byte[] b = new byte[payloadLen];
+        buf.get(payloadOff, b);
+        return b;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,183 @@
+package org.csu.pixelstrikejavafx.game.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 对局抓包：把 NetClient 收发的每一帧连同单调时间戳追加写入内存映射文件，供测试/基准里确定性回放。
+ * 默认关闭，-Dpixelstrike.capture=文件或目录 打开（目录时自动起名 match-时间.pscap）。
+ *
+ * 文件格式（小端）：
+ *   头 32 字节：magic(8) "PSCAP001"，startEpochMillis(8)，committedLength(8)，保留(8)
+ *   记录：dir(1) tNanos(8, 相对抓包开始) len(4) payload(len)
+ * 每写完一条才推进头里的 committedLength，进程崩溃也能读出已提交的部分。
+ *
+ * 写入就是往映射区拷字节，不经过系统调用；ASCII 文本逐字符直接写入，不先转 byte[]。
+ * 收（WS 线程）和发（FX 线程 / 发送完成回调）都会调用，用一把锁串行化，竞争很少。
+ */
+public final class CaptureRecorder implements AutoCloseable {
+
+    public static final String PROPERTY = "pixelstrike.capture";
+
+    public static final byte IN_TEXT = 0;
+    public static final byte IN_BINARY = 1;
+    public static final byte OUT_TEXT = 2;
+    public static final byte OUT_BINARY = 3;
+
+    static final long MAGIC = 0x3130305041435350L;   // "PSCAP001"
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_HEADER = 1 + 8 + 4;
+    private static final long WINDOW = 16L << 20;    // 每次映射 16MB
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final long startNanos = System.nanoTime();
+    private MappedByteBuffer window;
+    private long windowBase;
+    private long length = HEADER_SIZE;
+    private long records = 0;
+    private boolean closed = false;
+
+    public CaptureRecorder(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(0, MAGIC);
+        header.putLong(8, System.currentTimeMillis());
+        header.putLong(16, length);
+        mapWindow(HEADER_SIZE, WINDOW);
+    }
+
+    /**
+     * 按系统属性创建；没打开或创建失败时返回 null（只打印一行，不影响联机）。
+     */
+    public static CaptureRecorder fromSystemProperty() {
+        String target = System.getProperty(PROPERTY);
+        if (target == null || target.isBlank()) return null;
+        try {
+            Path p = Path.of(target);
+            if (Files.isDirectory(p) || target.endsWith(File.separator) || target.endsWith("/")) {
+                Files.createDirectories(p);
+                p = p.resolve("match-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".pscap");
+            }
+            CaptureRecorder r = new CaptureRecorder(p);
+            System.out.println("[CAPTURE] recording to " + p.toAbsolutePath());
+            return r;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[CAPTURE] disabled: " + e);
+            return null;
+        }
+    }
+
+    public Path getPath() { return path; }
+    public synchronized long getLength() { return length; }
+    public synchronized long getRecordCount() { return records; }
+
+    public synchronized void recordText(byte dir, CharSequence text) {
+        if (closed) return;
+        int n = text.length();
+        try {
+            ensure(RECORD_HEADER + (long) n * 3);
+            int p = (int) (length - windowBase);
+            int start = p + RECORD_HEADER;
+            int end = start;
+            boolean ascii = true;
+            for (int i = 0; i < n; i++) {
+                char c = text.charAt(i);
+                if (c >= 0x80) { ascii = false; break; }
+                window.put(end++, (byte) c);
+            }
+            if (!ascii) {
+                byte[] utf8 = text.toString().getBytes(StandardCharsets.UTF_8);
+                window.put(start, utf8, 0, utf8.length);
+                end = start + utf8.length;
+            }
+            commit(p, dir, end - start);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public synchronized void recordBinary(byte dir, byte[] data, int off, int len) {
+        if (closed) return;
+        try {
+            ensure(RECORD_HEADER + len);
+            int p = (int) (length - windowBase);
+            window.put(p + RECORD_HEADER, data, off, len);
+            commit(p, dir, len);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /** buf 的 position/limit 不会被改动 */
+    public synchronized void recordBinary(byte dir, ByteBuffer buf) {
+        if (closed) return;
+        int len = buf.remaining();
+        try {
+            ensure(RECORD_HEADER + len);
+            int p = (int) (length - windowBase);
+            window.put(p + RECORD_HEADER, buf, buf.position(), len);
+            commit(p, dir, len);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            window.force();
+            header.force();
+            // 映射还在时有的平台不允许截断，失败了也没关系：读取方以头里的长度为准
+            try { channel.truncate(length); } catch (IOException ignored) { }
+            channel.close();
+            System.out.println("[CAPTURE] closed " + path + " (" + records + " records, " + length / 1024 + " KB)");
+        } catch (IOException e) {
+            System.err.println("[CAPTURE] close failed: " + e);
+        }
+    }
+
+    // ================= 内部 =================
+
+    private void commit(int p, byte dir, int len) {
+        window.put(p, dir);
+        window.putLong(p + 1, System.nanoTime() - startNanos);
+        window.putInt(p + 9, len);
+        length += RECORD_HEADER + len;
+        records++;
+        header.putLong(16, length);
+    }
+
+    /** 保证当前窗口里还能放下 need 字节，不够就从当前写位置重新映射 */
+    private void ensure(long need) throws IOException {
+        if (length + need <= windowBase + window.capacity()) return;
+        mapWindow(length, Math.max(WINDOW, need));
+    }
+
+    private void mapWindow(long base, long size) throws IOException {
+        window = channel.map(FileChannel.MapMode.READ_WRITE, base, size);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowBase = base;
+    }
+
+    private void fail(IOException e) {
+        System.err.println("[CAPTURE] write failed, recording stopped: " + e);
+        closed = true;
+    }
+}
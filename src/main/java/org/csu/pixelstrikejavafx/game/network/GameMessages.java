@@ -0,0 +1,300 @@
+package org.csu.pixelstrikejavafx.game.network;
+
+/**
+ * 对局下行消息的可变载体，每种类型一个实例，解码时原地覆盖、反复复用。
+ * JSON 路径（JsonMessageReader）和二进制路径（BinaryProtocol）都往这里填。
+ * 只在 FX 线程上使用，处理函数不要保存这些对象的引用。
+ */
+public final class GameMessages {
+
+    // 取值有限的字符串字段：解码时直接返回这些常量，不分配新字符串
+    public static final String[] ANIMS   = {"IDLE", "WALK", "RUN", "JUMP", "FALL", "SHOOT", "DIE"};
+    public static final String[] PHASES  = {"IDLE", "BEGIN", "END"};
+    public static final String[] WEAPONS = {"Pistol", "MachineGun", "Shotgun", "Railgun"};
+
+    /** 能从一条已解析的 JSON 中读出自身字段的消息 */
+    public interface Message {
+        void read(JsonMessageReader r);
+    }
+
+    public final Welcome welcome = new Welcome();
+    public final PlayerId joinBroadcast = new PlayerId();
+    public final PlayerId leave = new PlayerId();
+    public final State state = new State();
+    public final StateAck stateAck = new StateAck();
+    public final Correction correction = new Correction();
+    public final Pong pong = new Pong();
+    public final Shot shot = new Shot();
+    public final Damage damage = new Damage();
+    public final Respawn respawn = new Respawn();
+    public final SupplySpawn supplySpawn = new SupplySpawn();
+    public final SupplyRemoved supplyRemoved = new SupplyRemoved();
+    public final HealthUpdate healthUpdate = new HealthUpdate();
+    public final WeaponEquip weaponEquip = new WeaponEquip();
+    public final UserId playerBombed = new UserId();
+    public final PickupNotification pickupNotification = new PickupNotification();
+    public final PlayerPoisoned playerPoisoned = new PlayerPoisoned();
+    public final Scoreboard scoreboard = new Scoreboard();
+    public final GameOver gameOver = new GameOver();
+
+    /** serverTime 与 srvTS 两种写法都兼容 */
+    static long readSrvTS(JsonMessageReader r) {
+        long t = r.getLong("serverTime", 0L);
+        if (t == 0L) t = r.getLong("srvTS", 0L);
+        return t;
+    }
+
+    public static final class Welcome implements Message {
+        public int id;
+        public long serverTime;
+        public String proto;
+        /** 服务器是否接受增量 state */
+        public boolean delta;
+        /** 服务器是否接受 {"type":"batch"} 文本批量 */
+        public boolean batch;
+        /** 断线重连后服务器恢复了原会话（随后补发快照），不需要清空远端玩家 */
+        public boolean resumed;
+
+        @Override public void read(JsonMessageReader r) {
+            id = r.getInt("id", 0);
+            serverTime = r.getLong("serverTime", 0L);
+            proto = r.getString("proto");
+            delta = r.getBoolean("delta");
+            batch = r.getBoolean("batch");
+            resumed = r.getBoolean("resumed");
+        }
+    }
+
+    public static final class PlayerId implements Message {
+        public int id;
+
+        @Override public void read(JsonMessageReader r) {
+            id = r.getInt("id", 0);
+        }
+    }
+
+    public static final class UserId implements Message {
+        public int userId;
+
+        @Override public void read(JsonMessageReader r) {
+            userId = r.getInt("userId", 0);
+        }
+    }
+
+    public static final class State implements Message {
+        public int id;
+        public double x, y, vx, vy;
+        public boolean facing, onGround;
+        public String anim, phase;
+        public long ts, seq, srvTS;
+        /** 增量信息：keyframe 为 true 时所有字段都有效；否则只有 mask 中的字段有效，其余要从 baseSeq 还原 */
+        public boolean keyframe;
+        public int mask;
+        public long baseSeq;
+
+        public void copyFrom(State o) {
+            id = o.id;
+            x = o.x; y = o.y; vx = o.vx; vy = o.vy;
+            facing = o.facing; onGround = o.onGround;
+            anim = o.anim; phase = o.phase;
+            ts = o.ts; seq = o.seq; srvTS = o.srvTS;
+            keyframe = o.keyframe; mask = o.mask; baseSeq = o.baseSeq;
+        }
+
+        @Override public void read(JsonMessageReader r) {
+            id = r.getInt("id", 0);
+            x = r.getDouble("x", 0.0);
+            y = r.getDouble("y", 0.0);
+            vx = r.getDouble("vx", 0.0);
+            vy = r.getDouble("vy", 0.0);
+            facing = r.getBoolean("facing");
+            onGround = r.getBoolean("onGround");
+            anim = r.getString("anim", ANIMS);
+            phase = r.getString("phase", PHASES);
+            ts = r.getLong("ts", 0L);
+            seq = r.getLong("seq", 0L);
+            srvTS = readSrvTS(r);
+
+            // 没有 base 字段的是旧式全量 state，按关键帧处理
+            baseSeq = r.getLong("base", -1L);
+            keyframe = baseSeq < 0 || r.getBoolean("kf");
+            if (keyframe) {
+                mask = StateDelta.ALL;
+            } else {
+                mask = 0;
+                if (r.has("x")) mask |= StateDelta.F_X;
+                if (r.has("y")) mask |= StateDelta.F_Y;
+                if (r.has("vx")) mask |= StateDelta.F_VX;
+                if (r.has("vy")) mask |= StateDelta.F_VY;
+                if (r.has("facing") || r.has("onGround")) mask |= StateDelta.F_FLAGS;
+                if (r.has("anim")) mask |= StateDelta.F_ANIM;
+                if (r.has("phase")) mask |= StateDelta.F_PHASE;
+            }
+        }
+    }
+
+    /** 服务器对本机 state 的确认，用于推进增量基线 */
+    public static final class StateAck implements Message {
+        public long seq;
+
+        @Override public void read(JsonMessageReader r) {
+            seq = r.getLong("seq", 0L);
+        }
+    }
+
+    /** 服务器对本机某条 state 的权威校正（位置被服务器修正时才发） */
+    public static final class Correction implements Message {
+        public long seq;
+        public double x, y, vx;
+
+        @Override public void read(JsonMessageReader r) {
+            seq = r.getLong("seq", 0L);
+            x = r.getDouble("x", 0.0);
+            y = r.getDouble("y", 0.0);
+            vx = r.getDouble("vx", 0.0);
+        }
+    }
+
+    /** ping 的回应：t0 原样带回，serverTime 为服务器处理 ping 时的时间 */
+    public static final class Pong implements Message {
+        public double t0;
+        public long serverTime;
+
+        @Override public void read(JsonMessageReader r) {
+            t0 = r.getDouble("t0", 0.0);
+            serverTime = readSrvTS(r);
+        }
+    }
+
+    public static final class Shot implements Message {
+        public int attacker;
+        public double ox, oy, dx, dy;
+        public String weaponType;
+        /** 以下只有 bin1 解码会填（vt 只在上行里有），JSON 下行不带 */
+        public int damage;
+        public double range;
+        public long ts, vt, seq;
+
+        @Override public void read(JsonMessageReader r) {
+            attacker = r.getInt("attacker", 0);
+            ox = r.getDouble("ox", 0.0);
+            oy = r.getDouble("oy", 0.0);
+            dx = r.getDouble("dx", 0.0);
+            dy = r.getDouble("dy", 0.0);
+            weaponType = r.getString("weaponType", WEAPONS);
+        }
+    }
+
+    public static final class Damage implements Message {
+        public int victim, attacker, damage;
+        public boolean dead;
+        /** 服务器不一定给击退，没给时由处理方按朝向兜底 */
+        public boolean hasKnockback;
+        public double kx, ky;
+        public long srvTS;
+
+        @Override public void read(JsonMessageReader r) {
+            victim = r.getInt("victim", 0);
+            attacker = r.getInt("attacker", 0);
+            damage = r.getInt("damage", 0);
+            dead = r.getBoolean("dead");
+            hasKnockback = r.has("kx");
+            kx = r.getDouble("kx", 0.0);
+            ky = r.getDouble("ky", 0.0);
+            srvTS = readSrvTS(r);
+        }
+    }
+
+    public static final class Respawn implements Message {
+        public int id;
+        public double x, y;
+
+        @Override public void read(JsonMessageReader r) {
+            id = r.getInt("id", 0);
+            x = r.getDouble("x", 0.0);
+            y = r.getDouble("y", 0.0);
+        }
+    }
+
+    public static final class SupplySpawn implements Message {
+        public long dropId;
+        public String dropType;
+        public double x, y;
+
+        @Override public void read(JsonMessageReader r) {
+            dropId = r.getLong("dropId", 0L);
+            dropType = r.getString("dropType");
+            x = r.getDouble("x", 0.0);
+            y = r.getDouble("y", 0.0);
+        }
+    }
+
+    public static final class SupplyRemoved implements Message {
+        public long dropId;
+
+        @Override public void read(JsonMessageReader r) {
+            dropId = r.getLong("dropId", 0L);
+        }
+    }
+
+    public static final class HealthUpdate implements Message {
+        public int userId, hp;
+
+        @Override public void read(JsonMessageReader r) {
+            userId = r.getInt("userId", 0);
+            hp = r.getInt("hp", 0);
+        }
+    }
+
+    public static final class WeaponEquip implements Message {
+        public int userId;
+        public String weaponType;
+
+        @Override public void read(JsonMessageReader r) {
+            userId = r.getInt("userId", 0);
+            weaponType = r.getString("weaponType", WEAPONS);
+        }
+    }
+
+    public static final class PickupNotification implements Message {
+        public String pickerNickname, itemType;
+
+        @Override public void read(JsonMessageReader r) {
+            pickerNickname = r.getString("pickerNickname");
+            itemType = r.getString("itemType");
+        }
+    }
+
+    public static final class PlayerPoisoned implements Message {
+        public int userId;
+        public long durationMs;
+
+        @Override public void read(JsonMessageReader r) {
+            userId = r.getInt("userId", 0);
+            durationMs = r.getLong("duration", 0L);
+        }
+    }
+
+    /** 排行榜很少发，scores 数组保留原文交给 Gson */
+    public static final class Scoreboard implements Message {
+        public boolean hasTimeRemaining;
+        public int gameTimeRemainingSeconds;
+        public CharSequence scores;
+
+        @Override public void read(JsonMessageReader r) {
+            hasTimeRemaining = r.has("gameTimeRemainingSeconds");
+            gameTimeRemainingSeconds = r.getInt("gameTimeRemainingSeconds", 0);
+            int f = r.indexOf("scores");
+            scores = f >= 0 && r.kindOf(f) == JsonMessageReader.K_ARRAY ? r.getRaw("scores") : null;
+        }
+    }
+
+    public static final class GameOver implements Message {
+        public CharSequence results;
+
+        @Override public void read(JsonMessageReader r) {
+            int f = r.indexOf("results");
+            results = f >= 0 && r.kindOf(f) == JsonMessageReader.K_OBJECT ? r.getRaw("results") : null;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.csu.pixelstrikejavafx.game.network;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 有界无锁多生产者单消费者队列（Vyukov 式环形数组，每个槽位带序号）。
+ * WebSocket 监听线程 offer() 收到的文本（String）或二进制帧（byte[]），
+ * FX 线程每帧在 onUpdate 里 poll() 取出处理，取代每条消息一个 Platform.runLater。
+ * 满了就丢弃新消息并计数；正常情况下每帧都会清空，满只会发生在 FX 线程长时间卡住时。
+ * 每条消息附带入队时刻（nanoTime），poll() 之后用 lastStamp() 取，供到达间隔统计用。
+ */
+public final class InboundQueue {
+
+    private final Object[] items;
+    private final long[] stamps;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;   // 只有消费者写
+    private final AtomicLong dropped = new AtomicLong();
+    private long lastStamp = 0;
+
+    /** @param capacity 向上取整到 2 的幂 */
+    public InboundQueue(int capacity) {
+        int cap = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        items = new Object[cap];
+        stamps = new long[cap];
+        sequences = new AtomicLongArray(cap);
+        mask = cap - 1;
+        for (int i = 0; i < cap; i++) sequences.set(i, i);
+    }
+
+    /** 任意线程调用；队列满时返回 false */
+    public boolean offer(Object item) {
+        return offer(item, System.nanoTime());
+    }
+
+    public boolean offer(Object item, long stamp) {
+        long t;
+        int i;
+        while (true) {
+            t = tail.get();
+            i = (int) (t & mask);
+            long diff = sequences.get(i) - t;
+            if (diff == 0) {
+                if (tail.compareAndSet(t, t + 1)) break;
+            } else if (diff < 0) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            // diff > 0：别的生产者抢先占了这个槽，重读 tail
+        }
+        items[i] = item;
+        stamps[i] = stamp;
+        sequences.set(i, t + 1);   // volatile 写，发布 items[i]
+        return true;
+    }
+
+    /** 只能由消费者线程调用；空时返回 null */
+    public Object poll() {
+        long h = head;
+        int i = (int) (h & mask);
+        if (sequences.get(i) != h + 1) return null;
+        Object item = items[i];
+        lastStamp = stamps[i];
+        items[i] = null;
+        sequences.set(i, h + mask + 1);
+        head = h + 1;
+        return item;
+    }
+
+    /** 近似的当前长度 */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    /** 最近一次 poll() 取出的消息的入队时刻 */
+    public long lastStamp() { return lastStamp; }
+    public int capacity() { return mask + 1; }
+    public long getDropped() { return dropped.get(); }
+}
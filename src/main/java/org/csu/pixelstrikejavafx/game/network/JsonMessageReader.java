@@ -0,0 +1,315 @@
+package org.csu.pixelstrikejavafx.game.network;
+
+import java.util.Arrays;
+
+/**
+ * 单趟扫描的顶层 JSON 读取器，可反复复用。
+ * parse() 只走一遍字符，把每个顶层字段的 key/value 区间记在 int 数组里；
+ * 之后的 getInt/getDouble/... 只在这几个区间上比较和解析，不再扫描整条消息，也不分配 substring。
+ * 嵌套对象/数组整体记为一个区间，需要时用 getRaw() 取出交给 Gson。
+ */
+public final class JsonMessageReader {
+
+    public static final byte K_STRING = 1;
+    public static final byte K_NUMBER = 2;
+    public static final byte K_TRUE   = 3;
+    public static final byte K_FALSE  = 4;
+    public static final byte K_NULL   = 5;
+    public static final byte K_OBJECT = 6;
+    public static final byte K_ARRAY  = 7;
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private CharSequence src = "";
+    private int count = 0;
+    private int[] keyStart = new int[16];
+    private int[] keyEnd = new int[16];
+    private int[] valStart = new int[16];
+    private int[] valEnd = new int[16];
+    private byte[] kind = new byte[16];
+    private boolean[] escaped = new boolean[16];
+
+    /** 解析一条顶层对象；格式不对时返回 false，已读到的字段仍可用 */
+    public boolean parse(CharSequence s) {
+        this.src = s;
+        this.count = 0;
+        int n = s.length();
+        int i = skipWs(s, 0);
+        if (i >= n || s.charAt(i) != '{') return false;
+        i++;
+        while (true) {
+            i = skipWs(s, i);
+            if (i >= n) return false;
+            char c = s.charAt(i);
+            if (c == '}') return true;
+            if (c == ',') { i++; continue; }
+            if (c != '"') return false;
+
+            // key
+            int ks = i + 1;
+            int ke = ks;
+            while (ke < n && s.charAt(ke) != '"') {
+                if (s.charAt(ke) == '\\') ke++;
+                ke++;
+            }
+            if (ke >= n) return false;
+            i = skipWs(s, ke + 1);
+            if (i >= n || s.charAt(i) != ':') return false;
+            i = skipWs(s, i + 1);
+            if (i >= n) return false;
+
+            // value
+            int vs, ve;
+            byte k;
+            boolean esc = false;
+            c = s.charAt(i);
+            if (c == '"') {
+                vs = i + 1;
+                ve = vs;
+                while (ve < n && s.charAt(ve) != '"') {
+                    if (s.charAt(ve) == '\\') { esc = true; ve++; }
+                    ve++;
+                }
+                if (ve >= n) return false;
+                k = K_STRING;
+                i = ve + 1;
+            } else if (c == '{' || c == '[') {
+                vs = i;
+                ve = skipNested(s, i);
+                if (ve < 0) return false;
+                k = c == '{' ? K_OBJECT : K_ARRAY;
+                i = ve;
+            } else {
+                vs = i;
+                ve = i;
+                while (ve < n) {
+                    char d = s.charAt(ve);
+                    if (d == ',' || d == '}' || d == ' ' || d == '\t' || d == '\r' || d == '\n') break;
+                    ve++;
+                }
+                k = switch (c) {
+                    case 't' -> K_TRUE;
+                    case 'f' -> K_FALSE;
+                    case 'n' -> K_NULL;
+                    default -> K_NUMBER;
+                };
+                i = ve;
+            }
+            add(ks, ke, vs, ve, k, esc);
+        }
+    }
+
+    // ================= 查询 =================
+
+    public CharSequence source() { return src; }
+    public int fieldCount() { return count; }
+
+    /** 返回字段下标，没有则 -1。只比较 key 区间，不分配 */
+    public int indexOf(String key) {
+        int len = key.length();
+        for (int f = 0; f < count; f++) {
+            if (keyEnd[f] - keyStart[f] != len) continue;
+            if (regionEquals(keyStart[f], key)) return f;
+        }
+        return -1;
+    }
+
+    public boolean has(String key) { return indexOf(key) >= 0; }
+
+    public byte kindOf(int field) { return kind[field]; }
+    /** 值在 source() 中的区间；字符串不含引号，对象/数组含括号 */
+    public int valueStart(int field) { return valStart[field]; }
+    public int valueEnd(int field) { return valEnd[field]; }
+
+    /** 按 String.hashCode 的算法计算字段值的哈希，供类型表查找 */
+    public int valueHash(int field) {
+        int h = 0;
+        for (int i = valStart[field]; i < valEnd[field]; i++) h = 31 * h + src.charAt(i);
+        return h;
+    }
+
+    public boolean valueEquals(int field, String s) {
+        return valEnd[field] - valStart[field] == s.length() && regionEquals(valStart[field], s);
+    }
+
+    public boolean getBoolean(String key) {
+        int f = indexOf(key);
+        return f >= 0 && kind[f] == K_TRUE;
+    }
+
+    public int getInt(String key, int def) {
+        return (int) getLong(key, def);
+    }
+
+    public long getLong(String key, long def) {
+        int f = indexOf(key);
+        if (f < 0 || (kind[f] != K_NUMBER && kind[f] != K_STRING)) return def;
+        int i = valStart[f], e = valEnd[f];
+        if (i >= e) return def;
+        boolean neg = false;
+        char c = src.charAt(i);
+        if (c == '-' || c == '+') { neg = c == '-'; i++; }
+        long v = 0;
+        int digits = 0;
+        for (; i < e; i++) {
+            c = src.charAt(i);
+            if (c < '0' || c > '9') break;
+            v = v * 10 + (c - '0');
+            digits++;
+        }
+        if (digits == 0) return def;
+        return neg ? -v : v;
+    }
+
+    public double getDouble(String key, double def) {
+        int f = indexOf(key);
+        if (f < 0 || (kind[f] != K_NUMBER && kind[f] != K_STRING)) return def;
+        int i = valStart[f], e = valEnd[f];
+        if (i >= e) return def;
+        int start = i;
+        boolean neg = false;
+        char c = src.charAt(i);
+        if (c == '-' || c == '+') { neg = c == '-'; i++; }
+        long mant = 0;
+        int digits = 0, fracDigits = 0;
+        boolean dot = false;
+        for (; i < e; i++) {
+            c = src.charAt(i);
+            if (c >= '0' && c <= '9') {
+                // 15 位以内的尾数小于 2^53，能精确放进 double，配合精确的 10^n 一次除法才是正确舍入；再长交给 JDK
+                if (digits >= 15) return slowDouble(start, e, def);
+                mant = mant * 10 + (c - '0');
+                if (mant != 0) digits++;
+                if (dot) fracDigits++;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                // 指数等少见写法交给 JDK
+                return slowDouble(start, e, def);
+            }
+        }
+        if (fracDigits >= POW10.length) return slowDouble(start, e, def);
+        double v = mant / POW10[fracDigits];
+        return neg ? -v : v;
+    }
+
+    /** 取字符串值（会分配）；非字符串或不存在时返回 null */
+    public String getString(String key) {
+        int f = indexOf(key);
+        if (f < 0 || kind[f] != K_STRING) return null;
+        if (!escaped[f]) return src.subSequence(valStart[f], valEnd[f]).toString();
+        return unescape(valStart[f], valEnd[f]);
+    }
+
+    /**
+     * 字符串值若与 table 中某一项相同，直接返回该常量，不分配；
+     * 都不匹配时退化为 getString()。适合 anim/phase/weaponType 这种取值有限的字段。
+     */
+    public String getString(String key, String[] table) {
+        int f = indexOf(key);
+        if (f < 0 || kind[f] != K_STRING) return null;
+        for (String t : table) {
+            if (valueEquals(f, t)) return t;
+        }
+        return getString(key);
+    }
+
+    /** 嵌套对象/数组的原始区间（含括号），不存在时返回 null */
+    public CharSequence getRaw(String key) {
+        int f = indexOf(key);
+        if (f < 0) return null;
+        return src.subSequence(valStart[f], valEnd[f]);
+    }
+
+    // ================= 内部 =================
+
+    private void add(int ks, int ke, int vs, int ve, byte k, boolean esc) {
+        if (count == kind.length) {
+            int cap = count * 2;
+            keyStart = Arrays.copyOf(keyStart, cap);
+            keyEnd = Arrays.copyOf(keyEnd, cap);
+            valStart = Arrays.copyOf(valStart, cap);
+            valEnd = Arrays.copyOf(valEnd, cap);
+            kind = Arrays.copyOf(kind, cap);
+            escaped = Arrays.copyOf(escaped, cap);
+        }
+        keyStart[count] = ks;
+        keyEnd[count] = ke;
+        valStart[count] = vs;
+        valEnd[count] = ve;
+        kind[count] = k;
+        escaped[count] = esc;
+        count++;
+    }
+
+    private boolean regionEquals(int from, String s) {
+        for (int j = 0; j < s.length(); j++) {
+            if (src.charAt(from + j) != s.charAt(j)) return false;
+        }
+        return true;
+    }
+
+    private double slowDouble(int s, int e, double def) {
+        try { return Double.parseDouble(src.subSequence(s, e).toString()); } catch (NumberFormatException ex) { return def; }
+    }
+
+    private String unescape(int s, int e) {
+        StringBuilder sb = new StringBuilder(e - s);
+        for (int i = s; i < e; i++) {
+            char c = src.charAt(i);
+            if (c != '\\' || i + 1 >= e) { sb.append(c); continue; }
+            char n = src.charAt(++i);
+            switch (n) {
+                case 'n' -> sb.append('\n');
+                case 't' -> sb.append('\t');
+                case 'r' -> sb.append('\r');
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'u' -> {
+                    if (i + 4 < e) {
+                        sb.append((char) Integer.parseInt(src.subSequence(i + 1, i + 5).toString(), 16));
+                        i += 4;
+                    }
+                }
+                default -> sb.append(n);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int skipWs(CharSequence s, int i) {
+        int n = s.length();
+        while (i < n) {
+            char c = s.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') break;
+            i++;
+        }
+        return i;
+    }
+
+    /** 从 '{' 或 '[' 开始跳过整个嵌套结构，返回结束括号之后的位置；未闭合返回 -1 */
+    public static int skipNested(CharSequence s, int i) {
+        int n = s.length();
+        int depth = 0;
+        while (i < n) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                i++;
+                while (i < n && s.charAt(i) != '"') {
+                    if (s.charAt(i) == '\\') i++;
+                    i++;
+                }
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+                if (depth == 0) return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+}
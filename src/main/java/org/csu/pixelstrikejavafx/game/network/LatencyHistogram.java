@@ -0,0 +1,75 @@
+package org.csu.pixelstrikejavafx.game.network;
+
+/**
+ * HDR 风格的对数-线性直方图（单位：微秒）。
+ * 0~15 每个值一个桶；之后每个 2 的幂区间再等分 8 个子桶，相对误差不超过 12.5%，
+ * 固定 280 个桶覆盖到约 19 小时，记录一次只是几次位运算加一次数组自增，不分配内存。
+ */
+public final class LatencyHistogram {
+
+    private static final int LINEAR = 16;
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_EXP = 39;
+    private static final int BUCKETS = LINEAR + (MAX_EXP - 4 + 1) * SUB;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    public void record(long micros) {
+        if (micros < 0) micros = 0;
+        counts[index(micros)]++;
+        total++;
+        sum += micros;
+        if (micros > max) max = micros;
+    }
+
+    public void recordNanos(long nanos) { record(nanos / 1000); }
+
+    public long count() { return total; }
+    public long maxMicros() { return max; }
+    public double meanMicros() { return total == 0 ? 0 : (double) sum / total; }
+
+    /** 第 p 百分位（0~100），返回所在桶的上界 */
+    public long percentile(double p) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, p)) / 100.0);
+        if (rank < 1) rank = 1;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(max, upperBound(i));
+        }
+        return max;
+    }
+
+    /** 把 other 的样本并入本直方图（多线程各记一份，最后汇总时用） */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) counts[i] += other.counts[i];
+        total += other.total;
+        sum += other.sum;
+        if (other.max > max) max = other.max;
+    }
+
+    public void reset() {
+        java.util.Arrays.fill(counts, 0);
+        total = sum = max = 0;
+    }
+
+    private static int index(long v) {
+        if (v < LINEAR) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);   // >= 4
+        if (exp > MAX_EXP) return BUCKETS - 1;
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB - 1);
+        return LINEAR + (exp - 4) * SUB + sub;
+    }
+
+    private static long upperBound(int i) {
+        if (i < LINEAR) return i;
+        int exp = (i - LINEAR) / SUB + 4;
+        int sub = (i - LINEAR) % SUB;
+        return ((long) (SUB + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+}
@@ -3,21 +3,96 @@ package org.csu.pixelstrikejavafx.game.network;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.function.Consumer;
 
+import org.csu.pixelstrikejavafx.game.core.GameConfig;
+
 public final class NetClient {
     private WebSocket ws;
     private Consumer<String> onMessage = s -> {};
+    private Consumer<byte[]> onBinary = b -> {};
     private Runnable onOpen = () -> {};
+    // 连接失败、被关闭或出错时调用一次（参数是原因），可能在任意线程上
+    private Consumer<String> onClosed = r -> {};
+    private volatile boolean closedNotified = false;
     private String urlForLog = "";
+    // 最近一次收到任何东西（数据帧或 ping/pong）的时刻，用于判活
+    private volatile long lastReceiveNanos = System.nanoTime();
+    private volatile boolean heartbeatPending = false;
 
     private final StringBuilder messageBuilder = new StringBuilder();
+    // 二进制帧可能被拆成多个片段，先拼到这里
+    private byte[] binaryBuf = new byte[256];
+    private int binaryLen = 0;
+
+    // 出站批量：打开后 send()/sendBinary() 只攒着，由 flush() 每帧发一次。
+    // 文本合成一帧 {"type":"batch","msgs":[...]}（需服务器在 welcome 里声明支持），
+    // bin1 帧本来就能装多条记录，去掉后续帧的魔数字节直接拼接。
+    private static final String BATCH_PREFIX = "{\"type\":\"batch\",\"msgs\":[";
+    private boolean batchText = false;
+    private boolean batchBinary = false;
+    private final StringBuilder textBatch = new StringBuilder(512);
+    private int textCount = 0;
+    private byte[] binBatch = new byte[512];
+    private int binBatchLen = 0;
+    // 当前批次是否全是 state（全是才可以被丢弃）
+    private boolean textBatchDroppable = true;
+    private boolean binBatchDroppable = true;
+
+    // 发送队列：JDK WebSocket 同一时刻只允许一个未完成的发送，
+    // 所以所有帧都先排队，上一帧的 CompletableFuture 完成后再发下一帧。
+    // state 是“可丢弃”的：新 state 入队时替换掉还没发出的旧 state，队列满时也先丢它们。
+    // 增量关键帧（kf）除外：发出后编码器立刻以它为基线，丢了之后的增量服务器都还原不了。
+    private static final class Outgoing {
+        final String text;
+        final ByteBuffer binary;
+        final boolean droppable;
+        final long enqueuedAt = System.nanoTime();
+
+        Outgoing(String text, ByteBuffer binary, boolean droppable) {
+            this.text = text;
+            this.binary = binary;
+            this.droppable = droppable;
+        }
+    }
+
+    private final Object sendLock = new Object();
+    private final ArrayDeque<Outgoing> sendQueue = new ArrayDeque<>();
+    private boolean inFlight = false;
+    private int sendCapacity = GameConfig.Net.SEND_QUEUE_CAPACITY;
+    // 发送指标（sendLock 保护）
+    private int maxSendDepth = 0;
+    private long framesSent = 0;
+    private long droppedStale = 0;
+    private long droppedReliable = 0;
+    private double sendLatencyMs = 0;     // 入队到发送完成，EWMA
+    private double maxSendLatencyMs = 0;
+
+    // 按类型的流量统计，FX 线程上记录；可为 null
+    private NetMetrics metrics;
+    // 抓包（-Dpixelstrike.capture），可为 null
+    private volatile CaptureRecorder recorder;
+    // 网络劣化模拟（-Dpixelstrike.netsim / F7），没开启时直通
+    private final NetConditioner.Link netsim = NetConditioner.get().link();
+    // 劣化模拟开启时判断收到的文本帧能不能丢；只在 WebSocket 回调线程上用
+    private final JsonMessageReader inReader = new JsonMessageReader();
+    private final JsonMessageReader inItemReader = new JsonMessageReader();
 
     public void connect(String url, Runnable onOpen, Consumer<String> onMessage) {
+        connect(url, onOpen, onMessage, b -> {});
+    }
+
+    public void connect(String url, Runnable onOpen, Consumer<String> onMessage, Consumer<byte[]> onBinary) {
         this.urlForLog = url;
         this.onOpen = onOpen;
         this.onMessage = onMessage;
+        this.onBinary = onBinary;
 
         HttpClient.newHttpClient()
                 .newWebSocketBuilder()
@@ -25,6 +100,7 @@ public final class NetClient {
                     @Override
                     public void onOpen(WebSocket webSocket) {
                         ws = webSocket;
+                        lastReceiveNanos = System.nanoTime();
                         System.out.println("[WS] OPEN " + urlForLog);
                         try { onOpen.run(); } finally { }
                         webSocket.request(1);                 // [FIX] 首次拉取一条
@@ -33,14 +109,19 @@ public final class NetClient {
 
                     @Override
                     public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+                        lastReceiveNanos = System.nanoTime();
                         // 1. 将收到的数据片段追加到缓冲区
                         messageBuilder.append(data);
 
                         // 2. 只有当这是最后一个片段时，才处理消息
                         if (last) {
                             String fullMessage = messageBuilder.toString();
+                            CaptureRecorder rec = recorder;
+                            if (rec != null) rec.recordText(CaptureRecorder.IN_TEXT, fullMessage);
                             // System.out.println("[WS] << " + (fullMessage.length() > 160 ? fullMessage.substring(0,160)+"..." : fullMessage));
-                            onMessage.accept(fullMessage);
+                            netsim.inbound(() -> {
+                                if (!closedNotified) onMessage.accept(fullMessage);
+                            }, NetConditioner.get().isActive() && isStateText(fullMessage));
 
                             // 3. 处理完毕后，清空缓冲区，为下一条消息做准备
                             messageBuilder.setLength(0);
@@ -51,23 +132,333 @@ public final class NetClient {
                         return null;
                     }
 
+                    @Override
+                    public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+                        lastReceiveNanos = System.nanoTime();
+                        int n = data.remaining();
+                        if (binaryLen + n > binaryBuf.length) {
+                            binaryBuf = Arrays.copyOf(binaryBuf, Math.max(binaryBuf.length * 2, binaryLen + n));
+                        }
+                        data.get(binaryBuf, binaryLen, n);
+                        binaryLen += n;
+
+                        // data 在返回后会被复用，所以交出去的必须是拷贝
+                        if (last) {
+                            byte[] frame = Arrays.copyOf(binaryBuf, binaryLen);
+                            binaryLen = 0;
+                            CaptureRecorder rec = recorder;
+                            if (rec != null) rec.recordBinary(CaptureRecorder.IN_BINARY, frame, 0, frame.length);
+                            netsim.inbound(() -> {
+                                if (!closedNotified) NetClient.this.onBinary.accept(frame);
+                            }, isStateFrame(frame));
+                        }
+                        webSocket.request(1);
+                        return null;
+                    }
+
+                    @Override
+                    public CompletionStage<?> onPing(WebSocket webSocket, ByteBuffer message) {
+                        lastReceiveNanos = System.nanoTime();
+                        return WebSocket.Listener.super.onPing(webSocket, message);
+                    }
+
+                    @Override
+                    public CompletionStage<?> onPong(WebSocket webSocket, ByteBuffer message) {
+                        lastReceiveNanos = System.nanoTime();
+                        return WebSocket.Listener.super.onPong(webSocket, message);
+                    }
+
+                    @Override
+                    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+                        System.out.println("[WS] CLOSE " + urlForLog + " : " + statusCode + " " + reason);
+                        notifyClosed("close " + statusCode + " " + reason);
+                        return null;
+                    }
+
                     @Override
                     public void onError(WebSocket webSocket, Throwable error) {
                         System.out.println("[WS] ERROR " + urlForLog + " : " + error);
+                        notifyClosed(String.valueOf(error));
                         WebSocket.Listener.super.onError(webSocket, error);
                     }
+                })
+                .whenComplete((w, err) -> {
+                    if (err != null) {
+                        System.out.println("[WS] CONNECT FAILED " + urlForLog + " : " + err);
+                        notifyClosed(String.valueOf(err));
+                    }
                 });
         System.out.println("[WS] CONNECTING " + url);
     }
 
+    public void setMetrics(NetMetrics metrics) { this.metrics = metrics; }
+
+    /** 收发的每一帧都写进抓包文件；传 null 关闭 */
+    public void setRecorder(CaptureRecorder recorder) { this.recorder = recorder; }
+
+    /** 设置断线回调；需在 connect 之前调用 */
+    public void setOnClosed(Consumer<String> onClosed) { this.onClosed = onClosed; }
+
+    private void notifyClosed(String reason) {
+        clearSendQueue();
+        if (closedNotified) return;
+        closedNotified = true;
+        onClosed.accept(reason);
+    }
+
+    /** 发一个 WebSocket ping 控制帧做心跳；上一个还没发完就跳过 */
+    public void sendHeartbeat() {
+        WebSocket socket = ws;
+        if (socket == null || heartbeatPending) return;
+        heartbeatPending = true;
+        try {
+            socket.sendPing(ByteBuffer.allocate(0)).whenComplete((w, err) -> heartbeatPending = false);
+        } catch (RuntimeException e) {
+            heartbeatPending = false;
+        }
+    }
+
+    /** 距最近一次收到数据的秒数 */
+    public double getSecondsSinceReceive() {
+        return (System.nanoTime() - lastReceiveNanos) / 1e9;
+    }
+
+    /** 立即断开（不走关闭握手），用于判定连接已死或主动放弃 */
+    public void abort() {
+        closedNotified = true;   // 主动断开的不再回调
+        WebSocket socket = ws;
+        if (socket != null) socket.abort();
+        clearSendQueue();
+    }
+
     public void send(String json) {
-        if (ws != null) {
-            ws.sendText(json, true);
-        } else {
+        send(json, false);
+    }
+
+    private void send(String json, boolean droppable) {
+        if (metrics != null) metrics.recordOutJson(json);
+        if (batchText && ws != null) {
+            if (textCount == 0) {
+                textBatch.setLength(0);
+                textBatch.append(BATCH_PREFIX);
+            } else {
+                textBatch.append(',');
+            }
+            textBatch.append(json);
+            textCount++;
+            textBatchDroppable &= droppable;
+            return;
+        }
+        enqueue(new Outgoing(json, null, droppable));
+    }
+
+    /** 发送一帧二进制数据；buf 在发送完成前不能再被修改 */
+    public void sendBinary(ByteBuffer buf) {
+        if (metrics != null && buf.remaining() > 1) metrics.recordOutBinary(buf.get(buf.position() + 1), buf.remaining());
+        if (batchBinary && ws != null && buf.remaining() > 1 && buf.get(buf.position()) == BinaryProtocol.FRAME_MAGIC) {
+            int skip = binBatchLen == 0 ? 0 : 1;
+            int n = buf.remaining() - skip;
+            if (binBatchLen + n > binBatch.length) {
+                binBatch = Arrays.copyOf(binBatch, Math.max(binBatch.length * 2, binBatchLen + n));
+            }
+            buf.get(buf.position() + skip, binBatch, binBatchLen, n);
+            binBatchLen += n;
+            binBatchDroppable &= isStateFrame(buf);
+            return;
+        }
+        enqueue(new Outgoing(null, buf, isStateFrame(buf)));
+    }
+
+    /** 只有一条 state 记录的 bin1 帧；增量关键帧不算（不能丢） */
+    private static boolean isStateFrame(ByteBuffer buf) {
+        int p = buf.position();
+        if (buf.remaining() < 2 || buf.get(p) != BinaryProtocol.FRAME_MAGIC) return false;
+        byte type = buf.get(p + 1);
+        if (type == BinaryProtocol.T_STATE) return true;
+        return type == BinaryProtocol.T_STATE_DELTA && buf.remaining() > 2
+                && (buf.get(p + 2) & StateDelta.F_KEYFRAME) == 0;
+    }
+
+    /** 收到的 bin1 帧里全是 state 记录（增量关键帧除外），才可以被劣化模拟丢掉 */
+    private static boolean isStateFrame(byte[] f) {
+        if (f.length < 2 || f[0] != BinaryProtocol.FRAME_MAGIC) return false;
+        int i = 1;
+        while (i < f.length) {
+            byte type = f[i];
+            if (type == BinaryProtocol.T_STATE_RELAY) {
+                i += BinaryProtocol.STATE_RELAY_BYTES;
+            } else if (type == BinaryProtocol.T_STATE_DELTA_RELAY && i + 1 < f.length
+                    && (f[i + 1] & StateDelta.F_KEYFRAME) == 0) {
+                i += BinaryProtocol.STATE_DELTA_RELAY_HEAD + BinaryProtocol.deltaFieldBytes(f[i + 1] & StateDelta.ALL);
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 收到的文本帧是 state（或全是 state 的 batch），且不是增量关键帧 */
+    private boolean isStateText(CharSequence json) {
+        if (!inReader.parse(json)) return false;
+        if (isDroppableState(inReader)) return true;
+        if (!typeIs(inReader, "batch")) return false;
+        CharSequence arr = inReader.getRaw("msgs");
+        if (arr == null) return false;
+        boolean any = false;
+        for (int i = 1, n = arr.length(); i < n; ) {
+            if (arr.charAt(i) != '{') {
+                i++;
+                continue;
+            }
+            int end = JsonMessageReader.skipNested(arr, i);
+            if (end < 0 || !inItemReader.parse(arr.subSequence(i, end)) || !isDroppableState(inItemReader)) return false;
+            any = true;
+            i = end;
+        }
+        return any;
+    }
+
+    private static boolean isDroppableState(JsonMessageReader r) {
+        return typeIs(r, "state") && !r.getBoolean("kf");
+    }
+
+    private static boolean typeIs(JsonMessageReader r, String type) {
+        int f = r.indexOf("type");
+        return f >= 0 && r.valueEquals(f, type);
+    }
+
+    /**
+     * 打开/关闭出站批量。关闭前先把攒着的发出去。
+     * @param text   文本消息合成 batch（服务器需支持）
+     * @param binary bin1 记录拼成一帧
+     */
+    public void setBatching(boolean text, boolean binary) {
+        flush();
+        this.batchText = text;
+        this.batchBinary = binary;
+    }
+
+    /** 把本帧攒下的消息发出去：最多一帧文本 + 一帧二进制 */
+    public void flush() {
+        if (ws == null) return;
+        if (textCount > 0) {
+            String frame = textCount == 1
+                    ? textBatch.substring(BATCH_PREFIX.length())
+                    : textBatch.append("]}").toString();
+            textCount = 0;
+            enqueue(new Outgoing(frame, null, textBatchDroppable));
+            textBatchDroppable = true;
+        }
+        if (binBatchLen > 0) {
+            // 发送完成前缓冲区不能被改，所以每帧拷一份出去
+            ByteBuffer frame = ByteBuffer.wrap(Arrays.copyOf(binBatch, binBatchLen));
+            binBatchLen = 0;
+            enqueue(new Outgoing(null, frame, binBatchDroppable));
+            binBatchDroppable = true;
+        }
+    }
+
+    // ================= 发送队列 =================
+
+    private void enqueue(Outgoing o) {
+        WebSocket socket = ws;
+        if (socket == null) {
             System.out.println("[WS] SEND skipped (ws==null)");
+            return;
         }
+        if (metrics != null) metrics.recordFrameOut(o.text != null ? o.text.length() : o.binary.remaining());
+        netsim.outbound(() -> enqueueNow(socket, o), o.droppable);
     }
 
+    private void enqueueNow(WebSocket socket, Outgoing o) {
+        if (closedNotified) return;
+        Outgoing next;
+        synchronized (sendLock) {
+            if (o.droppable) {
+                // 还没发出去的旧 state 已经过时
+                droppedStale += removeDroppable(Integer.MAX_VALUE);
+            }
+            if (sendQueue.size() >= sendCapacity && removeDroppable(1) == 1) {
+                droppedStale++;
+            }
+            if (sendQueue.size() >= sendCapacity) {
+                if (o.droppable) droppedStale++; else droppedReliable++;
+                if (!o.droppable && (droppedReliable == 1 || droppedReliable % 100 == 0)) {
+                    System.err.println("[WS] send queue full, dropped " + droppedReliable + " reliable frames");
+                }
+                return;
+            }
+            sendQueue.addLast(o);
+            maxSendDepth = Math.max(maxSendDepth, sendQueue.size());
+            if (inFlight) return;
+            inFlight = true;
+            next = sendQueue.pollFirst();
+        }
+        transmit(socket, next);
+    }
+
+    /** 从队列里删掉最多 limit 个可丢弃的帧（从旧到新），返回删掉的个数 */
+    private int removeDroppable(int limit) {
+        int removed = 0;
+        for (Iterator<Outgoing> it = sendQueue.iterator(); it.hasNext() && removed < limit; ) {
+            if (it.next().droppable) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private void transmit(WebSocket socket, Outgoing o) {
+        CaptureRecorder rec = recorder;
+        if (rec != null) {
+            if (o.text != null) rec.recordText(CaptureRecorder.OUT_TEXT, o.text);
+            else rec.recordBinary(CaptureRecorder.OUT_BINARY, o.binary);
+        }
+        CompletableFuture<WebSocket> f;
+        try {
+            f = o.text != null ? socket.sendText(o.text, true) : socket.sendBinary(o.binary, true);
+        } catch (RuntimeException e) {
+            f = CompletableFuture.failedFuture(e);
+        }
+        f.whenComplete((w, err) -> onSent(socket, o, err));
+    }
+
+    // 上一帧发完（可能在 WebSocket 的线程上）：记录延迟，接着发下一帧
+    private void onSent(WebSocket socket, Outgoing done, Throwable err) {
+        if (err != null) System.out.println("[WS] SEND failed " + urlForLog + " : " + err);
+        Outgoing next;
+        synchronized (sendLock) {
+            double ms = (System.nanoTime() - done.enqueuedAt) / 1_000_000.0;
+            sendLatencyMs = framesSent == 0 ? ms : sendLatencyMs + (ms - sendLatencyMs) / 16.0;
+            maxSendLatencyMs = Math.max(maxSendLatencyMs, ms);
+            framesSent++;
+            next = sendQueue.pollFirst();
+            if (next == null) {
+                inFlight = false;
+                return;
+            }
+        }
+        transmit(socket, next);
+    }
+
+    private void clearSendQueue() {
+        synchronized (sendLock) {
+            sendQueue.clear();
+            inFlight = false;
+        }
+    }
+
+    // —— 发送指标 ——
+    public int getSendQueueDepth() { synchronized (sendLock) { return sendQueue.size() + (inFlight ? 1 : 0); } }
+    public int getMaxSendQueueDepth() { synchronized (sendLock) { return maxSendDepth; } }
+    public double getSendLatencyMs() { synchronized (sendLock) { return sendLatencyMs; } }
+    public double getMaxSendLatencyMs() { synchronized (sendLock) { return maxSendLatencyMs; } }
+    public long getFramesSent() { synchronized (sendLock) { return framesSent; } }
+    public long getDroppedStaleFrames() { synchronized (sendLock) { return droppedStale; } }
+    public long getDroppedReliableFrames() { synchronized (sendLock) { return droppedReliable; } }
+    public void setSendQueueCapacity(int frames) { synchronized (sendLock) { sendCapacity = Math.max(1, frames); } }
+
     public void sendJoin(String name) {
         String json = "{\"type\":\"join\",\"name\":\"" + name + "\"}";
         System.out.println("[WS] >> " + json);
@@ -82,7 +473,7 @@ public final class NetClient {
                         "\"facing\":%s,\"onGround\":%s,\"ts\":%d,\"seq\":%d}",
                 x, y, vx, vy, facing, onGround, ts, seq
         );
-        send(j);
+        send(j, true);
     }
     //10参版本
     public void sendState(double x, double y, double vx, double vy, boolean facing, boolean onGround,
@@ -98,8 +489,37 @@ public final class NetClient {
         if (anim  != null) sb.append(",\"anim\":\"").append(anim).append('"');
         if (phase != null) sb.append(",\"phase\":\"").append(phase).append('"');
         sb.append(",\"ts\":").append(ts).append(",\"seq\":").append(seq).append("}");
-        send(sb.toString());
+        send(sb.toString(), true);
     }
+    /** 增量 state：只带掩码里的字段，base 指向基线帧；关键帧额外带 kf */
+    public void sendStateDelta(StateDelta.Snapshot s, int mask, boolean keyframe, long baseSeq, long ts) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"type\":\"state\"");
+        if ((mask & StateDelta.F_X) != 0) appendFixed2(sb.append(",\"x\":"), s.x);
+        if ((mask & StateDelta.F_Y) != 0) appendFixed2(sb.append(",\"y\":"), s.y);
+        if ((mask & StateDelta.F_VX) != 0) appendFixed2(sb.append(",\"vx\":"), s.vx);
+        if ((mask & StateDelta.F_VY) != 0) appendFixed2(sb.append(",\"vy\":"), s.vy);
+        if ((mask & StateDelta.F_FLAGS) != 0) {
+            sb.append(",\"facing\":").append(s.facing).append(",\"onGround\":").append(s.onGround);
+        }
+        if ((mask & StateDelta.F_ANIM) != 0 && s.anim != null) sb.append(",\"anim\":\"").append(s.anim).append('"');
+        if ((mask & StateDelta.F_PHASE) != 0 && s.phase != null) sb.append(",\"phase\":\"").append(s.phase).append('"');
+        if (keyframe) sb.append(",\"kf\":true");
+        sb.append(",\"base\":").append(baseSeq)
+                .append(",\"ts\":").append(ts).append(",\"seq\":").append(s.seq).append('}');
+        send(sb.toString(), !keyframe);
+    }
+
+    /** 等价于 %.2f（Locale.US），但不经过 Formatter */
+    private static void appendFixed2(StringBuilder sb, double v) {
+        long cents = Math.round(v * 100.0);
+        if (cents < 0) { sb.append('-'); cents = -cents; }
+        sb.append(cents / 100).append('.');
+        long frac = cents % 100;
+        if (frac < 10) sb.append('0');
+        sb.append(frac);
+    }
+
     // 本地射击上报（hitscan）
     public void sendShot(double ox, double oy, double dx, double dy,
                          double range, int damage, long ts, long seq) {
@@ -0,0 +1,223 @@
+package org.csu.pixelstrikejavafx.game.network;
+
+import java.util.Locale;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 网络劣化模拟：在收发两个方向上注入延迟、抖动、乱序、重复和丢包，单机就能复现差网络。
+ * 装在连接的两端：NetClient 的收帧回调和出站入队、大厅 NetworkManager 的收消息回调都经过 Link。
+ * 没开启时 Link 直接调用，不多一次调度。
+ *
+ * 打开方式：
+ *   -Dpixelstrike.netsim=wifi                                  预设名（off / lan / wifi / mobile / awful）
+ *   -Dpixelstrike.netsim=latency=120,jitter=30,loss=2,dup=1,reorder=5   单向延迟/抖动为毫秒，其余为百分比
+ * 游戏里 F7 在预设之间切换，当前配置和计数显示在 F9 网络统计里。
+ *
+ * 不乱序时同一方向的帧按顺序送达（抖动只会让后面的帧跟着排队，像 TCP 的队头阻塞）；
+ * 被选中乱序的帧不参与排队，可能被后面的帧超过。
+ * 只有 state 可以丢（收、发两个方向都由调用方标明）；其余的可靠帧（射击、伤害、welcome、大厅消息等）
+ * 抽中丢包时不丢，按一次重传多等一个往返，和 TCP 上的表现一致。
+ */
+public final class NetConditioner {
+
+    public static final String PROPERTY = "pixelstrike.netsim";
+
+    /** 一组劣化参数；比例都是 0~1 */
+    public static final class Profile {
+        public final String name;
+        public final double latencyMs, jitterMs, loss, duplicate, reorder;
+
+        public Profile(String name, double latencyMs, double jitterMs, double loss, double duplicate, double reorder) {
+            this.name = name;
+            this.latencyMs = Math.max(0, latencyMs);
+            this.jitterMs = Math.max(0, jitterMs);
+            this.loss = clamp01(loss);
+            this.duplicate = clamp01(duplicate);
+            this.reorder = clamp01(reorder);
+        }
+
+        public boolean isOff() {
+            return latencyMs == 0 && jitterMs == 0 && loss == 0 && duplicate == 0 && reorder == 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s: %.0fms ±%.0f loss %.1f%% dup %.1f%% reorder %.1f%%",
+                    name, latencyMs, jitterMs, loss * 100, duplicate * 100, reorder * 100);
+        }
+    }
+
+    public static final Profile OFF = new Profile("off", 0, 0, 0, 0, 0);
+    public static final Profile[] PRESETS = {
+            OFF,
+            new Profile("lan", 10, 2, 0, 0, 0),
+            new Profile("wifi", 40, 15, 0.01, 0.005, 0.01),
+            new Profile("mobile", 90, 40, 0.03, 0.01, 0.03),
+            new Profile("awful", 180, 90, 0.10, 0.03, 0.10),
+    };
+
+    private static final NetConditioner INSTANCE = new NetConditioner(parse(System.getProperty(PROPERTY)));
+
+    private volatile Profile profile;
+    private volatile ScheduledExecutorService timer;
+    private final AtomicLong delayed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong retransmitted = new AtomicLong();
+    private final AtomicLong duplicated = new AtomicLong();
+    private final AtomicLong reordered = new AtomicLong();
+
+    private NetConditioner(Profile profile) {
+        this.profile = profile;
+        if (!profile.isOff()) System.out.println("[NETSIM] " + profile);
+    }
+
+    /** 进程内共用一个（配置和计数全局，排队状态按连接） */
+    public static NetConditioner get() { return INSTANCE; }
+
+    public Profile getProfile() { return profile; }
+
+    public void setProfile(Profile p) {
+        profile = p == null ? OFF : p;
+        System.out.println("[NETSIM] " + profile);
+    }
+
+    /** 切到下一个预设（F7） */
+    public Profile cyclePreset() {
+        Profile cur = profile;
+        int next = 0;
+        for (int i = 0; i < PRESETS.length; i++) {
+            if (PRESETS[i] == cur) next = (i + 1) % PRESETS.length;
+        }
+        setProfile(PRESETS[next]);
+        return profile;
+    }
+
+    public boolean isActive() { return !profile.isOff(); }
+
+    /** 一条连接；收、发两个方向各自保序 */
+    public Link link() { return new Link(); }
+
+    public String report() {
+        return String.format(Locale.US, "netsim %s  delayed %d dropped %d retrans %d dup %d reordered %d",
+                profile, delayed.get(), dropped.get(), retransmitted.get(), duplicated.get(), reordered.get());
+    }
+
+    public final class Link {
+        private final Direction in = new Direction();
+        private final Direction out = new Direction();
+
+        private Link() { }
+
+        /**
+         * 收到的一帧：deliver 会在模拟的到达时刻（劣化线程上）执行；
+         * 只有 droppable 的帧可能被丢掉，其余的抽中丢包就多延迟一次重传
+         */
+        public void inbound(Runnable deliver, boolean droppable) { submit(in, deliver, droppable); }
+
+        /**
+         * 要发出的一帧：send 会在模拟的发出时刻（劣化线程上）执行；
+         * droppable 为 false 时不会被丢，抽中丢包就多延迟一次重传
+         */
+        public void outbound(Runnable send, boolean droppable) { submit(out, send, droppable); }
+    }
+
+    private static final class Direction {
+        long lastDueNanos = 0;
+    }
+
+    // ================= 内部 =================
+
+    private void submit(Direction d, Runnable r, boolean droppable) {
+        Profile p = profile;
+        if (p.isOff()) {
+            r.run();
+            return;
+        }
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        double extraMs = 0;
+        if (rnd.nextDouble() < p.loss) {
+            if (droppable) {
+                dropped.incrementAndGet();
+                return;
+            }
+            retransmitted.incrementAndGet();
+            extraMs = 2 * p.latencyMs;
+        }
+        schedule(d, r, p, rnd, extraMs);
+        if (rnd.nextDouble() < p.duplicate) {
+            duplicated.incrementAndGet();
+            schedule(d, r, p, rnd, extraMs);
+        }
+    }
+
+    private void schedule(Direction d, Runnable r, Profile p, ThreadLocalRandom rnd, double extraMs) {
+        long now = System.nanoTime();
+        double ms = Math.max(0, p.latencyMs + extraMs + p.jitterMs * (rnd.nextDouble() * 2 - 1));
+        long due = now + (long) (ms * 1_000_000L);
+        if (rnd.nextDouble() < p.reorder) {
+            reordered.incrementAndGet();
+        } else {
+            synchronized (d) {
+                due = Math.max(due, d.lastDueNanos);
+                d.lastDueNanos = due;
+            }
+        }
+        delayed.incrementAndGet();
+        // 单线程定时器：到期时间相同的任务按提交顺序执行
+        timer().schedule(r, due - now, TimeUnit.NANOSECONDS);
+    }
+
+    private ScheduledExecutorService timer() {
+        ScheduledExecutorService t = timer;
+        if (t != null) return t;
+        synchronized (this) {
+            if (timer == null) {
+                ScheduledThreadPoolExecutor ex = new ScheduledThreadPoolExecutor(1, task -> {
+                    Thread th = new Thread(task, "netsim");
+                    th.setDaemon(true);
+                    return th;
+                });
+                ex.setRemoveOnCancelPolicy(true);
+                timer = ex;
+            }
+            return timer;
+        }
+    }
+
+    /** 预设名，或 latency=..,jitter=..,loss=..,dup=..,reorder=..（百分比）；解析不了就关闭 */
+    static Profile parse(String spec) {
+        if (spec == null || spec.isBlank()) return OFF;
+        String s = spec.trim().toLowerCase(Locale.ROOT);
+        for (Profile p : PRESETS) {
+            if (p.name.equals(s)) return p;
+        }
+        double latency = 0, jitter = 0, loss = 0, dup = 0, reorder = 0;
+        try {
+            for (String part : s.split(",")) {
+                String[] kv = part.split("=", 2);
+                if (kv.length != 2) continue;
+                double v = Double.parseDouble(kv[1].trim());
+                switch (kv[0].trim()) {
+                    case "latency" -> latency = v;
+                    case "jitter" -> jitter = v;
+                    case "loss" -> loss = v / 100.0;
+                    case "dup" -> dup = v / 100.0;
+                    case "reorder" -> reorder = v / 100.0;
+                    default -> System.err.println("[NETSIM] unknown key " + kv[0]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("[NETSIM] bad " + PROPERTY + "=" + spec + ", disabled");
+            return OFF;
+        }
+        return new Profile("custom", latency, jitter, loss, dup, reorder);
+    }
+
+    private static double clamp01(double v) {
+        return Math.max(0, Math.min(1, v));
+    }
+}
@@ -0,0 +1,219 @@
+package org.csu.pixelstrikejavafx.game.network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 对局连接的流量统计：按消息类型分方向计数/字节数、下行处理耗时直方图，
+ * 以及每个远端玩家 state 的到达间隔直方图（用 WS 线程收到的时刻，而不是 FX 线程处理的时刻）。
+ * 只在 FX 线程上读写；记录路径不分配内存（类型第一次出现时除外）。
+ * report() 给开发者浮层和退出时的报告用。
+ */
+public final class NetMetrics {
+
+    /** 某一类消息的统计 */
+    public static final class TypeStats {
+        public final String type;
+        public long inCount, inBytes, outCount, outBytes;
+        /** 下行处理耗时（解析 + 处理函数） */
+        public final LatencyHistogram handler = new LatencyHistogram();
+
+        TypeStats(String type) { this.type = type; }
+    }
+
+    /** 某个远端玩家的 state 到达间隔 */
+    public static final class RemoteStats {
+        public final int id;
+        long lastArrivalNanos = 0;
+        public final LatencyHistogram gaps = new LatencyHistogram();
+
+        RemoteStats(int id) { this.id = id; }
+    }
+
+    private static final int TABLE_SIZE = 64;   // 2 的幂
+    private TypeStats[] table = new TypeStats[TABLE_SIZE];
+    private int typeCount = 0;
+    // bin1 按记录类型缓存统计项；上行 T_STATE 和下行 T_STATE_RELAY 归到同一个 "bin1:state"
+    private final TypeStats[] binaryStats = new TypeStats[256];
+    private final Map<Integer, RemoteStats> remotes = new HashMap<>();
+
+    // 线路层：实际写出/收到的帧
+    private long framesIn, bytesIn, framesOut, bytesOut;
+    private final long startNanos = System.nanoTime();
+    private long currentArrivalNanos = 0;
+
+    // ================= 记录 =================
+
+    /** 按类型名取统计项（没有就建一个） */
+    public TypeStats stats(String type) {
+        return lookup(type, 0, type.length(), type.hashCode());
+    }
+
+    /** 下行一条消息处理完毕 */
+    public void recordIn(TypeStats s, int bytes, long handlerNanos) {
+        s.inCount++;
+        s.inBytes += bytes;
+        s.handler.recordNanos(handlerNanos);
+    }
+
+    /** 上行一条 JSON 消息：从 {"type":"xxx" 里取类型，不分配字符串 */
+    public void recordOutJson(CharSequence json) {
+        TypeStats s = typeOf(json);
+        s.outCount++;
+        s.outBytes += json.length();
+    }
+
+    /** 上行一条 bin1 消息，按第一条记录的类型归类 */
+    public void recordOutBinary(byte recordType, int bytes) {
+        TypeStats s = binaryStats(recordType);
+        s.outCount++;
+        s.outBytes += bytes;
+    }
+
+    /** 下行一条 bin1 记录处理完毕 */
+    public void recordInBinary(byte recordType, int bytes, long handlerNanos) {
+        recordIn(binaryStats(recordType), bytes, handlerNanos);
+    }
+
+    private TypeStats binaryStats(byte recordType) {
+        int k = recordType & 0xFF;
+        TypeStats s = binaryStats[k];
+        if (s == null) s = binaryStats[k] = stats("bin1:" + binaryName(recordType));
+        return s;
+    }
+
+    public void recordFrameIn(int bytes) { framesIn++; bytesIn += bytes; }
+    public void recordFrameOut(int bytes) { framesOut++; bytesOut += bytes; }
+
+    /** 正在处理的这条消息被 WS 线程收到的时刻（System.nanoTime） */
+    public void setCurrentArrival(long nanos) { currentArrivalNanos = nanos; }
+
+    /** 收到远端玩家 id 的一条 state */
+    public void recordStateArrival(int id) {
+        if (currentArrivalNanos == 0) return;
+        RemoteStats r = remotes.get(id);
+        if (r == null) {
+            r = new RemoteStats(id);
+            remotes.put(id, r);
+        }
+        if (r.lastArrivalNanos != 0 && currentArrivalNanos > r.lastArrivalNanos) {
+            r.gaps.recordNanos(currentArrivalNanos - r.lastArrivalNanos);
+        }
+        r.lastArrivalNanos = currentArrivalNanos;
+    }
+
+    // ================= 报告 =================
+
+    /** 各类型按字节数（上下行合计）从大到小 */
+    public List<TypeStats> typesByBytes() {
+        List<TypeStats> list = new ArrayList<>(typeCount);
+        for (TypeStats s : table) if (s != null) list.add(s);
+        list.sort((a, b) -> Long.compare(b.inBytes + b.outBytes, a.inBytes + a.outBytes));
+        return list;
+    }
+
+    /**
+     * 文本报告。
+     * @param maxTypes 最多列出多少个类型（浮层用小值，退出报告用 Integer.MAX_VALUE）
+     */
+    public String report(int maxTypes) {
+        double secs = Math.max(1e-3, (System.nanoTime() - startNanos) / 1e9);
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append(String.format(Locale.US, "elapsed %.0fs  in %d frames %.1f KB/s  out %d frames %.1f KB/s%n",
+                secs, framesIn, bytesIn / 1024.0 / secs, framesOut, bytesOut / 1024.0 / secs));
+        sb.append(String.format(Locale.US, "%-22s %8s %9s %8s %9s %8s %8s%n",
+                "type", "in", "in KB", "out", "out KB", "p50 us", "p99 us"));
+        int n = 0;
+        for (TypeStats s : typesByBytes()) {
+            if (n++ >= maxTypes) break;
+            sb.append(String.format(Locale.US, "%-22s %8d %9.1f %8d %9.1f %8d %8d%n",
+                    s.type, s.inCount, s.inBytes / 1024.0, s.outCount, s.outBytes / 1024.0,
+                    s.handler.percentile(50), s.handler.percentile(99)));
+        }
+        if (!remotes.isEmpty()) {
+            sb.append(String.format(Locale.US, "%-10s %8s %8s %8s %8s%n", "remote", "states", "p50 ms", "p99 ms", "max ms"));
+            for (RemoteStats r : remotes.values()) {
+                sb.append(String.format(Locale.US, "%-10d %8d %8.1f %8.1f %8.1f%n",
+                        r.id, r.gaps.count() + 1, r.gaps.percentile(50) / 1000.0,
+                        r.gaps.percentile(99) / 1000.0, r.gaps.maxMicros() / 1000.0));
+            }
+        }
+        return sb.toString();
+    }
+
+    // ================= 内部 =================
+
+    private TypeStats typeOf(CharSequence json) {
+        // 本项目发出的 JSON 都以 {"type":" 开头
+        final String prefix = "{\"type\":\"";
+        int n = json.length();
+        if (n > prefix.length() && regionStartsWith(json, prefix)) {
+            int s = prefix.length();
+            int e = s;
+            int h = 0;
+            while (e < n && json.charAt(e) != '"') h = 31 * h + json.charAt(e++);
+            if (e < n) return lookup(json, s, e, h);
+        }
+        return stats("?");
+    }
+
+    private TypeStats lookup(CharSequence src, int s, int e, int hash) {
+        int slot = hash & (table.length - 1);
+        TypeStats t;
+        while ((t = table[slot]) != null) {
+            if (regionEquals(src, s, e, t.type)) return t;
+            slot = (slot + 1) & (table.length - 1);
+        }
+        if (typeCount * 2 >= table.length) {
+            grow();
+            return lookup(src, s, e, hash);
+        }
+        t = new TypeStats(src.subSequence(s, e).toString());
+        table[slot] = t;
+        typeCount++;
+        return t;
+    }
+
+    private void grow() {
+        TypeStats[] old = table;
+        table = new TypeStats[old.length * 2];
+        for (TypeStats t : old) {
+            if (t == null) continue;
+            int slot = t.type.hashCode() & (table.length - 1);
+            while (table[slot] != null) slot = (slot + 1) & (table.length - 1);
+            table[slot] = t;
+        }
+    }
+
+    private static boolean regionStartsWith(CharSequence src, String prefix) {
+        for (int i = 0; i < prefix.length(); i++) {
+            if (src.charAt(i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static boolean regionEquals(CharSequence src, int s, int e, String t) {
+        if (e - s != t.length()) return false;
+        for (int i = 0; i < t.length(); i++) {
+            if (src.charAt(s + i) != t.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static String binaryName(byte type) {
+        return switch (type) {
+            case BinaryProtocol.T_STATE, BinaryProtocol.T_STATE_RELAY -> "state";
+            case BinaryProtocol.T_SHOT, BinaryProtocol.T_SHOT_RELAY -> "shot";
+            case BinaryProtocol.T_PICKUP_SUPPLY -> "pickup_supply";
+            case BinaryProtocol.T_STATE_DELTA, BinaryProtocol.T_STATE_DELTA_RELAY -> "state_delta";
+            case BinaryProtocol.T_DAMAGE -> "damage";
+            case BinaryProtocol.T_RESPAWN -> "respawn";
+            case BinaryProtocol.T_SUPPLY_SPAWN -> "supply_spawn";
+            case BinaryProtocol.T_SUPPLY_REMOVED -> "supply_removed";
+            default -> String.format("0x%02x", type & 0xFF);
+        };
+    }
+}
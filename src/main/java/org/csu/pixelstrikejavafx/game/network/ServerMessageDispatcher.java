@@ -0,0 +1,107 @@
+package org.csu.pixelstrikejavafx.game.network;
+
+import java.util.function.Consumer;
+
+/**
+ * 按 "type" 分发对局消息的类型表。
+ * 每条消息只用 JsonMessageReader 扫描一遍，按 type 值的哈希在开放寻址表里找到条目，
+ * 把字段读进该类型复用的消息对象，再交给处理函数。
+ * {"type":"batch","msgs":[...]} 是服务器把同一 tick 的多条消息合成的一帧，这里拆开逐条分发。
+ */
+public final class ServerMessageDispatcher {
+
+    private static final int TABLE_SIZE = 64; // 2 的幂，远大于消息类型数
+    public static final String BATCH_TYPE = "batch";
+
+    private static final class Entry {
+        final String type;
+        final GameMessages.Message message;
+        final Consumer<GameMessages.Message> handler;
+        NetMetrics.TypeStats stats;   // 设置了 metrics 后才有
+
+        Entry(String type, GameMessages.Message message, Consumer<GameMessages.Message> handler) {
+            this.type = type;
+            this.message = message;
+            this.handler = handler;
+        }
+    }
+
+    private final Entry[] table = new Entry[TABLE_SIZE];
+    private final JsonMessageReader reader = new JsonMessageReader();
+    // batch 中各条消息在原文里的区间：reader 逐条复用，得先把边界全部记下来
+    private int[] batchBounds = new int[32];
+    private NetMetrics metrics;
+    private NetMetrics.TypeStats unknownStats;
+
+    /** 打开按类型的计数与处理耗时统计；传 null 关闭 */
+    public void setMetrics(NetMetrics metrics) {
+        this.metrics = metrics;
+        for (Entry e : table) {
+            if (e != null) e.stats = metrics != null ? metrics.stats(e.type) : null;
+        }
+        unknownStats = metrics != null ? metrics.stats("?unknown") : null;
+    }
+
+    /** 注册一种消息类型；同名重复注册会覆盖 */
+    @SuppressWarnings("unchecked")
+    public <T extends GameMessages.Message> ServerMessageDispatcher on(String type, T message, Consumer<? super T> handler) {
+        int slot = type.hashCode() & (TABLE_SIZE - 1);
+        while (table[slot] != null && !table[slot].type.equals(type)) {
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        table[slot] = new Entry(type, message, (Consumer<GameMessages.Message>) handler);
+        if (metrics != null) table[slot].stats = metrics.stats(type);
+        return this;
+    }
+
+    /**
+     * 解析并分发一条消息。
+     * @return false 表示消息没有 type 字段（调用方自行记录）；未注册的类型会被静默忽略
+     */
+    public boolean dispatch(CharSequence json) {
+        return dispatch(json, true);
+    }
+
+    private boolean dispatch(CharSequence json, boolean allowBatch) {
+        long t0 = metrics != null ? System.nanoTime() : 0;
+        reader.parse(json);
+        int f = reader.indexOf("type");
+        if (f < 0 || reader.kindOf(f) != JsonMessageReader.K_STRING) return false;
+        if (allowBatch && reader.valueEquals(f, BATCH_TYPE)) return dispatchBatch();
+
+        int slot = reader.valueHash(f) & (TABLE_SIZE - 1);
+        Entry e;
+        while ((e = table[slot]) != null) {
+            if (reader.valueEquals(f, e.type)) {
+                e.message.read(reader);
+                e.handler.accept(e.message);
+                if (metrics != null) metrics.recordIn(e.stats, json.length(), System.nanoTime() - t0);
+                return true;
+            }
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        if (metrics != null) metrics.recordIn(unknownStats, json.length(), System.nanoTime() - t0);
+        return true;
+    }
+
+    private boolean dispatchBatch() {
+        int f = reader.indexOf("msgs");
+        if (f < 0 || reader.kindOf(f) != JsonMessageReader.K_ARRAY) return true;
+        CharSequence src = reader.source();
+        int end = reader.valueEnd(f) - 1;   // 结尾的 ']'
+        int n = 0;
+        for (int i = reader.valueStart(f) + 1; i < end; ) {
+            if (src.charAt(i) != '{') { i++; continue; }
+            int e = JsonMessageReader.skipNested(src, i);
+            if (e < 0 || e > end) break;
+            if (n + 2 > batchBounds.length) batchBounds = java.util.Arrays.copyOf(batchBounds, batchBounds.length * 2);
+            batchBounds[n++] = i;
+            batchBounds[n++] = e;
+            i = e;
+        }
+        for (int k = 0; k < n; k += 2) {
+            dispatch(src.subSequence(batchBounds[k], batchBounds[k + 1]), false);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,136 @@
+package org.csu.pixelstrikejavafx.game.network;
+
+/**
+ * state 消息的增量压缩。
+ * 发送端（Encoder）只发出相对基线有变化的字段，基线是服务器最近确认（ack）的那一帧，
+ * 还没有确认时退回最近一次关键帧；每隔 keyframeInterval 帧强制发一次全量关键帧。
+ * 接收端（Baselines）按 seq 保存每个远端玩家最近重建出的完整状态，用增量里的 base 找回基线补齐字段。
+ * 比较都在量化后的值上做（与 bin1 一致），避免浮点抖动被当成变化。
+ */
+public final class StateDelta {
+    private StateDelta() {}
+
+    public static final int F_X        = 1;
+    public static final int F_Y        = 1 << 1;
+    public static final int F_VX       = 1 << 2;
+    public static final int F_VY       = 1 << 3;
+    public static final int F_FLAGS    = 1 << 4; // facing + onGround
+    public static final int F_ANIM     = 1 << 5;
+    public static final int F_PHASE    = 1 << 6;
+    public static final int ALL        = 0x7F;
+    /** 仅用于 bin1 的掩码字节：表示这一帧是关键帧 */
+    public static final int F_KEYFRAME = 1 << 7;
+
+    private static final int RING = 64; // 必须是 2 的幂，覆盖关键帧间隔 + ack 往返
+
+    /** 一帧完整状态 */
+    public static final class Snapshot {
+        public long seq = -1;
+        public double x, y, vx, vy;
+        public boolean facing, onGround;
+        public String anim, phase;
+
+        public void set(long seq, double x, double y, double vx, double vy, boolean facing, boolean onGround,
+                        String anim, String phase) {
+            this.seq = seq;
+            this.x = x; this.y = y; this.vx = vx; this.vy = vy;
+            this.facing = facing; this.onGround = onGround;
+            this.anim = anim; this.phase = phase;
+        }
+
+        public void copyFrom(Snapshot o) {
+            set(o.seq, o.x, o.y, o.vx, o.vy, o.facing, o.onGround, o.anim, o.phase);
+        }
+
+        /** 相对 base 发生变化的字段掩码 */
+        int diff(Snapshot base) {
+            int m = 0;
+            if (BinaryProtocol.quantPos(x) != BinaryProtocol.quantPos(base.x)) m |= F_X;
+            if (BinaryProtocol.quantPos(y) != BinaryProtocol.quantPos(base.y)) m |= F_Y;
+            if (BinaryProtocol.quantVel(vx) != BinaryProtocol.quantVel(base.vx)) m |= F_VX;
+            if (BinaryProtocol.quantVel(vy) != BinaryProtocol.quantVel(base.vy)) m |= F_VY;
+            if (facing != base.facing || onGround != base.onGround) m |= F_FLAGS;
+            if (!java.util.Objects.equals(anim, base.anim)) m |= F_ANIM;
+            if (!java.util.Objects.equals(phase, base.phase)) m |= F_PHASE;
+            return m;
+        }
+    }
+
+    /** 发送端：每条 state 调一次 encode()，再按返回的掩码只写变化字段 */
+    public static final class Encoder {
+        private final Snapshot[] sent = new Snapshot[RING];
+        private final Snapshot baseline = new Snapshot();
+        private boolean hasBaseline = false;
+        private int keyframeInterval;
+        private int sinceKeyframe = 0;
+        private boolean keyframe = false;
+
+        public Encoder(int keyframeInterval) {
+            this.keyframeInterval = Math.max(1, keyframeInterval);
+            for (int i = 0; i < RING; i++) sent[i] = new Snapshot();
+        }
+
+        /** @return 需要发送的字段掩码；关键帧时为 ALL，且 isKeyframe() 为 true */
+        public int encode(Snapshot cur) {
+            sent[(int) (cur.seq & (RING - 1))].copyFrom(cur);
+            if (!hasBaseline || ++sinceKeyframe >= keyframeInterval) {
+                baseline.copyFrom(cur);
+                hasBaseline = true;
+                sinceKeyframe = 0;
+                keyframe = true;
+                return ALL;
+            }
+            keyframe = false;
+            return cur.diff(baseline);
+        }
+
+        public boolean isKeyframe() { return keyframe; }
+        public long baselineSeq() { return baseline.seq; }
+
+        /** 服务器确认收到了 seq 这一帧：之后的增量改以它为基线 */
+        public void acknowledge(long seq) {
+            if (!hasBaseline || seq <= baseline.seq) return;
+            Snapshot s = sent[(int) (seq & (RING - 1))];
+            if (s.seq == seq) baseline.copyFrom(s);
+        }
+
+        /** 重连或重新 welcome 后调用，下一帧必为关键帧 */
+        public void reset() {
+            hasBaseline = false;
+            sinceKeyframe = 0;
+        }
+
+        public void setKeyframeInterval(int frames) { this.keyframeInterval = Math.max(1, frames); }
+        public int getKeyframeInterval() { return keyframeInterval; }
+    }
+
+    /** 接收端：每个远端玩家一份，按 seq 保存最近重建出的完整状态 */
+    public static final class Baselines {
+        private final Snapshot[] ring = new Snapshot[RING];
+
+        public Baselines() {
+            for (int i = 0; i < RING; i++) ring[i] = new Snapshot();
+        }
+
+        /**
+         * 用基线补齐 m 中缺失的字段（原地修改），并把结果记为新的可用基线。
+         * @return false 表示基线已不在缓存里，这条增量无法还原，应丢弃并等待下一个关键帧
+         */
+        public boolean rebuild(GameMessages.State m) {
+            if (!m.keyframe) {
+                Snapshot base = ring[(int) (m.baseSeq & (RING - 1))];
+                if (base.seq != m.baseSeq) return false;
+                int mask = m.mask;
+                if ((mask & F_X) == 0) m.x = base.x;
+                if ((mask & F_Y) == 0) m.y = base.y;
+                if ((mask & F_VX) == 0) m.vx = base.vx;
+                if ((mask & F_VY) == 0) m.vy = base.vy;
+                if ((mask & F_FLAGS) == 0) { m.facing = base.facing; m.onGround = base.onGround; }
+                if ((mask & F_ANIM) == 0) m.anim = base.anim;
+                if ((mask & F_PHASE) == 0) m.phase = base.phase;
+            }
+            ring[(int) (m.seq & (RING - 1))].set(m.seq, m.x, m.y, m.vx, m.vy, m.facing, m.onGround, m.anim, m.phase);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.csu.pixelstrikejavafx.game.player;
+
+/**
+ * 水平运动模型（目标速度 → 平滑加速 → 击退衰减 → 摩擦），不碰物理组件。
+ * Player.update 每帧用它算出要施加的水平速度；服务器校正时 MovementPredictor 用同一份代码重放输入。
+ */
+final class HorizontalMotion {
+
+    double vxTarget = 0.0;
+    double vxCurrent = 0.0;
+    double knockVX = 0.0;   // 水平击退临时速度（逐帧衰减）
+
+    /** 推进一帧，返回本帧应施加到刚体上的水平速度 */
+    double step(boolean movingLeft, boolean movingRight, boolean running, boolean onGround, double tpf) {
+        // 1) 计算目标速度
+        if (movingLeft && !movingRight) {
+            vxTarget = running ? -Player.RUN_SPEED : -Player.WALK_SPEED;
+        } else if (movingRight && !movingLeft) {
+            vxTarget = running ? Player.RUN_SPEED : Player.WALK_SPEED;
+        } else {
+            vxTarget = 0;
+        }
+        double accel = onGround ? Player.GROUND_ACCEL : Player.AIR_ACCEL;
+        if (Math.signum(vxTarget) != Math.signum(vxCurrent) && vxTarget != 0 && vxCurrent != 0) {
+            accel *= 2.5; // 制动时的加速度是普通加速度的2.5倍
+        }
+
+        // 2) 平滑趋近
+        double diff = vxTarget - vxCurrent;
+        double step = accel * tpf;
+        if (Math.abs(diff) > step) {
+            vxCurrent += Math.signum(diff) * step;
+        } else {
+            vxCurrent = vxTarget;
+        }
+        if (onGround && vxTarget == 0) {
+            vxCurrent *= 0.75; // 每次更新速度衰减到75%，实现快速停止
+            if (Math.abs(vxCurrent) < 10) {
+                vxCurrent = 0; // 当速度很小时，直接归零
+            }
+        }
+        double totalVX = vxCurrent + knockVX;
+
+        // ★ 按时间衰减击退（与帧率无关）
+        double decel = 600 * tpf; // 每秒把绝对值减少约 900 像素/秒，可按手感调
+        if (Math.abs(knockVX) <= decel) {
+            knockVX = 0;
+        } else {
+            knockVX -= Math.signum(knockVX) * decel;
+        }
+
+        // 3) 摩擦力：松手时快速减速（此时击退不再叠加）
+        if (Math.abs(vxTarget) < 10 && Math.abs(vxCurrent) > 10) {
+            vxCurrent *= 0.85;
+            return vxCurrent;
+        }
+        return totalVX;
+    }
+
+    void copyFrom(HorizontalMotion o) {
+        vxTarget = o.vxTarget;
+        vxCurrent = o.vxCurrent;
+        knockVX = o.knockVX;
+    }
+
+    void clear() {
+        vxTarget = vxCurrent = knockVX = 0;
+    }
+}
@@ -0,0 +1,128 @@
+package org.csu.pixelstrikejavafx.game.player;
+
+import org.csu.pixelstrikejavafx.game.core.GameConfig;
+
+/**
+ * 本机玩家的客户端预测与服务器校正。
+ * 每帧 Player.update 之后记录一条：输入、帧长、本帧施加的水平速度、步进后的运动状态和“逻辑位置”
+ * （逻辑位置 = 画面位置 + 尚未抹平的校正量）。发出 state 时把网络 seq 标在当帧上。
+ * 服务器给出某个 seq 的权威位置/速度时：
+ *   1) 找到那一帧，算出权威值与当时预测值的误差；
+ *   2) 从那一帧的运动状态（速度换成权威速度）开始，用同一份 HorizontalMotion 重放之后每帧的输入，
+ *      只把“重放速度 - 当时速度”造成的位移差累加进去；
+ *   3) 改写之后各帧的历史，并把最终误差交给 Player 逐帧抹平（过大时直接瞬移）。
+ * 竖直方向由 Box2D 积分（重力、碰撞），无法单独重放，这里只平移误差。
+ */
+public final class MovementPredictor {
+
+    private static final int CAP = 128;   // 2 的幂，60 帧下约 2 秒，足够盖住高延迟的往返
+
+    private static final int IN_LEFT = 1, IN_RIGHT = 2, IN_RUN = 4, IN_GROUND = 8;
+
+    private final byte[] inputs = new byte[CAP];
+    private final double[] dts = new double[CAP];
+    private final double[] applied = new double[CAP];     // 本帧施加到刚体的水平速度
+    private final double[] vxCurrents = new double[CAP];  // 步进后的 HorizontalMotion
+    private final double[] vxTargets = new double[CAP];
+    private final double[] knocks = new double[CAP];
+    private final double[] xs = new double[CAP];          // 逻辑位置
+    private final double[] ys = new double[CAP];
+    private final long[] netSeqs = new long[CAP];
+    private int newest = -1;
+    private int size = 0;
+    private long lastReconciledSeq = -1;
+
+    private final HorizontalMotion replay = new HorizontalMotion();
+
+    // reconcile() 的输出
+    private double correctionX, correctionY;
+
+    /** 记录刚跑完的一帧；x、y 是逻辑位置 */
+    void record(boolean left, boolean right, boolean running, boolean onGround, double tpf,
+                double appliedVX, HorizontalMotion after, double x, double y) {
+        newest = (newest + 1) & (CAP - 1);
+        inputs[newest] = (byte) ((left ? IN_LEFT : 0) | (right ? IN_RIGHT : 0)
+                | (running ? IN_RUN : 0) | (onGround ? IN_GROUND : 0));
+        dts[newest] = tpf;
+        applied[newest] = appliedVX;
+        vxCurrents[newest] = after.vxCurrent;
+        vxTargets[newest] = after.vxTarget;
+        knocks[newest] = after.knockVX;
+        xs[newest] = x;
+        ys[newest] = y;
+        netSeqs[newest] = -1;
+        if (size < CAP) size++;
+    }
+
+    /** 最新一帧的状态已以 netSeq 发给服务器 */
+    void tagSent(long netSeq) {
+        if (size > 0) netSeqs[newest] = netSeq;
+    }
+
+    /**
+     * 服务器对 netSeq 那一帧给出的权威状态。
+     * 成功时 motion 被改成重放后的运动状态，校正量用 getCorrectionX()/getCorrectionY() 取。
+     * @return false 表示这一帧已经不在历史里、比上次校正还旧，或误差可以忽略
+     */
+    boolean reconcile(long netSeq, double authX, double authY, double authVX, HorizontalMotion motion) {
+        if (netSeq <= lastReconciledSeq) return false;
+        int k = find(netSeq);
+        if (k < 0) return false;
+        lastReconciledSeq = netSeq;
+
+        double errX = authX - xs[k];
+        double errY = authY - ys[k];
+        double errVX = authVX - applied[k];
+        if (Math.abs(errX) < GameConfig.Net.RECONCILE_EPSILON && Math.abs(errY) < GameConfig.Net.RECONCILE_EPSILON
+                && Math.abs(errVX) < GameConfig.Net.RECONCILE_EPSILON) {
+            return false;
+        }
+
+        // 权威速度就是那一帧施加的速度：先补上那一帧自己的位移差
+        double dx = errX + errVX * dts[k];
+        replay.vxTarget = vxTargets[k];
+        replay.vxCurrent = vxCurrents[k] + errVX;
+        replay.knockVX = knocks[k];
+
+        // 重放之后每帧的输入，并改写历史，后续的校正才不会把同一误差再算一遍
+        int i = k;
+        int count = (newest - k) & (CAP - 1);
+        for (int n = 0; n < count; n++) {
+            i = (i + 1) & (CAP - 1);
+            int in = inputs[i];
+            double v = replay.step((in & IN_LEFT) != 0, (in & IN_RIGHT) != 0, (in & IN_RUN) != 0,
+                    (in & IN_GROUND) != 0, dts[i]);
+            xs[i] += dx;
+            ys[i] += errY;
+            dx += (v - applied[i]) * dts[i];
+            applied[i] = v;
+            vxCurrents[i] = replay.vxCurrent;
+            vxTargets[i] = replay.vxTarget;
+            knocks[i] = replay.knockVX;
+        }
+        motion.copyFrom(replay);
+
+        correctionX = dx;
+        correctionY = errY;
+        return true;
+    }
+
+    /** 复活、瞬移后历史作废 */
+    void clear() {
+        newest = -1;
+        size = 0;
+    }
+
+    double getCorrectionX() { return correctionX; }
+    double getCorrectionY() { return correctionY; }
+
+    private int find(long netSeq) {
+        int i = newest;
+        for (int n = 0; n < size; n++) {
+            if (netSeqs[i] == netSeq) return i;
+            if (netSeqs[i] >= 0 && netSeqs[i] < netSeq) return -1;   // 更早的帧 seq 只会更小
+            i = (i - 1) & (CAP - 1);
+        }
+        return -1;
+    }
+}
@@ -7,9 +7,11 @@ import com.almasb.fxgl.physics.PhysicsComponent;
 import com.almasb.fxgl.physics.box2d.dynamics.BodyType;
 import com.almasb.fxgl.physics.box2d.dynamics.FixtureDef;
 import com.almasb.fxgl.texture.Texture;
+import javafx.geometry.Point2D;
 import javafx.scene.Node;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
+import org.csu.pixelstrikejavafx.game.core.GameConfig;
 import org.csu.pixelstrikejavafx.game.core.GameType;
 
 import static com.almasb.fxgl.dsl.FXGL.*;
@@ -44,10 +46,10 @@ public class Player implements OnFireCallback {
     public static final double HB_H =160;       // 碰撞体高度
 
     // —— 手感参数（可按需微调）——
-    private static final double WALK_SPEED = 550.0;
-    private static final double RUN_SPEED  = 850.0;
-    private static final double GROUND_ACCEL = 12000.0;  // 水平加速度
-    private static final double AIR_ACCEL    = 2500.0; // 空中加速度
+    static final double WALK_SPEED = 550.0;
+    static final double RUN_SPEED  = 850.0;
+    static final double GROUND_ACCEL = 12000.0;  // 水平加速度
+    static final double AIR_ACCEL    = 2500.0; // 空中加速度
     private static final double JUMP_VY    = 1200.0;
     private static final double DJUMP_VY   = 1000.0;
 
@@ -63,11 +65,17 @@ public class Player implements OnFireCallback {
     private  PlayerShooting shootingSys;
 
 
-    private double knockVX = 0.0;   // ★ 水平击退临时速度（逐帧衰减）
     // 运行时状态
     private State  state = State.IDLE;
-    private double vxTarget = 0.0;
-    private double vxCurrent = 0.0;
+    // 水平速度与击退（本地 update 与校正重放共用）
+    private final HorizontalMotion motion = new HorizontalMotion();
+
+    // 客户端预测：输入历史 + 尚未抹平的服务器校正量（逻辑位置 = 画面位置 + pending）
+    private final MovementPredictor predictor = new MovementPredictor();
+    private double pendingCorrectionX = 0.0;
+    private double pendingCorrectionY = 0.0;
+    // 本帧记进预测历史的逻辑位置，发 state 时用同一个值
+    private double netX, netY;
 
     // 新增：动画和战斗状态
     private boolean shooting = false;
@@ -181,44 +189,15 @@ public class Player implements OnFireCallback {
     /** 每帧更新：处理水平速度与状态机 */
     public void update(double tpf) {
 
-        // 1) 计算目标速度
-        if (movingLeft && !movingRight) {
-            vxTarget = running ? -RUN_SPEED : -WALK_SPEED;
-        } else if (movingRight && !movingLeft) {
-            vxTarget = running ? RUN_SPEED : WALK_SPEED;
-        } else {
-            vxTarget = 0;
-        }
-        double accel = onGround ? GROUND_ACCEL : AIR_ACCEL;
-        if (Math.signum(vxTarget) != Math.signum(vxCurrent) && vxTarget != 0 && vxCurrent != 0) {
-            accel *= 2.5; // 制动时的加速度是普通加速度的2.5倍
-        }
-
-        // 2) 平滑趋近
-        double diff = vxTarget - vxCurrent;
-        double step = accel * tpf;
-        if (Math.abs(diff) > step) {
-            vxCurrent += Math.signum(diff) * step;
-        } else {
-            vxCurrent = vxTarget;
-        }
-        if (onGround && vxTarget == 0) {
-            vxCurrent *= 0.75; // 每次更新速度衰减到75%，实现快速停止
-            if (Math.abs(vxCurrent) < 10) {
-                vxCurrent = 0; // 当速度很小时，直接归零
-            }
-        }
-        double totalVX = vxCurrent + knockVX;
-        physics.setVelocityX(totalVX);
-
-        // ★ 按时间衰减击退（与帧率无关）
-        double decel = 600 * tpf; // 每秒把绝对值减少约 900 像素/秒，可按手感调
-        if (Math.abs(knockVX) <= decel) {
-            knockVX = 0;
-        } else {
-            knockVX -= Math.signum(knockVX) * decel;
-        }
+        // 0) 逐帧抹平服务器校正
+        applyPendingCorrection(tpf);
 
+        // 1) 水平速度（目标速度、平滑趋近、击退衰减、摩擦）
+        double appliedVX = motion.step(movingLeft, movingRight, running, onGround, tpf);
+        physics.setVelocityX(appliedVX);
+        netX = entity.getX() + pendingCorrectionX;
+        netY = entity.getY() + pendingCorrectionY;
+        predictor.record(movingLeft, movingRight, running, onGround, tpf, appliedVX, motion, netX, netY);
 
         //死亡和射击
         double vy = physics.getVelocityY();
@@ -235,7 +214,7 @@ public class Player implements OnFireCallback {
                     state = State.FALL;
                 }
             } else {
-                if (Math.abs(vxCurrent) < 1) {
+                if (Math.abs(motion.vxCurrent) < 1) {
                     state = State.IDLE;
                 } else {
                     state = running ? State.RUN : State.WALK;
@@ -253,11 +232,6 @@ public class Player implements OnFireCallback {
             footstepTimer = 0; // 如果不在地面行走或跑步，则重置计时器
         }
 
-        //5)摩擦力
-        if (Math.abs(vxTarget) < 10 && Math.abs(vxCurrent) > 10) {
-            vxCurrent *= 0.85;  // 松手时快速减速
-            physics.setVelocityX(vxCurrent);
-        }
         // 6)统一翻转处理 - 放在最后确保每帧都执行
         if (movingRight && !movingLeft) {
             facingRight = true;
@@ -410,10 +384,10 @@ public class Player implements OnFireCallback {
         movingLeft = movingRight = running = false;
         onGround = false;
         jumpsUsed = 0;
-        vxCurrent = vxTarget = 0;
+        motion.clear();   // ★ 清掉残留击退
         state = State.IDLE;
         facingRight = true;  // 新增这行
-        knockVX = 0;   // ★ 清掉残留击退
+        clearPrediction();
     }
 
 
@@ -466,13 +440,54 @@ public class Player implements OnFireCallback {
     /** 受击击退：+X 向右 / -X 向左；Y 为向上（正值会抬起） */
     public void applyKnockback(double kx, double ky) {
         // ★ 关键：X 不直接 setVelocity，避免被 update() 覆盖
-        knockVX += kx;
+        motion.knockVX += kx;
 
         if (physics != null) {
             physics.setVelocityY(physics.getVelocityY() - ky);
         }
     }
 
+    /** 本帧的 state 已以 netSeq 发出，服务器之后可能按这个 seq 给出校正 */
+    public void markSent(long netSeq) {
+        predictor.tagSent(netSeq);
+    }
+
+    /**
+     * 服务器对 netSeq 那一帧的权威位置/水平速度：回到那一帧，用之后的输入重放，
+     * 误差小时逐帧抹平，超过 RECONCILE_SNAP_DISTANCE 直接瞬移。
+     */
+    public void reconcile(long netSeq, double x, double y, double vx) {
+        if (dead) return;
+        if (!predictor.reconcile(netSeq, x, y, vx, motion)) return;
+        pendingCorrectionX += predictor.getCorrectionX();
+        pendingCorrectionY += predictor.getCorrectionY();
+        physics.setVelocityX(motion.vxCurrent + motion.knockVX);
+
+        double snap = GameConfig.Net.RECONCILE_SNAP_DISTANCE;
+        if (pendingCorrectionX * pendingCorrectionX + pendingCorrectionY * pendingCorrectionY > snap * snap) {
+            physics.overwritePosition(new Point2D(entity.getX() + pendingCorrectionX, entity.getY() + pendingCorrectionY));
+            pendingCorrectionX = pendingCorrectionY = 0;
+        }
+    }
+
+    private void applyPendingCorrection(double tpf) {
+        if (pendingCorrectionX == 0 && pendingCorrectionY == 0) return;
+        double f = Math.min(1.0, tpf * GameConfig.Net.RECONCILE_SMOOTH_RATE);
+        double mx = pendingCorrectionX * f, my = pendingCorrectionY * f;
+        if (Math.abs(pendingCorrectionX) < 0.5 && Math.abs(pendingCorrectionY) < 0.5) {
+            mx = pendingCorrectionX;
+            my = pendingCorrectionY;
+        }
+        physics.overwritePosition(new Point2D(entity.getX() + mx, entity.getY() + my));
+        pendingCorrectionX -= mx;
+        pendingCorrectionY -= my;
+    }
+
+    private void clearPrediction() {
+        predictor.clear();
+        pendingCorrectionX = pendingCorrectionY = 0;
+    }
+
     /** 受伤回调 —— 预留动画/闪烁/受击硬直（此处不做具体表现） */
     public void onDamaged(int amount) {
         // TODO: 播放受击动画 / 屏幕闪红 / 无敌帧等
@@ -537,9 +552,8 @@ public class Player implements OnFireCallback {
         movingRight = false;
         running = false;
 
-        vxCurrent = 0;
-        vxTarget  = 0;
-        knockVX = 0;   // ★ 清掉残留击退
+        motion.clear();   // ★ 清掉残留击退
+        clearPrediction();
         if (physics != null) {
             physics.setVelocityX(0);
             physics.setVelocityY(0);
@@ -573,6 +587,13 @@ public class Player implements OnFireCallback {
         return facingRight;
     }
 
+    /**
+     * 要发给服务器的位置：本帧记进预测历史的逻辑位置（显示位置 + 还没抹平的校正）。
+     * 服务器按 seq 回来的校正和预测历史比较，发出去的必须是同一个值。
+     */
+    public double getNetX() { return netX; }
+    public double getNetY() { return netY; }
+
     //动画同步
     public String getNetAnim() {
         if (dead) return "DIE";
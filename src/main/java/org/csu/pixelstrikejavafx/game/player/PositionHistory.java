@@ -0,0 +1,110 @@
+package org.csu.pixelstrikejavafx.game.player;
+
+/**
+ * 单个玩家的位置历史（环形缓冲），回答“t 时刻这个玩家在哪”，用于延迟补偿的命中判定。
+ * 时间统一用 state 里的 ts 域（发送端 System.currentTimeMillis()）：
+ *   本机玩家记录自己发出 state 时的 ts 和位置；
+ *   远端玩家记录每帧实际渲染的位置，时间是插值用的渲染时刻（见 SnapshotBuffer.getRenderTs()），
+ *   也就是本机玩家开枪时“看到的”那个时刻。
+ * 服务器端可以照搬：按收到的 state.ts 记录，收到 shot 时回退到射手给出的 vt 再做射线判定（见 LocalGameServer）。
+ * 位置是实体左上角，判定时加上 Player.HB_* 的碰撞盒。
+ */
+public final class PositionHistory {
+
+    private static final int CAP = 64;   // 2 的幂；60 帧/秒时约一秒
+
+    private final double[] ts = new double[CAP];
+    private final double[] xs = new double[CAP];
+    private final double[] ys = new double[CAP];
+    private int newest = -1;
+    private int size = 0;
+
+    // rewind() 的输出
+    private double outX, outY;
+
+    /** 追加一条；时间不比最新一条新的直接忽略 */
+    public void record(double t, double x, double y) {
+        if (size > 0 && t <= ts[newest]) return;
+        newest = (newest + 1) & (CAP - 1);
+        ts[newest] = t;
+        xs[newest] = x;
+        ys[newest] = y;
+        if (size < CAP) size++;
+    }
+
+    /** 瞬移（复活）后清空，之前的位置不能再拿来判定 */
+    public void clear() {
+        size = 0;
+        newest = -1;
+    }
+
+    public boolean isEmpty() { return size == 0; }
+
+    public double newestTime() { return size == 0 ? Double.NaN : ts[newest]; }
+
+    public double oldestTime() { return size == 0 ? Double.NaN : ts[(newest - size + 1) & (CAP - 1)]; }
+
+    /**
+     * 回退到 t 时刻，结果用 getX()/getY() 取。
+     * 两条记录之间线性插值；超出范围时停在最老/最新一条（不外推）。
+     * @return false 表示没有历史
+     */
+    public boolean rewind(double t) {
+        if (size == 0) return false;
+        if (t >= ts[newest]) {
+            outX = xs[newest];
+            outY = ys[newest];
+            return true;
+        }
+        int b = newest;
+        for (int k = 1; k < size; k++) {
+            int a = (b - 1) & (CAP - 1);
+            if (ts[a] <= t) {
+                double span = ts[b] - ts[a];
+                double u = span > 0 ? (t - ts[a]) / span : 1.0;
+                outX = xs[a] + (xs[b] - xs[a]) * u;
+                outY = ys[a] + (ys[b] - ys[a]) * u;
+                return true;
+            }
+            b = a;
+        }
+        outX = xs[b];
+        outY = ys[b];
+        return true;
+    }
+
+    public double getX() { return outX; }
+    public double getY() { return outY; }
+
+    /**
+     * 回退到 t 时刻后，射线是否打中该玩家的碰撞盒。
+     * @return 命中距离，未命中或没有历史返回 -1
+     */
+    public double rayHit(double t, double ox, double oy, double dx, double dy) {
+        if (!rewind(t)) return -1;
+        return rayHitsBox(ox, oy, dx, dy, outX + Player.HB_OFF_X, outY + Player.HB_OFF_Y, Player.HB_W, Player.HB_H);
+    }
+
+    /**
+     * 射线与轴对齐矩形求交（slab 法），(dx, dy) 须为单位向量。
+     * @return 命中距离，未命中返回 -1
+     */
+    public static double rayHitsBox(double ox, double oy, double dx, double dy, double bx, double by, double bw, double bh) {
+        double tMin = 0, tMax = Double.MAX_VALUE;
+        if (Math.abs(dx) < 1e-9) {
+            if (ox < bx || ox > bx + bw) return -1;
+        } else {
+            double t1 = (bx - ox) / dx, t2 = (bx + bw - ox) / dx;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (Math.abs(dy) < 1e-9) {
+            if (oy < by || oy > by + bh) return -1;
+        } else {
+            double t1 = (by - oy) / dy, t2 = (by + bh - oy) / dy;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        return tMin <= tMax ? tMin : -1;
+    }
+}
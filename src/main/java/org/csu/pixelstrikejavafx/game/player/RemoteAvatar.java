@@ -22,6 +22,11 @@ public final class RemoteAvatar {
     //   你的精灵是 200x200，本地用的是 (120, 100)，远端保持一致即可对齐
     private final Scale flip = new Scale(1, 1, 120, 100);
 
+    // 在视野外时休眠：动画停掉（AnimatedTexture.onUpdate 变成空操作）并隐藏
+    private boolean dormant = false;
+    // 刚醒来：下一次 playState 无论通道是否相同都要重新开播
+    private boolean restart = false;
+
     public RemoteAvatar(int characterId) {
         String characterName = getCharacterFolderName(characterId);
 
@@ -72,6 +77,20 @@ public final class RemoteAvatar {
     /** 只改缩放系数，不直接 setScaleX，避免围绕(0,0)翻转 */
     public void setFacingRight(boolean right) { flip.setX(right ? 1 : -1); }   // ★ 修正点
 
+    /** 进出视野时调用；休眠期间不要调 playState */
+    public void setDormant(boolean dormant) {
+        if (this.dormant == dormant) return;
+        this.dormant = dormant;
+        tex.setVisible(!dormant);
+        if (dormant) {
+            tex.stop();
+        } else {
+            restart = true;
+        }
+    }
+
+    public boolean isDormant() { return dormant; }
+
     /** 简单状态机（网络没发 anim 时兜底） */
     public void playState(String anim, String phase, double vx, boolean onGround) {
         if (anim == null || anim.isEmpty()) {
@@ -97,6 +116,12 @@ public final class RemoteAvatar {
         }
     }
 
-    private void loopIfNot(AnimationChannel ch) { if (tex.getAnimationChannel() != ch) tex.loopAnimationChannel(ch); }
-    private void playOnceIfNot(AnimationChannel ch) { if (tex.getAnimationChannel() != ch) tex.playAnimationChannel(ch); }
+    private void loopIfNot(AnimationChannel ch) {
+        if (restart || tex.getAnimationChannel() != ch) tex.loopAnimationChannel(ch);
+        restart = false;
+    }
+    private void playOnceIfNot(AnimationChannel ch) {
+        if (restart || tex.getAnimationChannel() != ch) tex.playAnimationChannel(ch);
+        restart = false;
+    }
 }
\ No newline at end of file
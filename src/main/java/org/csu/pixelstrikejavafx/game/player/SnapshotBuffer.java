@@ -0,0 +1,164 @@
+package org.csu.pixelstrikejavafx.game.player;
+
+import org.csu.pixelstrikejavafx.game.core.GameConfig;
+
+/**
+ * 远端玩家的时间戳快照环形缓冲，用于插值渲染。
+ * 每条 state 带发送端的 ts（毫秒），这里把它映射到本地时钟：
+ *   offset = 本地收到时刻 - ts 的窗口最小值（时钟差 + 最快一次的网络延迟），
+ *   jitter = RFC 3550 式的传输时间抖动估计。
+ * 渲染时取 renderTs = 本地现在 - offset - delay，在前后两帧之间做 Hermite 插值（用上两端的速度），
+ * 超出最新一帧时按最新速度线性外推（发送端航位推测假设的也是线性运动），外推有上限。
+ * delay 随抖动自适应，并且每帧只允许缓慢变化，避免画面时间跳变。
+ */
+public final class SnapshotBuffer {
+
+    private static final int CAP = 32;                 // 2 的幂
+    private static final double OFFSET_WINDOW_MS = 5000;
+    private static final double HERMITE_MAX_SPAN_MS = 300;
+
+    private final double[] ts = new double[CAP];
+    private final double[] xs = new double[CAP];
+    private final double[] ys = new double[CAP];
+    private final double[] vxs = new double[CAP];
+    private final double[] vys = new double[CAP];
+    private int newest = -1;   // 最新一帧的下标
+    private int size = 0;
+    // 最新一帧来自 reset()，时间戳是本地推算的，允许被任何真实快照替换
+    private boolean resetPending = false;
+
+    // 时钟映射与抖动
+    private boolean hasOffset = false;
+    private double offset;
+    private double windowMin = Double.POSITIVE_INFINITY;
+    private double windowStart;
+    private double lastTransit = Double.NaN;
+    private double jitter = 0;
+
+    // 自适应插值延迟
+    private double delay = GameConfig.Net.INTERP_MIN_DELAY_MS;
+    private double lastSampleMs = Double.NaN;
+
+    // sample() 的输出
+    private double outX, outY;
+    private double outTs = Double.NaN;
+
+    /** 收到一条带时间戳的 state；乱序或重复的帧直接丢弃 */
+    public void push(long senderTs, double localMs, double x, double y, double vx, double vy) {
+        if (size > 0 && senderTs <= ts[newest]) {
+            if (!resetPending) return;
+            size = 0;
+            newest = -1;
+        }
+        resetPending = false;
+
+        double transit = localMs - senderTs;
+        if (!hasOffset || transit < offset) {
+            offset = transit;
+            hasOffset = true;
+            windowStart = localMs;
+        }
+        // 每个窗口用窗口内的最小值重新校准，容许两端时钟慢慢漂移
+        windowMin = Math.min(windowMin, transit);
+        if (localMs - windowStart > OFFSET_WINDOW_MS) {
+            offset = windowMin;
+            windowMin = Double.POSITIVE_INFINITY;
+            windowStart = localMs;
+        }
+        if (!Double.isNaN(lastTransit)) {
+            jitter += (Math.abs(transit - lastTransit) - jitter) / 16.0;
+        }
+        lastTransit = transit;
+
+        add(senderTs, x, y, vx, vy);
+    }
+
+    /** 瞬移（复活、刚出现）：清空历史，从 x,y 开始 */
+    public void reset(double localMs, double x, double y) {
+        size = 0;
+        newest = -1;
+        double t = hasOffset ? localMs - offset - delay : localMs;
+        add(t, x, y, 0, 0);
+        resetPending = true;
+    }
+
+    /**
+     * 计算 localMs 时刻应渲染的位置，结果用 getX()/getY() 取。
+     * @return false 表示缓冲为空
+     */
+    public boolean sample(double localMs) {
+        if (size == 0) return false;
+
+        // 延迟每帧最多变化帧时长的 10%，相当于把播放速度限制在 0.9x ~ 1.1x
+        double target = Math.max(GameConfig.Net.INTERP_MIN_DELAY_MS,
+                Math.min(GameConfig.Net.INTERP_MAX_DELAY_MS,
+                        GameConfig.Net.INTERP_MIN_DELAY_MS + GameConfig.Net.INTERP_JITTER_MULT * jitter));
+        if (!Double.isNaN(lastSampleMs)) {
+            double step = Math.max(0.1, (localMs - lastSampleMs) * 0.1);
+            delay += Math.max(-step, Math.min(step, target - delay));
+        }
+        lastSampleMs = localMs;
+
+        double rt = hasOffset ? localMs - offset - delay : ts[newest];
+        outTs = hasOffset ? rt : Double.NaN;
+
+        // 比最新一帧还新：线性外推
+        if (rt >= ts[newest]) {
+            double dt = Math.min(rt - ts[newest], GameConfig.Net.INTERP_MAX_EXTRAPOLATE_MS) / 1000.0;
+            outX = xs[newest] + vxs[newest] * dt;
+            outY = ys[newest] + vys[newest] * dt;
+            return true;
+        }
+
+        // 往回找包住 rt 的两帧
+        int b = newest;
+        for (int k = 1; k < size; k++) {
+            int a = (b - 1) & (CAP - 1);
+            if (ts[a] <= rt) {
+                interpolate(a, b, rt);
+                return true;
+            }
+            b = a;
+        }
+        // 比缓冲里最老的还早：停在最老一帧
+        outX = xs[b];
+        outY = ys[b];
+        return true;
+    }
+
+    public double getX() { return outX; }
+    public double getY() { return outY; }
+    /** 上一次 sample() 渲染的是发送端哪个时刻（ts 域）；还没有时钟映射时为 NaN */
+    public double getRenderTs() { return outTs; }
+    public double getDelayMs() { return delay; }
+    public double getJitterMs() { return jitter; }
+
+    private void interpolate(int a, int b, double rt) {
+        double span = ts[b] - ts[a];
+        double u = span > 0 ? (rt - ts[a]) / span : 1.0;
+        if (span > HERMITE_MAX_SPAN_MS) {
+            outX = xs[a] + (xs[b] - xs[a]) * u;
+            outY = ys[a] + (ys[b] - ys[a]) * u;
+            return;
+        }
+        // 三次 Hermite：端点位置 + 端点速度
+        double s = span / 1000.0;
+        double u2 = u * u, u3 = u2 * u;
+        double h00 = 2 * u3 - 3 * u2 + 1;
+        double h10 = u3 - 2 * u2 + u;
+        double h01 = -2 * u3 + 3 * u2;
+        double h11 = u3 - u2;
+        outX = h00 * xs[a] + h10 * s * vxs[a] + h01 * xs[b] + h11 * s * vxs[b];
+        outY = h00 * ys[a] + h10 * s * vys[a] + h01 * ys[b] + h11 * s * vys[b];
+    }
+
+    private void add(double t, double x, double y, double vx, double vy) {
+        newest = (newest + 1) & (CAP - 1);
+        ts[newest] = t;
+        xs[newest] = x;
+        ys[newest] = y;
+        vxs[newest] = vx;
+        vys[newest] = vy;
+        if (size < CAP) size++;
+    }
+}
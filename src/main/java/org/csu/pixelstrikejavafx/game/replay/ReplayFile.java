@@ -0,0 +1,100 @@
+package org.csu.pixelstrikejavafx.game.replay;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 回放文件（.psrep，大端）：
+ *   头 32 字节：magic(8) "PSREP001"，durationMs(8)，keyframeCount(4)，indexOffset(8)，recorderId(4)
+ *   记录：kind(1) tMs(8) len(4) UTF-8 payload(len)，按时间递增
+ *     K_KEYFRAME —— 换行分隔的一组消息，足以从零重建该时刻的世界
+ *     K_EVENT    —— 一条下行消息
+ *     K_VISUAL   —— 只影响画面的下行消息（shot），快进时可以跳过
+ *   索引（文件末尾）：keyframeCount × (tMs(8), offset(8))
+ * 定位到任意时刻 = 在索引里二分找到之前最近的关键帧 + 从那里向前重放不超过一个关键帧间隔的事件。
+ */
+public final class ReplayFile implements AutoCloseable {
+
+    static final long MAGIC = 0x5053524550303031L;   // "PSREP001"
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_HEADER = 1 + 8 + 4;
+
+    public static final byte K_KEYFRAME = 1;
+    public static final byte K_EVENT = 2;
+    public static final byte K_VISUAL = 3;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buf;
+    private final long durationMs;
+    private final int recorderId;
+    private final int end;
+    private final long[] keyTimes;
+    private final int[] keyOffsets;
+
+    public ReplayFile(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        long size = channel.size();
+        if (size < HEADER_SIZE || size > Integer.MAX_VALUE) throw new IOException("bad replay file: " + path);
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (buf.getLong(0) != MAGIC) throw new IOException("bad replay file: " + path);
+        durationMs = buf.getLong(8);
+        int count = buf.getInt(16);
+        long indexOffset = buf.getLong(20);
+        recorderId = buf.getInt(28);
+        if (indexOffset < HEADER_SIZE || indexOffset + count * 16L > size) throw new IOException("bad replay index: " + path);
+        end = (int) indexOffset;
+        keyTimes = new long[count];
+        keyOffsets = new int[count];
+        for (int i = 0; i < count; i++) {
+            keyTimes[i] = buf.getLong(end + i * 16);
+            keyOffsets[i] = (int) buf.getLong(end + i * 16 + 8);
+        }
+    }
+
+    public long getDurationMs() { return durationMs; }
+    /** 录制者自己的玩家 id（0 表示未知） */
+    public int getRecorderId() { return recorderId; }
+    public int getKeyframeCount() { return keyTimes.length; }
+
+    /** 时刻 t 之前（含）最近的关键帧序号；t 早于第一个关键帧时返回 0，没有关键帧返回 -1 */
+    public int keyframeAtOrBefore(long t) {
+        int lo = 0, hi = keyTimes.length - 1, found = keyTimes.length == 0 ? -1 : 0;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keyTimes[mid] <= t) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    public int keyframeOffset(int i) { return keyOffsets[i]; }
+
+    // —— 按偏移读记录 ——
+
+    /** 第一条记录的偏移 */
+    public int begin() { return HEADER_SIZE; }
+    /** 记录区结束（索引开始）的偏移 */
+    public int end() { return end; }
+    public byte kindAt(int pos) { return buf.get(pos); }
+    public long timeAt(int pos) { return buf.getLong(pos + 1); }
+    public int next(int pos) { return pos + RECORD_HEADER + buf.getInt(pos + 9); }
+
+    public String textAt(int pos) {
+        byte[] b = new byte[buf.getInt(pos + 9)];
+        buf.get(pos + RECORD_HEADER, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
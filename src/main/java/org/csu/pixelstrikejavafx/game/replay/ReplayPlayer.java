@@ -0,0 +1,96 @@
+package org.csu.pixelstrikejavafx.game.replay;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * 回放时钟：按播放时间把回放文件里的消息交给 sink（即 handleServerMessage），
+ * 和联机时收到的下行消息走同一套处理函数。
+ * seek() 先清空世界，再应用之前最近的关键帧，然后快进到目标时刻；快进期间跳过只影响画面的消息。
+ * 只在 FX 线程上使用。
+ */
+public final class ReplayPlayer {
+
+    /** -Dpixelstrike.replay=文件（.psrep，或 .pscap 抓包，会先转换） */
+    public static final String PROPERTY = "pixelstrike.replay";
+
+    private final ReplayFile file;
+    private final Consumer<String> sink;
+    private final Runnable resetWorld;
+    private int pos;
+    private double timeMs = 0;
+    private double speed = 1.0;
+    private boolean paused = false;
+
+    public ReplayPlayer(ReplayFile file, Consumer<String> sink, Runnable resetWorld) {
+        this.file = file;
+        this.sink = sink;
+        this.resetWorld = resetWorld;
+        this.pos = file.begin();
+    }
+
+    /** 打开回放；给的是抓包文件时先在旁边转换出 .psrep */
+    public static ReplayFile open(String path) throws IOException {
+        Path p = Path.of(path);
+        if (path.endsWith(".pscap")) {
+            Path converted = p.resolveSibling(p.getFileName().toString().replaceAll("\\.pscap$", ".psrep"));
+            if (!Files.exists(converted) || Files.getLastModifiedTime(converted).compareTo(Files.getLastModifiedTime(p)) < 0) {
+                ReplayWriter.convert(p, converted);
+            }
+            p = converted;
+        }
+        return new ReplayFile(p);
+    }
+
+    /** 每帧调用 */
+    public void update(double tpf) {
+        if (paused) return;
+        timeMs = Math.min(file.getDurationMs(), timeMs + tpf * 1000.0 * speed);
+        deliverUntil((long) timeMs, false);
+    }
+
+    /** 跳到时刻 t（毫秒，自动夹到 [0, 时长]） */
+    public void seek(long t) {
+        t = Math.max(0, Math.min(file.getDurationMs(), t));
+        resetWorld.run();
+        int k = file.keyframeAtOrBefore(t);
+        if (k < 0) {
+            pos = file.begin();
+        } else {
+            pos = file.keyframeOffset(k);
+            for (String line : file.textAt(pos).split("\n")) {
+                if (!line.isEmpty()) sink.accept(line);
+            }
+            pos = file.next(pos);
+        }
+        timeMs = t;
+        deliverUntil(t, true);
+    }
+
+    public void seekRelative(long deltaMs) { seek((long) timeMs + deltaMs); }
+
+    /** 跳到时长的 fraction（0~1） */
+    public void seekFraction(double fraction) { seek((long) (file.getDurationMs() * fraction)); }
+
+    private void deliverUntil(long t, boolean fastForward) {
+        int end = file.end();
+        while (pos < end && file.timeAt(pos) <= t) {
+            byte kind = file.kindAt(pos);
+            if (kind == ReplayFile.K_EVENT || (kind == ReplayFile.K_VISUAL && !fastForward)) {
+                sink.accept(file.textAt(pos));
+            }
+            pos = file.next(pos);
+        }
+    }
+
+    public void togglePause() { paused = !paused; }
+    public boolean isPaused() { return paused; }
+    public void setSpeed(double speed) { this.speed = Math.max(0.25, Math.min(4.0, speed)); }
+    public double getSpeed() { return speed; }
+    public long getTimeMs() { return (long) timeMs; }
+    public long getDurationMs() { return file.getDurationMs(); }
+    public int getRecorderId() { return file.getRecorderId(); }
+    public boolean isFinished() { return pos >= file.end(); }
+}
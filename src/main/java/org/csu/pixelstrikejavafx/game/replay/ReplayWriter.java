@@ -0,0 +1,325 @@
+package org.csu.pixelstrikejavafx.game.replay;
+
+import org.csu.pixelstrikejavafx.game.network.BinaryProtocol;
+import org.csu.pixelstrikejavafx.game.network.CaptureReader;
+import org.csu.pixelstrikejavafx.game.network.CaptureRecorder;
+import org.csu.pixelstrikejavafx.game.network.GameMessages;
+import org.csu.pixelstrikejavafx.game.network.JsonMessageReader;
+import org.csu.pixelstrikejavafx.game.network.StateDelta;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 把抓包文件（.pscap）转成可随机定位的回放文件（.psrep），格式见 ReplayFile。
+ * 转换时维护一份世界状态（玩家完整 state、血量、补给、记分板），每隔 KEYFRAME_INTERVAL_MS 写一个关键帧；
+ * 增量 state 在这里就还原成完整 state，回放时从任何关键帧开始都不缺基线。
+ * 本机上行的 state 也改写成带 id 的下行 state，录制者本人在回放里同样可见。
+ * bin1 帧用 BinaryProtocol 解码后进同一份世界状态，写出的事件和 JSON 帧的一样。
+ *
+ * 命令行：ReplayWriter in.pscap out.psrep
+ */
+public final class ReplayWriter {
+
+    public static final long KEYFRAME_INTERVAL_MS = 2000;
+
+    /** 回放里没有意义的下行类型（只对当时的本机连接有效） */
+    private static final String[] SKIPPED = {"welcome", "state_ack", "correction", "pong"};
+
+    // 世界状态
+    private final Map<Integer, GameMessages.State> states = new LinkedHashMap<>();
+    private final Map<Integer, StateDelta.Baselines> baselines = new HashMap<>();
+    private final Map<Integer, Integer> hp = new HashMap<>();
+    private final Map<Long, String> supplies = new LinkedHashMap<>();
+    private String scoreboard;
+    private int recorderId = 0;
+
+    private final JsonMessageReader reader = new JsonMessageReader();
+    private DataOutputStream out;
+    private long written;
+    private long lastKeyframeMs = -KEYFRAME_INTERVAL_MS;
+    private final List<long[]> index = new ArrayList<>();
+    private long lastTimeMs = 0;
+    private long binaryFrames = 0;
+
+    // bin1 解码用的复用对象；回调里不能抛 IOException，解出的事件先攒在 pending 里（kind, json）
+    private final GameMessages msgs = new GameMessages();
+    private final List<Pending> pending = new ArrayList<>();
+    private record Pending(byte kind, String json) { }
+    private final BinaryProtocol.Handler inboundHandler = new InboundHandler();
+    private final BinaryProtocol.UplinkHandler outboundHandler = new OutboundHandler();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: ReplayWriter in.pscap out.psrep");
+            return;
+        }
+        convert(Path.of(args[0]), Path.of(args[1]));
+    }
+
+    /** 转换一个抓包文件，返回关键帧个数 */
+    public static int convert(Path capture, Path replay) throws IOException {
+        ReplayWriter w = new ReplayWriter();
+        try (CaptureReader in = new CaptureReader(capture)) {
+            w.write(in, replay);
+        }
+        System.out.println(String.format(Locale.US, "[REPLAY] %s -> %s: %.1fs, %d keyframes, %d KB%s",
+                capture.getFileName(), replay.getFileName(), w.lastTimeMs / 1000.0, w.index.size(),
+                Files.size(replay) / 1024, w.binaryFrames > 0 ? ", " + w.binaryFrames + " bin1 frames" : ""));
+        return w.index.size();
+    }
+
+    private void write(CaptureReader in, Path replay) throws IOException {
+        try (DataOutputStream o = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(replay), 1 << 16))) {
+            out = o;
+            // 头部先占位，最后回填
+            o.writeLong(ReplayFile.MAGIC);
+            o.writeLong(0);   // durationMs
+            o.writeInt(0);    // keyframeCount
+            o.writeLong(0);   // indexOffset
+            o.writeInt(0);    // recorderId
+            written = ReplayFile.HEADER_SIZE;
+
+            while (in.next()) {
+                long t = in.timeNanos() / 1_000_000L;
+                // 关键帧在处理这条消息之前写：记录的是 t 时刻之前的世界，之后的事件都在它后面
+                if (t - lastKeyframeMs >= KEYFRAME_INTERVAL_MS) keyframe(t);
+                if (!in.isText()) {
+                    handleBinary(t, in.binary(), in.isInbound());
+                    continue;
+                }
+                String json = in.text();
+                if (in.direction() == CaptureRecorder.IN_TEXT) {
+                    handleInbound(t, json);
+                } else {
+                    handleOutbound(t, json);
+                }
+            }
+
+            for (long[] e : index) {
+                o.writeLong(e[0]);
+                o.writeLong(e[1]);
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(replay.toFile(), "rw")) {
+            raf.seek(8);
+            raf.writeLong(lastTimeMs);
+            raf.writeInt(index.size());
+            raf.writeLong(written);
+            raf.writeInt(recorderId);
+        }
+    }
+
+    // ================= 消息 =================
+
+    private void handleInbound(long t, CharSequence json) throws IOException {
+        if (!reader.parse(json)) return;
+        String type = reader.getString("type");
+        if (type == null) return;
+        if ("batch".equals(type)) {
+            for (CharSequence item : splitBatch(reader.getRaw("msgs"))) handleInbound(t, item);
+            return;
+        }
+        if ("welcome".equals(type)) recorderId = reader.getInt("id", 0);
+        for (String s : SKIPPED) if (s.equals(type)) return;
+
+        switch (type) {
+            case "state" -> {
+                GameMessages.State m = new GameMessages.State();
+                m.read(reader);
+                if (m.id == 0 || !applyState(m)) return;
+                event(t, ReplayFile.K_EVENT, keyframeJson(states.get(m.id)));
+                return;
+            }
+            case "join_broadcast" -> hp.putIfAbsent(reader.getInt("id", 0), 100);
+            case "leave" -> {
+                int id = reader.getInt("id", 0);
+                states.remove(id);
+                baselines.remove(id);
+                hp.remove(id);
+            }
+            case "health_update" -> hp.put(reader.getInt("userId", 0), reader.getInt("hp", 100));
+            case "respawn" -> {
+                GameMessages.State s = states.get(reader.getInt("id", 0));
+                if (s != null) {
+                    s.x = reader.getDouble("x", s.x);
+                    s.y = reader.getDouble("y", s.y);
+                }
+            }
+            case "supply_spawn" -> supplies.put(reader.getLong("dropId", -1L), json.toString());
+            case "supply_removed" -> supplies.remove(reader.getLong("dropId", -1L));
+            case "scoreboard_update" -> scoreboard = json.toString();
+            default -> { }
+        }
+        event(t, "shot".equals(type) ? ReplayFile.K_VISUAL : ReplayFile.K_EVENT, json.toString());
+    }
+
+    /** 本机发出的 state/shot 改写成录制者的下行消息；其余上行消息不进回放 */
+    private void handleOutbound(long t, CharSequence json) throws IOException {
+        if (recorderId == 0 || !reader.parse(json)) return;
+        String type = reader.getString("type");
+        if ("batch".equals(type)) {
+            for (CharSequence item : splitBatch(reader.getRaw("msgs"))) handleOutbound(t, item);
+            return;
+        }
+        if ("shot".equals(type)) {
+            event(t, ReplayFile.K_VISUAL, shotJson(recorderId, reader.getDouble("ox", 0.0), reader.getDouble("oy", 0.0),
+                    reader.getDouble("dx", 0.0), reader.getDouble("dy", 0.0), reader.getString("weaponType", GameMessages.WEAPONS)));
+            return;
+        }
+        if (!"state".equals(type)) return;
+        GameMessages.State m = new GameMessages.State();
+        m.read(reader);
+        m.id = recorderId;
+        if (applyState(m)) event(t, ReplayFile.K_EVENT, keyframeJson(states.get(m.id)));
+    }
+
+    /** bin1 帧：解码时就更新世界，事件解完再按原顺序写出 */
+    private void handleBinary(long t, byte[] frame, boolean inbound) throws IOException {
+        binaryFrames++;
+        pending.clear();
+        if (inbound) {
+            BinaryProtocol.decode(ByteBuffer.wrap(frame), msgs, inboundHandler);
+        } else if (recorderId != 0) {
+            BinaryProtocol.decodeUplink(ByteBuffer.wrap(frame), msgs, outboundHandler);
+        }
+        for (Pending e : pending) event(t, e.kind(), e.json());
+    }
+
+    private final class InboundHandler implements BinaryProtocol.Handler {
+        @Override public void onState(GameMessages.State m) {
+            if (m.id != 0 && applyState(m)) pending.add(new Pending(ReplayFile.K_EVENT, keyframeJson(states.get(m.id))));
+        }
+
+        @Override public void onShot(GameMessages.Shot m) {
+            pending.add(new Pending(ReplayFile.K_VISUAL, shotJson(m.attacker, m.ox, m.oy, m.dx, m.dy, m.weaponType)));
+        }
+
+        @Override public void onDamage(GameMessages.Damage m) {
+            pending.add(new Pending(ReplayFile.K_EVENT, String.format(Locale.US,
+                    "{\"type\":\"damage\",\"victim\":%d,\"attacker\":%d,\"damage\":%d,\"dead\":%b,\"kx\":%.1f,\"ky\":%.1f,\"serverTime\":%d}",
+                    m.victim, m.attacker, m.damage, m.dead, m.kx, m.ky, m.srvTS)));
+        }
+
+        @Override public void onRespawn(GameMessages.Respawn m) {
+            GameMessages.State s = states.get(m.id);
+            if (s != null) {
+                s.x = m.x;
+                s.y = m.y;
+            }
+            pending.add(new Pending(ReplayFile.K_EVENT, String.format(Locale.US,
+                    "{\"type\":\"respawn\",\"id\":%d,\"x\":%.1f,\"y\":%.1f}", m.id, m.x, m.y)));
+        }
+
+        @Override public void onSupplySpawn(GameMessages.SupplySpawn m) {
+            String json = String.format(Locale.US, "{\"type\":\"supply_spawn\",\"dropId\":%d,\"dropType\":\"%s\",\"x\":%.1f,\"y\":%.1f}",
+                    m.dropId, m.dropType, m.x, m.y);
+            supplies.put(m.dropId, json);
+            pending.add(new Pending(ReplayFile.K_EVENT, json));
+        }
+
+        @Override public void onSupplyRemoved(GameMessages.SupplyRemoved m) {
+            supplies.remove(m.dropId);
+            pending.add(new Pending(ReplayFile.K_EVENT, "{\"type\":\"supply_removed\",\"dropId\":" + m.dropId + "}"));
+        }
+    }
+
+    /** 本机上行的 bin1 记录，和 handleOutbound 一样改写成录制者的下行消息 */
+    private final class OutboundHandler implements BinaryProtocol.UplinkHandler {
+        @Override public void onState(GameMessages.State m) {
+            m.id = recorderId;
+            if (applyState(m)) pending.add(new Pending(ReplayFile.K_EVENT, keyframeJson(states.get(m.id))));
+        }
+
+        @Override public void onShot(GameMessages.Shot m) {
+            pending.add(new Pending(ReplayFile.K_VISUAL, shotJson(recorderId, m.ox, m.oy, m.dx, m.dy, m.weaponType)));
+        }
+
+        @Override public void onPickupSupply(long dropId) { }
+    }
+
+    /** 还原增量并更新世界；基线缺失时返回 false */
+    private boolean applyState(GameMessages.State m) {
+        StateDelta.Baselines b = baselines.computeIfAbsent(m.id, k -> new StateDelta.Baselines());
+        if (!b.rebuild(m)) return false;
+        GameMessages.State s = states.computeIfAbsent(m.id, k -> new GameMessages.State());
+        if (s.seq > 0 && m.seq > 0 && m.seq <= s.seq) return false;
+        s.copyFrom(m);
+        hp.putIfAbsent(m.id, 100);
+        return true;
+    }
+
+    // ================= 输出 =================
+
+    private void event(long t, byte kind, String json) throws IOException {
+        record(kind, t, json);
+        lastTimeMs = Math.max(lastTimeMs, t);
+    }
+
+    /** 关键帧：足以从零重建此刻世界的一组消息，换行分隔 */
+    private void keyframe(long t) throws IOException {
+        lastKeyframeMs = t;
+        index.add(new long[]{t, written});
+        StringBuilder sb = new StringBuilder(256 + states.size() * 200);
+        for (Map.Entry<Integer, Integer> e : hp.entrySet()) {
+            GameMessages.State s = states.get(e.getKey());
+            sb.append(s != null ? keyframeJson(s) : "{\"type\":\"join_broadcast\",\"id\":" + e.getKey() + "}").append('\n');
+            sb.append("{\"type\":\"health_update\",\"userId\":").append(e.getKey()).append(",\"hp\":").append(e.getValue()).append("}\n");
+        }
+        for (String s : supplies.values()) sb.append(s).append('\n');
+        if (scoreboard != null) sb.append(scoreboard).append('\n');
+        record(ReplayFile.K_KEYFRAME, t, sb.toString());
+    }
+
+    private void record(byte kind, long t, String payload) throws IOException {
+        byte[] b = payload.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(kind);
+        out.writeLong(t);
+        out.writeInt(b.length);
+        out.write(b);
+        written += ReplayFile.RECORD_HEADER + b.length;
+    }
+
+    static String keyframeJson(GameMessages.State m) {
+        return String.format(Locale.US,
+                "{\"type\":\"state\",\"id\":%d,\"x\":%.2f,\"y\":%.2f,\"vx\":%.2f,\"vy\":%.2f,\"facing\":%b,\"onGround\":%b,"
+                        + "\"anim\":\"%s\",\"phase\":\"%s\",\"kf\":true,\"ts\":%d,\"seq\":%d}",
+                m.id, m.x, m.y, m.vx, m.vy, m.facing, m.onGround,
+                m.anim == null ? "IDLE" : m.anim, m.phase == null ? "IDLE" : m.phase, m.ts, m.seq);
+    }
+
+    private static String shotJson(int attacker, double ox, double oy, double dx, double dy, String weapon) {
+        return String.format(Locale.US,
+                "{\"type\":\"shot\",\"attacker\":%d,\"ox\":%.2f,\"oy\":%.2f,\"dx\":%.4f,\"dy\":%.4f,\"weaponType\":\"%s\"}",
+                attacker, ox, oy, dx, dy, weapon == null ? "Pistol" : weapon);
+    }
+
+    private static List<CharSequence> splitBatch(CharSequence arr) {
+        List<CharSequence> items = new ArrayList<>();
+        if (arr == null) return items;
+        int i = 1, n = arr.length();
+        while (i < n) {
+            if (arr.charAt(i) == '{') {
+                int end = JsonMessageReader.skipNested(arr, i);
+                if (end < 0) break;
+                items.add(arr.subSequence(i, end));
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        return items;
+    }
+}
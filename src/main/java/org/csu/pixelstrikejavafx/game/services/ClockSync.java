@@ -0,0 +1,111 @@
+package org.csu.pixelstrikejavafx.game.services;
+
+import org.csu.pixelstrikejavafx.game.core.GameConfig;
+
+/**
+ * ping/pong 时钟同步：估计服务器时钟偏移、往返延迟（RTT）和抖动。
+ * 客户端发 {"type":"ping","t0":本地毫秒}，服务器原样带回 t0 并附上自己的 serverTime。
+ *   样本 RTT    = t1 - t0
+ *   样本 offset = serverTime + RTT/2 - t1（服务器时间 - 本地时间）
+ * offset 取最近 SAMPLES 个样本里 RTT 最小的那个（排队越少，对称假设越准）；
+ * RTT 与抖动按 TCP 的 SRTT / RTTVAR 方式平滑（1/8、1/4）。
+ * 本地时间用 System.nanoTime() 换算的毫秒，不受系统时间调整影响。
+ */
+public class ClockSync {
+
+    public enum Quality { UNKNOWN, GOOD, FAIR, POOR }
+
+    private static final int SAMPLES = 16;
+    private static final int BURST = 5;   // 刚连上时先快速 ping 几次，尽快收敛
+
+    private final double[] sampleRtt = new double[SAMPLES];
+    private final double[] sampleOffset = new double[SAMPLES];
+    private int sampleCount = 0;
+    private int next = 0;
+
+    private boolean synced = false;
+    private double offset;
+    private double srtt;
+    private double rttVar;
+    private double lastRtt = Double.NaN;
+
+    private double sinceLastPing = Double.POSITIVE_INFINITY;
+    private int pingsSent = 0;
+
+    /** 当前本地单调时钟（毫秒） */
+    public static double localNowMs() {
+        return System.nanoTime() / 1_000_000.0;
+    }
+
+    /**
+     * 每帧调用，到点时返回 true 表示应发出一个 ping。
+     * @param tpf 本帧秒数
+     */
+    public boolean shouldPing(double tpf) {
+        sinceLastPing += tpf;
+        double interval = pingsSent < BURST ? GameConfig.Net.CLOCK_BURST_INTERVAL : GameConfig.Net.CLOCK_PING_INTERVAL;
+        if (sinceLastPing < interval) return false;
+        sinceLastPing = 0;
+        pingsSent++;
+        return true;
+    }
+
+    /** 收到 pong */
+    public void onPong(double t0, long serverTime, double t1) {
+        double rtt = t1 - t0;
+        if (rtt < 0 || serverTime <= 0) return;
+
+        sampleRtt[next] = rtt;
+        sampleOffset[next] = serverTime + rtt / 2.0 - t1;
+        next = (next + 1) % SAMPLES;
+        if (sampleCount < SAMPLES) sampleCount++;
+
+        int best = 0;
+        for (int i = 1; i < sampleCount; i++) {
+            if (sampleRtt[i] < sampleRtt[best]) best = i;
+        }
+        offset = sampleOffset[best];
+
+        if (!synced) {
+            srtt = rtt;
+            rttVar = rtt / 2.0;
+            synced = true;
+        } else {
+            rttVar += (Math.abs(srtt - rtt) - rttVar) / 4.0;
+            srtt += (rtt - srtt) / 8.0;
+        }
+        lastRtt = rtt;
+    }
+
+    /** 重新连接 / 重新 welcome 后清空估计 */
+    public void reset() {
+        sampleCount = 0;
+        next = 0;
+        synced = false;
+        lastRtt = Double.NaN;
+        sinceLastPing = Double.POSITIVE_INFINITY;
+        pingsSent = 0;
+    }
+
+    public boolean isSynced() { return synced; }
+    /** 服务器时间 - 本地单调时间（毫秒） */
+    public double getOffsetMs() { return offset; }
+    /** 平滑后的 RTT（毫秒） */
+    public double getRttMs() { return srtt; }
+    /** 最近一次 ping 的原始 RTT（毫秒） */
+    public double getLastRttMs() { return lastRtt; }
+    /** RTT 抖动（毫秒） */
+    public double getJitterMs() { return rttVar; }
+
+    /** 估计的服务器当前时间（毫秒） */
+    public double serverNowMs() { return localNowMs() + offset; }
+    /** 把服务器时间戳换算到本地单调时钟 */
+    public double toLocalMs(long serverTime) { return serverTime - offset; }
+
+    public Quality getQuality() {
+        if (!synced) return Quality.UNKNOWN;
+        if (srtt <= GameConfig.Net.PING_GOOD_MS && rttVar <= GameConfig.Net.JITTER_GOOD_MS) return Quality.GOOD;
+        if (srtt <= GameConfig.Net.PING_FAIR_MS && rttVar <= GameConfig.Net.JITTER_FAIR_MS) return Quality.FAIR;
+        return Quality.POOR;
+    }
+}
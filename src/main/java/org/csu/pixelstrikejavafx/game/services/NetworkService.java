@@ -1,10 +1,18 @@
 package org.csu.pixelstrikejavafx.game.services;
 
 import com.almasb.fxgl.dsl.FXGL;
-import javafx.application.Platform;
+import org.csu.pixelstrikejavafx.game.network.BinaryProtocol;
+import org.csu.pixelstrikejavafx.game.network.CaptureRecorder;
+import org.csu.pixelstrikejavafx.game.network.GameMessages;
+import org.csu.pixelstrikejavafx.game.network.InboundQueue;
 import org.csu.pixelstrikejavafx.game.network.NetClient;
+import org.csu.pixelstrikejavafx.game.network.NetConditioner;
+import org.csu.pixelstrikejavafx.game.network.NetMetrics;
+import org.csu.pixelstrikejavafx.game.network.StateDelta;
+import org.csu.pixelstrikejavafx.game.core.GameConfig;
 import org.csu.pixelstrikejavafx.core.GlobalState;
 
+import java.nio.ByteBuffer;
 import java.util.function.Consumer;
 
 public class NetworkService {
@@ -14,60 +22,363 @@ public class NetworkService {
     private boolean joinedAck = false;
     private long welcomeSrvTS = 0L;
     private Integer myPlayerId = null;
+    // 连接 URL 上的 proto=bin1 只是声明客户端支持；welcome 中服务器确认后才切到二进制帧，否则一直用 JSON。
+    // -Dpixelstrike.net.bin1=false 不声明，强制 JSON（抓包对比、排查协议问题用）
+    private final boolean offerBinary = !"false".equalsIgnoreCase(System.getProperty("pixelstrike.net.bin1"));
+    private boolean binaryMode = false;
+    // welcome 中 delta=true 时只发变化字段
+    private boolean deltaMode = false;
+    // welcome 中 batch=true 时文本消息按帧合并
+    private boolean batchMode = false;
+    private final StateDelta.Encoder deltaEncoder = new StateDelta.Encoder(GameConfig.Net.STATE_KEYFRAME_INTERVAL);
+    private final StateDelta.Snapshot outState = new StateDelta.Snapshot();
+    private final ClockSync clockSync = new ClockSync();
+    // WS 线程收到的消息先进这里，FX 线程在 onUpdate 里统一取出
+    private final InboundQueue inbound = new InboundQueue(GameConfig.Net.INBOUND_QUEUE_CAPACITY);
+
+    // 断线重连：connectionLost 由 WS 线程置位，其余只在 FX 线程上读写
+    private String connectUrl;
+    private volatile boolean connectionLost = false;
+    private boolean reconnecting = false;
+    private boolean attemptInProgress = false;
+    private int reconnectAttempt = 0;
+    private double reconnectTimer = 0;
+    private double attemptAge = 0;
+    private double heartbeatTimer = 0;
+    private boolean leaving = false;
+    private long lastAckedSeq = 0;
+    // 最近一条发出的 state 的 ts
+    private long lastStateTs = 0;
+
+    private final NetMetrics metrics = new NetMetrics();
+    private boolean metricsDumped = false;
+    // 抓包（-Dpixelstrike.capture 时打开），整场对局一个文件，重连后继续写
+    private CaptureRecorder capture;
 
     private final Consumer<String> onMessage;
+    private final GameMessages messages;
+    private final BinaryProtocol.Handler binaryHandler;
+    private final MeteredHandler meteredHandler = new MeteredHandler();
 
-    public NetworkService(Consumer<String> onMessage) {
+    public NetworkService(Consumer<String> onMessage, GameMessages messages, BinaryProtocol.Handler binaryHandler) {
         this.onMessage = onMessage;
+        this.messages = messages;
+        this.binaryHandler = binaryHandler;
+    }
+
+    /**
+     * 包在 binaryHandler 外面，按记录类型记下行统计（和 ServerMessageDispatcher 按 JSON 类型记的对得上）。
+     * 每个回调发生时 frame 的 position 正好在这条记录末尾，recordStart 是它的开头（类型字节）。
+     */
+    private final class MeteredHandler implements BinaryProtocol.Handler {
+        ByteBuffer frame;
+        int recordStart;
+
+        void decode(ByteBuffer b) {
+            frame = b;
+            recordStart = b.position() + 1;   // 跳过魔数
+            BinaryProtocol.decode(b, messages, this);
+        }
+
+        private void done(long t0) {
+            long elapsed = System.nanoTime() - t0;
+            int end = frame.position();
+            metrics.recordInBinary(frame.get(recordStart), end - recordStart, elapsed);
+            recordStart = end;
+        }
+
+        @Override public void onState(GameMessages.State m) {
+            long t0 = System.nanoTime();
+            binaryHandler.onState(m);
+            done(t0);
+        }
+
+        @Override public void onShot(GameMessages.Shot m) {
+            long t0 = System.nanoTime();
+            binaryHandler.onShot(m);
+            done(t0);
+        }
+
+        @Override public void onDamage(GameMessages.Damage m) {
+            long t0 = System.nanoTime();
+            binaryHandler.onDamage(m);
+            done(t0);
+        }
+
+        @Override public void onRespawn(GameMessages.Respawn m) {
+            long t0 = System.nanoTime();
+            binaryHandler.onRespawn(m);
+            done(t0);
+        }
+
+        @Override public void onSupplySpawn(GameMessages.SupplySpawn m) {
+            long t0 = System.nanoTime();
+            binaryHandler.onSupplySpawn(m);
+            done(t0);
+        }
+
+        @Override public void onSupplyRemoved(GameMessages.SupplyRemoved m) {
+            long t0 = System.nanoTime();
+            binaryHandler.onSupplyRemoved(m);
+            done(t0);
+        }
     }
 
     public void connect() {
         String baseUrl = GlobalState.currentGameServerUrl;
+        String token = GlobalState.authToken;
+        Long gameId = GlobalState.currentGameId;
+        // 离线开发：-Dpixelstrike.gameServerUrl=ws://localhost:8090/game 指向 devserver.LocalGameServer
+        String devUrl = System.getProperty("pixelstrike.gameServerUrl");
+        if (devUrl != null && !devUrl.isBlank()) {
+            baseUrl = devUrl;
+            if (token == null) token = "dev";
+            if (gameId == null) gameId = 0L;
+        }
         if (baseUrl == null || baseUrl.isBlank()) {
             FXGL.getDialogService().showMessageBox("错误：找不到游戏服务器地址！", () -> FXGL.getGameController().gotoMainMenu());
             return;
         }
 
-        String token = GlobalState.authToken;
-        Long gameId = GlobalState.currentGameId;
         if (token == null || gameId == null) {
             FXGL.getDialogService().showMessageBox("错误：无法连接游戏服务器，认证信息不完整！", () -> FXGL.getGameController().gotoMainMenu());
             return;
         }
 
-        String finalUrl = baseUrl + "?gameId=" + gameId + "&token=" + token;
+        String finalUrl = baseUrl + "?gameId=" + gameId + "&token=" + token
+                + (offerBinary ? "&proto=" + BinaryProtocol.PROTO_NAME : "");
         System.out.println("=== Connecting to game server with final URL: " + finalUrl);
 
-        netClient = new NetClient();
-        netClient.connect(finalUrl,
+        connectUrl = finalUrl;
+        if (capture == null) capture = CaptureRecorder.fromSystemProperty();
+        openClient(finalUrl);
+    }
+
+    private void openClient(String url) {
+        NetClient client = new NetClient();
+        client.setMetrics(metrics);
+        client.setRecorder(capture);
+        netClient = client;
+        connectionLost = false;
+        client.setOnClosed(reason -> {
+            if (client == netClient) connectionLost = true;
+        });
+        client.connect(url,
                 () -> System.out.println("[WS] >> Connection opened. Waiting for 'welcome' message..."),
-                msg -> Platform.runLater(() -> onMessage.accept(msg))
+                this::enqueue,
+                this::enqueue
         );
+        applyBatching();
     }
 
-    public void sendState(double x, double y, double vx, double vy, boolean facing, boolean onGround, String anim, String phase) {
-        if (netClient != null && joinedAck) {
-            netClient.sendState(x, y, vx, vy, facing, onGround, anim, phase, System.currentTimeMillis(), seq++);
+    /**
+     * 每帧调用：发心跳、判活，断线后按指数退避重连。
+     * 重连 URL 带上 resume=最后一条被确认的 seq，服务器能恢复会话时会回 welcome(resumed=true) 并补发快照。
+     */
+    public void updateConnection(double tpf) {
+        if (netClient == null || leaving) return;
+
+        if (!reconnecting) {
+            heartbeatTimer += tpf;
+            if (heartbeatTimer >= GameConfig.Net.HEARTBEAT_INTERVAL) {
+                heartbeatTimer = 0;
+                netClient.sendHeartbeat();
+            }
+            boolean silent = joinedAck && netClient.getSecondsSinceReceive() > GameConfig.Net.LIVENESS_TIMEOUT;
+            if (connectionLost || silent) {
+                System.out.println("[WS] connection lost (" + (silent ? "no data" : "closed") + "), reconnecting...");
+                netClient.abort();
+                joinedAck = false;
+                reconnecting = true;
+                reconnectAttempt = 0;
+                scheduleReconnect();
+            }
+            return;
+        }
+
+        if (attemptInProgress) {
+            attemptAge += tpf;
+            if (joinedAck) {
+                // onWelcome 已处理完，恢复正常
+                System.out.println("[WS] reconnected after " + reconnectAttempt + " attempt(s)");
+                reconnecting = false;
+                attemptInProgress = false;
+                heartbeatTimer = 0;
+            } else if (connectionLost || attemptAge > GameConfig.Net.RECONNECT_ATTEMPT_TIMEOUT) {
+                netClient.abort();
+                attemptInProgress = false;
+                scheduleReconnect();
+            }
+            return;
         }
+
+        reconnectTimer -= tpf;
+        if (reconnectTimer > 0) return;
+        if (reconnectAttempt >= GameConfig.Net.RECONNECT_MAX_ATTEMPTS) {
+            leaving = true;
+            reconnecting = false;
+            FXGL.getDialogService().showMessageBox("与游戏服务器的连接已断开。", () -> FXGL.getGameController().gotoMainMenu());
+            return;
+        }
+        reconnectAttempt++;
+        attemptInProgress = true;
+        attemptAge = 0;
+        String url = connectUrl + "&resume=" + lastAckedSeq + (myPlayerId != null ? "&playerId=" + myPlayerId : "");
+        System.out.println("[WS] reconnect attempt " + reconnectAttempt + " -> " + url);
+        openClient(url);
+    }
+
+    private void scheduleReconnect() {
+        double delay = Math.min(GameConfig.Net.RECONNECT_MAX_DELAY,
+                GameConfig.Net.RECONNECT_BASE_DELAY * Math.pow(2, reconnectAttempt));
+        reconnectTimer = delay * (0.8 + 0.4 * Math.random());
+    }
+
+    /** 正在重连（远端玩家不应因为收不到消息被清掉） */
+    public boolean isReconnecting() { return reconnecting; }
+
+    // WS 监听线程
+    private void enqueue(Object msg) {
+        if (!inbound.offer(msg)) {
+            long d = inbound.getDropped();
+            if (d == 1 || d % 1000 == 0) System.err.println("[WS] inbound queue full, dropped " + d + " messages");
+        }
+    }
+
+    /**
+     * FX 线程每帧调用一次：按到达顺序处理排队的消息，最多 budget 条。
+     * @return 本帧处理的条数
+     */
+    public int drainInbound(int budget) {
+        int n = 0;
+        Object msg;
+        while (n < budget && (msg = inbound.poll()) != null) {
+            n++;
+            metrics.setCurrentArrival(inbound.lastStamp());
+            if (msg instanceof String json) {
+                metrics.recordFrameIn(json.length());
+                onMessage.accept(json);
+            } else {
+                byte[] frame = (byte[]) msg;
+                metrics.recordFrameIn(frame.length);
+                try {
+                    meteredHandler.decode(ByteBuffer.wrap(frame));
+                } catch (Exception e) {
+                    System.err.println("binary frame error: " + e);
+                }
+            }
+        }
+        return n;
+    }
+
+    /** 出站队列深度、发送延迟等指标从这里取；未连接时为 null */
+    public NetClient getNetClient() { return netClient; }
+    public NetMetrics getMetrics() { return metrics; }
+
+    /** 流量统计 + 链路状态（RTT、收发队列），给开发者浮层和退出报告用 */
+    public String buildStatsReport(int maxTypes) {
+        StringBuilder sb = new StringBuilder(metrics.report(maxTypes));
+        sb.append(String.format(java.util.Locale.US, "rtt %.0fms ±%.0f  inbound depth %d dropped %d",
+                clockSync.getRttMs(), clockSync.getJitterMs(), inbound.size(), inbound.getDropped()));
+        NetClient c = netClient;
+        if (c != null) {
+            sb.append(String.format(java.util.Locale.US,
+                    "%nsend depth %d (max %d)  latency %.1fms (max %.1f)  dropped stale %d reliable %d",
+                    c.getSendQueueDepth(), c.getMaxSendQueueDepth(), c.getSendLatencyMs(), c.getMaxSendLatencyMs(),
+                    c.getDroppedStaleFrames(), c.getDroppedReliableFrames()));
+        }
+        NetConditioner sim = NetConditioner.get();
+        if (sim.isActive()) sb.append(System.lineSeparator()).append(sim.report());
+        return sb.toString();
+    }
+
+    /** 对局结束/退出时打印一次完整报告，并关闭抓包文件 */
+    public void dumpMetrics() {
+        if (metricsDumped || netClient == null) return;
+        metricsDumped = true;
+        System.out.println("=== [NET] match traffic report ===\n" + buildStatsReport(Integer.MAX_VALUE));
+        if (capture != null) capture.close();
+    }
+
+    public int getInboundDepth() { return inbound.size(); }
+    public long getInboundDropped() { return inbound.getDropped(); }
+
+    /** @return 这条 state 的 seq，没发出去时为 -1 */
+    public long sendState(double x, double y, double vx, double vy, boolean facing, boolean onGround, String anim, String phase) {
+        if (netClient == null || !joinedAck) return -1;
+        long sent = seq;
+        long ts = System.currentTimeMillis();
+        lastStateTs = ts;
+        if (deltaMode) {
+            outState.set(seq++, x, y, vx, vy, facing, onGround, anim, phase);
+            int mask = deltaEncoder.encode(outState);
+            boolean kf = deltaEncoder.isKeyframe();
+            long base = deltaEncoder.baselineSeq();
+            if (binaryMode) {
+                netClient.sendBinary(BinaryProtocol.encodeStateDelta(outState, mask, kf, base, ts));
+            } else {
+                netClient.sendStateDelta(outState, mask, kf, base, ts);
+            }
+        } else if (binaryMode) {
+            netClient.sendBinary(BinaryProtocol.encodeState(x, y, vx, vy, facing, onGround, anim, phase, ts, seq++));
+        } else {
+            netClient.sendState(x, y, vx, vy, facing, onGround, anim, phase, ts, seq++);
+        }
+        return sent;
     }
 
-    public void sendShot(double ox, double oy, double dx, double dy, double range, int dmg, long ts, String weaponType) {
+    /**
+     * @param vt 开枪时看到的目标时刻（state 的 ts 域），服务器按它回退目标做命中判定；0 表示不知道
+     */
+    public void sendShot(double ox, double oy, double dx, double dy, double range, int dmg, long ts, long vt, String weaponType) {
         if (netClient != null && joinedAck) {
+            if (binaryMode) {
+                netClient.sendBinary(BinaryProtocol.encodeShot(ox, oy, dx, dy, range, dmg, ts, vt, seq++, weaponType));
+                return;
+            }
             String json = String.format(java.util.Locale.US,
                     "{\"type\":\"shot\",\"ox\":%.2f,\"oy\":%.2f,\"dx\":%.4f,\"dy\":%.4f," +
-                            "\"range\":%.2f,\"damage\":%d,\"ts\":%d,\"seq\":%d,\"weaponType\":\"%s\"}",
-                    ox, oy, dx, dy, range, dmg, ts, seq++, weaponType);
+                            "\"range\":%.2f,\"damage\":%d,\"ts\":%d,%s\"seq\":%d,\"weaponType\":\"%s\"}",
+                    ox, oy, dx, dy, range, dmg, ts, vt > 0 ? "\"vt\":" + vt + "," : "", seq++, weaponType);
             netClient.send(json);
         }
     }
 
+    /** 最近一次 sendState() 发出的 state.ts */
+    public long getLastStateTs() { return lastStateTs; }
+
+    /**
+     * 每帧调用：到点时发 ping 做时钟同步。
+     * bin1 模式下 ping/pong 也走 JSON：bin1 只覆盖高频消息，ping 每几秒一次，pong 的 t0 要原样带回小数毫秒
+     */
+    public void updateClockSync(double tpf) {
+        if (netClient != null && joinedAck && clockSync.shouldPing(tpf)) {
+            netClient.send(String.format(java.util.Locale.US, "{\"type\":\"ping\",\"t0\":%.3f}", ClockSync.localNowMs()));
+        }
+    }
+
+    public void onPong(GameMessages.Pong msg) {
+        clockSync.onPong(msg.t0, msg.serverTime, ClockSync.localNowMs());
+    }
+
     public void sendLeaveMessage() {
+        leaving = true;
         if (netClient != null) {
             netClient.send("{\"type\":\"leave\"}");
+            netClient.flush();   // 之后不会再有 onUpdate 来冲刷
         }
     }
+
+    /** 每帧末尾调用一次：把本帧攒下的消息合成一帧发出 */
+    public void flush() {
+        if (netClient != null) netClient.flush();
+    }
     public void sendSupplyPickup(long dropId) {
         if (netClient != null && joinedAck) {
+            if (binaryMode) {
+                netClient.sendBinary(BinaryProtocol.encodePickupSupply(dropId));
+                return;
+            }
             String json = "{\"type\":\"pickup_supply\",\"dropId\":" + dropId + "}";
             netClient.send(json);
         }
@@ -80,4 +391,32 @@ public class NetworkService {
     public void setWelcomeSrvTS(long welcomeSrvTS) { this.welcomeSrvTS = welcomeSrvTS; }
     public Integer getMyPlayerId() { return myPlayerId; }
     public void setMyPlayerId(Integer myPlayerId) { this.myPlayerId = myPlayerId; }
+    public boolean isBinaryMode() { return binaryMode; }
+    public void setBinaryMode(boolean binaryMode) {
+        this.binaryMode = binaryMode;
+        applyBatching();
+    }
+    public boolean isBatchMode() { return batchMode; }
+    public void setBatchMode(boolean batchMode) {
+        this.batchMode = batchMode;
+        applyBatching();
+    }
+
+    // bin1 帧本身就支持多条记录，只要在二进制模式下就可以合并
+    private void applyBatching() {
+        if (netClient != null) netClient.setBatching(batchMode, binaryMode);
+    }
+    public boolean isDeltaMode() { return deltaMode; }
+    public void setDeltaMode(boolean deltaMode) {
+        this.deltaMode = deltaMode;
+        deltaEncoder.reset();
+    }
+    /** 服务器确认（ack 或回显本机 state）后推进增量基线 */
+    public void acknowledgeState(long seq) {
+        deltaEncoder.acknowledge(seq);
+        lastAckedSeq = Math.max(lastAckedSeq, seq);
+    }
+    public void setKeyframeInterval(int frames) { deltaEncoder.setKeyframeInterval(frames); }
+    /** 服务器时钟偏移 / RTT / 抖动估计，供插值、延迟补偿和 HUD 使用 */
+    public ClockSync getClockSync() { return clockSync; }
 }
\ No newline at end of file
@@ -9,17 +9,30 @@ import javafx.scene.effect.ColorAdjust;
 import org.csu.pixelstrikejavafx.PixelGameApp;
 import org.csu.pixelstrikejavafx.game.core.GameConfig;
 import org.csu.pixelstrikejavafx.game.core.GameType;
+import org.csu.pixelstrikejavafx.game.network.GameMessages;
 import org.csu.pixelstrikejavafx.game.player.Player;
+import org.csu.pixelstrikejavafx.game.player.PositionHistory;
 import org.csu.pixelstrikejavafx.game.player.RemoteAvatar;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 public class PlayerManager {
 
     private Player localPlayer;
     private final Map<Integer, PixelGameApp.RemotePlayer> remotePlayers = new ConcurrentHashMap<>();
     private JsonObject characterSelections;
+    // 本机玩家的位置历史（ts 域 = 自己发出的 state.ts）
+    private final PositionHistory localHistory = new PositionHistory();
+    private Consumer<HitPrediction> hitListener;
+
+    /** 本机开枪时按“看到的画面”预测出的命中 */
+    public static final class HitPrediction {
+        public int victimId;          // 0 表示没打中任何人
+        public double hitX, hitY;     // 命中点（世界坐标）
+        public long viewTs;           // 开枪时看到的目标时刻，随 shot 发给服务器（vt）
+    }
 
     public void setCharacterSelections(JsonObject selections) {
         this.characterSelections = selections;
@@ -27,13 +40,108 @@ public class PlayerManager {
 
     public Player createLocalPlayer(NetworkService networkService, int characterId) { // <-- 修改方法签名
         localPlayer = new Player(500, GameConfig.MAP_H - 211 - 128, characterId); // <-- 传递 characterId
-        localPlayer.getShootingSys().setShotReporter(
-                (ox, oy, dx, dy, range, dmg, ts, weaponType) -> networkService.sendShot(ox, oy, dx, dy, range, dmg, ts, weaponType)
-        );
+        localHistory.clear();
+        localPlayer.getShootingSys().setShotReporter((ox, oy, dx, dy, range, dmg, ts, weaponType) -> {
+            HitPrediction hit = predictHit(ox, oy, dx, dy, range);
+            networkService.sendShot(ox, oy, dx, dy, range, dmg, ts, hit.viewTs, weaponType);
+            if (hit.victimId != 0 && hitListener != null) hitListener.accept(hit);
+        });
         return localPlayer;
     }
 
+    /** 本机预测命中时回调（FX 线程），用来立刻显示命中标记 */
+    public void setHitListener(Consumer<HitPrediction> listener) {
+        this.hitListener = listener;
+    }
+
+    /**
+     * 用每个远端玩家“最后一次渲染”的位置做射线判定：打的就是玩家屏幕上看到的画面。
+     * viewTs 取被命中者的渲染时刻（那个玩家自己的 ts 时钟）；没打中时为 0，服务器不回退。
+     */
+    public HitPrediction predictHit(double ox, double oy, double dx, double dy, double range) {
+        HitPrediction hit = new HitPrediction();
+        double len = Math.hypot(dx, dy);
+        if (len < 1e-9) return hit;
+        dx /= len;
+        dy /= len;
+
+        double best = range;
+        for (Map.Entry<Integer, PixelGameApp.RemotePlayer> e : remotePlayers.entrySet()) {
+            PositionHistory h = e.getValue().history;
+            if (h.isEmpty()) continue;
+            double view = h.newestTime();
+            if ("DIE".equals(e.getValue().anim)) continue;
+            double t = h.rayHit(view, ox, oy, dx, dy);
+            if (t >= 0 && t <= best) {
+                best = t;
+                hit.victimId = e.getKey();
+                hit.viewTs = (long) view;
+            }
+        }
+        if (hit.victimId != 0) {
+            hit.hitX = ox + dx * best;
+            hit.hitY = oy + dy * best;
+        }
+        return hit;
+    }
+
+    /** 每发出一条 state 记录一次：ts 就是这条 state 的 ts，位置就是发出去的位置，和别人收到的一致 */
+    public void recordLocalHistory(long ts, double x, double y) {
+        localHistory.record(ts, x, y);
+    }
+
+    /**
+     * 回退查询入口：playerId 为 0 或本机 id 时返回本机历史，否则返回对应远端的历史；没有这个玩家返回 null。
+     * 用法：h.rewind(t) 后取 h.getX()/getY()，或 h.rayHit(t, ...) 直接判定。
+     */
+    public PositionHistory getHistory(int playerId, Integer myPlayerId) {
+        if (playerId == 0 || (myPlayerId != null && playerId == myPlayerId)) return localHistory;
+        PixelGameApp.RemotePlayer rp = remotePlayers.get(playerId);
+        return rp == null ? null : rp.history;
+    }
+
+    public PositionHistory getLocalHistory() {
+        return localHistory;
+    }
+
+    /**
+     * 网络 state 入口：增量消息先用该玩家的基线还原成完整状态，再暂存为该玩家的待应用 state。
+     * 同一帧内同一玩家的多条 state 只保留 seq 最新的一条，由 applyPendingStates() 统一应用；
+     * 基线每条都要重建，否则之后引用这些 seq 的增量就还原不了。
+     */
+    public void updateRemotePlayer(GameMessages.State m) {
+        PixelGameApp.RemotePlayer rp = remotePlayers.get(m.id);
+        if (rp == null) {
+            if (!m.keyframe) return; // 还没有这个玩家的基线，等下一个关键帧
+            // 第一次见到这个玩家：立即创建
+            updateRemotePlayer(m.id, m.x, m.y, m.facing, m.anim, m.phase, m.vx, m.vy, m.onGround, m.seq, m.ts);
+            rp = remotePlayers.get(m.id);
+            if (rp != null) rp.baselines.rebuild(m);
+            return;
+        }
+        if (!rp.baselines.rebuild(m)) return;   // 基线已过期，丢弃
+
+        if (rp.hasPendingState && m.seq > 0 && m.seq <= rp.pendingState.seq) return;
+        rp.pendingState.copyFrom(m);
+        rp.hasPendingState = true;
+    }
+
+    /** 每帧收完消息后调用：每个远端玩家最多应用一条 state */
+    public void applyPendingStates() {
+        for (PixelGameApp.RemotePlayer rp : remotePlayers.values()) {
+            if (!rp.hasPendingState) continue;
+            rp.hasPendingState = false;
+            GameMessages.State m = rp.pendingState;
+            updateRemotePlayer(m.id, m.x, m.y, m.facing, m.anim, m.phase, m.vx, m.vy, m.onGround, m.seq, m.ts);
+        }
+    }
+
     public void updateRemotePlayer(int id, double x, double y, boolean facing, String anim, String phase, double vx, double vy, boolean onGround, long seq) {
+        updateRemotePlayer(id, x, y, facing, anim, phase, vx, vy, onGround, seq, 0L);
+    }
+
+    /** ts 为发送端时间戳（毫秒）；为 0 表示没有时间戳（加入/复活），按瞬移处理 */
+    public void updateRemotePlayer(int id, double x, double y, boolean facing, String anim, String phase, double vx, double vy, boolean onGround, long seq, long ts) {
         PixelGameApp.RemotePlayer rp = remotePlayers.computeIfAbsent(id, key -> {
             System.out.println("Spawning new remote player with id: " + id);
             int remoteCharacterId = 1; // 默认为1
@@ -59,6 +167,15 @@ public class PlayerManager {
         rp.lastVY = vy; // 修正：之前遗漏了vy的赋值
         rp.onGround = onGround;
         rp.lastUpdate = System.currentTimeMillis();
+
+        double nowMs = System.nanoTime() / 1_000_000.0;
+        if (ts > 0) {
+            rp.lastTs = ts;
+            rp.snapshots.push(ts, nowMs, x, y, vx, vy);
+        } else {
+            rp.snapshots.reset(nowMs, x, y);
+            rp.history.clear();
+        }
     }
 
 
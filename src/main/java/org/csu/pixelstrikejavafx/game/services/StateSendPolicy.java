@@ -0,0 +1,73 @@
+package org.csu.pixelstrikejavafx.game.services;
+
+import org.csu.pixelstrikejavafx.game.core.GameConfig;
+import org.csu.pixelstrikejavafx.game.player.Player;
+
+/**
+ * 发送端航位推测（dead reckoning）：决定这一帧要不要上报 state。
+ * 模拟远端看到的位置 = 上次发送的位置 + 上次发送的速度 × 经过时间（远端插值缓冲饿了时也是这样线性外推），
+ * 只有在以下情况才发送：
+ *  - 推测位置与真实位置的误差超过 positionThreshold，或速度变化超过 velocityThreshold；
+ *  - Player.State / anim / phase / 朝向 / 着地发生变化；
+ *  - 距上次发送超过 heartbeatInterval（保活，防止远端 3 秒无更新被清掉）。
+ * alwaysSend 打开时退回每帧都发，便于调试（-Dpixelstrike.net.alwaysSend=true）。
+ */
+public class StateSendPolicy {
+
+    private double positionThreshold = GameConfig.Net.DR_POSITION_THRESHOLD;
+    private double velocityThreshold = GameConfig.Net.DR_VELOCITY_THRESHOLD;
+    private double heartbeatInterval = GameConfig.Net.DR_HEARTBEAT_INTERVAL;
+    private boolean alwaysSend = Boolean.getBoolean("pixelstrike.net.alwaysSend");
+
+    // 上一次真正发出去的状态
+    private boolean hasSent = false;
+    private double sentTime;
+    private double sentX, sentY, sentVX, sentVY;
+    private boolean sentFacing, sentOnGround;
+    private Player.State sentState;
+    private String sentAnim, sentPhase;
+
+    /** @param now 单调递增的秒数（游戏时间即可） */
+    public boolean shouldSend(double now, double x, double y, double vx, double vy, boolean facing, boolean onGround,
+                              Player.State state, String anim, String phase) {
+        if (alwaysSend || !hasSent) return true;
+
+        double dt = now - sentTime;
+        if (dt >= heartbeatInterval) return true;
+
+        if (state != sentState || facing != sentFacing || onGround != sentOnGround
+                || !java.util.Objects.equals(anim, sentAnim) || !java.util.Objects.equals(phase, sentPhase)) {
+            return true;
+        }
+
+        double ex = sentX + sentVX * dt - x;
+        double ey = sentY + sentVY * dt - y;
+        if (ex * ex + ey * ey > positionThreshold * positionThreshold) return true;
+
+        double dvx = vx - sentVX;
+        double dvy = vy - sentVY;
+        return dvx * dvx + dvy * dvy > velocityThreshold * velocityThreshold;
+    }
+
+    /** 真正发出后调用，记录远端此刻“知道”的状态 */
+    public void markSent(double now, double x, double y, double vx, double vy, boolean facing, boolean onGround,
+                         Player.State state, String anim, String phase) {
+        hasSent = true;
+        sentTime = now;
+        sentX = x; sentY = y; sentVX = vx; sentVY = vy;
+        sentFacing = facing; sentOnGround = onGround;
+        sentState = state; sentAnim = anim; sentPhase = phase;
+    }
+
+    /** 复活、重连等需要立即同步的场合调用，下一帧必发 */
+    public void reset() { hasSent = false; }
+
+    public double getPositionThreshold() { return positionThreshold; }
+    public void setPositionThreshold(double px) { this.positionThreshold = px; }
+    public double getVelocityThreshold() { return velocityThreshold; }
+    public void setVelocityThreshold(double pxPerSec) { this.velocityThreshold = pxPerSec; }
+    public double getHeartbeatInterval() { return heartbeatInterval; }
+    public void setHeartbeatInterval(double seconds) { this.heartbeatInterval = seconds; }
+    public boolean isAlwaysSend() { return alwaysSend; }
+    public void setAlwaysSend(boolean alwaysSend) { this.alwaysSend = alwaysSend; }
+}
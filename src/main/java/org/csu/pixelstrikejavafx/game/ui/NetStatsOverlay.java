@@ -0,0 +1,46 @@
+package org.csu.pixelstrikejavafx.game.ui;
+
+import javafx.geometry.Insets;
+import javafx.scene.control.Label;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.StackPane;
+
+/**
+ * 开发者用的网络统计浮层（F9 开关），显示 NetworkService.buildStatsReport() 的文本。
+ * 只在可见时按固定间隔刷新，避免每帧拼字符串。
+ */
+public class NetStatsOverlay {
+
+    private static final double REFRESH_INTERVAL = 0.5; // 秒
+
+    private final StackPane root = new StackPane();
+    private final Label text = new Label();
+    private double sinceRefresh = REFRESH_INTERVAL;
+
+    public NetStatsOverlay() {
+        text.setStyle("-fx-font-family: 'Consolas','Menlo','monospace'; -fx-font-size: 12px; -fx-text-fill: #e5e7eb;");
+        root.getChildren().add(text);
+        root.setPadding(new Insets(10));
+        root.setStyle("-fx-background-color: rgba(0, 0, 0, 0.65); -fx-background-radius: 6;");
+        root.setMouseTransparent(true);
+        root.setVisible(false);
+    }
+
+    public Pane getRoot() { return root; }
+
+    public boolean isVisible() { return root.isVisible(); }
+
+    public void toggle() {
+        root.setVisible(!root.isVisible());
+        sinceRefresh = REFRESH_INTERVAL;
+    }
+
+    /** 每帧调用；到了刷新间隔才去取报告文本 */
+    public void update(double tpf, java.util.function.Supplier<String> report) {
+        if (!root.isVisible()) return;
+        sinceRefresh += tpf;
+        if (sinceRefresh < REFRESH_INTERVAL) return;
+        sinceRefresh = 0;
+        text.setText(report.get());
+    }
+}
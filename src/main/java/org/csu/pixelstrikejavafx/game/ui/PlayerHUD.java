@@ -11,6 +11,7 @@ import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.ImagePattern;
 import javafx.scene.shape.Circle;
+import org.csu.pixelstrikejavafx.game.services.ClockSync;
 
 public class PlayerHUD {
 
@@ -21,6 +22,9 @@ public class PlayerHUD {
     private final ProgressBar hpBar = new ProgressBar();
     private final Label hpText = new Label("HP 100/100");
     private final Label nameLabel = new Label("Player"); // 将name提升为成员变量
+    private final Label netLabel = new Label("延迟 --");
+    private ClockSync.Quality shownQuality = null;
+    private long shownRtt = -1, shownJitter = -1;
 
     public PlayerHUD(Image avatar, String nickname) {
         // 头像
@@ -34,6 +38,7 @@ public class PlayerHUD {
         nameLabel.setText(nickname);
         nameLabel.setStyle("-fx-font-size: 16px; -fx-text-fill: white; -fx-font-weight: bold;");
         hpText.setStyle("-fx-font-size: 12px; -fx-text-fill: #bdc3c7;");
+        netLabel.setStyle("-fx-font-size: 12px; -fx-text-fill: #9ca3af;");
 
         hpBar.setProgress(1.0);
         hpBar.setPrefWidth(250); // 调整宽度
@@ -42,7 +47,7 @@ public class PlayerHUD {
         hpBar.setMaxHeight(8);
         styleHpBar(hpBar);
 
-        VBox infoBox = new VBox(5, nameLabel, hpBar, hpText);
+        VBox infoBox = new VBox(5, nameLabel, hpBar, hpText, netLabel);
         infoBox.setAlignment(Pos.CENTER_LEFT);
 
         HBox cardContent = new HBox(15, avatarCircle, infoBox);
@@ -74,6 +79,35 @@ public class PlayerHUD {
         hpText.setText("HP " + hp + "/" + max);
     }
 
+    /** 连接质量：延迟 ± 抖动，颜色按 GOOD/FAIR/POOR 区分；重连中显示红字；数值没变时不刷新 */
+    public void updateConnection(ClockSync sync, boolean reconnecting) {
+        if (reconnecting) {
+            if (shownRtt == -2) return;
+            shownQuality = null;
+            shownRtt = shownJitter = -2;
+            netLabel.setText("重连中...");
+            netLabel.setStyle("-fx-font-size: 12px; -fx-text-fill: #ef4444;");
+            return;
+        }
+        ClockSync.Quality q = sync.getQuality();
+        long rtt = Math.round(sync.getRttMs());
+        long jitter = Math.round(sync.getJitterMs());
+        if (q == shownQuality && rtt == shownRtt && jitter == shownJitter) return;
+        shownQuality = q;
+        shownRtt = rtt;
+        shownJitter = jitter;
+
+        String color;
+        switch (q) {
+            case GOOD: color = "#22c55e"; break;
+            case FAIR: color = "#facc15"; break;
+            case POOR: color = "#ef4444"; break;
+            default:   color = "#9ca3af"; break;
+        }
+        netLabel.setText(q == ClockSync.Quality.UNKNOWN ? "延迟 --" : "延迟 " + rtt + "ms ±" + jitter);
+        netLabel.setStyle("-fx-font-size: 12px; -fx-text-fill: " + color + ";");
+    }
+
     // tweakBar 和 styleHpBar 方法保持不变
     private void styleHpBar(ProgressBar pb) {
         pb.skinProperty().addListener((obs, o, n) -> Platform.runLater(() -> tweakBar(pb)));
@@ -0,0 +1,54 @@
+package org.csu.pixelstrikejavafx.game.world;
+
+import com.almasb.fxgl.app.scene.Viewport;
+import javafx.geometry.Rectangle2D;
+
+/**
+ * 兴趣范围：当前视野（已考虑缩放）四周外扩 margin 的矩形，每帧按 Viewport 更新一次。
+ * 范围外的远端玩家只更新位置、停掉动画，范围外发出且飞不进来的远端射击不生成子弹也不放音效。
+ */
+public final class InterestArea {
+
+    private double minX, minY, maxX, maxY;
+    private boolean valid = false;
+
+    public void update(Viewport vp, double margin) {
+        Rectangle2D r = vp.getVisibleArea();
+        minX = r.getMinX() - margin;
+        minY = r.getMinY() - margin;
+        maxX = r.getMaxX() + margin;
+        maxY = r.getMaxY() + margin;
+        valid = true;
+    }
+
+    /** 还没有视野信息时一律按可见处理 */
+    public boolean containsBox(double x, double y, double w, double h) {
+        if (!valid) return true;
+        return x + w >= minX && x <= maxX && y + h >= minY && y <= maxY;
+    }
+
+    /** 从 (ox, oy) 沿 (dx, dy) 方向 length 长的线段是否经过范围（slab 法） */
+    public boolean segmentIntersects(double ox, double oy, double dx, double dy, double length) {
+        if (!valid) return true;
+        double len = Math.hypot(dx, dy);
+        if (len < 1e-9) return containsBox(ox, oy, 0, 0);
+        dx /= len;
+        dy /= len;
+        double tMin = 0, tMax = length;
+        if (Math.abs(dx) < 1e-9) {
+            if (ox < minX || ox > maxX) return false;
+        } else {
+            double t1 = (minX - ox) / dx, t2 = (maxX - ox) / dx;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (Math.abs(dy) < 1e-9) {
+            if (oy < minY || oy > maxY) return false;
+        } else {
+            double t1 = (minY - oy) / dy, t2 = (maxY - oy) / dy;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        return tMin <= tMax;
+    }
+}
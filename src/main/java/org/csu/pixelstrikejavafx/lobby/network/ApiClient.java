@@ -3,153 +3,181 @@ package org.csu.pixelstrikejavafx.lobby.network;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import javafx.application.Platform;
 import okhttp3.*;
 import org.csu.pixelstrikejavafx.core.GlobalState;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.CharacterInfo;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.Friend;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.HistoryPage;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.MapInfo;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.MatchDetails;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.MatchSummary;
 
 import java.io.File;
 import java.util.List;
 import java.util.Map;
-import com.google.gson.reflect.TypeToken;
-import java.lang.reflect.Type;
-import java.util.ArrayList;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Objects;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * 大厅 HTTP 接口。
+ * 每个接口都有两种调用方式：
+ *   xxx()      —— 阻塞调用，出错抛 IOException（只在后台线程里用）；
+ *   xxxAsync() —— 基于 OkHttp enqueue 的异步调用，立即返回 CompletableFuture，
+ *                 结果（或异常）在 FX 线程上交付，后续的 thenAccept / thenCompose 可以直接改界面、发下一个请求。
+ *                 cancel(true) 这个 future 会取消底层的 HTTP 请求。
+ * 所有实例共用同一个 OkHttpClient（同一个连接池和 Dispatcher），new 多少个 ApiClient 都不会多开线程。
+ * 列表和战绩接口返回 LobbyModels 里的不可变 record，直接从响应流解码。
+ *
+ * 地图、角色、用户资料、好友列表等读接口走 ResponseCache：各自有 TTL，过期后用 ETag 重新验证；
+ * 相关的 WebSocket 事件（NetworkManager）和本机的修改操作会让对应条目立即失效，登录/登出时整个清空。
+ * 缓存没命中的 GET 经过 SingleFlight：同时发起的相同请求只发一次，共用结果。各接口的计数见 requestStats()。
+ */
 public class ApiClient {
     private static final String BASE_URL = "http://localhost:8080";
-    private final OkHttpClient client = new OkHttpClient();
+    private static final String FRIENDS_URL = BASE_URL + "/friends";
+    private static final String FRIEND_REQUESTS_URL = BASE_URL + "/friends/requests/pending";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final OkHttpClient SHARED_CLIENT = new OkHttpClient();
+
+    // 各接口的缓存有效期（毫秒）；0 表示不缓存
+    private static final long GAME_DATA_TTL_MS = 10 * 60_000;       // 地图、角色：基本不变
+    private static final long PROFILE_TTL_MS = 60_000;
+    private static final long FRIENDS_TTL_MS = 30_000;              // 另有 WebSocket 事件主动失效
+    private static final long FRIEND_REQUESTS_TTL_MS = 30_000;
+    private static final long HISTORY_DETAILS_TTL_MS = 10 * 60_000; // 打完的对局不会再变
+
+    private static final ResponseCache CACHE = new ResponseCache();
+    private static final SingleFlight FLIGHTS = new SingleFlight();
+
+    /** 在 FX 线程上执行；FX 还没启动时（命令行工具）就地执行 */
+    public static final Executor FX = r -> {
+        if (Platform.isFxApplicationThread()) {
+            r.run();
+        } else {
+            try {
+                Platform.runLater(r);
+            } catch (IllegalStateException notStarted) {
+                r.run();
+            }
+        }
+    };
+
+    private final OkHttpClient client = SHARED_CLIENT;
     private final Gson gson = new Gson();
 
-    /**
-     * 调用后端 API 获取所有可用地图的列表
-     * @return 包含地图信息的 Map 列表
-     * @throws IOException
-     */
-    public List<Map<String, Object>> getMaps() throws IOException {
-        String url = BASE_URL + "/game-data/maps";
-        Request request = new Request.Builder().url(url).build(); // 无需Token
+    /** 从响应流解码 {"status":..,"message":..,"data":..} */
+    @FunctionalInterface
+    private interface Parser<T> {
+        T parse(JsonReader in) throws IOException;
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("获取地图列表失败: " + response);
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-            if (jsonObject.get("status").getAsInt() == 0) {
-                Type listType = new TypeToken<List<Map<String, Object>>>() {}.getType();
-                return gson.fromJson(jsonObject.get("data"), listType);
-            } else {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
+    /** 响应外壳；data 已经按接口的类型解好 */
+    private record Envelope<D>(int status, String message, D data) {
+        /** status 不为 0 时把后端的 message 作为异常抛出 */
+        D checked() throws IOException {
+            if (status != 0) throw new IOException(message != null ? message : "status " + status);
+            return data;
         }
     }
 
     /**
-     * 调用后端 API 获取所有可用角色的列表
-     * @return 包含角色信息的 Map 列表
-     * @throws IOException
+     * 取出异步调用失败的原因（去掉 CompletionException 外壳），给界面提示用。
      */
-    public List<Map<String, Object>> getCharacters() throws IOException {
-        String url = BASE_URL + "/game-data/characters";
-        Request request = new Request.Builder().url(url).build(); // 无需Token
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("获取角色列表失败: " + response);
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-            if (jsonObject.get("status").getAsInt() == 0) {
-                Type listType = new TypeToken<List<Map<String, Object>>>() {}.getType();
-                return gson.fromJson(jsonObject.get("data"), listType);
-            } else {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
+    public static String errorMessage(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
         }
+        return t.getMessage() != null ? t.getMessage() : t.toString();
     }
 
+    // ================= 游戏数据 =================
+
     /**
-     * 在自定义房间内更换角色
-     * @param characterId 新的角色ID
+     * 调用后端 API 获取所有可用地图的列表
+     * @return 地图列表（不可变）
      * @throws IOException
      */
-    public void changeCharacterInRoom(long characterId) throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
+    public List<MapInfo> getMaps() throws IOException {
+        return execute(mapsRequest(), GAME_DATA_TTL_MS, "获取地图列表失败", list(MapInfo.ADAPTER));
+    }
 
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(BASE_URL + "/custom-room/character/change"))
-                .newBuilder()
-                .addQueryParameter("characterId", String.valueOf(characterId))
-                .build();
+    public CompletableFuture<List<MapInfo>> getMapsAsync() {
+        return async(mapsRequest(), GAME_DATA_TTL_MS, "获取地图列表失败", list(MapInfo.ADAPTER));
+    }
 
-        RequestBody body = RequestBody.create(new byte[0]);
+    private Request mapsRequest() {
+        return new Request.Builder().url(BASE_URL + "/game-data/maps").build(); // 无需Token
+    }
 
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
-                .build();
+    /**
+     * 调用后端 API 获取所有可用角色的列表
+     * @return 角色列表（不可变）
+     * @throws IOException
+     */
+    public List<CharacterInfo> getCharacters() throws IOException {
+        return execute(charactersRequest(), GAME_DATA_TTL_MS, "获取角色列表失败", list(CharacterInfo.ADAPTER));
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("更换角色请求失败: " + response);
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-            if (jsonObject.get("status").getAsInt() != 0) {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
+    public CompletableFuture<List<CharacterInfo>> getCharactersAsync() {
+        return async(charactersRequest(), GAME_DATA_TTL_MS, "获取角色列表失败", list(CharacterInfo.ADAPTER));
+    }
+
+    private Request charactersRequest() {
+        return new Request.Builder().url(BASE_URL + "/game-data/characters").build(); // 无需Token
     }
 
+    // ================= 账号 =================
+
     /**
      * 调用后端 /auth/login 接口 (新版)
+     * 成功时把 token 和用户信息存入 GlobalState。
      * @param username 用户名
      * @param password 密码
      * @return 成功时返回 token, 失败时抛出异常
      * @throws IOException
      */
     public String login(String username, String password) throws IOException {
-        String url = BASE_URL + "/auth/login";
-        String jsonBody = String.format("{\"username\":\"%s\", \"password\":\"%s\"}", username, password);
-        RequestBody body = RequestBody.create(jsonBody, MediaType.get("application/json; charset=utf-8"));
-        Request request = new Request.Builder().url(url).post(body).build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("请求失败: " + response.code());
-            }
-
-            String responseBody = response.body().string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-
-            if (jsonObject.get("status").getAsInt() == 0) {
-
-
-                // 1. 获取 data 这个 JsonObject
-                JsonObject dataObject = jsonObject.getAsJsonObject("data");
-
-                // 2. 从 data 对象中获取 token
-                String token = dataObject.get("token").getAsString();
-                GlobalState.authToken = token; // 存入全局状态
-
-                // 3. 从 data 对象中获取 userProfile 对象
-                JsonObject userProfileObject = dataObject.getAsJsonObject("userProfile");
-
-                // 4. 从 userProfile 对象中获取具体信息并存入全局状态
-                GlobalState.userId = userProfileObject.get("userId").getAsLong();
-                GlobalState.nickname = userProfileObject.get("nickname").getAsString();
+        return execute(loginRequest(username, password), "请求失败", this::parseLogin);
+    }
 
-                JsonElement avatarUrlElement = userProfileObject.get("avatarUrl");
-                if (avatarUrlElement != null && !avatarUrlElement.isJsonNull()) {
-                    GlobalState.avatarUrl = avatarUrlElement.getAsString();
-                } else {
-                    GlobalState.avatarUrl = null;
-                }
+    public CompletableFuture<String> loginAsync(String username, String password) {
+        return async(loginRequest(username, password), "请求失败", this::parseLogin);
+    }
 
-                // 方法依然返回 token，表示登录成功
-                return token;
+    private Request loginRequest(String username, String password) {
+        JsonObject login = new JsonObject();
+        login.addProperty("username", username);
+        login.addProperty("password", password);
+        return new Request.Builder().url(BASE_URL + "/auth/login").post(RequestBody.create(gson.toJson(login), JSON)).build();
+    }
 
-            } else {
-                String message = jsonObject.get("message").getAsString();
-                throw new IOException(message);
-            }
-        }
+    private String parseLogin(JsonReader in) throws IOException {
+        JsonObject dataObject = parseObject(in);
+        String token = dataObject.get("token").getAsString();
+        GlobalState.authToken = token; // 存入全局状态
+        CACHE.clear();                 // 换了账号，上一个用户的好友、资料都不能再用
+
+        JsonObject userProfileObject = dataObject.getAsJsonObject("userProfile");
+        GlobalState.userId = userProfileObject.get("userId").getAsLong();
+        GlobalState.nickname = userProfileObject.get("nickname").getAsString();
+        JsonElement avatarUrlElement = userProfileObject.get("avatarUrl");
+        if (avatarUrlElement != null && !avatarUrlElement.isJsonNull()) {
+            GlobalState.avatarUrl = avatarUrlElement.getAsString();
+        } else {
+            GlobalState.avatarUrl = null;
+        }
+        return token;
     }
+
     /**
      * 调用后端 /auth/register 接口
      * @param username 用户名
@@ -159,42 +187,22 @@ public class ApiClient {
      * @throws IOException 当网络请求失败或业务逻辑失败时抛出异常
      */
     public void register(String username, String password, String email, String nickname) throws IOException {
-        String url = BASE_URL + "/auth/register";
+        execute(registerRequest(username, password, email, nickname), "请求失败", this::parseOk);
+        System.out.println("注册成功!");
+    }
+
+    public CompletableFuture<Void> registerAsync(String username, String password, String email, String nickname) {
+        return async(registerRequest(username, password, email, nickname), "请求失败", this::parseOk);
+    }
 
-        // 1. 使用 Map 来构建 JSON 对象，更灵活
-        java.util.Map<String, String> registrationData = new java.util.HashMap<>();
+    private Request registerRequest(String username, String password, String email, String nickname) {
+        Map<String, String> registrationData = new java.util.HashMap<>();
         registrationData.put("username", username);
         registrationData.put("password", password);
         registrationData.put("email", email);
         registrationData.put("nickname", nickname);
-
-        // 2. 使用 Gson 将 Map 转换为 JSON 字符串
-        String jsonBody = gson.toJson(registrationData);
-        RequestBody body = RequestBody.create(jsonBody, MediaType.get("application/json; charset=utf-8"));
-
-        Request request = new Request.Builder()
-                .url(url)
-                .post(body)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("请求失败: " + response.code());
-            }
-
-            String responseBody = response.body().string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-
-            // 3. 检查后端返回的业务状态码
-            // 如果 status 不为 0，说明注册失败，我们将后端消息作为异常抛出
-            if (jsonObject.get("status").getAsInt() != 0) {
-                String message = jsonObject.get("message").getAsString();
-                throw new IOException(message); // 例如 "注册失败，用户名重复"
-            }
-
-            // status 为 0，说明成功，方法正常结束
-            System.out.println("注册成功!");
-        }
+        return new Request.Builder().url(BASE_URL + "/auth/register")
+                .post(RequestBody.create(gson.toJson(registrationData), JSON)).build();
     }
 
     /**
@@ -204,127 +212,64 @@ public class ApiClient {
     public void logout() throws IOException {
         // 登出前必须是登录状态，所以 token 不能为空
         if (GlobalState.authToken == null) {
-            // 理论上不应该发生，但作为防御性编程
             System.err.println("用户未登录，无需调用登出接口");
             return;
         }
+        execute(authPost(BASE_URL + "/auth/logout"), "登出请求失败", okThen(CACHE::clear));
+        System.out.println("成功调用后端登出接口");
+    }
 
-        String url = BASE_URL + "/auth/logout";
-
-        // 创建一个空的请求体，因为登出是POST请求但不需要body
-        RequestBody body = RequestBody.create(new byte[0]);
-
-        Request request = new Request.Builder()
-                .url(url)
-                // 关键：根据后端API文档，在请求头中附带 token
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("登出请求失败: " + response.code());
-            }
-
-            String responseBody = response.body().string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-
-            if (jsonObject.get("status").getAsInt() != 0) {
-                String message = jsonObject.get("message").getAsString();
-                throw new IOException(message);
-            }
-
-            System.out.println("成功调用后端登出接口");
-        }
+    public CompletableFuture<Void> logoutAsync() {
+        if (GlobalState.authToken == null) return CompletableFuture.completedFuture(null);
+        return async(authPost(BASE_URL + "/auth/logout"), "登出请求失败", okThen(CACHE::clear));
     }
 
+    // ================= 用户与好友 =================
+
     /**
      * 根据用户ID获取用户详细信息
      * @param userId 要查询的用户ID
      * @return 包含用户信息的 JsonObject
      */
     public JsonObject getUserProfile(long userId) throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-
-        String url = BASE_URL + "/friends/" + userId + "/details";
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("获取用户信息失败: " + response);
+        return execute(authGet(profileUrl(userId)), PROFILE_TTL_MS, "获取用户信息失败", this::parseObject);
+    }
 
-            String responseBody = response.body().string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
+    public CompletableFuture<JsonObject> getUserProfileAsync(long userId) {
+        return async(authGet(profileUrl(userId)), PROFILE_TTL_MS, "获取用户信息失败", this::parseObject);
+    }
 
-            if (jsonObject.get("status").getAsInt() == 0) {
-                return jsonObject.getAsJsonObject("data");
-            } else {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
+    private static String profileUrl(long userId) {
+        return BASE_URL + "/friends/" + userId + "/details";
     }
 
     /**
      * 调用后端 /friends 接口，获取当前用户的好友列表
-     * @return 一个包含好友信息的 Map 列表
+     * @return 好友列表（不可变）
      */
-    public List<Map<String, Object>> getFriends() throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-
-        String url = BASE_URL + "/friends";
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("获取好友列表失败: " + response);
-
-            String responseBody = response.body().string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
+    public List<Friend> getFriends() throws IOException {
+        return execute(authGet(FRIENDS_URL), FRIENDS_TTL_MS, "获取好友列表失败", list(Friend.ADAPTER));
+    }
 
-            if (jsonObject.get("status").getAsInt() == 0) {
-                // 使用 TypeToken 来帮助 Gson 解析泛型列表
-                Type listType = new TypeToken<List<Map<String, Object>>>() {}.getType();
-                return gson.fromJson(jsonObject.get("data"), listType);
-            } else {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
+    public CompletableFuture<List<Friend>> getFriendsAsync() {
+        return async(authGet(FRIENDS_URL), FRIENDS_TTL_MS, "获取好友列表失败", list(Friend.ADAPTER));
     }
 
     /**
-     * 根据昵称模糊搜索用户
+     * 根据昵称模糊搜索用户；后端返回失败时给空列表
      * @param nickname 要搜索的昵称
-     * @return 包含用户搜索结果的 Map 列表
+     * @return 搜索到的用户（字段和好友相同）
      */
-    public List<Map<String, Object>> searchUsers(String nickname) throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-
-        // 使用 HttpUrl.Builder 来安全地构建带查询参数的 URL
-        HttpUrl.Builder urlBuilder = HttpUrl.parse(BASE_URL + "/friends/search").newBuilder();
-        urlBuilder.addQueryParameter("nickname", nickname);
-
-        Request request = new Request.Builder()
-                .url(urlBuilder.build())
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("搜索用户失败: " + response);
+    public List<Friend> searchUsers(String nickname) throws IOException {
+        return execute(searchRequest(nickname), "搜索用户失败", listOrEmpty(Friend.ADAPTER));
+    }
 
-            String responseBody = response.body().string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
+    public CompletableFuture<List<Friend>> searchUsersAsync(String nickname) {
+        return async(searchRequest(nickname), "搜索用户失败", listOrEmpty(Friend.ADAPTER));
+    }
 
-            if (jsonObject.get("status").getAsInt() == 0) {
-                Type listType = new TypeToken<List<Map<String, Object>>>() {}.getType();
-                return gson.fromJson(jsonObject.get("data"), listType);
-            } else {
-                return new ArrayList<>(); // 返回空列表
-            }
-        }
+    private Request searchRequest(String nickname) {
+        return authGet(url("/friends/search").addQueryParameter("nickname", nickname).build());
     }
 
     /**
@@ -332,63 +277,23 @@ public class ApiClient {
      * @param userId 目标用户的ID
      */
     public void sendFriendRequest(long userId) throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-
-        String url = BASE_URL + "/friends/requests/" + userId;
-        RequestBody body = RequestBody.create(new byte[0]); // 空的 POST 请求体
-
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("发送好友申请失败: " + response);
-
-            String responseBody = response.body().string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
+        execute(authPost(BASE_URL + "/friends/requests/" + userId), "发送好友申请失败", this::parseOk);
+    }
 
-            if (jsonObject.get("status").getAsInt() != 0) {
-                // 将后端返回的业务错误信息（如“不能添加自己为好友”）抛出
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
+    public CompletableFuture<Void> sendFriendRequestAsync(long userId) {
+        return async(authPost(BASE_URL + "/friends/requests/" + userId), "发送好友申请失败", this::parseOk);
     }
 
     /**
      * 获取待处理的好友申请列表
-     * @return 包含申请人信息的 Map 列表
+     * @return 申请人列表（字段和好友相同）
      */
-    public List<Map<String, Object>> getFriendRequests() throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-
-        String url = BASE_URL + "/friends/requests/pending";
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("获取好友申请列表失败: " + response);
-
-            String responseBody = response.body().string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-
-            if (jsonObject.get("status").getAsInt() == 0) {
-                Type listType = new TypeToken<List<Map<String, Object>>>() {}.getType();
-                List<Map<String, Object>> resultList = gson.fromJson(jsonObject.get("data"), listType);
-
-                // ==========================================================
-                // ========== 在这里加上这行打印语句 ==========
-                System.out.println("DEBUG (ApiClient): 成功从JSON解析出 " + resultList.size() + " 条好友申请。");
-                // ==========================================================
+    public List<Friend> getFriendRequests() throws IOException {
+        return execute(authGet(FRIEND_REQUESTS_URL), FRIEND_REQUESTS_TTL_MS, "获取好友申请列表失败", list(Friend.ADAPTER));
+    }
 
-                return resultList;
-            } else {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
+    public CompletableFuture<List<Friend>> getFriendRequestsAsync() {
+        return async(authGet(FRIEND_REQUESTS_URL), FRIEND_REQUESTS_TTL_MS, "获取好友申请列表失败", list(Friend.ADAPTER));
     }
 
     /**
@@ -396,637 +301,549 @@ public class ApiClient {
      * @param userId 申请人的用户ID
      */
     public void acceptFriendRequest(long userId) throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-
-        String url = BASE_URL + "/friends/requests/" + userId + "/accept";
-        RequestBody body = RequestBody.create(new byte[0]); // PUT 请求通常也需要一个请求体，即使是空的
-
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .put(body) // 根据你的API文档，这里是 PUT 请求
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("同意好友申请失败: " + response);
+        execute(acceptRequest(userId), "同意好友申请失败", okThen(ApiClient::invalidateFriends));
+    }
 
-            String responseBody = response.body().string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
+    public CompletableFuture<Void> acceptFriendRequestAsync(long userId) {
+        return async(acceptRequest(userId), "同意好友申请失败", okThen(ApiClient::invalidateFriends));
+    }
 
-            if (jsonObject.get("status").getAsInt() != 0) {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
+    private Request acceptRequest(long userId) {
+        return auth(BASE_URL + "/friends/requests/" + userId + "/accept").put(emptyBody()).build();
     }
 
     /**
-     * 调用后端 API 创建一个自定义房间。
-     * 对应文档："四、房间模块 I.创建房间"
-     * @return 成功时返回房间的 ID 字符串。
-     * @throws IOException 当网络或业务逻辑失败时抛出。
+     * 刪除好友
+     * @param friendId 要刪除的好友的用戶 ID
+     * @throws IOException 當網路或業務邏輯失敗時拋出
      */
-    /*public String createRoom() throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-
-        String url = BASE_URL + "/custom-room/create";
-        RequestBody body = RequestBody.create(new byte[0]); // POST 请求需要一个请求体，即使是空的
-
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
-                .build();
+    public void deleteFriend(long friendId) throws IOException {
+        execute(auth(BASE_URL + "/friends/" + friendId).delete().build(), "刪除好友請求失敗", okThen(ApiClient::invalidateFriends));
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("创建房间请求失败: " + response.code());
-            }
+    public CompletableFuture<Void> deleteFriendAsync(long friendId) {
+        return async(auth(BASE_URL + "/friends/" + friendId).delete().build(), "刪除好友請求失敗", okThen(ApiClient::invalidateFriends));
+    }
 
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
+    /**
+     * 更新用户昵称
+     * @param newNickname 新的昵称
+     * @return 包含更新后用户信息的 JsonObject
+     */
+    public JsonObject updateNickname(String newNickname) throws IOException {
+        return execute(nicknameRequest(newNickname), "更新昵称失败", this::parseOwnProfile);
+    }
 
-            if (jsonObject.get("status").getAsInt() == 0) {
-                // 成功时，从 "data" 字段获取房间 ID 并返回
-                return jsonObject.get("data").getAsString();
-            } else {
-                // 失败时，抛出后端返回的错误信息
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
-    }*/
+    public CompletableFuture<JsonObject> updateNicknameAsync(String newNickname) {
+        return async(nicknameRequest(newNickname), "更新昵称失败", this::parseOwnProfile);
+    }
 
-    // 修改为（使其接受 mapId 参数）
-    public String createRoom(String mapId) throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
+    private Request nicknameRequest(String newNickname) {
+        return auth(url("/users/me/nickname").addQueryParameter("newNickname", newNickname).build()).put(emptyBody()).build();
+    }
 
-        // 根据新API文档，使用带参数的URL
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(BASE_URL + "/custom-room/create"))
-                .newBuilder()
-                .addQueryParameter("mapId", mapId)
-                .build();
+    /**
+     * 上传用户头像文件
+     * @param avatarFile 用户选择的图片文件
+     * @return 包含更新后用户信息的 JsonObject
+     */
+    public JsonObject uploadAvatar(File avatarFile) throws IOException {
+        return execute(avatarRequest(avatarFile), "上传头像失败", this::parseOwnProfile);
+    }
 
-        RequestBody body = RequestBody.create(new byte[0]);
+    public CompletableFuture<JsonObject> uploadAvatarAsync(File avatarFile) {
+        return async(avatarRequest(avatarFile), "上传头像失败", this::parseOwnProfile);
+    }
 
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
+    private Request avatarRequest(File avatarFile) {
+        // 判断文件类型，用于设置 MediaType
+        String name = avatarFile.getName().toLowerCase();
+        String contentType = name.endsWith(".jpg") || name.endsWith(".jpeg") ? "image/jpeg" : "image/png";
+        RequestBody requestBody = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("avatar", avatarFile.getName(), RequestBody.create(avatarFile, MediaType.parse(contentType)))
                 .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("创建房间请求失败: " + response.code());
-            }
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-            if (jsonObject.get("status").getAsInt() == 0) {
-                return jsonObject.get("data").getAsString();
-            } else {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
+        return auth(BASE_URL + "/users/me/avatar").post(requestBody).build();
     }
 
+    // ================= 房间 =================
+
     /**
-     * (房主) 移交房主权限给房间内另一位玩家
-     * @param newHostId 新房主的用户ID
-     * @throws IOException
+     * 调用后端 API 创建一个自定义房间。
+     * @param mapId 地图ID
+     * @return 成功时返回房间的 ID 字符串。
      */
-    public void transferHost(long newHostId) throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(BASE_URL + "/custom-room/transfer-host"))
-                .newBuilder()
-                .addQueryParameter("newHostId", String.valueOf(newHostId))
-                .build();
-
-        RequestBody body = RequestBody.create(new byte[0]);
+    public String createRoom(String mapId) throws IOException {
+        return execute(createRoomRequest(mapId), "创建房间请求失败", this::parseString);
+    }
 
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
-                .build();
+    public CompletableFuture<String> createRoomAsync(String mapId) {
+        return async(createRoomRequest(mapId), "创建房间请求失败", this::parseString);
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("移交房主请求失败: " + response);
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-            if (jsonObject.get("status").getAsInt() != 0) {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
+    private Request createRoomRequest(String mapId) {
+        return authPost(url("/custom-room/create").addQueryParameter("mapId", mapId).build());
     }
 
     /**
      * 调用后端 API 根据房间 ID 加入一个房间。
-     * 对应文档："四、房间模块 II.加入房间"
      * @param roomId 要加入的房间的密钥/ID。
      * @return 成功时返回房间的 ID 字符串。
-     * @throws IOException 当网络或业务逻辑失败时抛出。
      */
     public String joinRoom(String roomId) throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-
-        // 使用 HttpUrl.Builder 来安全地构建带查询参数的 URL
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(BASE_URL + "/custom-room/join"))
-                .newBuilder()
-                .addQueryParameter("roomId", roomId)
-                .build();
-
-        RequestBody body = RequestBody.create(new byte[0]);
-
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("加入房间请求失败: " + response.code());
-            }
+        return execute(joinRoomRequest(roomId), "加入房间请求失败", this::parseString);
+    }
 
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
+    public CompletableFuture<String> joinRoomAsync(String roomId) {
+        return async(joinRoomRequest(roomId), "加入房间请求失败", this::parseString);
+    }
 
-            if (jsonObject.get("status").getAsInt() == 0) {
-                return jsonObject.get("data").getAsString();
-            } else {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
+    private Request joinRoomRequest(String roomId) {
+        return authPost(url("/custom-room/join").addQueryParameter("roomId", roomId).build());
     }
 
     /**
      * 调用后端 API 离开当前所在的房间。
-     * 对应文档："四、房间模块 III.离开房间"
-     * @throws IOException 当网络或业务逻辑失败时抛出。
      */
     public void leaveRoom() throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
+        execute(authPost(BASE_URL + "/custom-room/leave"), "离开房间请求失败", this::parseOk);
+    }
 
-        String url = BASE_URL + "/custom-room/leave";
-        RequestBody body = RequestBody.create(new byte[0]);
+    public CompletableFuture<Void> leaveRoomAsync() {
+        return async(authPost(BASE_URL + "/custom-room/leave"), "离开房间请求失败", this::parseOk);
+    }
 
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
-                .build();
+    /**
+     * 在自定义房间内更换角色
+     * @param characterId 新的角色ID
+     */
+    public void changeCharacterInRoom(long characterId) throws IOException {
+        execute(changeCharacterRequest(characterId), "更换角色请求失败", this::parseOk);
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("离开房间请求失败: " + response.code());
-            }
+    public CompletableFuture<Void> changeCharacterInRoomAsync(long characterId) {
+        return async(changeCharacterRequest(characterId), "更换角色请求失败", this::parseOk);
+    }
 
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
+    private Request changeCharacterRequest(long characterId) {
+        return authPost(url("/custom-room/character/change").addQueryParameter("characterId", String.valueOf(characterId)).build());
+    }
 
-            if (jsonObject.get("status").getAsInt() != 0) {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-            // 离开房间成功，没有返回值，方法正常结束即可
-        }
+    /**
+     * (房主) 移交房主权限给房间内另一位玩家
+     * @param newHostId 新房主的用户ID
+     */
+    public void transferHost(long newHostId) throws IOException {
+        execute(transferHostRequest(newHostId), "移交房主请求失败", this::parseOk);
+    }
+
+    public CompletableFuture<Void> transferHostAsync(long newHostId) {
+        return async(transferHostRequest(newHostId), "移交房主请求失败", this::parseOk);
+    }
+
+    private Request transferHostRequest(long newHostId) {
+        return authPost(url("/custom-room/transfer-host").addQueryParameter("newHostId", String.valueOf(newHostId)).build());
     }
 
     /**
      * (房主) 从房间中踢出一位玩家
-     * 对应文档："四、房间模块 V.踢出玩家"
      * @param targetId 被踢出玩家的用户ID
      */
     public void kickPlayer(long targetId) throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(BASE_URL + "/custom-room/kick"))
-                .newBuilder()
-                .addQueryParameter("targetId", String.valueOf(targetId))
-                .build();
-
-        RequestBody body = RequestBody.create(new byte[0]);
-
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("踢出玩家请求失败: " + response);
+        execute(kickRequest(targetId), "踢出玩家请求失败", this::parseOk);
+    }
 
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
+    public CompletableFuture<Void> kickPlayerAsync(long targetId) {
+        return async(kickRequest(targetId), "踢出玩家请求失败", this::parseOk);
+    }
 
-            if (jsonObject.get("status").getAsInt() != 0) {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
+    private Request kickRequest(long targetId) {
+        return authPost(url("/custom-room/kick").addQueryParameter("targetId", String.valueOf(targetId)).build());
     }
 
     /**
      * 邀请好友加入当前所在的房间。
-     * 对应文档："四、房间模块 IV.邀请好友"
      * @param friendId 被邀请好友的用户ID
-     * @throws IOException 当网络请求或业务逻辑失败时抛出异常
      */
     public void inviteFriend(long friendId) throws IOException {
-        // 检查是否已登录，因为所有需要认证的接口都依赖这个 token
-        if (GlobalState.authToken == null) {
-            throw new IllegalStateException("Not logged in");
-        }
-
-        // 1. 使用 OkHttp 的 HttpUrl.Builder 来安全地构建带查询参数的 URL
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(BASE_URL + "/custom-room/invite"))
-                .newBuilder()
-                .addQueryParameter("friendId", String.valueOf(friendId))
-                .build();
-
-        // 2. 创建一个空的 POST 请求体，因为这个接口不需要发送 JSON 数据
-        RequestBody body = RequestBody.create(new byte[0]);
-
-        // 3. 构建请求，附上必需的 Authorization 请求头
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
-                .build();
-
-        // 4. 发送请求并处理响应
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("发送邀请请求失败: " + response);
-            }
-
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
+        execute(inviteRequest(friendId), "发送邀请请求失败", this::parseOk);
+        System.out.println("成功发送邀请给用户: " + friendId);
+    }
 
-            // 5. 检查后端返回的业务状态码
-            if (jsonObject.get("status").getAsInt() != 0) {
-                // 如果失败，将后端返回的友好提示信息作为异常抛出
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
+    public CompletableFuture<Void> inviteFriendAsync(long friendId) {
+        return async(inviteRequest(friendId), "发送邀请请求失败", this::parseOk);
+    }
 
-            // 如果 status 为 0，说明邀请已成功发送，方法正常结束
-            System.out.println("成功发送邀请给用户: " + friendId);
-        }
+    private Request inviteRequest(long friendId) {
+        return authPost(url("/custom-room/invite").addQueryParameter("friendId", String.valueOf(friendId)).build());
     }
 
     /**
      * 接受房间邀请。
-     * 对应文档："四、房间模块 IX.接收房间邀请"
      * @param roomId 要加入的房间的ID
-     * @throws IOException 当网络或业务逻辑失败时抛出
      */
     public void acceptInvite(String roomId) throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(BASE_URL + "/custom-room/accept-invite"))
-                .newBuilder()
-                .addQueryParameter("roomId", roomId)
-                .build();
-
-        RequestBody body = RequestBody.create(new byte[0]); // 空的POST请求体
-
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("接受邀请请求失败: " + response.code());
-            }
-
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
+        execute(acceptInviteRequest(roomId), "接受邀请请求失败", this::parseOk);
+        System.out.println("成功接受邀请，加入房间: " + roomId);
+    }
 
-            if (jsonObject.get("status").getAsInt() != 0) {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
+    public CompletableFuture<Void> acceptInviteAsync(String roomId) {
+        return async(acceptInviteRequest(roomId), "接受邀请请求失败", this::parseOk);
+    }
 
-            System.out.println("成功接受邀请，加入房间: " + roomId);
-        }
+    private Request acceptInviteRequest(String roomId) {
+        return authPost(url("/custom-room/accept-invite").addQueryParameter("roomId", roomId).build());
     }
 
     /**
      * 拒绝房间邀请。
-     * 对应文档："四、房间模块 X.拒绝房间邀请"
      * @param inviterId 邀请者的用户ID
-     * @throws IOException 当网络或业务逻辑失败时抛出
      */
     public void rejectInvite(long inviterId) throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(BASE_URL + "/custom-room/reject-invite"))
-                .newBuilder()
-                .addQueryParameter("inviterId", String.valueOf(inviterId))
-                .build();
-
-        RequestBody body = RequestBody.create(new byte[0]);
-
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
-                .build();
-
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("拒绝邀请请求失败: " + response.code());
-            }
-
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
+        execute(rejectInviteRequest(inviterId), "拒绝邀请请求失败", this::parseOk);
+        System.out.println("成功拒绝来自用户 " + inviterId + " 的邀请");
+    }
 
-            if (jsonObject.get("status").getAsInt() != 0) {
-                // 根据文档，拒绝邀请失败时也可能返回 status:0 message:"操作成功"，所以这里可能不需要抛异常
-                // 但为了严谨，我们仍然检查非0状态
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
+    public CompletableFuture<Void> rejectInviteAsync(long inviterId) {
+        return async(rejectInviteRequest(inviterId), "拒绝邀请请求失败", this::parseOk);
+    }
 
-            System.out.println("成功拒绝来自用户 " + inviterId + " 的邀请");
-        }
+    private Request rejectInviteRequest(long inviterId) {
+        return authPost(url("/custom-room/reject-invite").addQueryParameter("inviterId", String.valueOf(inviterId)).build());
     }
 
     /**
-     * 更新用户昵称
-     * @param newNickname 新的昵称
-     * @return 包含更新后用户信息的 JsonObject
+     * (房主) 开始自定义房间的游戏。成功后后端通过 WebSocket 广播，这里无需做其他事。
      */
-    public JsonObject updateNickname(String newNickname) throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse(BASE_URL + "/users/me/nickname"))
-                .newBuilder()
-                .addQueryParameter("newNickname", newNickname)
-                .build();
-
-        // PUT 请求需要一个请求体，即使是空的
-        RequestBody body = RequestBody.create(new byte[0]);
+    public void startGame() throws IOException {
+        execute(authPost(BASE_URL + "/custom-room/start-game"), "开始游戏请求失败", this::parseOk);
+        System.out.println("成功发送“开始游戏”请求，等待服务器广播...");
+    }
 
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .put(body)
-                .build();
+    public CompletableFuture<Void> startGameAsync() {
+        return async(authPost(BASE_URL + "/custom-room/start-game"), "开始游戏请求失败", this::parseOk);
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("更新昵称失败: " + response);
+    // ================= 匹配 =================
 
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
+    /**
+     * 调用后端 /matchmaking/start 接口开始匹配
+     */
+    public void startMatchmaking(String mapId, String characterId) throws IOException {
+        execute(matchmakingRequest(mapId, characterId), "开始匹配请求失败", this::parseOk);
+    }
 
-            if (jsonObject.get("status").getAsInt() == 0) {
-                return jsonObject.getAsJsonObject("data");
-            } else {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
+    public CompletableFuture<Void> startMatchmakingAsync(String mapId, String characterId) {
+        return async(matchmakingRequest(mapId, characterId), "开始匹配请求失败", this::parseOk);
     }
 
-    public List<Map<String, Object>> getHistory() throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-        String url = BASE_URL + "/history";
-        Request request = new Request.Builder().url(url).addHeader("Authorization", "Bearer " + GlobalState.authToken).build();
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("获取历史战绩失败: " + response);
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-            if (jsonObject.get("status").getAsInt() == 0) {
-                Type listType = new TypeToken<List<Map<String, Object>>>(){}.getType();
-                return gson.fromJson(jsonObject.get("data"), listType);
-            } else {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
+    /**
+     * 【兼容版】开始匹配 (不带参数，使用服务器默认设置)
+     */
+    public void startMatchmaking() throws IOException {
+        execute(matchmakingRequest(null, null), "开始匹配请求失败", this::parseOk);
     }
 
-    public JsonObject getHistoryDetails(long matchId) throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-        String url = BASE_URL + "/history/" + matchId;
-        Request request = new Request.Builder().url(url).addHeader("Authorization", "Bearer " + GlobalState.authToken).build();
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("获取战绩详情失败: " + response);
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            // 【新增】打印从后端接收到的原始JSON字符串
-            System.out.println("DEBUG: Received history details JSON from backend: " + responseBody);
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-            if (jsonObject.get("status").getAsInt() == 0) {
-                return jsonObject.getAsJsonObject("data");
-            } else {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
+    private Request matchmakingRequest(String mapId, String characterId) {
+        if (GlobalState.authToken == null) throw new IllegalStateException("用户未登录，无法开始匹配");
+        if (mapId == null) {
+            // 空请求体触发后端的向后兼容逻辑
+            return authPost(BASE_URL + "/matchmaking/start");
         }
+        JsonObject matchmakingData = new JsonObject();
+        matchmakingData.addProperty("mapId", mapId);
+        matchmakingData.addProperty("characterId", characterId);
+        return auth(BASE_URL + "/matchmaking/start").post(RequestBody.create(gson.toJson(matchmakingData), JSON)).build();
     }
 
     /**
-     * 上传用户头像文件
-     * @param avatarFile 用户选择的图片文件
-     * @return 包含更新后用户信息的 JsonObject
+     * 调用后端 /matchmaking/cancel 接口取消匹配
      */
-    public JsonObject uploadAvatar(File avatarFile) throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
-
-        String url = BASE_URL + "/users/me/avatar";
+    public void cancelMatchmaking() throws IOException {
+        if (GlobalState.authToken == null) throw new IllegalStateException("用户未登录，无法取消匹配");
+        execute(authPost(BASE_URL + "/matchmaking/cancel"), "取消匹配请求失败", this::parseOk);
+    }
 
-        // 判断文件类型，用于设置 MediaType
-        String contentType = "image/png"; // 默认为 png
-        if (avatarFile.getName().toLowerCase().endsWith(".jpg") || avatarFile.getName().toLowerCase().endsWith(".jpeg")) {
-            contentType = "image/jpeg";
-        }
+    public CompletableFuture<Void> cancelMatchmakingAsync() {
+        if (GlobalState.authToken == null) return CompletableFuture.failedFuture(new IllegalStateException("用户未登录，无法取消匹配"));
+        return async(authPost(BASE_URL + "/matchmaking/cancel"), "取消匹配请求失败", this::parseOk);
+    }
 
-        // 1. 创建一个 MultipartBody，用于文件上传
-        RequestBody requestBody = new MultipartBody.Builder()
-                .setType(MultipartBody.FORM)
-                .addFormDataPart(
-                        "avatar", // 这个是后端接口定义的参数名
-                        avatarFile.getName(), // 文件名
-                        RequestBody.create(avatarFile, MediaType.parse(contentType)) // 文件内容
-                )
-                .build();
+    // ================= 战绩 =================
 
-        // 2. 创建 POST 请求
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(requestBody)
-                .build();
+    public List<MatchSummary> getHistory() throws IOException {
+        return execute(authGet(BASE_URL + "/history"), "获取历史战绩失败", list(MatchSummary.ADAPTER));
+    }
 
-        // 3. 发送请求并解析响应
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) throw new IOException("上传头像失败: " + response);
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-            if (jsonObject.get("status").getAsInt() == 0) {
-                return jsonObject.getAsJsonObject("data");
-            } else {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
+    public CompletableFuture<List<MatchSummary>> getHistoryAsync() {
+        return async(authGet(BASE_URL + "/history"), "获取历史战绩失败", list(MatchSummary.ADAPTER));
     }
 
     /**
-     * 刪除好友
-     * @param friendId 要刪除的好友的用戶 ID
-     * @throws IOException 當網路或業務邏輯失敗時拋出
+     * 按页取战绩：cursor 为 null 取第一页，之后传上一页的 nextCursor。
+     * 后端不支持分页时会忽略参数、返回全部战绩（nextCursor 为 null），调用方自己分批显示。
      */
-    public void deleteFriend(long friendId) throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
+    public CompletableFuture<HistoryPage> getHistoryPageAsync(String cursor, int size) {
+        HttpUrl.Builder url = url("/history").addQueryParameter("size", String.valueOf(size));
+        if (cursor != null) url.addQueryParameter("cursor", cursor);
+        return async(authGet(url.build()), "获取历史战绩失败", in -> {
+            HistoryPage page = readEnvelope(in, HistoryPage.ADAPTER).checked();
+            return page != null ? page : HistoryPage.EMPTY;
+        });
+    }
 
-        // 根據我們建議的 API 設計，URL 是 /friends/{friendId}
-        String url = BASE_URL + "/friends/" + friendId;
+    public MatchDetails getHistoryDetails(long matchId) throws IOException {
+        return execute(authGet(BASE_URL + "/history/" + matchId), HISTORY_DETAILS_TTL_MS, "获取战绩详情失败", data(MatchDetails.ADAPTER));
+    }
 
-        // 建立一個 DELETE 請求
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .delete() // 使用 DELETE 方法
-                .build();
+    public CompletableFuture<MatchDetails> getHistoryDetailsAsync(long matchId) {
+        return async(authGet(BASE_URL + "/history/" + matchId), HISTORY_DETAILS_TTL_MS, "获取战绩详情失败", data(MatchDetails.ADAPTER));
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("刪除好友請求失敗: " + response);
-            }
+    // ================= 缓存与统计 =================
 
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
+    /** 各接口真正发出、被合并、命中缓存的请求数，一行一个接口 */
+    public static String requestStats() {
+        return FLIGHTS.report();
+    }
 
-            if (jsonObject.get("status").getAsInt() != 0) {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
+    /** 好友列表和好友申请变了（NetworkManager 收到好友相关事件时调用） */
+    public static void invalidateFriends() {
+        CACHE.invalidate(FRIENDS_URL);
+        CACHE.invalidate(FRIEND_REQUESTS_URL);
     }
 
-    /**
-     * 调用后端 /matchmaking/start 接口开始匹配
-     * @throws IOException 当网络或业务逻辑失败时
-     */
-    public void startMatchmaking(String mapId, String characterId) throws IOException {
-        if (GlobalState.authToken == null) {
-            throw new IllegalStateException("用户未登录，无法开始匹配");
-        }
+    /** 某个用户的昵称或头像变了；好友列表里也带着这些字段，一起作废 */
+    public static void invalidateProfile(long userId) {
+        CACHE.invalidate(profileUrl(userId));
+        CACHE.invalidate(FRIENDS_URL);
+    }
 
-        String url = BASE_URL + "/matchmaking/start";
+    // ================= 请求与响应 =================
 
-        // 1. 创建包含地图和角色ID的JSON体
-        JsonObject matchmakingData = new JsonObject();
-        matchmakingData.addProperty("mapId", mapId);
-        matchmakingData.addProperty("characterId", characterId);
-        String jsonBody = gson.toJson(matchmakingData);
+    private static HttpUrl.Builder url(String path) {
+        return Objects.requireNonNull(HttpUrl.parse(BASE_URL + path)).newBuilder();
+    }
 
-        RequestBody body = RequestBody.create(jsonBody, MediaType.get("application/json; charset=utf-8"));
+    private static RequestBody emptyBody() {
+        return RequestBody.create(new byte[0]);
+    }
 
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
-                .build();
+    /** 带 token 的请求；没登录时直接抛 IllegalStateException */
+    private static Request.Builder auth(HttpUrl url) {
+        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
+        return new Request.Builder().url(url).addHeader("Authorization", "Bearer " + GlobalState.authToken);
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("开始匹配请求失败: " + response.code());
-            }
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-            if (jsonObject.get("status").getAsInt() != 0) {
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-        }
+    private static Request.Builder auth(String url) {
+        return auth(Objects.requireNonNull(HttpUrl.parse(url)));
+    }
+
+    private static Request authGet(String url) { return auth(url).build(); }
+    private static Request authGet(HttpUrl url) { return auth(url).build(); }
+    private static Request authPost(String url) { return auth(url).post(emptyBody()).build(); }
+    private static Request authPost(HttpUrl url) { return auth(url).post(emptyBody()).build(); }
+
+    private <T> T execute(Request request, String error, Parser<T> parser) throws IOException {
+        return execute(request, 0, error, parser);
     }
 
     /**
-     * 【兼容版】调用后端 /matchmaking/start 接口开始匹配 (不带参数，使用服务器默认设置)
-     * @throws IOException 当网络或业务逻辑失败时
+     * ttlMs > 0 时走缓存：没过期直接解析缓存的响应体，过期了带 ETag 重新验证。
+     * GET 和异步调用走同一条路（可以和别的线程、FX 线程上的相同请求合并），在这里等结果。
+     * 等的 future 在 OkHttp 线程上完成，不经过 FX 线程，所以误在 FX 线程上调用也只是卡一下界面，不会死锁。
      */
-    public void startMatchmaking() throws IOException {
-        if (GlobalState.authToken == null) {
-            throw new IllegalStateException("用户未登录，无法开始匹配");
+    private <T> T execute(Request request, long ttlMs, String error, Parser<T> parser) throws IOException {
+        if ("GET".equals(request.method())) return await(enqueue(request, ttlMs, error, parser));
+        FLIGHTS.counters(endpoint(request)).issued.increment();
+        try (Response response = client.newCall(request).execute()) {
+            return handle(request, response, 0, CACHE.generation(), error, parser);
         }
+    }
 
-        String url = BASE_URL + "/matchmaking/start";
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("请求被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IOException(cause);
+        }
+    }
 
-        // 1. 创建一个空的请求体，以触发后端的向后兼容逻辑
-        RequestBody body = RequestBody.create(new byte[0]);
+    private <T> CompletableFuture<T> async(Request request, String error, Parser<T> parser) {
+        return async(request, 0, error, parser);
+    }
 
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
-                .build();
+    /**
+     * xxxAsync() 的出口：enqueue() 的 future 在 OkHttp 线程上完成，这里再转到 FX 线程交付。
+     * 本来就在 FX 线程上且结果已就绪（缓存命中）时就地完成，界面不用等下一帧。取消会传回底层请求。
+     */
+    private <T> CompletableFuture<T> async(Request request, long ttlMs, String error, Parser<T> parser) {
+        CompletableFuture<T> source = enqueue(request, ttlMs, error, parser);
+        CompletableFuture<T> onFx = new CompletableFuture<>();
+        source.whenCompleteAsync((v, e) -> {
+            if (e != null) onFx.completeExceptionally(e);
+            else onFx.complete(v);
+        }, FX);
+        onFx.whenComplete((v, e) -> {
+            if (onFx.isCancelled()) source.cancel(true);
+        });
+        return onFx;
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("开始匹配请求失败: " + response.code());
-            }
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-            if (jsonObject.get("status").getAsInt() != 0) {
-                throw new IOException(jsonObject.get("message").getAsString());
+    /** 缓存 -> 合并 -> 发请求；GET 之外的请求不缓存也不合并。返回的 future 在哪个线程上完成都有可能 */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> enqueue(Request request, long ttlMs, String error, Parser<T> parser) {
+        String endpoint = endpoint(request);
+        ResponseCache.Entry hit = ttlMs > 0 ? CACHE.fresh(ResponseCache.key(request)) : null;
+        if (hit != null) {
+            FLIGHTS.counters(endpoint).cached.increment();
+            try {
+                return CompletableFuture.completedFuture(ResponseCache.copyOf((T) hit.value));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        if (!"GET".equals(request.method())) {
+            FLIGHTS.counters(endpoint).issued.increment();
+            return send(request, ttlMs, error, parser);
+        }
+        String key = request.url() + " " + request.header("Authorization");
+        return FLIGHTS.join(key, endpoint, () -> send(request, ttlMs, error, parser));
+    }
+
+    /** 真正发出请求；响应在 OkHttp 的线程上解析，future 也直接在那里完成 */
+    private <T> CompletableFuture<T> send(Request request, long ttlMs, String error, Parser<T> parser) {
+        long generation = CACHE.generation();
+        Call call = client.newCall(ttlMs > 0 ? CACHE.conditional(request) : request);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.whenComplete((r, e) -> {
+            if (future.isCancelled()) call.cancel();
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call c, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call c, Response response) {
+                try (response) {
+                    future.complete(handle(request, response, ttlMs, generation, error, parser));
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
             }
-        }
+        });
+        return future;
     }
-    /**
-     * 调用后端 /matchmaking/cancel 接口取消匹配
-     * @throws IOException 当网络或业务逻辑失败时
-     */
-    public void cancelMatchmaking() throws IOException {
-        if (GlobalState.authToken == null) {
-            throw new IllegalStateException("用户未登录，无法取消匹配");
-        }
 
-        String url = BASE_URL + "/matchmaking/cancel";
-        RequestBody body = RequestBody.create(new byte[0]);
+    private <T> T handle(Request request, Response response, long ttlMs, long generation, String error, Parser<T> parser) throws IOException {
+        String key = ResponseCache.key(request);
+        if (ttlMs > 0 && response.code() == 304) {
+            T cached = CACHE.revalidated(key, ttlMs);
+            if (cached != null) return ResponseCache.copyOf(cached);
+            // 验证期间条目被作废了：不带 If-None-Match 重新取一次完整响应（request 本身不带条件头）
+            if (response.request().header("If-None-Match") == null) throw new IOException(error + ": 304");
+            FLIGHTS.counters(endpoint(request)).issued.increment();
+            long again = CACHE.generation();
+            try (Response full = client.newCall(request).execute()) {
+                return handle(request, full, ttlMs, again, error, parser);
+            }
+        }
+        if (!response.isSuccessful()) throw new IOException(error + ": " + response.code());
+        T result;
+        // 边读边解码，不先把整个响应体读成字符串
+        try (JsonReader in = new JsonReader(Objects.requireNonNull(response.body()).charStream())) {
+            result = parser.parse(in);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException(error + ": 响应格式不对 (" + e.getMessage() + ")", e);
+        }
+        // 解析成功（status 为 0）才缓存，业务错误不缓存
+        if (ttlMs > 0) CACHE.put(key, result, response.header("ETag"), ttlMs, generation);
+        return ResponseCache.copyOf(result);
+    }
 
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
-                .build();
+    /** 统计用的接口名：路径里的数字 ID 换成 {id} */
+    private static String endpoint(Request request) {
+        return request.method() + " " + request.url().encodedPath().replaceAll("/\\d+", "/{id}");
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("取消匹配请求失败: " + response.code());
-            }
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-            if (jsonObject.get("status").getAsInt() != 0) {
-                throw new IOException(jsonObject.get("message").getAsString());
+    /** 流式读响应外壳；dataAdapter 为 null 时跳过 data */
+    private static <D> Envelope<D> readEnvelope(JsonReader in, TypeAdapter<D> dataAdapter) throws IOException {
+        int status = -1;
+        String message = null;
+        D data = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "status" -> status = (int) LobbyModels.nextLong(in);
+                case "message" -> message = LobbyModels.nextString(in);
+                case "data" -> {
+                    if (dataAdapter == null) in.skipValue();
+                    else data = dataAdapter.read(in);
+                }
+                default -> in.skipValue();
             }
         }
+        in.endObject();
+        return new Envelope<>(status, message, data);
     }
 
-    /**
-     * (房主) 开始自定义房间的游戏。
-     * 对应文档："四、房间模块 VIII.开始游戏"
-     * @throws IOException 当网络或业务逻辑失败时抛出。
-     */
-    public void startGame() throws IOException {
-        if (GlobalState.authToken == null) throw new IllegalStateException("Not logged in");
+    private Void parseOk(JsonReader in) throws IOException {
+        readEnvelope(in, null).checked();
+        return null;
+    }
 
-        String url = BASE_URL + "/custom-room/start-game";
-        RequestBody body = RequestBody.create(new byte[0]); // 空的POST请求体
+    private JsonObject parseObject(JsonReader in) throws IOException {
+        return readEnvelope(in, LobbyModels.JSON_OBJECT).checked();
+    }
 
-        Request request = new Request.Builder()
-                .url(url)
-                .addHeader("Authorization", "Bearer " + GlobalState.authToken)
-                .post(body)
-                .build();
+    /** 成功后执行 onSuccess（一般是让相关缓存失效） */
+    private Parser<Void> okThen(Runnable onSuccess) {
+        return in -> {
+            readEnvelope(in, null).checked();
+            onSuccess.run();
+            return null;
+        };
+    }
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("开始游戏请求失败: " + response.code());
-            }
+    /** 修改自己资料的接口：返回新的资料，同时作废自己的资料缓存 */
+    private JsonObject parseOwnProfile(JsonReader in) throws IOException {
+        JsonObject data = parseObject(in);
+        if (GlobalState.userId != null) invalidateProfile(GlobalState.userId);
+        return data;
+    }
 
-            String responseBody = Objects.requireNonNull(response.body()).string();
-            JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
+    private String parseString(JsonReader in) throws IOException {
+        return readEnvelope(in, LobbyModels.STRING).checked();
+    }
 
-            if (jsonObject.get("status").getAsInt() != 0) {
-                // 如果后端返回业务错误（例如"房间未满员"），则抛出异常
-                throw new IOException(jsonObject.get("message").getAsString());
-            }
-            // 成功时，后端会通过WebSocket广播，所以这里无需做其他事
-            System.out.println("成功发送“开始游戏”请求，等待服务器广播...");
-        }
+    private static <D> Parser<D> data(TypeAdapter<D> adapter) {
+        return in -> readEnvelope(in, adapter).checked();
+    }
+
+    /** data 为数组；为 null 时给空列表 */
+    private static <E> Parser<List<E>> list(TypeAdapter<E> element) {
+        TypeAdapter<List<E>> adapter = LobbyModels.listOf(element);
+        return in -> {
+            List<E> items = readEnvelope(in, adapter).checked();
+            return items != null ? items : List.of();
+        };
+    }
+
+    /** 同 list，但后端返回失败时也给空列表 */
+    private static <E> Parser<List<E>> listOrEmpty(TypeAdapter<E> element) {
+        TypeAdapter<List<E>> adapter = LobbyModels.listOf(element);
+        return in -> {
+            Envelope<List<E>> e = readEnvelope(in, adapter);
+            return e.status() == 0 && e.data() != null ? e.data() : List.of();
+        };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,324 @@
+package org.csu.pixelstrikejavafx.lobby.network;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 大厅 HTTP 接口返回的数据（不可变 record），每种都带一个手写的流式 TypeAdapter。
+ * ApiClient 直接从 OkHttp 的响应流里解码：不先拼成整个字符串，数字不装箱成 Double，每行也不建 Map。
+ * 不认识的字段跳过，缺的字段取默认值（数字 0、字符串 null），后端加字段不会解析失败。
+ * 只读不写：write() 不支持。
+ */
+public final class LobbyModels {
+
+    private LobbyModels() {}
+
+    /** 好友、好友申请、用户搜索结果共用 */
+    public record Friend(long userId, String nickname, String avatarUrl, String onlineStatus) {
+
+        public Friend withStatus(String status) {
+            return new Friend(userId, nickname, avatarUrl, status);
+        }
+
+        public Friend withProfile(String newNickname, String newAvatarUrl) {
+            return new Friend(userId, newNickname, newAvatarUrl, onlineStatus);
+        }
+
+        public static final TypeAdapter<Friend> ADAPTER = new ReadOnlyAdapter<>() {
+            @Override
+            public Friend read(JsonReader in) throws IOException {
+                if (skipUnless(in, JsonToken.BEGIN_OBJECT)) return null;
+                long userId = 0;
+                String nickname = null, avatarUrl = null, status = null;
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "userId" -> userId = nextLong(in);
+                        case "nickname" -> nickname = nextString(in);
+                        case "avatarUrl" -> avatarUrl = nextString(in);
+                        case "onlineStatus" -> status = nextString(in);
+                        default -> in.skipValue();
+                    }
+                }
+                in.endObject();
+                return new Friend(userId, nickname, avatarUrl, status);
+            }
+        };
+    }
+
+    public record MapInfo(long id, String name, String description) {
+
+        public static final TypeAdapter<MapInfo> ADAPTER = new ReadOnlyAdapter<>() {
+            @Override
+            public MapInfo read(JsonReader in) throws IOException {
+                if (skipUnless(in, JsonToken.BEGIN_OBJECT)) return null;
+                long id = 0;
+                String name = null, description = null;
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "id" -> id = nextLong(in);
+                        case "name" -> name = nextString(in);
+                        case "description" -> description = nextString(in);
+                        default -> in.skipValue();
+                    }
+                }
+                in.endObject();
+                return new MapInfo(id, name, description);
+            }
+        };
+    }
+
+    public record CharacterInfo(long id, String name, String description, int health, double speed) {
+
+        public static final TypeAdapter<CharacterInfo> ADAPTER = new ReadOnlyAdapter<>() {
+            @Override
+            public CharacterInfo read(JsonReader in) throws IOException {
+                if (skipUnless(in, JsonToken.BEGIN_OBJECT)) return null;
+                long id = 0;
+                String name = null, description = null;
+                int health = 0;
+                double speed = 0;
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "id" -> id = nextLong(in);
+                        case "name" -> name = nextString(in);
+                        case "description" -> description = nextString(in);
+                        case "health" -> health = (int) nextDouble(in);
+                        case "speed" -> speed = nextDouble(in);
+                        default -> in.skipValue();
+                    }
+                }
+                in.endObject();
+                return new CharacterInfo(id, name, description, health, speed);
+            }
+        };
+    }
+
+    /** 战绩列表的一行；ranking 为 0 表示后端没给 */
+    public record MatchSummary(long matchId, String gameMode, String mapName, String startTime, int ranking) {
+
+        public static final TypeAdapter<MatchSummary> ADAPTER = new ReadOnlyAdapter<>() {
+            @Override
+            public MatchSummary read(JsonReader in) throws IOException {
+                if (skipUnless(in, JsonToken.BEGIN_OBJECT)) return null;
+                long matchId = 0;
+                String gameMode = null, mapName = null, startTime = null;
+                int ranking = 0;
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "matchId" -> matchId = nextLong(in);
+                        case "gameMode" -> gameMode = nextString(in);
+                        case "mapName" -> mapName = nextString(in);
+                        case "startTime" -> startTime = nextString(in);
+                        case "ranking" -> ranking = (int) nextLong(in);
+                        default -> in.skipValue();
+                    }
+                }
+                in.endObject();
+                return new MatchSummary(matchId, gameMode, mapName, startTime, ranking);
+            }
+        };
+    }
+
+    /**
+     * 一页战绩；nextCursor 为 null 表示没有下一页。
+     * 支持分页的后端返回 {"items":[..],"nextCursor":".."}；老接口直接返回数组，当作只有一页。
+     */
+    public record HistoryPage(List<MatchSummary> items, String nextCursor) {
+
+        public static final HistoryPage EMPTY = new HistoryPage(List.of(), null);
+
+        public static final TypeAdapter<HistoryPage> ADAPTER = new ReadOnlyAdapter<>() {
+            @Override
+            public HistoryPage read(JsonReader in) throws IOException {
+                if (in.peek() == JsonToken.BEGIN_ARRAY) {
+                    return new HistoryPage(listOf(MatchSummary.ADAPTER).read(in), null);
+                }
+                if (skipUnless(in, JsonToken.BEGIN_OBJECT)) return null;
+                List<MatchSummary> items = null;
+                String nextCursor = null;
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "items" -> items = listOf(MatchSummary.ADAPTER).read(in);
+                        case "nextCursor" -> nextCursor = nextString(in);
+                        default -> in.skipValue();
+                    }
+                }
+                in.endObject();
+                return new HistoryPage(items != null ? items : List.of(), nextCursor);
+            }
+        };
+    }
+
+    public record Participant(long userId, String nickname, String characterName, int ranking, int kills, int deaths) {
+
+        public static final TypeAdapter<Participant> ADAPTER = new ReadOnlyAdapter<>() {
+            @Override
+            public Participant read(JsonReader in) throws IOException {
+                if (skipUnless(in, JsonToken.BEGIN_OBJECT)) return null;
+                long userId = 0;
+                String nickname = null, characterName = null;
+                int ranking = 0, kills = 0, deaths = 0;
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "userId" -> userId = nextLong(in);
+                        case "nickname" -> nickname = nextString(in);
+                        case "characterName" -> characterName = nextString(in);
+                        case "ranking" -> ranking = (int) nextLong(in);
+                        case "kills" -> kills = (int) nextLong(in);
+                        case "deaths" -> deaths = (int) nextLong(in);
+                        default -> in.skipValue();
+                    }
+                }
+                in.endObject();
+                return new Participant(userId, nickname, characterName, ranking, kills, deaths);
+            }
+        };
+    }
+
+    /** 一场对局的完整战绩；participants 按排名升序 */
+    public record MatchDetails(long matchId, String gameMode, String mapName, String startTime, String endTime,
+                               List<Participant> participants) {
+
+        /** 某个玩家在这场里的数据，没参加返回 null */
+        public Participant participant(long userId) {
+            for (Participant p : participants) {
+                if (p.userId() == userId) return p;
+            }
+            return null;
+        }
+
+        public static final TypeAdapter<MatchDetails> ADAPTER = new ReadOnlyAdapter<>() {
+            @Override
+            public MatchDetails read(JsonReader in) throws IOException {
+                if (skipUnless(in, JsonToken.BEGIN_OBJECT)) return null;
+                long matchId = 0;
+                String gameMode = null, mapName = null, startTime = null, endTime = null;
+                List<Participant> participants = null;
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "matchId" -> matchId = nextLong(in);
+                        case "gameMode" -> gameMode = nextString(in);
+                        case "mapName" -> mapName = nextString(in);
+                        case "startTime" -> startTime = nextString(in);
+                        case "endTime" -> endTime = nextString(in);
+                        case "participants" -> participants = listOf(Participant.ADAPTER).read(in);
+                        default -> in.skipValue();
+                    }
+                }
+                in.endObject();
+                List<Participant> sorted = new ArrayList<>(participants == null ? List.of() : participants);
+                sorted.sort((a, b) -> Integer.compare(a.ranking(), b.ranking()));
+                return new MatchDetails(matchId, gameMode, mapName, startTime, endTime, Collections.unmodifiableList(sorted));
+            }
+        };
+    }
+
+    // ================= 解码工具 =================
+
+    /** JSON 数组 -> 不可变 List；null 或类型不对时返回 null */
+    public static <T> TypeAdapter<List<T>> listOf(TypeAdapter<T> element) {
+        return new ReadOnlyAdapter<>() {
+            @Override
+            public List<T> read(JsonReader in) throws IOException {
+                if (skipUnless(in, JsonToken.BEGIN_ARRAY)) return null;
+                List<T> list = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    T item = element.read(in);
+                    if (item != null) list.add(item);
+                }
+                in.endArray();
+                return Collections.unmodifiableList(list);
+            }
+        };
+    }
+
+    /** 字符串（数字也按字符串读）；null 或类型不对时返回 null */
+    public static final TypeAdapter<String> STRING = new ReadOnlyAdapter<>() {
+        @Override
+        public String read(JsonReader in) throws IOException {
+            return nextString(in);
+        }
+    };
+
+    /** 还没有专门 record 的数据（登录结果、用户资料）；null 或类型不对时返回 null */
+    public static final TypeAdapter<JsonObject> JSON_OBJECT = new ReadOnlyAdapter<>() {
+        @Override
+        public JsonObject read(JsonReader in) throws IOException {
+            if (skipUnless(in, JsonToken.BEGIN_OBJECT)) return null;
+            return JsonParser.parseReader(in).getAsJsonObject();
+        }
+    };
+
+    private abstract static class ReadOnlyAdapter<T> extends TypeAdapter<T> {
+        @Override
+        public void write(JsonWriter out, T value) {
+            throw new UnsupportedOperationException("read-only adapter");
+        }
+    }
+
+    /** 下一个值不是期望的类型（比如出错时 data 为 null 或字符串）就跳过它，返回 true */
+    static boolean skipUnless(JsonReader in, JsonToken expected) throws IOException {
+        if (in.peek() == expected) return false;
+        in.skipValue();
+        return true;
+    }
+
+    static String nextString(JsonReader in) throws IOException {
+        JsonToken t = in.peek();
+        if (t == JsonToken.STRING || t == JsonToken.NUMBER) return in.nextString();
+        if (t == JsonToken.BOOLEAN) return String.valueOf(in.nextBoolean());
+        in.skipValue();
+        return null;
+    }
+
+    static long nextLong(JsonReader in) throws IOException {
+        JsonToken t = in.peek();
+        if (t == JsonToken.NUMBER) {
+            try {
+                return in.nextLong();
+            } catch (NumberFormatException e) {
+                // 后端偶尔给 1.5 这种写法；失败后 JsonReader 已缓存了这个值，接着按 double 读
+                return (long) in.nextDouble();
+            }
+        }
+        if (t == JsonToken.STRING) {
+            try {
+                return Long.parseLong(in.nextString().trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        in.skipValue();
+        return 0;
+    }
+
+    static double nextDouble(JsonReader in) throws IOException {
+        JsonToken t = in.peek();
+        if (t == JsonToken.NUMBER || t == JsonToken.STRING) {
+            try {
+                return Double.parseDouble(in.nextString().trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        in.skipValue();
+        return 0;
+    }
+}
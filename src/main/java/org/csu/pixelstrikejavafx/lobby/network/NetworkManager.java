@@ -7,6 +7,7 @@ import jakarta.websocket.ClientEndpoint;
 import org.csu.pixelstrikejavafx.core.MatchSuccessEvent;
 import org.csu.pixelstrikejavafx.lobby.events.*;
 import org.csu.pixelstrikejavafx.core.GlobalState;
+import org.csu.pixelstrikejavafx.game.network.NetConditioner;
 
 import java.net.URI;
 import java.util.concurrent.Executors;
@@ -39,6 +40,8 @@ public class NetworkManager {
     private volatile JsonObject cachedRoomUpdate = null;
 
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // 网络劣化模拟（-Dpixelstrike.netsim），大厅只有下行消息
+    private final NetConditioner.Link netsim = NetConditioner.get().link();
 
     private NetworkManager() {
         // 私有构造函数，防止外部实例化
@@ -110,6 +113,11 @@ public class NetworkManager {
 
     @OnMessage
     public void onMessage(String message) {
+        // 大厅消息（game_start、room_update 等）全都是可靠的，只延迟不丢
+        netsim.inbound(() -> handleMessage(message), false);
+    }
+
+    private void handleMessage(String message) {
         System.out.println("Received WebSocket message: " + message);
         try {
             JsonObject msgJson = gson.fromJson(message, JsonObject.class);
@@ -119,8 +127,10 @@ public class NetworkManager {
             String inviterNickname;
             long inviterId;
 
+            // 先让相关的 HTTP 缓存失效，再发事件：监听者收到事件后重新拉取时拿到的是新数据
             switch (type) {
                 case "status_update":
+                    ApiClient.invalidateFriends();
                     FXGL.getEventBus().fireEvent(new FriendStatusEvent(msgJson));
                     break;
                 case "game_start":
@@ -130,15 +140,20 @@ public class NetworkManager {
                     JsonObject characterSelections = msgJson.getAsJsonObject("characterSelections");
                     FXGL.getEventBus().fireEvent(new MatchSuccessEvent(serverAddress, gameId, characterSelections));break;
                 case "new_friend_request":
+                    ApiClient.invalidateFriends();
                     FXGL.getEventBus().fireEvent(new NewFriendRequestEvent(msgJson));
                     break;
                 case "friend_request_accepted":
+                    ApiClient.invalidateFriends();
                     FXGL.getEventBus().fireEvent(new FriendRequestAcceptedEvent(msgJson));
                     break;
                 case "profile_update":
+                    if (msgJson.has("userId")) ApiClient.invalidateProfile(msgJson.get("userId").getAsLong());
+                    else ApiClient.invalidateFriends();
                     FXGL.getEventBus().fireEvent(new FriendProfileUpdateEvent(msgJson));
                     break;
                 case "friend_removed":
+                    ApiClient.invalidateFriends();
                     FXGL.getEventBus().fireEvent(new FriendRemovedEvent(msgJson));
                     break;
                 case "room_update":
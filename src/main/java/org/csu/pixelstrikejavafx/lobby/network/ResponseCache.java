@@ -0,0 +1,86 @@
+package org.csu.pixelstrikejavafx.lobby.network;
+
+import com.google.gson.JsonObject;
+import okhttp3.Request;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ApiClient 的 GET 响应缓存，按完整 URL 存解码后的结果和 ETag。
+ *   没过期：直接用缓存的结果，不发请求也不解析；
+ *   过期了：带 If-None-Match 重新验证，304 时沿用旧结果并续期，200 时替换；
+ *   失效：WebSocket 事件（好友变化、资料更新）和本机的修改操作通过 invalidate 让相关条目立即作废。
+ * 结果大多是 LobbyModels 里的不可变 record / List，可以直接共享；
+ * 还是 JsonObject 的（用户资料）命中时复制一份（copyOf），调用方改了也不会污染缓存。
+ *
+ * 失效和请求可能交错：请求发出前记下 generation，回来时代数变了就不写入，免得把失效前的旧数据又存回去。
+ */
+final class ResponseCache {
+
+    static final class Entry {
+        final Object value;
+        final String etag;
+        volatile long expiresAt;
+
+        Entry(Object value, String etag, long expiresAt) {
+            this.value = value;
+            this.etag = etag;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    static String key(Request request) {
+        return request.url().toString();
+    }
+
+    long generation() {
+        return generation.get();
+    }
+
+    /** 没过期的条目，没有返回 null */
+    Entry fresh(String key) {
+        Entry e = entries.get(key);
+        return e != null && System.currentTimeMillis() < e.expiresAt ? e : null;
+    }
+
+    /** 有旧条目且带 ETag 时加上 If-None-Match */
+    Request conditional(Request request) {
+        Entry e = entries.get(key(request));
+        if (e == null || e.etag == null) return request;
+        return request.newBuilder().header("If-None-Match", e.etag).build();
+    }
+
+    /** 收到 304：续期并返回旧结果；条目已经被作废时返回 null */
+    @SuppressWarnings("unchecked")
+    <T> T revalidated(String key, long ttlMs) {
+        Entry e = entries.get(key);
+        if (e == null) return null;
+        e.expiresAt = System.currentTimeMillis() + ttlMs;
+        return (T) e.value;
+    }
+
+    void put(String key, Object value, String etag, long ttlMs, long generationAtRequest) {
+        if (value == null || generation.get() != generationAtRequest) return;
+        entries.put(key, new Entry(value, etag, System.currentTimeMillis() + ttlMs));
+    }
+
+    /** 交给调用方的副本：可变的 JsonObject 复制一份，不可变的原样返回 */
+    @SuppressWarnings("unchecked")
+    static <T> T copyOf(T value) {
+        return value instanceof JsonObject json ? (T) json.deepCopy() : value;
+    }
+
+    void invalidate(String url) {
+        generation.incrementAndGet();
+        entries.remove(url);
+    }
+
+    void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+}
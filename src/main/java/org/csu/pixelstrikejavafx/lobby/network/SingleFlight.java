@@ -0,0 +1,118 @@
+package org.csu.pixelstrikejavafx.lobby.network;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 合并同时进行的相同 GET：第一个调用真正发请求，请求回来之前的相同调用都挂在它上面，共用一次网络往返和一次解析结果。
+ * 事件风暴时（好友状态、房间更新、界面初始化同时触发 getFriends）后端只收到一个请求。
+ *
+ * 每个调用方拿到自己的 future：某个调用方取消（比如界面被换掉）不影响其他人；
+ * 所有调用方都取消了，底层请求才取消。
+ * 按接口统计 issued（真正发出）/ coalesced（被合并）/ cached（缓存命中，见 ResponseCache）。
+ */
+final class SingleFlight {
+
+    static final class Counters {
+        final LongAdder issued = new LongAdder();
+        final LongAdder coalesced = new LongAdder();
+        final LongAdder cached = new LongAdder();
+    }
+
+    private static final class Flight<T> {
+        final CompletableFuture<T> shared;
+        int waiters;   // 受 Flight 自身的锁保护
+
+        Flight(CompletableFuture<T> shared) {
+            this.shared = shared;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Flight<?>> flights = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counters> counters = new ConcurrentHashMap<>();
+
+    Counters counters(String endpoint) {
+        return counters.computeIfAbsent(endpoint, k -> new Counters());
+    }
+
+    /**
+     * 有相同 key 的请求在进行中就加入它，否则用 start 发一个新的。
+     * @param key      区分“相同请求”的键（URL + 身份）
+     * @param endpoint 统计用的接口名
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> join(String key, String endpoint, Supplier<CompletableFuture<T>> start) {
+        Counters c = counters(endpoint);
+        Flight<T> flight;
+        while (true) {
+            boolean[] created = {false};
+            flight = (Flight<T>) flights.computeIfAbsent(key, k -> {
+                created[0] = true;
+                Flight<T> f = new Flight<>(new CompletableFuture<T>());
+                f.waiters = 1;
+                return f;
+            });
+            if (!created[0]) {
+                synchronized (flight) {
+                    // 最后一个调用方刚好取消掉了这个 flight，换一个新的
+                    if (flight.waiters == 0) continue;
+                    flight.waiters++;
+                }
+                c.coalesced.increment();
+                break;
+            }
+            c.issued.increment();
+            Flight<T> f = flight;
+            CompletableFuture<T> call;
+            try {
+                call = start.get();
+            } catch (RuntimeException e) {
+                call = CompletableFuture.failedFuture(e);
+            }
+            CompletableFuture<T> started = call;
+            f.shared.whenComplete((v, e) -> {
+                if (f.shared.isCancelled()) started.cancel(true);
+            });
+            started.whenComplete((v, e) -> {
+                flights.remove(key, f);
+                if (e != null) f.shared.completeExceptionally(e);
+                else f.shared.complete(v);
+            });
+            break;
+        }
+
+        Flight<T> f = flight;
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        f.shared.whenComplete((v, e) -> {
+            if (e != null) mine.completeExceptionally(e);
+            else mine.complete(v);
+        });
+        mine.whenComplete((v, e) -> {
+            if (!mine.isCancelled()) return;
+            boolean last;
+            synchronized (f) {
+                last = --f.waiters == 0;
+            }
+            if (last && !f.shared.isDone()) {
+                flights.remove(key, f);
+                f.shared.cancel(true);
+            }
+        });
+        return mine;
+    }
+
+    /** 各接口的计数，一行一个 */
+    String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Counters> e : new TreeMap<>(counters).entrySet()) {
+            Counters c = e.getValue();
+            sb.append(String.format("%-32s issued %d coalesced %d cached %d%n",
+                    e.getKey(), c.issued.sum(), c.coalesced.sum(), c.cached.sum()));
+        }
+        return sb.toString();
+    }
+}
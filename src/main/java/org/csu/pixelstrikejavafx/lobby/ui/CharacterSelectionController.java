@@ -6,18 +6,19 @@ import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.CharacterInfo;
+
 import java.util.List;
-import java.util.Map;
 import java.util.function.Consumer;
 
 public class CharacterSelectionController {
 
     @FXML private Label titleLabel;
-    @FXML private ListView<Map<String, Object>> characterListView;
+    @FXML private ListView<CharacterInfo> characterListView;
     @FXML private Button confirmButton;
     @FXML private Button cancelButton;
 
-    private Consumer<Map<String, Object>> onConfirm;
+    private Consumer<CharacterInfo> onConfirm;
     private Runnable onCancel;
 
     @FXML
@@ -25,7 +26,7 @@ public class CharacterSelectionController {
         setupListViewCellFactory();
 
         confirmButton.setOnAction(e -> {
-            Map<String, Object> selectedCharacter = characterListView.getSelectionModel().getSelectedItem();
+            CharacterInfo selectedCharacter = characterListView.getSelectionModel().getSelectedItem();
             if (onConfirm != null && selectedCharacter != null) {
                 onConfirm.accept(selectedCharacter);
             }
@@ -42,7 +43,7 @@ public class CharacterSelectionController {
         titleLabel.setText(title);
     }
 
-    public void setOnConfirm(Consumer<Map<String, Object>> onConfirm) {
+    public void setOnConfirm(Consumer<CharacterInfo> onConfirm) {
         this.onConfirm = onConfirm;
     }
 
@@ -50,7 +51,7 @@ public class CharacterSelectionController {
         this.onCancel = onCancel;
     }
 
-    public void populateCharacters(List<Map<String, Object>> characters) {
+    public void populateCharacters(List<CharacterInfo> characters) {
         characterListView.getItems().setAll(characters);
         // 默认选中第一个
         if (!characters.isEmpty()) {
@@ -61,15 +62,15 @@ public class CharacterSelectionController {
     private void setupListViewCellFactory() {
         characterListView.setCellFactory(lv -> new ListCell<>() {
             @Override
-            protected void updateItem(Map<String, Object> item, boolean empty) {
+            protected void updateItem(CharacterInfo item, boolean empty) {
                 super.updateItem(item, empty);
                 if (empty || item == null) {
                     setText(null);
                     setGraphic(null);
                 } else {
                     // 自定义单元格显示，可以做得更丰富
-                    setText(String.format("%s (生命: %s, 速度: %s)",
-                            item.get("name"), item.get("health"), item.get("speed")));
+                    setText(String.format("%s (生命: %d, 速度: %s)",
+                            item.name(), item.health(), item.speed()));
                     // 你也可以在这里添加图片等
                 }
             }
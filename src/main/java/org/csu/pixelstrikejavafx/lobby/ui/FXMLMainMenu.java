@@ -131,7 +131,8 @@ public class FXMLMainMenu extends FXGLMenu {
     private void performLogout(Runnable onLogoutFinished) {
         if (GlobalState.authToken != null) {
             System.out.println("窗口关闭，执行优雅退出...");
-            new Thread(() -> {
+            // 退出流程不属于任何界面，放在应用级作用域里，不会因为切界面被取消
+            ViewScope.APP.run(() -> {
                 try {
                     ApiClient apiClient = new ApiClient();
 
@@ -147,6 +148,10 @@ public class FXMLMainMenu extends FXGLMenu {
                     apiClient.logout();
                     NetworkManager.getInstance().disconnect();
                     System.out.println("优雅退出成功。");
+                    // 调试用：-Dpixelstrike.lobby.requestStats=true 时打印本次会话各接口的请求计数
+                    if (Boolean.getBoolean("pixelstrike.lobby.requestStats")) {
+                        System.out.print("[ApiClient] 请求统计:\n" + ApiClient.requestStats());
+                    }
                     Platform.runLater(onLogoutFinished);
 
                 } catch (Exception e) {
@@ -164,7 +169,7 @@ public class FXMLMainMenu extends FXGLMenu {
                     });
                 }
                 // 【删除】这里的 finally 块，因为它会导致无论成功与否都退出
-            }).start();
+            });
         } else {
             // 如果未登录，直接退出
             Platform.runLater(onLogoutFinished);
@@ -19,6 +19,10 @@ import javafx.scene.text.FontWeight;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import org.csu.pixelstrikejavafx.lobby.network.ApiClient;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.HistoryPage;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.MatchDetails;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.MatchSummary;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.Participant;
 import org.csu.pixelstrikejavafx.core.GlobalState;
 import org.csu.pixelstrikejavafx.lobby.ui.dialog.DialogManager;
 
@@ -27,14 +31,35 @@ import java.net.URL;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 public class HistoryController implements Initializable {
 
-    @FXML private ListView<Map<String, Object>> historyListView;
+    @FXML private ListView<MatchSummary> historyListView;
     private final ApiClient apiClient = new ApiClient();
+    private final ViewScope scope = ViewScope.current();
     private static final DateTimeFormatter INPUT_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
     private static final DateTimeFormatter OUTPUT_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
+    /** 每页条数，也是一次往列表里追加的条数 */
+    private static final int PAGE_SIZE = 20;
+    /** 显示到离末尾还剩这么多行时加载下一页 */
+    private static final int LOAD_AHEAD = 5;
+
+    // 分页状态，只在 FX 线程上读写
+    private final Deque<MatchSummary> buffered = new ArrayDeque<>();   // 已经取到、还没加进列表的（老接口一次返回全部）
+    private String nextCursor;
+    private boolean exhausted;   // 后端没有下一页了
+    private boolean loading;
+    private CompletableFuture<HistoryPage> prefetch;   // 提前发出的下一页请求
+
+    // 自己的 K/D 要查详情才有，只为屏幕上的行去查
+    private final Map<Long, Participant> myStats = new HashMap<>();   // 值为 null：查过了，但没有自己的数据
+    private final Map<Long, Integer> visibleRows = new HashMap<>();   // matchId -> 正在显示它的单元格数
+    private final Set<Long> detailQueue = new LinkedHashSet<>();
+    private final Set<Long> detailInflight = new HashSet<>();
+    private boolean drainScheduled;
+
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         historyListView.setCellFactory(lv -> new ListCell<>() {
@@ -47,7 +72,9 @@ public class HistoryController implements Initializable {
             private final Label timeLabel = new Label();
             private final Label rankingLabel = new Label("排名");
             private final Label rankingValue = new Label();
+            private final Label kdLabel = new Label();
             private final Region spacer = new Region();
+            private long shownMatchId = -1;
 
             {
                 // 初始化布局
@@ -56,9 +83,10 @@ public class HistoryController implements Initializable {
                 timeLabel.getStyleClass().add("history-cell-time");
                 rankingLabel.getStyleClass().add("history-cell-ranking-label");
                 rankingValue.getStyleClass().add("history-cell-ranking-value");
+                kdLabel.getStyleClass().add("history-cell-time");
 
                 leftBox.getChildren().addAll(gameModeLabel, mapLabel, timeLabel);
-                rightBox.getChildren().addAll(rankingLabel, rankingValue);
+                rightBox.getChildren().addAll(rankingLabel, rankingValue, kdLabel);
                 rightBox.setAlignment(Pos.CENTER);
 
                 layout.setLeft(leftBox);
@@ -67,15 +95,19 @@ public class HistoryController implements Initializable {
             }
 
             @Override
-            protected void updateItem(Map<String, Object> match, boolean empty) {
+            protected void updateItem(MatchSummary match, boolean empty) {
                 super.updateItem(match, empty);
+                if (shownMatchId >= 0) rowHidden(shownMatchId);
+                shownMatchId = -1;
                 if (empty || match == null) {
                     setGraphic(null);
                 } else {
-                    gameModeLabel.setText((String) match.get("gameMode"));
-                    mapLabel.setText("地图: " + match.get("mapName"));
+                    shownMatchId = match.matchId();
+                    rowShown(shownMatchId);
+                    gameModeLabel.setText(match.gameMode());
+                    mapLabel.setText("地图: " + match.mapName());
 
-                    String startTimeStr = (String) match.get("startTime");
+                    String startTimeStr = match.startTime();
                     try {
                         LocalDateTime ldt = LocalDateTime.parse(startTimeStr);
                         timeLabel.setText(ldt.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")));
@@ -83,148 +115,228 @@ public class HistoryController implements Initializable {
                         timeLabel.setText("未知时间");
                     }
 
-                    Object rankingObj = match.get("ranking");
-                    rankingValue.setText(rankingObj instanceof Number ? String.valueOf(((Number) rankingObj).intValue()) : "N/A");
+                    Participant me = myStats.get(match.matchId());
+                    int ranking = match.ranking() > 0 ? match.ranking() : (me != null ? me.ranking() : 0);
+                    rankingValue.setText(ranking > 0 ? String.valueOf(ranking) : "N/A");
+                    if (!myStats.containsKey(match.matchId())) {
+                        kdLabel.setText("K/D ...");
+                    } else {
+                        kdLabel.setText(me != null ? "K/D " + me.kills() + " / " + me.deaths() : "K/D -");
+                    }
 
                     setGraphic(layout);
+
+                    // 快滚到底了：加载下一页（不在布局过程中改列表）
+                    if (getIndex() >= historyListView.getItems().size() - LOAD_AHEAD) {
+                        Platform.runLater(HistoryController.this::loadMore);
+                    }
                 }
             }
         });
 
         historyListView.setOnMouseClicked(event -> {
-            Map<String, Object> selectedMatch = historyListView.getSelectionModel().getSelectedItem();
+            MatchSummary selectedMatch = historyListView.getSelectionModel().getSelectedItem();
             if (selectedMatch != null) {
-                long matchId = ((Number) selectedMatch.get("matchId")).longValue();
-                showMatchDetails(matchId);
+                showMatchDetails(selectedMatch.matchId());
             }
         });
 
-        loadHistory();
+        loadMore();
+    }
+
+    /**
+     * 往列表末尾追加一页：缓冲里有就直接用，否则用提前发出的请求或者新发一个。
+     * 第一页回来就显示，后面的随着滚动再取。
+     */
+    private void loadMore() {
+        if (loading) return;
+        if (!buffered.isEmpty()) {
+            appendFromBuffer();
+            return;
+        }
+        if (exhausted) return;
+        loading = true;
+        CompletableFuture<HistoryPage> page = prefetch != null ? prefetch : fetchPage();
+        prefetch = null;
+        page.thenAccept(this::onPage)
+                .exceptionally(e -> {
+                    loading = false;   // 下次滚动时重试
+                    e.printStackTrace();
+                    return null;
+                });
     }
 
-    private void loadHistory() {
-        new Thread(() -> {
-            try {
-                List<Map<String, Object>> matches = apiClient.getHistory();
-                Platform.runLater(() -> historyListView.getItems().setAll(matches));
-            } catch (Exception e) {
-                e.printStackTrace();
+    private CompletableFuture<HistoryPage> fetchPage() {
+        String cursor = nextCursor;
+        return scope.call(() -> apiClient.getHistoryPageAsync(cursor, PAGE_SIZE));
+    }
+
+    private void onPage(HistoryPage page) {
+        loading = false;
+        buffered.addAll(page.items());
+        nextCursor = page.nextCursor();
+        exhausted = nextCursor == null || page.items().isEmpty();
+        appendFromBuffer();
+    }
+
+    private void appendFromBuffer() {
+        List<MatchSummary> chunk = new ArrayList<>(PAGE_SIZE);
+        while (chunk.size() < PAGE_SIZE && !buffered.isEmpty()) chunk.add(buffered.poll());
+        historyListView.getItems().addAll(chunk);
+        // 缓冲用完就提前取下一页，滚到底时一般已经回来了
+        if (buffered.isEmpty() && !exhausted && prefetch == null) prefetch = fetchPage();
+    }
+
+    // ================= 可见行的 K/D =================
+
+    private void rowShown(long matchId) {
+        visibleRows.merge(matchId, 1, Integer::sum);
+        if (!myStats.containsKey(matchId) && !detailInflight.contains(matchId) && detailQueue.add(matchId)) {
+            // 同一次布局里显示出来的行攒成一批再发
+            if (!drainScheduled) {
+                drainScheduled = true;
+                Platform.runLater(this::drainDetails);
             }
-        }).start();
+        }
     }
 
-    private void showMatchDetails(long matchId) {
-        new Thread(() -> {
-            try {
-                JsonObject details = apiClient.getHistoryDetails(matchId);
+    private void rowHidden(long matchId) {
+        visibleRows.computeIfPresent(matchId, (id, n) -> n > 1 ? n - 1 : null);
+    }
 
-                Platform.runLater(() -> {
-                    try {
-                        // --- 1. 创建UI组件 ---
-                        VBox rootPane = new VBox();
-                        rootPane.setPrefWidth(550);
-                        rootPane.setStyle("-fx-background-color: black; -fx-border-color: #4b5563; -fx-border-width: 1; -fx-background-radius: 8; -fx-border-radius: 8;");
-
-                        // a) 创建可拖动的标题栏
-                        Label titleLabel = new Label("战绩详情 (ID: " + matchId + ")");
-                        titleLabel.setStyle("-fx-text-fill: white; -fx-font-weight: bold; -fx-padding: 10; -fx-cursor: move;");
-                        titleLabel.setMaxWidth(Double.MAX_VALUE);
-                        titleLabel.setAlignment(Pos.CENTER);
-
-                        // b) 对局概要信息 (不变)
-                        VBox matchInfoBox = new VBox(5);
-                        matchInfoBox.setAlignment(Pos.CENTER_LEFT);
-                        matchInfoBox.setStyle("-fx-padding: 10; -fx-background-color: #1f2937; -fx-background-radius: 8; -fx-border-color: #374151;");
-                        String gameMode = details.get("gameMode").getAsString();
-                        String mapName = details.get("mapName").getAsString();
-                        String startTime = formatDateTime(details.get("startTime").getAsString());
-                        String endTime = formatDateTime(details.get("endTime").getAsString());
-                        matchInfoBox.getChildren().addAll(
-                                new Text("模式: " + gameMode), new Text("地图: " + mapName),
-                                new Text("开始时间: " + startTime), new Text("结束时间: " + endTime)
-                        );
-                        // 为概要信息里的文字设置白色
-                        matchInfoBox.getChildren().forEach(node -> node.setStyle("-fx-fill: white;"));
-
-
-                        // c) 战绩表格 (不变)
-                        GridPane grid = new GridPane();
-                        grid.setHgap(15); grid.setVgap(8); grid.setAlignment(Pos.CENTER); grid.setPadding(new Insets(10));
-                        grid.getColumnConstraints().addAll(
-                                createColumn(60, HPos.CENTER), createColumn(180, HPos.LEFT),
-                                createColumn(80, HPos.CENTER), createColumn(80, HPos.CENTER),
-                                createColumn(80, HPos.CENTER)
-                        );
-                        addGridHeader(grid, 0, "排名", "玩家", "角色", "击杀", "死亡");
-                        grid.add(new Separator(), 0, 1, 5, 1);
-                        JsonArray participantsArray = details.getAsJsonArray("participants");
-                        List<JsonElement> participants = new ArrayList<>();
-                        participantsArray.forEach(participants::add);
-                        participants.sort(Comparator.comparingInt(p -> p.getAsJsonObject().get("ranking").getAsInt()));
-                        int rowIndex = 2;
-                        for (JsonElement pElement : participants) {
-                            JsonObject p = pElement.getAsJsonObject();
-                            boolean isCurrentUser = GlobalState.userId != null && p.get("userId").getAsLong() == GlobalState.userId;
-                            addGridDataRow(grid, rowIndex++, isCurrentUser,
-                                    p.get("ranking").getAsString(), p.get("nickname").getAsString(),
-                                    p.get("characterName").getAsString(), p.get("kills").getAsString(),
-                                    p.get("deaths").getAsString()
-                            );
-                        }
-                        VBox contentPane = new VBox(10, matchInfoBox, grid);
-                        contentPane.setPadding(new Insets(10));
-
-                        // d) 关闭按钮
-                        Button closeButton = new Button("关闭");
-                        String buttonStyle = "-fx-background-color: #4b5563; -fx-text-fill: white; -fx-font-weight: bold; -fx-background-radius: 5; -fx-cursor: hand;";
-                        closeButton.setStyle(buttonStyle);
-                        HBox buttonBar = new HBox(closeButton);
-                        buttonBar.setAlignment(Pos.CENTER);
-                        buttonBar.setPadding(new Insets(10));
-
-                        // e) 组装所有部分
-                        rootPane.getChildren().addAll(titleLabel, new Separator(), contentPane, buttonBar);
-                        VBox.setVgrow(contentPane, Priority.ALWAYS);
-
-                        // --- 2. 创建和配置独立的窗口 (Stage) ---
-                        Stage stage = new Stage();
-                        stage.initOwner(FXGL.getPrimaryStage());
-                        stage.initModality(javafx.stage.Modality.APPLICATION_MODAL);
-                        stage.initStyle(javafx.stage.StageStyle.TRANSPARENT);
-                        Scene scene = new Scene(rootPane);
-                        scene.setFill(Color.TRANSPARENT);
-                        stage.setScene(scene);
-
-                        // --- 3. 实现窗口拖动 ---
-                        final double[] xOffset = {0}, yOffset = {0};
-                        titleLabel.setOnMousePressed(event -> {
-                            xOffset[0] = event.getSceneX();
-                            yOffset[0] = event.getSceneY();
-                        });
-                        titleLabel.setOnMouseDragged(event -> {
-                            stage.setX(event.getScreenX() - xOffset[0]);
-                            stage.setY(event.getScreenY() - yOffset[0]);
-                        });
-
-                        // --- 4. 关闭逻辑 ---
-                        closeButton.setOnAction(e -> stage.close());
-
-                        // --- 5. 显示窗口 ---
-                        stage.showAndWait();
-
-                    } catch (Exception uiException) {
-                        uiException.printStackTrace();
-                        FXGL.getDialogService().showMessageBox("显示详情失败: " + uiException.getMessage());
-                    }
+    /** 同时最多 MAX_CONCURRENT 个详情请求；排队期间被滚出屏幕的行不再查，滚回来时重新排队 */
+    private void drainDetails() {
+        drainScheduled = false;
+        detailQueue.removeIf(id -> !visibleRows.containsKey(id));
+        Iterator<Long> it = detailQueue.iterator();
+        while (detailInflight.size() < ViewScope.MAX_CONCURRENT && it.hasNext()) {
+            long matchId = it.next();
+            it.remove();
+            fetchMyStats(matchId);
+        }
+    }
+
+    private void fetchMyStats(long matchId) {
+        detailInflight.add(matchId);
+        // 详情会被 ApiClient 缓存，之后点开这一行的详情不用再请求
+        scope.call(() -> apiClient.getHistoryDetailsAsync(matchId))
+                .thenAccept(details -> myStats.put(matchId, GlobalState.userId != null ? details.participant(GlobalState.userId) : null))
+                .exceptionally(e -> {
+                    System.err.println("获取对局 " + matchId + " 的详情失败: " + ApiClient.errorMessage(e));
+                    myStats.put(matchId, null);
+                    return null;
+                })
+                .thenRun(() -> {
+                    detailInflight.remove(matchId);
+                    historyListView.refresh();
+                    drainDetails();
                 });
+    }
+
+    private void showMatchDetails(long matchId) {
+        scope.call(() -> apiClient.getHistoryDetailsAsync(matchId))
+                .thenAccept(details -> showDetailsWindow(details, matchId))
+                .exceptionally(e -> {
+                    e.printStackTrace();
+                    FXGL.getDialogService().showMessageBox("获取详情失败: " + ApiClient.errorMessage(e));
+                    return null;
+                });
+    }
+
+    private void showDetailsWindow(MatchDetails details, long matchId) {
+        try {
+            // --- 1. 创建UI组件 ---
+            VBox rootPane = new VBox();
+            rootPane.setPrefWidth(550);
+            rootPane.setStyle("-fx-background-color: black; -fx-border-color: #4b5563; -fx-border-width: 1; -fx-background-radius: 8; -fx-border-radius: 8;");
+
+            // a) 创建可拖动的标题栏
+            Label titleLabel = new Label("战绩详情 (ID: " + matchId + ")");
+            titleLabel.setStyle("-fx-text-fill: white; -fx-font-weight: bold; -fx-padding: 10; -fx-cursor: move;");
+            titleLabel.setMaxWidth(Double.MAX_VALUE);
+            titleLabel.setAlignment(Pos.CENTER);
+
+            // b) 对局概要信息 (不变)
+            VBox matchInfoBox = new VBox(5);
+            matchInfoBox.setAlignment(Pos.CENTER_LEFT);
+            matchInfoBox.setStyle("-fx-padding: 10; -fx-background-color: #1f2937; -fx-background-radius: 8; -fx-border-color: #374151;");
+            String gameMode = details.gameMode();
+            String mapName = details.mapName();
+            String startTime = formatDateTime(details.startTime());
+            String endTime = formatDateTime(details.endTime());
+            matchInfoBox.getChildren().addAll(
+                    new Text("模式: " + gameMode), new Text("地图: " + mapName),
+                    new Text("开始时间: " + startTime), new Text("结束时间: " + endTime)
+            );
+            // 为概要信息里的文字设置白色
+            matchInfoBox.getChildren().forEach(node -> node.setStyle("-fx-fill: white;"));
 
-            } catch (Exception e) {
-                e.printStackTrace();
-                Platform.runLater(() ->
-                        FXGL.getDialogService().showMessageBox("获取详情失败: " + e.getMessage())
+
+            // c) 战绩表格 (不变)
+            GridPane grid = new GridPane();
+            grid.setHgap(15); grid.setVgap(8); grid.setAlignment(Pos.CENTER); grid.setPadding(new Insets(10));
+            grid.getColumnConstraints().addAll(
+                    createColumn(60, HPos.CENTER), createColumn(180, HPos.LEFT),
+                    createColumn(80, HPos.CENTER), createColumn(80, HPos.CENTER),
+                    createColumn(80, HPos.CENTER)
+            );
+            addGridHeader(grid, 0, "排名", "玩家", "角色", "击杀", "死亡");
+            grid.add(new Separator(), 0, 1, 5, 1);
+            // participants 已经按排名排好
+            int rowIndex = 2;
+            for (Participant p : details.participants()) {
+                boolean isCurrentUser = GlobalState.userId != null && p.userId() == GlobalState.userId;
+                addGridDataRow(grid, rowIndex++, isCurrentUser,
+                        String.valueOf(p.ranking()), p.nickname(),
+                        p.characterName(), String.valueOf(p.kills()),
+                        String.valueOf(p.deaths())
                 );
             }
-        }).start();
+            VBox contentPane = new VBox(10, matchInfoBox, grid);
+            contentPane.setPadding(new Insets(10));
+
+            // d) 关闭按钮
+            Button closeButton = new Button("关闭");
+            String buttonStyle = "-fx-background-color: #4b5563; -fx-text-fill: white; -fx-font-weight: bold; -fx-background-radius: 5; -fx-cursor: hand;";
+            closeButton.setStyle(buttonStyle);
+            HBox buttonBar = new HBox(closeButton);
+            buttonBar.setAlignment(Pos.CENTER);
+            buttonBar.setPadding(new Insets(10));
+
+            // e) 组装所有部分
+            rootPane.getChildren().addAll(titleLabel, new Separator(), contentPane, buttonBar);
+            VBox.setVgrow(contentPane, Priority.ALWAYS);
+
+            // --- 2. 创建和配置独立的窗口 (Stage) ---
+            Stage stage = new Stage();
+            stage.initOwner(FXGL.getPrimaryStage());
+            stage.initModality(javafx.stage.Modality.APPLICATION_MODAL);
+            stage.initStyle(javafx.stage.StageStyle.TRANSPARENT);
+            Scene scene = new Scene(rootPane);
+            scene.setFill(Color.TRANSPARENT);
+            stage.setScene(scene);
+
+            // --- 3. 实现窗口拖动 ---
+            final double[] xOffset = {0}, yOffset = {0};
+            titleLabel.setOnMousePressed(event -> {
+                xOffset[0] = event.getSceneX();
+                yOffset[0] = event.getSceneY();
+            });
+            titleLabel.setOnMouseDragged(event -> {
+                stage.setX(event.getScreenX() - xOffset[0]);
+                stage.setY(event.getScreenY() - yOffset[0]);
+            });
+
+            // --- 4. 关闭逻辑 ---
+            closeButton.setOnAction(e -> stage.close());
+
+            // --- 5. 显示窗口 ---
+            stage.showAndWait();
+
+        } catch (Exception uiException) {
+            uiException.printStackTrace();
+            FXGL.getDialogService().showMessageBox("显示详情失败: " + uiException.getMessage());
+        }
     }
 
     // 新的辅助方法，用于构建和显示美化后的详情弹窗
@@ -341,50 +453,6 @@ public class HistoryController implements Initializable {
         }
     }*/
 
-  /*  *//**
-     * 加载历史战绩，并为每一条记录补充 K/D 详情
-     *//*
-    private void loadHistoryWithDetails() {
-        new Thread(() -> {
-            try {
-                // 1. 先获取基础的战绩列表
-                List<Map<String, Object>> matches = apiClient.getHistory();
-
-                // 2. 遍历每一条战绩，去请求它的详细信息
-                for (Map<String, Object> match : matches) {
-                    long matchId = ((Number) match.get("matchId")).longValue();
-                    try {
-                        JsonObject details = apiClient.getHistoryDetails(matchId);
-                        JsonArray participants = details.getAsJsonArray("participants");
-
-                        // 3. 在参与者列表中找到自己
-                        for (JsonElement pElement : participants) {
-                            JsonObject p = pElement.getAsJsonObject();
-                            long userId = p.get("userId").getAsLong();
-
-                            if (GlobalState.userId != null && GlobalState.userId == userId) {
-                                // 4. 找到后，将 K/D 数据补充到原始的 match Map 中
-                                match.put("myKills", p.get("kills").getAsInt());
-                                match.put("myDeaths", p.get("deaths").getAsInt());
-                                break; // 找到自己后就跳出内部循环
-                            }
-                        }
-                    } catch (IOException e) {
-                        // 如果某一条详情获取失败，可以设置默认值或忽略
-                        System.err.println("获取对局 " + matchId + " 的详情失败: " + e.getMessage());
-                    }
-                }
-
-                // 5. 当所有详情都获取并补充完毕后，在UI线程上更新整个列表
-                Platform.runLater(() -> historyListView.getItems().setAll(matches));
-
-            } catch (Exception e) {
-                // 如果获取列表本身就失败了
-                e.printStackTrace();
-            }
-        }).start();
-    }*/
-
     @FXML
     private void handleBackToLobby() {
         UIManager.load("lobby-view.fxml");
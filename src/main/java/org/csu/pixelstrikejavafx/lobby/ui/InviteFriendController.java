@@ -18,22 +18,24 @@ import de.jensd.fx.glyphs.fontawesome.FontAwesomeIconView;
 import org.csu.pixelstrikejavafx.lobby.events.FriendStatusEvent;
 import org.csu.pixelstrikejavafx.lobby.events.InvitationRejectedEvent;
 import org.csu.pixelstrikejavafx.lobby.network.ApiClient;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.Friend;
 import org.csu.pixelstrikejavafx.lobby.ui.dialog.DialogManager;
 
 import java.net.URL;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 public class InviteFriendController implements Initializable {
 
-    @FXML private ListView<Map<String, Object>> onlineFriendsListView;
+    @FXML private ListView<Friend> onlineFriendsListView;
     @FXML private FontAwesomeIconView closeIcon;
 
     private final ApiClient apiClient = new ApiClient();
+    // 弹窗不经过 UIManager.load，挂在打开它的房间界面的作用域上
+    private final ViewScope scope = ViewScope.current();
     private final Set<Long> invitedPlayerIds = new HashSet<>();
     private Set<Long> playerIdsInRoom = new HashSet<>();
 
@@ -73,18 +75,16 @@ public class InviteFriendController implements Initializable {
     }
 
     private void loadAllFriends() {
-        new Thread(() -> {
-            try {
-                List<Map<String, Object>> allFriends = apiClient.getFriends();
-                Platform.runLater(() -> onlineFriendsListView.getItems().setAll(allFriends));
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }).start();
+        scope.call(apiClient::getFriendsAsync)
+                .thenAccept(allFriends -> onlineFriendsListView.getItems().setAll(allFriends))
+                .exceptionally(e -> {
+                    e.printStackTrace();
+                    return null;
+                });
     }
 
     private void setupOnlineFriendsCellFactory() {
-        onlineFriendsListView.setCellFactory(lv -> new ListCell<Map<String, Object>>() {
+        onlineFriendsListView.setCellFactory(lv -> new ListCell<Friend>() {
             private final HBox hbox = new HBox(15); // 【修改】增加间距
             private final ImageView avatarView = new ImageView();
             private final HBox friendInfoHBox = new HBox(8); // 【新增】用于放置昵称和状态的HBox
@@ -110,22 +110,22 @@ public class InviteFriendController implements Initializable {
             }
 
             @Override
-            protected void updateItem(Map<String, Object> friend, boolean empty) {
+            protected void updateItem(Friend friend, boolean empty) {
                 super.updateItem(friend, empty);
 
                 if (empty || friend == null) {
                     setGraphic(null); // 如果是空行，不显示任何东西
                 } else {
                     // --- 1. 获取数据 ---
-                    String nickname = (String) friend.get("nickname");
-                    long friendId = ((Number) friend.get("userId")).longValue();
-                    String status = (String) friend.get("onlineStatus");
+                    String nickname = friend.nickname();
+                    long friendId = friend.userId();
+                    String status = friend.onlineStatus();
                     status = (status == null) ? "OFFLINE" : status.toUpperCase();
 
                     // --- 2. 更新UI内容 ---
                     nicknameLabel.setText(nickname);
                     statusLabel.setText(convertStatusToChinese(status));
-                    avatarView.setImage(UIManager.loadAvatar((String) friend.get("avatarUrl")));
+                    avatarView.setImage(UIManager.loadAvatar(friend.avatarUrl()));
 
                     // --- 3. 动态更新样式 ---
                     // 先移除所有旧样式，防止因单元格复用导致样式错乱
@@ -162,20 +162,16 @@ public class InviteFriendController implements Initializable {
                         inviteButton.setText("已邀请");
                         invitedPlayerIds.add(friendId);
 
-                        new Thread(() -> {
-                            try {
-                                apiClient.inviteFriend(friendId);
-                                Platform.runLater(() -> DialogManager.showNotification("已向 " + nickname + " 发送邀请"));
-                            } catch (Exception e) {
-                                Platform.runLater(() -> {
-                                    DialogManager.showMessage("邀请失败", e.getMessage());
+                        scope.call(() -> apiClient.inviteFriendAsync(friendId))
+                                .thenAccept(v -> DialogManager.showNotification("已向 " + nickname + " 发送邀请"))
+                                .exceptionally(e -> {
+                                    DialogManager.showMessage("邀请失败", ApiClient.errorMessage(e));
                                     // 失败后恢复按钮状态
                                     inviteButton.setDisable(false);
                                     inviteButton.setText("邀请");
                                     invitedPlayerIds.remove(friendId);
+                                    return null;
                                 });
-                            }
-                        }).start();
                     });
 
                     // --- 6. 将最终组装好的HBox设置为该单元格的图形 ---
@@ -190,13 +186,14 @@ public class InviteFriendController implements Initializable {
             long userId = event.getData().get("userId").getAsLong();
             String newStatus = event.getData().get("status").getAsString();
 
-            for (Map<String, Object> friend : onlineFriendsListView.getItems()) {
-                if (((Number) friend.get("userId")).longValue() == userId) {
-                    friend.put("onlineStatus", newStatus);
+            // Friend 不可变，换成新状态的副本；set 会让这一行重新渲染
+            List<Friend> items = onlineFriendsListView.getItems();
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i).userId() == userId) {
+                    items.set(i, items.get(i).withStatus(newStatus));
                     break;
                 }
             }
-            onlineFriendsListView.refresh();
         });
     }
 
@@ -28,6 +28,8 @@ import org.csu.pixelstrikejavafx.core.MatchSuccessEvent;
 import org.csu.pixelstrikejavafx.game.core.GameConfig;
 import org.csu.pixelstrikejavafx.lobby.events.*;
 import org.csu.pixelstrikejavafx.lobby.network.ApiClient;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.CharacterInfo;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.Friend;
 import org.csu.pixelstrikejavafx.lobby.network.NetworkManager;
 import org.csu.pixelstrikejavafx.core.GlobalState;
 import org.csu.pixelstrikejavafx.lobby.ui.dialog.DialogManager;
@@ -36,6 +38,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import javafx.scene.text.Text;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.scene.layout.BorderPane;
@@ -49,7 +52,7 @@ import javafx.util.Duration;
 public class LobbyController implements Initializable {
 
     @FXML
-    private ListView<Map<String, Object>> friendsListView;
+    private ListView<Friend> friendsListView;
 
     @FXML
     private Button startMatchButton;
@@ -67,8 +70,8 @@ public class LobbyController implements Initializable {
     private Label nicknameLabel;
 
     @FXML private TextField searchUserField;
-    @FXML private ListView<Map<String, Object>> searchResultListView;
-    @FXML private ListView<Map<String, Object>> requestsListView;
+    @FXML private ListView<Friend> searchResultListView;
+    @FXML private ListView<Friend> requestsListView;
     @FXML private ImageView avatarImageView;
     @FXML private ImageView backgroundImageView;
     @FXML private VBox friendsPanel;
@@ -83,6 +86,7 @@ public class LobbyController implements Initializable {
     private final Set<Long> friendIds = new HashSet<>();
 
     private final ApiClient apiClient = new ApiClient();
+    private final ViewScope scope = ViewScope.current();
 
     private static final Map<Integer, String> CHARACTER_ANIMATION_MAP = Map.of(
             1, "characters/ash/ash_attack.png",
@@ -255,27 +259,23 @@ public class LobbyController implements Initializable {
         }
         cancelMatchButton.setDisable(true); // 防止重复点击
 
-        new Thread(() -> {
-            try {
-                apiClient.cancelMatchmaking();
-                Platform.runLater(() -> {
+        scope.call(apiClient::cancelMatchmakingAsync)
+                .thenAccept(v -> {
                     if (matchStatusLabel != null) {
                         matchStatusLabel.setText("已取消匹配");
                     }
                     startMatchButton.setDisable(false); // 恢复“开始匹配”按钮
-                });
-            } catch (Exception e) {
-                Platform.runLater(() -> {
+                })
+                .exceptionally(e -> {
                     if (matchStatusLabel != null) {
-                        matchStatusLabel.setText("取消失败: " + e.getMessage());
+                        matchStatusLabel.setText("取消失败: " + ApiClient.errorMessage(e));
                     }
                     // 即便取消失败，也最好让用户能重点，所以这里依然恢复按钮
                     startMatchButton.setDisable(false);
                     cancelMatchButton.setDisable(true);
+                    e.printStackTrace();
+                    return null;
                 });
-                e.printStackTrace();
-            }
-        }).start();
     }
     /**
      * 处理点击“开始匹配”按钮的事件
@@ -283,41 +283,31 @@ public class LobbyController implements Initializable {
     @FXML
     private void handleStartMatch() {
         // 匹配流程: 选地图 -> 选角色 -> 开始匹配
-        new Thread(() -> {
-            try {
-                List<Map<String, Object>> maps = apiClient.getMaps();
-                Platform.runLater(() -> {
-                    DialogManager.showMapSelection(maps, selectedMap -> {
-                        if (selectedMap == null) return; // 用户取消
-                        String mapName = (String) selectedMap.get("name");
-
-                        GlobalState.selectedMapName = mapName;
-
-                        long mapId = ((Number) selectedMap.get("id")).longValue();
-
-                        // 后续的角色选择流程不变
-                        new Thread(() -> {
-                            try {
-                                List<Map<String, Object>> characters = apiClient.getCharacters();
-                                Platform.runLater(() -> showAnimatedCharacterSelectionDialog("选择角色", characters, selectedCharacter -> {
-                                    if (selectedCharacter == null) return; // 用户取消
-                                    long characterId = ((Number) selectedCharacter.get("id")).longValue();
-                                    startMatchmakingWithSelection(mapId, characterId);
-                                }));
-                            } catch (Exception e) {
-                                Platform.runLater(() -> FXGL.getDialogService().showMessageBox("获取角色列表失败: " + e.getMessage()));
-                            }
-                        }).start();
+        // 角色列表和地图列表同时请求，用户选完地图时角色列表通常已经到了
+        CompletableFuture<List<CharacterInfo>> characters = scope.call(apiClient::getCharactersAsync);
+        scope.call(apiClient::getMapsAsync)
+                .thenAccept(maps -> DialogManager.showMapSelection(maps, selectedMap -> {
+                    if (selectedMap == null) return; // 用户取消
+                    GlobalState.selectedMapName = selectedMap.name();
+                    long mapId = selectedMap.id();
+
+                    characters.thenAccept(list -> showAnimatedCharacterSelectionDialog("选择角色", list, selectedCharacter -> {
+                        if (selectedCharacter == null) return; // 用户取消
+                        long characterId = selectedCharacter.id();
+                        startMatchmakingWithSelection(mapId, characterId);
+                    })).exceptionally(e -> {
+                        FXGL.getDialogService().showMessageBox("获取角色列表失败: " + ApiClient.errorMessage(e));
+                        return null;
                     });
+                }))
+                .exceptionally(e -> {
+                    FXGL.getDialogService().showMessageBox("获取地图列表失败: " + ApiClient.errorMessage(e));
+                    return null;
                 });
-            } catch (Exception e) {
-                Platform.runLater(() -> FXGL.getDialogService().showMessageBox("获取地图列表失败: " + e.getMessage()));
-            }
-        }).start();
     }
 
 
-    private void showAnimatedCharacterSelectionDialog(String title, List<Map<String, Object>> characters, java.util.function.Consumer<Map<String, Object>> onItemSelected) {
+    private void showAnimatedCharacterSelectionDialog(String title, List<CharacterInfo> characters, java.util.function.Consumer<CharacterInfo> onItemSelected) {
         if (characters == null || characters.isEmpty()) {
             FXGL.getDialogService().showMessageBox("没有可用的角色！");
             return;
@@ -383,7 +373,7 @@ public class LobbyController implements Initializable {
         VBox.setVgrow(displayArea, Priority.ALWAYS);
 
         // --- 2. 动画与逻辑 ---
-        SimpleObjectProperty<Map<String, Object>> currentCharacter = new SimpleObjectProperty<>(characters.get(0));
+        SimpleObjectProperty<CharacterInfo> currentCharacter = new SimpleObjectProperty<>(characters.get(0));
         final int[] currentIndex = {0};
         final AnimatedTexture[] animatedTexture = {null};
         AnimationTimer timer = new AnimationTimer() {
@@ -397,11 +387,11 @@ public class LobbyController implements Initializable {
         };
 
         Runnable updateDisplay = () -> {
-            Map<String, Object> character = characters.get(currentIndex[0]);
+            CharacterInfo character = characters.get(currentIndex[0]);
             currentCharacter.set(character);
-            characterName.setText((String) character.get("name"));
-            characterDescription.setText((String) character.get("description"));
-            int characterId = ((Number) character.get("id")).intValue();
+            characterName.setText(character.name());
+            characterDescription.setText(character.description());
+            int characterId = (int) character.id();
             String animationFile = CHARACTER_ANIMATION_MAP.getOrDefault(characterId, "ash_idle.png");
             try {
                 AnimationChannel animChannel = new AnimationChannel(FXGL.image(animationFile), 15, 200, 200, Duration.seconds(1.0), 0, 14);
@@ -463,32 +453,26 @@ public class LobbyController implements Initializable {
     @FXML
     private void handleCreateRoom() {
         // 开房流程: 选地图 -> 创建房间
-        new Thread(() -> {
-            try {
-                List<Map<String, Object>> maps = apiClient.getMaps();
-                Platform.runLater(() -> {
-                    DialogManager.showMapSelection(maps, selectedMap -> {
-                        if (selectedMap == null) return; // 用户取消
-                        long mapId = ((Number) selectedMap.get("id")).longValue();
-
-                        new Thread(() -> {
-                            try {
-                                apiClient.createRoom(String.valueOf(mapId));
-                                Platform.runLater(() -> {
-                                    System.out.println("房间创建成功，正在进入...");
-                                    UIManager.showMessageOnNextScreen("房间创建成功！");
-                                    UIManager.load("room-view.fxml");
-                                });
-                            } catch (Exception e) {
-                                Platform.runLater(() -> FXGL.getDialogService().showMessageBox("创建房间失败: " + e.getMessage()));
-                            }
-                        }).start();
-                    });
+        scope.call(apiClient::getMapsAsync)
+                .thenAccept(maps -> DialogManager.showMapSelection(maps, selectedMap -> {
+                    if (selectedMap == null) return; // 用户取消
+                    long mapId = selectedMap.id();
+
+                    scope.call(() -> apiClient.createRoomAsync(String.valueOf(mapId)))
+                            .thenAccept(roomId -> {
+                                System.out.println("房间创建成功，正在进入...");
+                                UIManager.showMessageOnNextScreen("房间创建成功！");
+                                UIManager.load("room-view.fxml");
+                            })
+                            .exceptionally(e -> {
+                                FXGL.getDialogService().showMessageBox("创建房间失败: " + ApiClient.errorMessage(e));
+                                return null;
+                            });
+                }))
+                .exceptionally(e -> {
+                    FXGL.getDialogService().showMessageBox("获取地图列表失败: " + ApiClient.errorMessage(e));
+                    return null;
                 });
-            } catch (Exception e) {
-                Platform.runLater(() -> FXGL.getDialogService().showMessageBox("获取地图列表失败: " + e.getMessage()));
-            }
-        }).start();
     }
 
     // 新增一个私有方法来处理最终的API调用
@@ -499,52 +483,46 @@ public class LobbyController implements Initializable {
         startMatchButton.setDisable(true);
         cancelMatchButton.setDisable(false);
 
-        new Thread(() -> {
-            try {
-                // 调用带参数的 startMatchmaking 方法
-                apiClient.startMatchmaking(String.valueOf(mapId), String.valueOf(characterId));
-                Platform.runLater(() -> {
+        scope.call(() -> apiClient.startMatchmakingAsync(String.valueOf(mapId), String.valueOf(characterId)))
+                .thenAccept(v -> {
                     if (matchStatusLabel != null) {
                         matchStatusLabel.setText("已进入匹配队列，等待服务器通知...");
                     }
-                });
-            } catch (Exception e) {
-                Platform.runLater(() -> {
+                })
+                .exceptionally(e -> {
                     if (matchStatusLabel != null) {
-                        matchStatusLabel.setText("开始匹配失败: " + e.getMessage());
+                        matchStatusLabel.setText("开始匹配失败: " + ApiClient.errorMessage(e));
                     }
                     startMatchButton.setDisable(false);
                     cancelMatchButton.setDisable(true);
+                    e.printStackTrace();
+                    return null;
                 });
-                e.printStackTrace();
-            }
-        }).start();
     }
 
 
 
 
-    private void showSelectionDialog(String title, List<Map<String, Object>> items, java.util.function.Consumer<Map<String, Object>> onItemSelected) {
-        Dialog<Map<String, Object>> dialog = new Dialog<>();
+    private void showSelectionDialog(String title, List<CharacterInfo> items, java.util.function.Consumer<CharacterInfo> onItemSelected) {
+        Dialog<CharacterInfo> dialog = new Dialog<>();
         dialog.setTitle(title);
 
         dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
 
-        ListView<Map<String, Object>> listView = new ListView<>();
+        ListView<CharacterInfo> listView = new ListView<>();
         listView.getItems().setAll(items);
         listView.setCellFactory(lv -> new ListCell<>() {
             @Override
-            protected void updateItem(Map<String, Object> item, boolean empty) {
+            protected void updateItem(CharacterInfo item, boolean empty) {
                 super.updateItem(item, empty);
-                setText(empty ? null : (String) item.get("name"));
+                setText(empty ? null : item.name());
             }
         });
         // --- 新增逻辑：在这里设置默认选项 ---
         if ("选择角色".equals(title) && !items.isEmpty()) {
             // 遍历列表，找到ID为1的角色
-            for (Map<String, Object> character : items) {
-                // GSON解析JSON数字时默认为Double类型，所以用 1.0 比较
-                if (character.get("id") instanceof Number && ((Number) character.get("id")).doubleValue() == 1.0) {
+            for (CharacterInfo character : items) {
+                if (character.id() == 1) {
                     // 找到后，设置为默认选中项
                     listView.getSelectionModel().select(character);
                     break; // 找到后即可退出循环
@@ -565,8 +543,8 @@ public class LobbyController implements Initializable {
                 if (listView.getSelectionModel().getSelectedItem() == null) {
                     // 如果是角色选择，且没有手动选择，可以强制返回ID为1的角色
                     if ("选择角色".equals(title)) {
-                        for (Map<String, Object> character : items) {
-                            if (character.get("id") instanceof Number && ((Number) character.get("id")).doubleValue() == 1.0) {
+                        for (CharacterInfo character : items) {
+                            if (character.id() == 1) {
                                 return character;
                             }
                         }
@@ -590,19 +568,17 @@ public class LobbyController implements Initializable {
 
     @FXML
     private void handleLogout() {
-        new Thread(() -> {
-            try {
-                apiClient.logout();
-                Platform.runLater(() -> {
+        scope.call(apiClient::logoutAsync)
+                .thenAccept(v -> {
                     NetworkManager.getInstance().disconnect();
                     GlobalState.authToken = null;
                     UIManager.load("login-view.fxml");
+                })
+                .exceptionally(e -> {
+                    DialogManager.showMessage("登出失败", ApiClient.errorMessage(e));
+                    e.printStackTrace();
+                    return null;
                 });
-            } catch (Exception e) {
-                Platform.runLater(() -> DialogManager.showMessage("登出失败", e.getMessage()));
-                e.printStackTrace();
-            }
-        }).start();
     }
 
     /**
@@ -613,30 +589,24 @@ public class LobbyController implements Initializable {
     private void loadFriendsList() {
         friendsListView.getItems().clear();
 
-        new Thread(() -> {
-            try {
-                // 1. 调用API获取好友数据
-                List<Map<String, Object>> friends = apiClient.getFriends();
-
-                // 2. 更新好友ID缓存 (这部分逻辑不变)
-                friendIds.clear();
-                for (Map<String, Object> friend : friends) {
-                    friendIds.add(((Number) friend.get("userId")).longValue());
-                }
+        // 1. 调用API获取好友数据
+        scope.call(apiClient::getFriendsAsync)
+                .thenAccept(friends -> {
+                    // 2. 更新好友ID缓存 (这部分逻辑不变)
+                    friendIds.clear();
+                    for (Friend friend : friends) {
+                        friendIds.add(friend.userId());
+                    }
 
-                // 3. 在UI线程更新 ListView
-                Platform.runLater(() -> {
-                    if (friends.isEmpty()) {
-                    } else {
+                    // 3. 更新 ListView（回调已经在UI线程上）
+                    if (!friends.isEmpty()) {
                         friendsListView.getItems().setAll(friends);
                     }
-                });
-            } catch (Exception e) {
-                Platform.runLater(() -> {
+                })
+                .exceptionally(e -> {
                     e.printStackTrace();
+                    return null;
                 });
-            }
-        }).start();
     }
     /**
      * 处理点击“搜索”按钮的事件
@@ -651,30 +621,26 @@ public class LobbyController implements Initializable {
 
         searchResultListView.getItems().clear();
 
-        new Thread(() -> {
-            try {
-                List<Map<String, Object>> users = apiClient.searchUsers(nickname);
-                Platform.runLater(() -> {
+        scope.call(() -> apiClient.searchUsersAsync(nickname))
+                .thenAccept(users -> {
                     // 这里不再需要清空，因为在发起请求前已经清空了
                     if (!users.isEmpty()) {
                         searchResultListView.getItems().addAll(users);
                     }
-                });
-            } catch (Exception e) {
-                Platform.runLater(() -> {
+                })
+                .exceptionally(e -> {
                     // 确保即使出错也清空列表
                     searchResultListView.getItems().clear();
+                    e.printStackTrace();
+                    return null;
                 });
-                e.printStackTrace();
-            }
-        }).start();
     }
 
     /**
      * 设置搜索结果 ListView 的单元格如何显示
      */
     private void setupSearchResultCellFactory() {
-        searchResultListView.setCellFactory(lv -> new ListCell<Map<String, Object>>() {
+        searchResultListView.setCellFactory(lv -> new ListCell<Friend>() {
             private final HBox hbox = new HBox(10);
             private final ImageView avatarView = new ImageView();
             private final Label userInfoLabel = new Label();
@@ -691,22 +657,19 @@ public class LobbyController implements Initializable {
             }
 
             @Override
-            protected void updateItem(Map<String, Object> user, boolean empty) {
+            protected void updateItem(Friend user, boolean empty) {
                 super.updateItem(user, empty);
                 if (empty || user == null) {
                     setGraphic(null);
-                } else if (user.containsKey("loading")) {
-                    setText("正在搜索...");
-                    setGraphic(null);
                 }
                 else {
                     setText(null);
-                    String nickname = (String) user.get("nickname");
-                    String status = (String) user.get("onlineStatus");
+                    String nickname = user.nickname();
+                    String status = user.onlineStatus();
                     status = (status == null) ? "离线" : status;
                     userInfoLabel.setText(String.format("%s [%s]", nickname, status));
-                    avatarView.setImage(UIManager.loadAvatar((String) user.get("avatarUrl")));
-                    long userId = ((Number) user.get("userId")).longValue();
+                    avatarView.setImage(UIManager.loadAvatar(user.avatarUrl()));
+                    long userId = user.userId();
 
 
 
@@ -728,16 +691,12 @@ public class LobbyController implements Initializable {
                             actionButton.setDisable(true);
                             actionButton.setText("已申请");
 
-                            new Thread(() -> {
-                                try {
-                                    apiClient.sendFriendRequest(userId);
-                                } catch (Exception e) {
-                                    Platform.runLater(() -> {
-                                        FXGL.getDialogService().showMessageBox("申请失败: " + e.getMessage());
+                            scope.call(() -> apiClient.sendFriendRequestAsync(userId))
+                                    .exceptionally(e -> {
+                                        FXGL.getDialogService().showMessageBox("申请失败: " + ApiClient.errorMessage(e));
                                         // 失败后可以恢复按钮状态，但为了防止刷屏，暂时不恢复
+                                        return null;
                                     });
-                                }
-                            }).start();
                         });
                     }
 
@@ -753,30 +712,26 @@ public class LobbyController implements Initializable {
         requestsListView.getItems().clear();
 
 
-        new Thread(() -> {
-            try {
-                List<Map<String, Object>> requests = apiClient.getFriendRequests();
-                Platform.runLater(() -> {
+        scope.call(apiClient::getFriendRequestsAsync)
+                .thenAccept(requests -> {
                     // 这里不再需要清空
                     if (!requests.isEmpty()) {
                         requestsListView.getItems().addAll(requests);
                     }
-                });
-            } catch (Exception e) {
-                Platform.runLater(() -> {
+                })
+                .exceptionally(e -> {
                     // 确保即使出错也清空列表
                     requestsListView.getItems().clear();
+                    e.printStackTrace();
+                    return null;
                 });
-                e.printStackTrace();
-            }
-        }).start();
     }
 
     /**
      * 设置好友申请 ListView 的单元格如何显示
      */
     private void setupRequestsCellFactory() {
-        requestsListView.setCellFactory(lv -> new ListCell<Map<String, Object>>() {
+        requestsListView.setCellFactory(lv -> new ListCell<Friend>() {
             private final HBox hbox = new HBox(10);
             private final ImageView avatarView = new ImageView();
 
@@ -808,16 +763,13 @@ public class LobbyController implements Initializable {
             }
 
             @Override
-            protected void updateItem(Map<String, Object> request, boolean empty) {
+            protected void updateItem(Friend request, boolean empty) {
                 super.updateItem(request, empty);
                 if (empty || request == null) {
                     setGraphic(null);
-                } else if (request.containsKey("loading")) {
-                    setText("正在加载申请...");
-                    setGraphic(null);
                 } else {
-                    String nickname = (String) request.get("nickname");
-                    String status = (String) request.get("onlineStatus");
+                    String nickname = request.nickname();
+                    String status = request.onlineStatus();
 
                     // 2. 根据后端API文档，null 代表离线，我们做一下转换
                     if (status == null) {
@@ -826,7 +778,7 @@ public class LobbyController implements Initializable {
 
                     // 3. 将昵称和状态格式化后，设置给 Label
                     requestInfoLabel.setText(String.format("%s [%s]", nickname, status));
-                    avatarView.setImage(UIManager.loadAvatar((String) request.get("avatarUrl")));
+                    avatarView.setImage(UIManager.loadAvatar(request.avatarUrl()));
 
                     acceptButton.setDisable(false);
                     acceptButton.setText("同意");
@@ -835,24 +787,20 @@ public class LobbyController implements Initializable {
                         acceptButton.setDisable(true);
                         acceptButton.setText("已同意");
 
-                        long userId = ((Number) request.get("userId")).longValue();
+                        long userId = request.userId();
 
-                        new Thread(() -> {
-                            try {
-                                apiClient.acceptFriendRequest(userId);
-                                // 同意成功后，刷新好友列表和申请列表
-                                Platform.runLater(() -> {
+                        scope.call(() -> apiClient.acceptFriendRequestAsync(userId))
+                                .thenAccept(v -> {
+                                    // 同意成功后，刷新好友列表和申请列表
                                     loadFriendRequests(); // 重新加载申请列表，这一条会消失
                                     loadFriendsList();    // 重新加载好友列表，新好友会出现在那里
-                                });
-                            } catch (Exception e) {
-                                Platform.runLater(() -> {
+                                })
+                                .exceptionally(e -> {
                                     acceptButton.setDisable(false);
                                     acceptButton.setText("同意");
-                                    FXGL.getDialogService().showMessageBox("操作失败: " + e.getMessage());
+                                    FXGL.getDialogService().showMessageBox("操作失败: " + ApiClient.errorMessage(e));
+                                    return null;
                                 });
-                            }
-                        }).start();
                     });
                     rejectButton.setOnAction(event -> {
                         // 在这里可以实现拒绝好友申请的逻辑
@@ -911,19 +859,14 @@ public class LobbyController implements Initializable {
             JsonElement avatarElement = data.get("newAvatarUrl");
             String newAvatarUrl = (avatarElement != null && !avatarElement.isJsonNull()) ? avatarElement.getAsString() : null;
 
-            // 遍历当前好友列表
-            for (Map<String, Object> friend : friendsListView.getItems()) {
-                long currentFriendId = ((Number) friend.get("userId")).longValue();
-                if (currentFriendId == userId) {
-                    // 找到对应的朋友，更新他的信息
-                    friend.put("nickname", newNickname);
-                    friend.put("avatarUrl", newAvatarUrl);
+            // 遍历当前好友列表；Friend 不可变，换成更新后的副本，set 会让这一行重新渲染
+            List<Friend> friends = friendsListView.getItems();
+            for (int i = 0; i < friends.size(); i++) {
+                if (friends.get(i).userId() == userId) {
+                    friends.set(i, friends.get(i).withProfile(newNickname, newAvatarUrl));
                     break; // 找到后即可退出循环
                 }
             }
-
-            // 强制刷新ListView，让CellFactory重新渲染更新后的数据
-            friendsListView.refresh();
         });
     }
 
@@ -937,15 +880,13 @@ public class LobbyController implements Initializable {
             String nickname = data.get("nickname").getAsString(); // 用于打印日志
 
             System.out.println(String.format("UI Handling: Friend '%s' (ID: %d) status changed to '%s'", nickname, userId, status));
-            for (Map<String, Object> friend : friendsListView.getItems()) {
-
-                long currentFriendId = ((Number) friend.get("userId")).longValue();
-                if (currentFriendId == userId) {
-                    friend.put("onlineStatus", status);
+            List<Friend> friends = friendsListView.getItems();
+            for (int i = 0; i < friends.size(); i++) {
+                if (friends.get(i).userId() == userId) {
+                    friends.set(i, friends.get(i).withStatus(status));
                     break;
                 }
             }
-            friendsListView.refresh();
         });
     }
 
@@ -975,22 +916,20 @@ public class LobbyController implements Initializable {
             DialogManager.showMessage("提示", "请输入房间ID！");
             return;
         }
-        new Thread(() -> {
-            try {
-                apiClient.joinRoom(roomId);
-                Platform.runLater(() -> {
+        scope.call(() -> apiClient.joinRoomAsync(roomId))
+                .thenAccept(r -> {
                     System.out.println("成功加入房间: " + roomId);
 
                     // ↓↓↓ 修改点：设置下一页的消息 ↓↓↓
                     UIManager.showMessageOnNextScreen("成功加入房间！");
 
                     UIManager.load("room-view.fxml");
+                })
+                .exceptionally(e -> {
+                    DialogManager.showMessage("加入房间失败", ApiClient.errorMessage(e));
+                    e.printStackTrace();
+                    return null;
                 });
-            } catch (Exception e) {
-                Platform.runLater(() -> DialogManager.showMessage("加入房间失败", e.getMessage()));
-                e.printStackTrace();
-            }
-        }).start();
     }
 
     /**
@@ -999,30 +938,22 @@ public class LobbyController implements Initializable {
     private void onRoomInvitation(RoomInvitationEvent event) {
         Platform.runLater(() -> {
             // 定义“同意”按钮的逻辑
-            Runnable acceptAction = () -> {
-                new Thread(() -> {
-                    try {
-                        apiClient.acceptInvite(event.getRoomId());
-                        Platform.runLater(() -> {
-                            UIManager.showMessageOnNextScreen("成功加入房间！");
-                            UIManager.load("room-view.fxml");
-                        });
-                    } catch (Exception ex) {
-                        Platform.runLater(() -> DialogManager.showMessage("加入失败", ex.getMessage()));
-                    }
-                }).start();
-            };
+            Runnable acceptAction = () -> scope.call(() -> apiClient.acceptInviteAsync(event.getRoomId()))
+                    .thenAccept(v -> {
+                        UIManager.showMessageOnNextScreen("成功加入房间！");
+                        UIManager.load("room-view.fxml");
+                    })
+                    .exceptionally(ex -> {
+                        DialogManager.showMessage("加入失败", ApiClient.errorMessage(ex));
+                        return null;
+                    });
 
             // 定义“拒绝”按钮的逻辑
-            Runnable rejectAction = () -> {
-                new Thread(() -> {
-                    try {
-                        apiClient.rejectInvite(event.getInviterId());
-                    } catch (Exception ex) {
+            Runnable rejectAction = () -> scope.call(() -> apiClient.rejectInviteAsync(event.getInviterId()))
+                    .exceptionally(ex -> {
                         ex.printStackTrace();
-                    }
-                }).start();
-            };
+                        return null;
+                    });
 
             // 用一行代码调用我们强大的新通知栏
             DialogManager.showActionableNotification(
@@ -1042,19 +973,17 @@ public class LobbyController implements Initializable {
                 DialogManager.showMessage("输入无效", "昵称长度必须在 2-7 位之间！");
                 return;
             }
-            new Thread(() -> {
-                try {
-                    JsonObject updatedProfile = apiClient.updateNickname(trimmedNickname);
-                    String confirmedNickname = updatedProfile.get("nickname").getAsString();
-                    Platform.runLater(() -> {
+            scope.call(() -> apiClient.updateNicknameAsync(trimmedNickname))
+                    .thenAccept(updatedProfile -> {
+                        String confirmedNickname = updatedProfile.get("nickname").getAsString();
                         GlobalState.nickname = confirmedNickname;
                         nicknameLabel.setText("昵称: " + confirmedNickname);
                         DialogManager.showNotification("昵称已更新！");
+                    })
+                    .exceptionally(e -> {
+                        DialogManager.showMessage("修改失败", ApiClient.errorMessage(e));
+                        return null;
                     });
-                } catch (Exception e) {
-                    Platform.runLater(() -> DialogManager.showMessage("修改失败", e.getMessage()));
-                }
-            }).start();
         }, null); // onCancel回调为null，表示取消时只关闭对话框
     }
 
@@ -1102,21 +1031,19 @@ public class LobbyController implements Initializable {
         File selectedFile = fileChooser.showOpenDialog(FXGL.getPrimaryStage());
 
         if (selectedFile != null) {
-            new Thread(() -> {
-                try {
-                    JsonObject updatedProfile = apiClient.uploadAvatar(selectedFile);
-                    Platform.runLater(() -> {
+            scope.call(() -> apiClient.uploadAvatarAsync(selectedFile))
+                    .thenAccept(updatedProfile -> {
                         JsonElement newAvatarUrlElement = updatedProfile.get("avatarUrl");
                         if (newAvatarUrlElement != null && !newAvatarUrlElement.isJsonNull()) {
                             GlobalState.avatarUrl = newAvatarUrlElement.getAsString();
                         }
                         loadAvatar();
                         DialogManager.showNotification("头像更新成功！");
+                    })
+                    .exceptionally(e -> {
+                        DialogManager.showMessage("上传失败", ApiClient.errorMessage(e));
+                        return null;
                     });
-                } catch (Exception e) {
-                    Platform.runLater(() -> DialogManager.showMessage("上传失败", e.getMessage()));
-                }
-            }).start();
         }
     }
 
@@ -1159,7 +1086,7 @@ public class LobbyController implements Initializable {
     }
 
     private void setupFriendsCellFactory() {
-        friendsListView.setCellFactory(lv -> new ListCell<Map<String, Object>>() {
+        friendsListView.setCellFactory(lv -> new ListCell<Friend>() {
             private final HBox hbox = new HBox(15);
             private final Circle statusIndicator = new Circle(6);
             private final ImageView avatarView = new ImageView();
@@ -1184,15 +1111,15 @@ public class LobbyController implements Initializable {
             }
 
             @Override
-            protected void updateItem(Map<String, Object> friend, boolean empty) {
+            protected void updateItem(Friend friend, boolean empty) {
                 super.updateItem(friend, empty);
-                if (empty || friend == null || friend.get("nickname") == null) {
+                if (empty || friend == null || friend.nickname() == null) {
                     setGraphic(null);
                 } else {
-                    nicknameLabel.setText((String) friend.get("nickname"));
+                    nicknameLabel.setText(friend.nickname());
 
                     // 根据新API文档更新状态逻辑
-                    String statusFromServer = (String) friend.get("onlineStatus");
+                    String statusFromServer = friend.onlineStatus();
                     String displayStatus;
 
                     // 先移除所有可能的状态样式，确保每次都是干净的
@@ -1227,21 +1154,19 @@ public class LobbyController implements Initializable {
                     }
 
                     statusLabel.setText(displayStatus);
-                    avatarView.setImage(UIManager.loadAvatar((String) friend.get("avatarUrl")));
+                    avatarView.setImage(UIManager.loadAvatar(friend.avatarUrl()));
 
                     deleteButton.setOnAction(event -> {
-                        long friendId = ((Number) friend.get("userId")).longValue();
-                        String nickname = (String) friend.get("nickname");
+                        long friendId = friend.userId();
+                        String nickname = friend.nickname();
                         // 使用新的DialogManager来显示确认框
                         DialogManager.showConfirmation("确认删除", "确定要删除好友 " + nickname + " 吗？", () -> {
-                            new Thread(() -> {
-                                try {
-                                    apiClient.deleteFriend(friendId);
-                                    Platform.runLater(() -> loadFriendsList());
-                                } catch (Exception e) {
-                                    Platform.runLater(() -> DialogManager.showMessage("删除失败", e.getMessage()));
-                                }
-                            }).start();
+                            scope.call(() -> apiClient.deleteFriendAsync(friendId))
+                                    .thenAccept(v -> loadFriendsList())
+                                    .exceptionally(e -> {
+                                        DialogManager.showMessage("删除失败", ApiClient.errorMessage(e));
+                                        return null;
+                                    });
                         });
                     });
 
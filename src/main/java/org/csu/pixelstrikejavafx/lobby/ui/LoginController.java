@@ -41,6 +41,7 @@ public class LoginController {
 
     // 创建 ApiClient 实例，用于发起 HTTP 请求
     private final ApiClient apiClient = new ApiClient();
+    private final ViewScope scope = ViewScope.current();
 
     // 获取 NetworkManager 单例，用于管理 WebSocket 连接
     private final NetworkManager networkManager = NetworkManager.getInstance();
@@ -113,29 +114,25 @@ public class LoginController {
         statusLabel.setText("正在登录...");
         loginButton.setDisable(true);
 
-        new Thread(() -> {
-            try {
-                // 1. 只需调用一次 login 方法
-                // 所有信息 (token, userId, nickname) 都会被自动存入 GlobalState
-                apiClient.login(username, password);
+        scope.run(() -> {
+                    // 1. 只需调用一次 login 方法
+                    // 所有信息 (token, userId, nickname) 都会被自动存入 GlobalState
+                    apiClient.login(username, password);
 
-                // 2. 建立 WebSocket 连接
-                networkManager.connect();
-
-                // 3. 直接切换到大厅
-                Platform.runLater(() -> {
+                    // 2. 建立 WebSocket 连接
+                    networkManager.connect();
+                })
+                .thenAccept(v -> {
+                    // 3. 直接切换到大厅
                     System.out.println(String.format("登录成功! 用户: %s (ID: %d)", GlobalState.nickname, GlobalState.userId));
                     UIManager.load("lobby-view.fxml");
-                });
-
-            } catch (Exception e) {
-                Platform.runLater(() -> {
-                    statusLabel.setText("登录失败: " + e.getMessage());
+                })
+                .exceptionally(e -> {
+                    statusLabel.setText("登录失败: " + ApiClient.errorMessage(e));
                     loginButton.setDisable(false); // 登录失败，恢复按钮
+                    e.printStackTrace();
+                    return null;
                 });
-                e.printStackTrace();
-            }
-        }).start();
     }
 
 
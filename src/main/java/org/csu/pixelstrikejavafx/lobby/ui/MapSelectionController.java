@@ -5,9 +5,9 @@ import javafx.scene.control.Button;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.text.Text;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.MapInfo;
 
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.function.Consumer;
 
@@ -21,10 +21,10 @@ public class MapSelectionController {
     @FXML private Button confirmButton;
     @FXML private Button cancelButton;
 
-    private List<Map<String, Object>> maps;
+    private List<MapInfo> maps;
     private int currentIndex = 0;
 
-    private Consumer<Map<String, Object>> onConfirm;
+    private Consumer<MapInfo> onConfirm;
     private Runnable onCancel;
 
     @FXML
@@ -43,7 +43,7 @@ public class MapSelectionController {
         });
     }
 
-    public void setOnConfirm(Consumer<Map<String, Object>> onConfirm) {
+    public void setOnConfirm(Consumer<MapInfo> onConfirm) {
         this.onConfirm = onConfirm;
     }
 
@@ -51,7 +51,7 @@ public class MapSelectionController {
         this.onCancel = onCancel;
     }
 
-    public void populateMaps(List<Map<String, Object>> maps) {
+    public void populateMaps(List<MapInfo> maps) {
         this.maps = maps;
         if (maps != null && !maps.isEmpty()) {
             currentIndex = 0;
@@ -77,10 +77,10 @@ public class MapSelectionController {
 
 
     private void updateDisplay() {
-        Map<String, Object> map = maps.get(currentIndex);
-        String mapName = (String) map.get("name");
+        MapInfo map = maps.get(currentIndex);
+        String mapName = map.name();
         mapNameText.setText(mapName);
-        mapDescriptionText.setText((String) map.get("description"));
+        mapDescriptionText.setText(map.description());
 
 
         String imagePath;
@@ -21,6 +21,7 @@ public class RegisterController {
     @FXML private ImageView backgroundImageView;
 
     private final ApiClient apiClient = new ApiClient();
+    private final ViewScope scope = ViewScope.current();
 
     @FXML
     private void handleRegister() {
@@ -36,24 +37,20 @@ public class RegisterController {
 
         statusLabel.setText("正在注册...");
 
-        // 在后台线程执行网络请求
-        new Thread(() -> {
-            try {
-                apiClient.register(username, password, email, nickname);
-                // 注册成功
-                Platform.runLater(() -> {
+        // 在后台执行网络请求，离开注册页时自动取消
+        scope.call(() -> apiClient.registerAsync(username, password, email, nickname))
+                .thenAccept(v -> {
+                    // 注册成功
                     statusLabel.setText("注册成功！请返回登录。");
                     // 可以在这里自动跳转回登录页面
                     // handleBackToLogin();
+                })
+                .exceptionally(e -> {
+                    // 注册失败
+                    statusLabel.setText("注册失败: " + ApiClient.errorMessage(e));
+                    e.printStackTrace();
+                    return null;
                 });
-            } catch (Exception e) {
-                // 注册失败
-                Platform.runLater(() -> {
-                    statusLabel.setText("注册失败: " + e.getMessage());
-                });
-                e.printStackTrace();
-            }
-        }).start();
     }
 
     @FXML
@@ -1,7 +1,5 @@
 package org.csu.pixelstrikejavafx.lobby.ui;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
@@ -21,13 +19,12 @@ import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
 import org.csu.pixelstrikejavafx.core.GlobalState;
 import org.csu.pixelstrikejavafx.core.MatchResultsModel;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.MatchDetails;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.Participant;
 
 import java.net.URL;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
 import java.util.ResourceBundle;
 
 public class ResultsController implements Initializable {
@@ -73,9 +70,10 @@ public class ResultsController implements Initializable {
 
     /**
      * 使用从数据模型接收到的战绩数据来构建和显示UI。
-     * @param details 包含完整战绩信息的JsonObject。
+     * @param json 包含完整战绩信息的JsonObject（和 /history/{id} 的 data 格式相同）。
      */
-    private void renderResults(JsonObject details) {
+    private void renderResults(JsonObject json) {
+        MatchDetails details = MatchDetails.ADAPTER.fromJsonTree(json);
         Platform.runLater(() -> {
             resultsContent.getChildren().clear();
 
@@ -89,10 +87,10 @@ public class ResultsController implements Initializable {
             matchInfoBox.getStyleClass().add("summary-box");
 
             matchInfoBox.getChildren().addAll(
-                    new Text("模式: " + details.get("gameMode").getAsString()),
-                    new Text("地图: " + details.get("mapName").getAsString()),
-                    new Text("开始时间: " + formatDateTime(details.get("startTime").getAsString())),
-                    new Text("结束时间: " + formatDateTime(details.get("endTime").getAsString()))
+                    new Text("模式: " + details.gameMode()),
+                    new Text("地图: " + details.mapName()),
+                    new Text("开始时间: " + formatDateTime(details.startTime())),
+                    new Text("结束时间: " + formatDateTime(details.endTime()))
             );
 
             // 玩家战绩表格
@@ -114,22 +112,17 @@ public class ResultsController implements Initializable {
             addGridHeader(grid, 0, "排名", "玩家", "角色", "击杀", "死亡");
             grid.add(new Separator(), 0, 1, 5, 1);
 
-            JsonArray participantsArray = details.getAsJsonArray("participants");
-            List<JsonElement> participants = new ArrayList<>();
-            participantsArray.forEach(participants::add);
-            participants.sort(Comparator.comparingInt(p -> p.getAsJsonObject().get("ranking").getAsInt()));
-
+            // participants 已经按排名排好
             int rowIndex = 2;
-            for (JsonElement pElement : participants) {
-                JsonObject p = pElement.getAsJsonObject();
-                boolean isCurrentUser = GlobalState.userId != null && p.get("userId").getAsLong() == GlobalState.userId;
+            for (Participant p : details.participants()) {
+                boolean isCurrentUser = GlobalState.userId != null && p.userId() == GlobalState.userId;
 
                 Node[] rowNodes = createGridRow(isCurrentUser,
-                        p.get("ranking").getAsString(),
-                        p.get("nickname").getAsString(),
-                        p.get("characterName").getAsString(),
-                        p.get("kills").getAsString(),
-                        p.get("deaths").getAsString()
+                        String.valueOf(p.ranking()),
+                        p.nickname(),
+                        p.characterName(),
+                        String.valueOf(p.kills()),
+                        String.valueOf(p.deaths())
                 );
 
                 grid.addRow(rowIndex++, rowNodes);
@@ -38,6 +38,7 @@ import javafx.scene.layout.VBox;
 import org.csu.pixelstrikejavafx.lobby.events.KickedFromRoomEvent;
 import org.csu.pixelstrikejavafx.lobby.events.RoomUpdateEvent;
 import org.csu.pixelstrikejavafx.lobby.network.ApiClient;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.CharacterInfo;
 import org.csu.pixelstrikejavafx.lobby.network.NetworkManager;
 import org.csu.pixelstrikejavafx.core.GlobalState;
 import org.csu.pixelstrikejavafx.lobby.ui.dialog.DialogManager;
@@ -60,6 +61,7 @@ public class RoomController implements Initializable {
     @FXML private Button startGameButton;
     @FXML private HBox mainContentBox;
     private final ApiClient apiClient = new ApiClient();
+    private final ViewScope scope = ViewScope.current();
     private final Gson gson = new Gson();
     private VBox invitePane;
     private InviteFriendController inviteController;
@@ -324,25 +326,21 @@ public class RoomController implements Initializable {
     // --- 新增：将踢人和移交房主的逻辑提取为独立方法，使代码更清晰 ---
     private void handleKickPlayer(long targetId, String targetNickname) {
         DialogManager.showConfirmation("确认操作", "确定要将 " + targetNickname + " 踢出房间吗？", () -> {
-            new Thread(() -> {
-                try {
-                    apiClient.kickPlayer(targetId);
-                } catch (Exception e) {
-                    Platform.runLater(() -> DialogManager.showMessage("操作失败", e.getMessage()));
-                }
-            }).start();
+            scope.call(() -> apiClient.kickPlayerAsync(targetId))
+                    .exceptionally(e -> {
+                        DialogManager.showMessage("操作失败", ApiClient.errorMessage(e));
+                        return null;
+                    });
         });
     }
 
     private void handleTransferHost(long targetId, String targetNickname) {
         DialogManager.showConfirmation("确认操作", "确定要将房主移交给 " + targetNickname + " 吗？", () -> {
-            new Thread(() -> {
-                try {
-                    apiClient.transferHost(targetId);
-                } catch (Exception e) {
-                    Platform.runLater(() -> DialogManager.showMessage("操作失败", e.getMessage()));
-                }
-            }).start();
+            scope.call(() -> apiClient.transferHostAsync(targetId))
+                    .exceptionally(e -> {
+                        DialogManager.showMessage("操作失败", ApiClient.errorMessage(e));
+                        return null;
+                    });
         });
     }
 
@@ -403,18 +401,16 @@ public class RoomController implements Initializable {
 
     @FXML
     private void handleLeaveRoom() {
-        new Thread(() -> {
-            try {
-                apiClient.leaveRoom();
-                Platform.runLater(() -> {
+        scope.call(apiClient::leaveRoomAsync)
+                .thenAccept(v -> {
                     GlobalState.currentRoomInfo = null; // 清理本地房间状态
                     UIManager.showMessageOnNextScreen("已离开房间");
                     UIManager.load("lobby-view.fxml");
+                })
+                .exceptionally(e -> {
+                    DialogManager.showMessage("操作失败", ApiClient.errorMessage(e));
+                    return null;
                 });
-            } catch (Exception e) {
-                Platform.runLater(() -> DialogManager.showMessage("操作失败", e.getMessage()));
-            }
-        }).start();
     }
 
     /*@FXML
@@ -445,35 +441,28 @@ public class RoomController implements Initializable {
     @FXML
     private void handleChangeCharacter() {
         // 这个方法现在调用新的、带动画的弹窗
-        new Thread(() -> {
-            try {
-                List<Map<String, Object>> characters = apiClient.getCharacters();
-                Platform.runLater(() -> {
-                    showAnimatedCharacterSelectionDialog("更换角色", characters, selectedCharacter -> {
-                        if (selectedCharacter == null) return; // 用户取消
-                        long characterId = ((Number) selectedCharacter.get("id")).longValue();
-
-                        new Thread(() -> {
-                            try {
-                                apiClient.changeCharacterInRoom(characterId);
-                                // 成功后，等待后端广播 room_update 自动刷新
-                            } catch (Exception e) {
-                                Platform.runLater(() -> DialogManager.showMessage("更换失败", e.getMessage()));
-                            }
-                        }).start();
+        scope.call(apiClient::getCharactersAsync)
+                .thenAccept(characters -> showAnimatedCharacterSelectionDialog("更换角色", characters, selectedCharacter -> {
+                    if (selectedCharacter == null) return; // 用户取消
+                    long characterId = selectedCharacter.id();
+
+                    // 成功后，等待后端广播 room_update 自动刷新
+                    scope.call(() -> apiClient.changeCharacterInRoomAsync(characterId)).exceptionally(e -> {
+                        DialogManager.showMessage("更换失败", ApiClient.errorMessage(e));
+                        return null;
                     });
+                }))
+                .exceptionally(e -> {
+                    DialogManager.showMessage("获取角色列表失败", ApiClient.errorMessage(e));
+                    return null;
                 });
-            } catch (Exception e) {
-                Platform.runLater(() -> DialogManager.showMessage("获取角色列表失败", e.getMessage()));
-            }
-        }).start();
     }
 
     /**
      * 新增：显示一个独立的、可拖动的、带动画的角色选择窗口
      * (逻辑从 LobbyController 移植而来)
      */
-    private void showAnimatedCharacterSelectionDialog(String title, List<Map<String, Object>> characters, java.util.function.Consumer<Map<String, Object>> onItemSelected) {
+    private void showAnimatedCharacterSelectionDialog(String title, List<CharacterInfo> characters, java.util.function.Consumer<CharacterInfo> onItemSelected) {
         if (characters == null || characters.isEmpty()) {
             DialogManager.showMessage("错误", "没有可用的角色！");
             return;
@@ -527,7 +516,7 @@ public class RoomController implements Initializable {
         VBox.setVgrow(displayArea, Priority.ALWAYS);
 
         // --- 动画与逻辑 ---
-        SimpleObjectProperty<Map<String, Object>> currentCharacter = new SimpleObjectProperty<>(characters.get(0));
+        SimpleObjectProperty<CharacterInfo> currentCharacter = new SimpleObjectProperty<>(characters.get(0));
         final int[] currentIndex = {0};
         final AnimatedTexture[] animatedTexture = {null};
         AnimationTimer timer = new AnimationTimer() {
@@ -541,11 +530,11 @@ public class RoomController implements Initializable {
         };
 
         Runnable updateDisplay = () -> {
-            Map<String, Object> character = characters.get(currentIndex[0]);
+            CharacterInfo character = characters.get(currentIndex[0]);
             currentCharacter.set(character);
-            characterName.setText((String) character.get("name"));
-            characterDescription.setText((String) character.get("description"));
-            int characterId = ((Number) character.get("id")).intValue();
+            characterName.setText(character.name());
+            characterDescription.setText(character.description());
+            int characterId = (int) character.id();
             String animationFile = CHARACTER_ANIMATION_MAP.getOrDefault(characterId, "ash_idle.png");
             try {
                 AnimationChannel animChannel = new AnimationChannel(FXGL.image("characters/" + animationFile), 15, 200, 200, Duration.seconds(0.8), 0, 14);
@@ -647,18 +636,14 @@ public class RoomController implements Initializable {
         // 禁用按钮防止重复点击
         startGameButton.setDisable(true);
 
-        new Thread(() -> {
-            try {
-                // 调用API，请求开始游戏
-                apiClient.startGame();
-                // 请求成功后，我们什么都不用做，只需等待 NetworkManager 接收 WebSocket 广播即可
-            } catch (Exception e) {
-                Platform.runLater(() -> {
-                    DialogManager.showMessage("开始游戏失败", e.getMessage());
+        // 调用API，请求开始游戏
+        // 请求成功后，我们什么都不用做，只需等待 NetworkManager 接收 WebSocket 广播即可
+        scope.call(apiClient::startGameAsync)
+                .exceptionally(e -> {
+                    DialogManager.showMessage("开始游戏失败", ApiClient.errorMessage(e));
                     startGameButton.setDisable(false);
+                    e.printStackTrace();
+                    return null;
                 });
-                e.printStackTrace();
-            }
-        }).start();
     }
 }
\ No newline at end of file
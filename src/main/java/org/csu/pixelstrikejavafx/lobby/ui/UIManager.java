@@ -70,6 +70,9 @@ public final class UIManager {
                 throw new IOException("Cannot find FXML file: " + fxmlName);
             }
 
+            // 1. 旧界面的后台任务全部取消，新界面的控制器在加载时拿到新的作用域
+            ViewScope.open(fxmlName);
+
             Parent view = FXMLLoader.load(Objects.requireNonNull(UIManager.class.getResource("/fxml/" + fxmlName)));
 
             // 2.【关键步骤】清空我们持久化的 rootPane 的所有子节点。
@@ -0,0 +1,195 @@
+package org.csu.pixelstrikejavafx.lobby.ui;
+
+import org.csu.pixelstrikejavafx.lobby.network.ApiClient;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * 视图作用域：一个界面发起的所有后台任务都挂在它上面，界面被换掉时一起取消。
+ * UIManager.load 在加载新 FXML 之前关闭旧作用域、打开新作用域，
+ * 所以控制器在字段初始化或 initialize() 里用 ViewScope.current() 拿到的就是自己界面的作用域。
+ *
+ * submit() 的任务跑在虚拟线程上；call() 的异步请求不占线程，只占名额。
+ * 每个作用域同时最多 MAX_CONCURRENT 个（多出来的排队，不占 FX 线程）。
+ * 返回的 future 在 FX 线程上完成，后面的 thenAccept / exceptionally 可以直接改界面；
+ * 作用域关闭后结果（包括异常）直接丢掉，future 永远不会完成，已经不在屏幕上的界面不会再收到回调。
+ *
+ * 不属于任何界面的收尾工作（比如关窗口时登出）用 APP，它不会被关闭。
+ */
+public final class ViewScope {
+
+    /** 每个作用域同时进行的请求上限 */
+    public static final int MAX_CONCURRENT = 4;
+
+    /** 应用级作用域，不随界面切换关闭 */
+    public static final ViewScope APP = new ViewScope("app");
+
+    private static volatile ViewScope current = new ViewScope("root");
+
+    /** 阻塞调用的函数形式（可以抛受检异常） */
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private final String name;
+    private final ExecutorService executor;
+    private final Semaphore permits = new Semaphore(MAX_CONCURRENT);
+    /** 还没结束的异步请求（call() 发出的），关闭时取消，OkHttp 的请求随之取消 */
+    private final Set<CompletableFuture<?>> inflight = ConcurrentHashMap.newKeySet();
+    /** 没抢到名额的 call()，有名额释放时按顺序发出 */
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+    private int dropped;   // 只在 FX 线程上改
+
+    private ViewScope(String name) {
+        this.name = name;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("view-" + name + "-", 0).factory());
+    }
+
+    /** 当前界面的作用域 */
+    public static ViewScope current() {
+        return current;
+    }
+
+    /** 切换界面：关闭旧作用域，打开新作用域（UIManager.load 调用，FX 线程） */
+    static ViewScope open(String name) {
+        ViewScope old = current;
+        current = new ViewScope(name);
+        old.close();
+        return current;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 在虚拟线程上执行阻塞任务（比如 ApiClient 的同步接口，或者一连串请求）。
+     * 关闭时线程会被中断。
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (closed) return result;
+        try {
+            executor.execute(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    return;   // 作用域已关闭
+                }
+                try {
+                    T value = work.call();
+                    deliver(result, value, null);
+                } catch (Throwable t) {
+                    deliver(result, null, t);
+                } finally {
+                    release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 与 close() 竞争：已经关了，什么都不做
+        }
+        return result;
+    }
+
+    /** 没有返回值的 submit */
+    public CompletableFuture<Void> run(Task work) {
+        return submit(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * 发起一个异步请求（ApiClient 的 xxxAsync），占用一个并发名额直到它结束；没有名额时排队。
+     * 不占线程：名额在请求的回调里归还，结果已经在 FX 线程上，直接完成返回的 future。
+     * 关闭时取消这个请求（底层 HTTP 调用随之取消）。
+     */
+    public <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (closed) return result;
+        waiting.add(() -> start(request, result));
+        startWaiting();
+        return result;
+    }
+
+    /** 已经拿到名额：发出请求，结束时归还 */
+    private <T> void start(Supplier<CompletableFuture<T>> request, CompletableFuture<T> result) {
+        if (closed) {
+            release();
+            return;
+        }
+        CompletableFuture<T> f;
+        try {
+            f = request.get();
+        } catch (RuntimeException e) {
+            release();
+            deliver(result, null, e);
+            return;
+        }
+        inflight.add(f);
+        if (closed) f.cancel(true);
+        // ApiClient 的异步结果本来就在 FX 线程上交付，这里 FX 就地执行，不会再排一次 runLater
+        f.whenCompleteAsync((value, error) -> {
+            inflight.remove(f);
+            release();
+            complete(result, value, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+        }, ApiClient.FX);
+    }
+
+    private void release() {
+        permits.release();
+        startWaiting();
+    }
+
+    /** 有名额就发出排队的 call()；入队和释放两边都调用，不会漏掉 */
+    private void startWaiting() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            Runnable next = waiting.poll();
+            if (next == null) {
+                permits.release();
+                return;
+            }
+            next.run();
+        }
+    }
+
+    /** 取消所有未完成的任务；之后到达的结果一律丢弃 */
+    void close() {
+        if (closed) return;
+        closed = true;
+        int cancelled = inflight.size();
+        for (CompletableFuture<?> f : inflight) f.cancel(true);
+        inflight.clear();
+        waiting.clear();
+        executor.shutdownNow();
+        if (cancelled > 0) System.out.println("[ViewScope] " + name + " closed, cancelled " + cancelled + " request(s)");
+    }
+
+    private <T> void deliver(CompletableFuture<T> result, T value, Throwable error) {
+        ApiClient.FX.execute(() -> complete(result, value, error));
+    }
+
+    /** FX 线程上完成 result；作用域已关闭时丢掉 */
+    private <T> void complete(CompletableFuture<T> result, T value, Throwable error) {
+        if (closed) {
+            dropped++;
+            if (dropped == 1) System.out.println("[ViewScope] " + name + " closed, dropping late results");
+            return;
+        }
+        if (error != null) result.completeExceptionally(error);
+        else result.complete(value);
+    }
+}
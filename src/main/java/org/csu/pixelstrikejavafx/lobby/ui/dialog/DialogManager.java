@@ -19,6 +19,8 @@ import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.util.Duration;
 import org.controlsfx.control.PopOver;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.CharacterInfo;
+import org.csu.pixelstrikejavafx.lobby.network.LobbyModels.MapInfo;
 import org.csu.pixelstrikejavafx.lobby.ui.CharacterSelectionController;
 import org.csu.pixelstrikejavafx.lobby.ui.HistoryDetailsController;
 import org.csu.pixelstrikejavafx.lobby.ui.InviteFriendController;
@@ -26,7 +28,6 @@ import org.csu.pixelstrikejavafx.lobby.ui.MapSelectionController;
 
 import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.function.Consumer;
 
@@ -231,7 +232,7 @@ public class DialogManager {
             e.printStackTrace();
         }
     }
-    public static void showMapSelection(List<Map<String, Object>> maps, Consumer<Map<String, Object>> onConfirm) {
+    public static void showMapSelection(List<MapInfo> maps, Consumer<MapInfo> onConfirm) {
         Pane activeRoot = getActiveRoot();
         if (activeRoot == null) {
             System.err.println("DialogManager root pane is not set!");
@@ -258,7 +259,7 @@ public class DialogManager {
         }
     }
 
-    public static void showCharacterSelection(String title, List<Map<String, Object>> characters, Consumer<Map<String, Object>> onConfirm) {
+    public static void showCharacterSelection(String title, List<CharacterInfo> characters, Consumer<CharacterInfo> onConfirm) {
         Pane activeRoot = getActiveRoot();
         if (activeRoot == null) return;
         try {
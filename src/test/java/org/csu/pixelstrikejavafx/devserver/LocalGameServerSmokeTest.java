@@ -0,0 +1,191 @@
+package org.csu.pixelstrikejavafx.devserver;
+
+import org.csu.pixelstrikejavafx.game.network.BinaryProtocol;
+import org.csu.pixelstrikejavafx.game.network.GameMessages;
+import org.csu.pixelstrikejavafx.game.network.JsonMessageReader;
+import org.csu.pixelstrikejavafx.game.network.NetClient;
+import org.csu.pixelstrikejavafx.game.player.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 起一个 LocalGameServer（随机端口），用两个真正的 NetClient 连上去走一遍：
+ * welcome、state 转发与 state_ack、带 vt 的 shot 命中后广播 damage。JSON、bin1 和两者混用各跑一次。
+ */
+class LocalGameServerSmokeTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private LocalGameServer server;
+    private final List<Peer> peers = new ArrayList<>();
+
+    /** 一个连接；收到的文本和二进制帧都按到达顺序进 inbox */
+    private static final class Peer {
+        final NetClient client = new NetClient();
+        final BlockingQueue<Object> inbox = new LinkedBlockingQueue<>();
+        // welcome 确认了 bin1
+        boolean binary;
+        int id;
+    }
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = new LocalGameServer().matchDuration(600).start(0);
+    }
+
+    @AfterEach
+    void stopServer() {
+        for (Peer p : peers) p.client.abort();
+        server.stop();
+    }
+
+    @Test
+    void jsonClientsRelayStateAndHit() throws Exception {
+        playRound(connect("a", false), connect("b", false), 0);
+    }
+
+    @Test
+    void binaryClientsRelayStateAndHit() throws Exception {
+        Peer a = connect("a", true), b = connect("b", true);
+        assertTrue(a.binary && b.binary);
+        playRound(a, b, 0);
+    }
+
+    @Test
+    void binaryAndJsonClientsMix() throws Exception {
+        Peer a = connect("a", true), b = connect("b", false);
+        assertTrue(a.binary);
+        assertFalse(b.binary);
+        playRound(a, b, 0);
+        playRound(b, a, 1);
+    }
+
+    @Test
+    void serverWithoutBin1StaysOnJson() throws Exception {
+        server.stop();
+        server = new LocalGameServer().binary(false).start(0);
+        Peer a = connect("a", true);
+        assertFalse(a.binary);
+    }
+
+    /** 两人各发一条 state（seq 相同），然后 a 朝 b 开一枪 */
+    private void playRound(Peer a, Peer b, long seq) throws Exception {
+        long now = System.currentTimeMillis();
+        sendState(b, 600, 400, now, seq);
+        expectState(a, b.id, 600);
+        sendState(a, 200, 400, now, seq);
+        expectState(b, a.id, 200);
+        expectJson(a, r -> r.valueEquals(r.indexOf("type"), "state_ack") && r.getLong("seq", -1L) == seq);
+
+        // 水平射向 b 碰撞盒中部
+        double oy = 400 + Player.HB_OFF_Y + Player.HB_H / 2;
+        if (a.binary) {
+            a.client.sendBinary(BinaryProtocol.encodeShot(250, oy, 1, 0, 1000, 25, now, now, 1, "Pistol"));
+        } else {
+            a.client.send(String.format(java.util.Locale.US,
+                    "{\"type\":\"shot\",\"ox\":250,\"oy\":%.2f,\"dx\":1,\"dy\":0,\"range\":1000,\"damage\":25,"
+                            + "\"ts\":%d,\"vt\":%d,\"seq\":1,\"weaponType\":\"Pistol\"}", oy, now, now));
+        }
+        GameMessages.Damage d = expectDamage(b);
+        assertEquals(b.id, d.victim);
+        assertEquals(a.id, d.attacker);
+        assertEquals(25, d.damage);
+        assertFalse(d.dead);
+    }
+
+    private Peer connect(String name, boolean bin1) throws Exception {
+        Peer p = new Peer();
+        peers.add(p);
+        String url = server.getUrl() + "?name=" + name + (bin1 ? "&proto=" + BinaryProtocol.PROTO_NAME : "");
+        p.client.connect(url, () -> { }, p.inbox::add, p.inbox::add);
+        JsonMessageReader r = expectJson(p, m -> m.valueEquals(m.indexOf("type"), "welcome"));
+        p.id = r.getInt("id", 0);
+        assertTrue(p.id > 0);
+        p.binary = BinaryProtocol.PROTO_NAME.equals(r.getString("proto"));
+        return p;
+    }
+
+    private static void sendState(Peer p, double x, double y, long ts, long seq) {
+        if (p.binary) {
+            p.client.sendBinary(BinaryProtocol.encodeState(x, y, 0, 0, true, true, "IDLE", "IDLE", ts, seq));
+        } else {
+            p.client.sendState(x, y, 0, 0, true, true, "IDLE", "IDLE", ts, seq);
+        }
+    }
+
+    private static void expectState(Peer p, int from, double x) throws InterruptedException {
+        GameMessages msgs = new GameMessages();
+        Object got = poll(p, frame -> {
+            if (frame instanceof String json) {
+                JsonMessageReader r = new JsonMessageReader();
+                if (!r.parse(json) || !r.valueEquals(r.indexOf("type"), "state")) return false;
+                msgs.state.read(r);
+            } else {
+                msgs.state.id = 0;
+                BinaryProtocol.decode(ByteBuffer.wrap((byte[]) frame), msgs, new Ignore() {
+                    @Override public void onState(GameMessages.State m) { }
+                });
+            }
+            return msgs.state.id == from;
+        });
+        assertNotNull(got, "no state from " + from);
+        assertEquals(x, msgs.state.x, 0.25);
+    }
+
+    private static GameMessages.Damage expectDamage(Peer p) throws InterruptedException {
+        GameMessages msgs = new GameMessages();
+        boolean[] seen = {false};
+        Object got = poll(p, frame -> {
+            if (frame instanceof String json) {
+                JsonMessageReader r = new JsonMessageReader();
+                if (!r.parse(json) || !r.valueEquals(r.indexOf("type"), "damage")) return false;
+                msgs.damage.read(r);
+                return true;
+            }
+            BinaryProtocol.decode(ByteBuffer.wrap((byte[]) frame), msgs, new Ignore() {
+                @Override public void onDamage(GameMessages.Damage m) { seen[0] = true; }
+            });
+            return seen[0];
+        });
+        assertNotNull(got, "no damage");
+        return msgs.damage;
+    }
+
+    private static JsonMessageReader expectJson(Peer p, Predicate<JsonMessageReader> match) throws InterruptedException {
+        JsonMessageReader r = new JsonMessageReader();
+        Object got = poll(p, frame -> frame instanceof String json && r.parse(json) && match.test(r));
+        assertNotNull(got, "expected message not received");
+        return r;
+    }
+
+    /** 丢掉不匹配的帧，直到匹配或超时 */
+    private static Object poll(Peer p, Predicate<Object> match) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        long left;
+        while ((left = deadline - System.currentTimeMillis()) > 0) {
+            Object frame = p.inbox.poll(left, TimeUnit.MILLISECONDS);
+            if (frame != null && match.test(frame)) return frame;
+        }
+        return null;
+    }
+
+    private static class Ignore implements BinaryProtocol.Handler {
+        @Override public void onState(GameMessages.State m) { }
+        @Override public void onShot(GameMessages.Shot m) { }
+        @Override public void onDamage(GameMessages.Damage m) { }
+        @Override public void onRespawn(GameMessages.Respawn m) { }
+        @Override public void onSupplySpawn(GameMessages.SupplySpawn m) { }
+        @Override public void onSupplyRemoved(GameMessages.SupplyRemoved m) { }
+    }
+}
@@ -0,0 +1,338 @@
+package org.csu.pixelstrikejavafx.game.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * bin1 每种记录编码后再解码，字段按量化精度还原；上行用 decodeUplink，下行用 decode。
+ */
+class BinaryProtocolTest {
+
+    private static final double POS_EPS = 0.125;   // 1/4 像素量化的一半
+    private static final double VEL_EPS = 0.25;
+    private static final double DIR_EPS = 1.0 / 16384;
+
+    /** 把回调收到的记录抄下来（回调参数是复用对象） */
+    private static final class Uplink implements BinaryProtocol.UplinkHandler {
+        final List<GameMessages.State> states = new ArrayList<>();
+        final List<GameMessages.Shot> shots = new ArrayList<>();
+        final List<Long> pickups = new ArrayList<>();
+
+        @Override public void onState(GameMessages.State m) {
+            GameMessages.State c = new GameMessages.State();
+            c.copyFrom(m);
+            states.add(c);
+        }
+        @Override public void onShot(GameMessages.Shot m) { shots.add(copy(m)); }
+        @Override public void onPickupSupply(long dropId) { pickups.add(dropId); }
+    }
+
+    private static final class Downlink implements BinaryProtocol.Handler {
+        final List<Object> records = new ArrayList<>();
+
+        @Override public void onState(GameMessages.State m) {
+            GameMessages.State c = new GameMessages.State();
+            c.copyFrom(m);
+            records.add(c);
+        }
+        @Override public void onShot(GameMessages.Shot m) { records.add(copy(m)); }
+        @Override public void onDamage(GameMessages.Damage m) {
+            GameMessages.Damage c = new GameMessages.Damage();
+            c.victim = m.victim; c.attacker = m.attacker; c.damage = m.damage; c.dead = m.dead;
+            c.hasKnockback = m.hasKnockback; c.kx = m.kx; c.ky = m.ky; c.srvTS = m.srvTS;
+            records.add(c);
+        }
+        @Override public void onRespawn(GameMessages.Respawn m) {
+            GameMessages.Respawn c = new GameMessages.Respawn();
+            c.id = m.id; c.x = m.x; c.y = m.y;
+            records.add(c);
+        }
+        @Override public void onSupplySpawn(GameMessages.SupplySpawn m) {
+            GameMessages.SupplySpawn c = new GameMessages.SupplySpawn();
+            c.dropId = m.dropId; c.dropType = m.dropType; c.x = m.x; c.y = m.y;
+            records.add(c);
+        }
+        @Override public void onSupplyRemoved(GameMessages.SupplyRemoved m) { records.add(m.dropId); }
+    }
+
+    private static GameMessages.Shot copy(GameMessages.Shot m) {
+        GameMessages.Shot c = new GameMessages.Shot();
+        c.attacker = m.attacker; c.ox = m.ox; c.oy = m.oy; c.dx = m.dx; c.dy = m.dy; c.weaponType = m.weaponType;
+        c.damage = m.damage; c.range = m.range; c.ts = m.ts; c.vt = m.vt; c.seq = m.seq;
+        return c;
+    }
+
+    // ================= 上行 =================
+
+    @Test
+    void stateRoundTrip() {
+        ByteBuffer b = BinaryProtocol.encodeState(1234.3, -56.6, 420.4, -980.2, true, false, "RUN", "BEGIN", 1_700_000_000_123L, 77);
+        assertEquals(1 + BinaryProtocol.STATE_BYTES, b.remaining());
+
+        Uplink h = new Uplink();
+        assertEquals(1, BinaryProtocol.decodeUplink(b, new GameMessages(), h));
+        GameMessages.State m = h.states.get(0);
+        assertEquals(1234.3, m.x, POS_EPS);
+        assertEquals(-56.6, m.y, POS_EPS);
+        assertEquals(420.4, m.vx, VEL_EPS);
+        assertEquals(-980.2, m.vy, VEL_EPS);
+        assertTrue(m.facing);
+        assertFalse(m.onGround);
+        assertEquals("RUN", m.anim);
+        assertEquals("BEGIN", m.phase);
+        assertEquals(1_700_000_000_123L, m.ts);
+        assertEquals(77, m.seq);
+        assertTrue(m.keyframe);
+        assertEquals(StateDelta.ALL, m.mask);
+    }
+
+    @Test
+    void stateDeltaRoundTripOnlyCarriesMaskedFields() {
+        StateDelta.Snapshot s = new StateDelta.Snapshot();
+        s.set(9, 100.25, 200.5, 30, -40, false, true, "JUMP", "END");
+        int mask = StateDelta.F_Y | StateDelta.F_ANIM;
+        ByteBuffer b = BinaryProtocol.encodeStateDelta(s, mask, false, 5, 123L);
+        assertEquals(1 + BinaryProtocol.STATE_DELTA_HEAD + 3, b.remaining());
+
+        GameMessages msgs = new GameMessages();
+        msgs.state.x = -1;   // 没带的字段保持原值，由 Baselines 补齐
+        Uplink h = new Uplink();
+        assertEquals(1, BinaryProtocol.decodeUplink(b, msgs, h));
+        GameMessages.State m = h.states.get(0);
+        assertFalse(m.keyframe);
+        assertEquals(mask, m.mask);
+        assertEquals(9, m.seq);
+        assertEquals(5, m.baseSeq);
+        assertEquals(123L, m.ts);
+        assertEquals(-1, m.x);
+        assertEquals(200.5, m.y, POS_EPS);
+        assertEquals("JUMP", m.anim);
+    }
+
+    @Test
+    void keyframeDeltaSetsFlag() {
+        StateDelta.Snapshot s = new StateDelta.Snapshot();
+        s.set(3, 1, 2, 3, 4, true, true, "IDLE", "IDLE");
+        Uplink h = new Uplink();
+        BinaryProtocol.decodeUplink(BinaryProtocol.encodeStateDelta(s, StateDelta.ALL, true, 3, 0L), new GameMessages(), h);
+        assertTrue(h.states.get(0).keyframe);
+        assertEquals(StateDelta.ALL, h.states.get(0).mask);
+    }
+
+    @Test
+    void shotRoundTripCarriesVt() {
+        ByteBuffer b = BinaryProtocol.encodeShot(10.5, 20.25, 0.6, -0.8, 1500, 35, 1000L, 940L, 12, "Railgun");
+        assertEquals(1 + BinaryProtocol.SHOT_BYTES, b.remaining());
+
+        Uplink h = new Uplink();
+        assertEquals(1, BinaryProtocol.decodeUplink(b, new GameMessages(), h));
+        GameMessages.Shot m = h.shots.get(0);
+        assertEquals(10.5, m.ox, POS_EPS);
+        assertEquals(20.25, m.oy, POS_EPS);
+        assertEquals(0.6, m.dx, DIR_EPS);
+        assertEquals(-0.8, m.dy, DIR_EPS);
+        assertEquals(1500, m.range);
+        assertEquals(35, m.damage);
+        assertEquals(1000L, m.ts);
+        assertEquals(940L, m.vt);
+        assertEquals(12, m.seq);
+        assertEquals("Railgun", m.weaponType);
+    }
+
+    @Test
+    void pickupRoundTrip() {
+        Uplink h = new Uplink();
+        assertEquals(1, BinaryProtocol.decodeUplink(BinaryProtocol.encodePickupSupply(1L << 40), new GameMessages(), h));
+        assertEquals(List.of(1L << 40), h.pickups);
+    }
+
+    // ================= 下行 =================
+
+    @Test
+    void stateRelayRoundTrip() {
+        GameMessages.State s = state(7, 88, -300.75, 12.5, 0, -512, false, true, "WALK", "IDLE");
+        ByteBuffer b = frame(BinaryProtocol.STATE_RELAY_BYTES);
+        BinaryProtocol.writeStateRelay(b, s, 5555L);
+
+        GameMessages.State m = (GameMessages.State) decodeOne(b);
+        assertEquals(7, m.id);
+        assertEquals(88, m.seq);
+        assertEquals(5555L, m.srvTS);
+        assertEquals(s.ts, m.ts);
+        assertEquals(-300.75, m.x, POS_EPS);
+        assertEquals(12.5, m.y, POS_EPS);
+        assertEquals(-512, m.vy, VEL_EPS);
+        assertFalse(m.facing);
+        assertTrue(m.onGround);
+        assertEquals("WALK", m.anim);
+        assertTrue(m.keyframe);
+    }
+
+    @Test
+    void stateDeltaRelayRoundTrip() {
+        GameMessages.State s = state(4, 21, 640, 480, 150, 0, true, false, "FALL", "END");
+        s.keyframe = false;
+        s.mask = StateDelta.F_X | StateDelta.F_VX | StateDelta.F_FLAGS | StateDelta.F_PHASE;
+        s.baseSeq = 18;
+        ByteBuffer b = frame(BinaryProtocol.STATE_DELTA_RELAY_HEAD + BinaryProtocol.deltaFieldBytes(s.mask));
+        BinaryProtocol.writeStateDeltaRelay(b, s, 99L);
+        assertFalse(b.hasRemaining());
+
+        GameMessages.State m = (GameMessages.State) decodeOne(b);
+        assertEquals(4, m.id);
+        assertEquals(21, m.seq);
+        assertEquals(18, m.baseSeq);
+        assertEquals(s.mask, m.mask);
+        assertFalse(m.keyframe);
+        assertEquals(640, m.x, POS_EPS);
+        assertEquals(150, m.vx, VEL_EPS);
+        assertTrue(m.facing);
+        assertFalse(m.onGround);
+        assertEquals("END", m.phase);
+    }
+
+    @Test
+    void shotRelayRoundTrip() {
+        GameMessages.Shot s = new GameMessages.Shot();
+        s.attacker = 3; s.ox = 50; s.oy = 60.75; s.dx = -1; s.dy = 0; s.weaponType = "Shotgun";
+        s.damage = 8; s.range = 400; s.ts = 777L; s.seq = 5;
+        ByteBuffer b = frame(BinaryProtocol.SHOT_RELAY_BYTES);
+        BinaryProtocol.writeShotRelay(b, s);
+
+        GameMessages.Shot m = (GameMessages.Shot) decodeOne(b);
+        assertEquals(3, m.attacker);
+        assertEquals(60.75, m.oy, POS_EPS);
+        assertEquals(-1, m.dx, DIR_EPS);
+        assertEquals("Shotgun", m.weaponType);
+        assertEquals(8, m.damage);
+        assertEquals(400, m.range);
+        assertEquals(777L, m.ts);
+        assertEquals(5, m.seq);
+    }
+
+    @Test
+    void damageRoundTripKeepsAttacker() {
+        GameMessages.Damage d = new GameMessages.Damage();
+        d.victim = 2; d.attacker = 9; d.damage = 100; d.dead = true; d.kx = -260; d.ky = -120; d.srvTS = 4242L;
+        ByteBuffer b = frame(BinaryProtocol.DAMAGE_BYTES);
+        BinaryProtocol.writeDamage(b, d);
+
+        GameMessages.Damage m = (GameMessages.Damage) decodeOne(b);
+        assertEquals(2, m.victim);
+        assertEquals(9, m.attacker);
+        assertEquals(100, m.damage);
+        assertTrue(m.dead);
+        assertTrue(m.hasKnockback);
+        assertEquals(-260, m.kx, VEL_EPS);
+        assertEquals(-120, m.ky, VEL_EPS);
+        assertEquals(4242L, m.srvTS);
+    }
+
+    @Test
+    void respawnRoundTrip() {
+        GameMessages.Respawn r = new GameMessages.Respawn();
+        r.id = 6; r.x = 1500.5; r.y = 700;
+        ByteBuffer b = frame(BinaryProtocol.RESPAWN_BYTES);
+        BinaryProtocol.writeRespawn(b, r);
+
+        GameMessages.Respawn m = (GameMessages.Respawn) decodeOne(b);
+        assertEquals(6, m.id);
+        assertEquals(1500.5, m.x, POS_EPS);
+        assertEquals(700, m.y, POS_EPS);
+    }
+
+    @Test
+    void supplySpawnRoundTrip() {
+        GameMessages.SupplySpawn s = new GameMessages.SupplySpawn();
+        s.dropId = 31; s.dropType = "HEALTH_PACK"; s.x = 900; s.y = 640.25;
+        ByteBuffer b = frame(BinaryProtocol.SUPPLY_SPAWN_MIN + BinaryProtocol.supplyTypeBytes(s.dropType).length);
+        BinaryProtocol.writeSupplySpawn(b, s);
+
+        GameMessages.SupplySpawn m = (GameMessages.SupplySpawn) decodeOne(b);
+        assertEquals(31, m.dropId);
+        assertEquals("HEALTH_PACK", m.dropType);
+        assertEquals(900, m.x, POS_EPS);
+        assertEquals(640.25, m.y, POS_EPS);
+    }
+
+    @Test
+    void supplyRemovedRoundTrip() {
+        ByteBuffer b = frame(BinaryProtocol.SUPPLY_REMOVED_BYTES);
+        BinaryProtocol.writeSupplyRemoved(b, 31);
+        assertEquals(31L, decodeOne(b));
+    }
+
+    // ================= 帧 =================
+
+    @Test
+    void severalRecordsInOneFrame() {
+        GameMessages.Respawn r = new GameMessages.Respawn();
+        r.id = 1;
+        ByteBuffer b = frame(BinaryProtocol.RESPAWN_BYTES + BinaryProtocol.SUPPLY_REMOVED_BYTES + BinaryProtocol.RESPAWN_BYTES);
+        BinaryProtocol.writeRespawn(b, r);
+        BinaryProtocol.writeSupplyRemoved(b, 8);
+        r.id = 2;
+        BinaryProtocol.writeRespawn(b, r);
+
+        Downlink h = new Downlink();
+        assertEquals(3, BinaryProtocol.decode(b.flip(), new GameMessages(), h));
+        assertEquals(1, ((GameMessages.Respawn) h.records.get(0)).id);
+        assertEquals(8L, h.records.get(1));
+        assertEquals(2, ((GameMessages.Respawn) h.records.get(2)).id);
+    }
+
+    @Test
+    void truncatedRecordStopsDecoding() {
+        ByteBuffer b = frame(BinaryProtocol.SUPPLY_REMOVED_BYTES + BinaryProtocol.DAMAGE_BYTES);
+        BinaryProtocol.writeSupplyRemoved(b, 1);
+        BinaryProtocol.writeDamage(b, new GameMessages.Damage());
+        b.flip().limit(b.limit() - 1);
+
+        Downlink h = new Downlink();
+        assertEquals(1, BinaryProtocol.decode(b, new GameMessages(), h));
+        assertEquals(1, h.records.size());
+    }
+
+    @Test
+    void wrongMagicIsIgnored() {
+        ByteBuffer b = BinaryProtocol.encodePickupSupply(1);
+        b.put(0, (byte) 0);
+        assertEquals(0, BinaryProtocol.decodeUplink(b, new GameMessages(), new Uplink()));
+    }
+
+    @Test
+    void quantizationClampsInsteadOfWrapping() {
+        assertEquals(Short.MAX_VALUE, BinaryProtocol.quantPos(1e9));
+        assertEquals(Short.MIN_VALUE, BinaryProtocol.quantVel(-1e9));
+        assertEquals(4 * 100, BinaryProtocol.quantPos(100.1));
+    }
+
+    // ================= 工具 =================
+
+    private static ByteBuffer frame(int recordBytes) {
+        return ByteBuffer.allocate(1 + recordBytes).put(BinaryProtocol.FRAME_MAGIC);
+    }
+
+    private static Object decodeOne(ByteBuffer b) {
+        Downlink h = new Downlink();
+        assertEquals(1, BinaryProtocol.decode(b.flip(), new GameMessages(), h));
+        return h.records.get(0);
+    }
+
+    private static GameMessages.State state(int id, long seq, double x, double y, double vx, double vy,
+                                            boolean facing, boolean onGround, String anim, String phase) {
+        GameMessages.State s = new GameMessages.State();
+        s.id = id; s.seq = seq; s.x = x; s.y = y; s.vx = vx; s.vy = vy;
+        s.facing = facing; s.onGround = onGround; s.anim = anim; s.phase = phase;
+        s.ts = 1_700_000_000_000L + seq;
+        s.keyframe = true;
+        s.mask = StateDelta.ALL;
+        s.baseSeq = -1;
+        return s;
+    }
+}
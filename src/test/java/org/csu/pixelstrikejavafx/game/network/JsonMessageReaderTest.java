@@ -0,0 +1,182 @@
+package org.csu.pixelstrikejavafx.game.network;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonMessageReaderTest {
+
+    private final JsonMessageReader r = new JsonMessageReader();
+
+    @Test
+    void readsEveryValueKind() {
+        assertTrue(r.parse("{ \"s\" : \"abc\", \"n\":-12.5,\"t\":true,\"f\":false,\"z\":null,"
+                + "\"o\":{\"a\":[1,{\"b\":\"}\"}]},\"a\":[\"]\",2] }"));
+        assertEquals(7, r.fieldCount());
+        assertEquals(JsonMessageReader.K_STRING, r.kindOf(r.indexOf("s")));
+        assertEquals(JsonMessageReader.K_NUMBER, r.kindOf(r.indexOf("n")));
+        assertEquals(JsonMessageReader.K_TRUE, r.kindOf(r.indexOf("t")));
+        assertEquals(JsonMessageReader.K_FALSE, r.kindOf(r.indexOf("f")));
+        assertEquals(JsonMessageReader.K_NULL, r.kindOf(r.indexOf("z")));
+        assertEquals(JsonMessageReader.K_OBJECT, r.kindOf(r.indexOf("o")));
+        assertEquals(JsonMessageReader.K_ARRAY, r.kindOf(r.indexOf("a")));
+
+        assertEquals("abc", r.getString("s"));
+        assertEquals(-12.5, r.getDouble("n", 0.0));
+        assertTrue(r.getBoolean("t"));
+        assertFalse(r.getBoolean("f"));
+        assertNull(r.getString("z"));
+        assertEquals("{\"a\":[1,{\"b\":\"}\"}]}", r.getRaw("o").toString());
+        assertEquals("[\"]\",2]", r.getRaw("a").toString());
+    }
+
+    @Test
+    void missingOrMistypedFieldsFallBackToDefault() {
+        assertTrue(r.parse("{\"type\":\"x\",\"n\":\"\",\"o\":{}}"));
+        assertEquals(-1, r.indexOf("nope"));
+        assertFalse(r.has("nope"));
+        assertEquals(7, r.getInt("nope", 7));
+        assertEquals(7L, r.getLong("n", 7L));
+        assertEquals(1.5, r.getDouble("o", 1.5));
+        assertNull(r.getString("o"));
+        assertFalse(r.getBoolean("type"));
+    }
+
+    @Test
+    void integers() {
+        assertTrue(r.parse("{\"a\":0,\"b\":-42,\"c\":9007199254740993,\"d\":\"17\",\"e\":+3,\"f\":12.9}"));
+        assertEquals(0, r.getInt("a", -1));
+        assertEquals(-42, r.getInt("b", 0));
+        assertEquals(9007199254740993L, r.getLong("c", 0L));
+        assertEquals(17, r.getInt("d", 0));   // 字符串形式的数字也接受
+        assertEquals(3, r.getInt("e", 0));
+        assertEquals(12, r.getInt("f", 0));   // 小数部分截掉
+    }
+
+    @Test
+    void doublesMatchJdkParsing() {
+        String[] values = {"0", "-0.5", "123.25", "1600.00", "0.0001", "-987654.321", "3.14159265358979",
+                "1e3", "-2.5E-2", "12345678901234567890"};
+        for (String v : values) {
+            assertTrue(r.parse("{\"v\":" + v + "}"));
+            assertEquals(Double.parseDouble(v), r.getDouble("v", Double.NaN), v);
+        }
+    }
+
+    @Test
+    void longMantissasMatchJdkParsing() {
+        // 超过 15 位有效数字的走慢路径，结果必须和 JDK 一模一样
+        String[] values = {"123456789012345", "1234567.89012345", "1234567.8901234567", "-0.12345678901234567",
+                "9007199254740993", "98765432109876.54", "0.000123456789012345678", "3.141592653589793"};
+        for (String v : values) {
+            assertTrue(r.parse("{\"v\":" + v + "}"));
+            assertEquals(Double.parseDouble(v), r.getDouble("v", Double.NaN), v);
+        }
+    }
+
+    @Test
+    void escapedStrings() {
+        assertTrue(r.parse("{\"name\":\"a\\\"b\\\\c\\n\\u4e2d\",\"next\":1}"));
+        assertEquals("a\"b\\c\n中", r.getString("name"));
+        assertEquals(1, r.getInt("next", 0));
+    }
+
+    @Test
+    void tableLookupReturnsTheConstant() {
+        assertTrue(r.parse("{\"anim\":\"RUN\",\"weaponType\":\"Laser\"}"));
+        assertSame(GameMessages.ANIMS[2], r.getString("anim", GameMessages.ANIMS));
+        assertEquals("Laser", r.getString("weaponType", GameMessages.WEAPONS));
+    }
+
+    @Test
+    void malformedInputKeepsFieldsReadSoFar() {
+        assertFalse(r.parse("{\"a\":1,\"b\":\"unterminated"));
+        assertEquals(1, r.getInt("a", 0));
+        assertFalse(r.has("b"));
+        assertFalse(r.parse("[1,2]"));
+        assertFalse(r.parse(""));
+    }
+
+    @Test
+    void reuseDoesNotLeakFieldsBetweenMessages() {
+        assertTrue(r.parse("{\"type\":\"state\",\"x\":1}"));
+        assertTrue(r.parse("{\"type\":\"pong\"}"));
+        assertFalse(r.has("x"));
+        assertTrue(r.valueEquals(r.indexOf("type"), "pong"));
+        assertEquals("pong".hashCode(), r.valueHash(r.indexOf("type")));
+    }
+
+    @Test
+    void growsPastInitialCapacity() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < 40; i++) sb.append(i == 0 ? "" : ",").append("\"k").append(i).append("\":").append(i);
+        assertTrue(r.parse(sb.append('}')));
+        assertEquals(40, r.fieldCount());
+        assertEquals(39, r.getInt("k39", -1));
+    }
+
+    // ================= 与 GameMessages 的往返 =================
+
+    @Test
+    void fullStateRoundTrip() {
+        String json = String.format(java.util.Locale.US,
+                "{\"type\":\"state\",\"id\":5,\"x\":%.2f,\"y\":%.2f,\"vx\":%.2f,\"vy\":%.2f,\"facing\":true,\"onGround\":false,"
+                        + "\"anim\":\"JUMP\",\"phase\":\"BEGIN\",\"ts\":%d,\"seq\":%d,\"srvTS\":%d}",
+                812.25, 333.5, -120.0, 45.75, 1_700_000_000_001L, 42L, 1_700_000_000_050L);
+        GameMessages.State m = new GameMessages.State();
+        assertTrue(r.parse(json));
+        m.read(r);
+        assertEquals(5, m.id);
+        assertEquals(812.25, m.x);
+        assertEquals(333.5, m.y);
+        assertEquals(-120.0, m.vx);
+        assertEquals(45.75, m.vy);
+        assertTrue(m.facing);
+        assertFalse(m.onGround);
+        assertSame(GameMessages.ANIMS[3], m.anim);
+        assertEquals("BEGIN", m.phase);
+        assertEquals(1_700_000_000_001L, m.ts);
+        assertEquals(42, m.seq);
+        assertEquals(1_700_000_000_050L, m.srvTS);
+        assertTrue(m.keyframe);
+        assertEquals(StateDelta.ALL, m.mask);
+    }
+
+    @Test
+    void deltaStateMaskFollowsPresentFields() {
+        GameMessages.State m = new GameMessages.State();
+        assertTrue(r.parse("{\"type\":\"state\",\"x\":10.50,\"anim\":\"RUN\",\"base\":7,\"ts\":1,\"seq\":9}"));
+        m.read(r);
+        assertFalse(m.keyframe);
+        assertEquals(7, m.baseSeq);
+        assertEquals(StateDelta.F_X | StateDelta.F_ANIM, m.mask);
+
+        assertTrue(r.parse("{\"type\":\"state\",\"x\":1,\"y\":2,\"vx\":3,\"vy\":4,\"facing\":true,\"onGround\":true,"
+                + "\"anim\":\"IDLE\",\"phase\":\"IDLE\",\"kf\":true,\"base\":9,\"ts\":2,\"seq\":9}"));
+        m.read(r);
+        assertTrue(m.keyframe);
+        assertEquals(StateDelta.ALL, m.mask);
+    }
+
+    @Test
+    void damageAndShotRoundTrip() {
+        GameMessages msgs = new GameMessages();
+        assertTrue(r.parse("{\"type\":\"damage\",\"victim\":2,\"attacker\":3,\"damage\":25,\"dead\":false,"
+                + "\"kx\":-260.0,\"ky\":-120.0,\"serverTime\":99}"));
+        msgs.damage.read(r);
+        assertEquals(2, msgs.damage.victim);
+        assertEquals(3, msgs.damage.attacker);
+        assertEquals(25, msgs.damage.damage);
+        assertTrue(msgs.damage.hasKnockback);
+        assertEquals(-260.0, msgs.damage.kx);
+        assertEquals(99, msgs.damage.srvTS);
+
+        assertTrue(r.parse("{\"type\":\"shot\",\"attacker\":3,\"ox\":1.25,\"oy\":2.50,\"dx\":0.6000,\"dy\":-0.8000,"
+                + "\"weaponType\":\"MachineGun\"}"));
+        msgs.shot.read(r);
+        assertEquals(3, msgs.shot.attacker);
+        assertEquals(0.6, msgs.shot.dx);
+        assertEquals(-0.8, msgs.shot.dy);
+        assertSame(GameMessages.WEAPONS[1], msgs.shot.weaponType);
+    }
+}
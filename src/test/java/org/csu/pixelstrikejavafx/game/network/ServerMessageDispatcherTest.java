@@ -0,0 +1,70 @@
+package org.csu.pixelstrikejavafx.game.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerMessageDispatcherTest {
+
+    private final GameMessages msgs = new GameMessages();
+    private final List<String> seen = new ArrayList<>();
+    private final ServerMessageDispatcher dispatcher = new ServerMessageDispatcher()
+            .on("state", msgs.state, m -> seen.add("state:" + m.id + ":" + m.anim))
+            .on("damage", msgs.damage, m -> seen.add("damage:" + m.victim))
+            .on("supply_spawn", msgs.supplySpawn, m -> seen.add("supply:" + m.dropType))
+            .on("leave", msgs.leave, m -> seen.add("leave:" + m.id));
+
+    @Test
+    void singleMessage() {
+        assertTrue(dispatcher.dispatch("{\"type\":\"leave\",\"id\":4}"));
+        assertEquals(List.of("leave:4"), seen);
+    }
+
+    @Test
+    void missingTypeIsReported() {
+        assertFalse(dispatcher.dispatch("{\"id\":4}"));
+        assertTrue(dispatcher.dispatch("{\"type\":\"unknown\"}"));
+        assertTrue(seen.isEmpty());
+    }
+
+    @Test
+    void batchIsSplitInOrder() {
+        assertTrue(dispatcher.dispatch("{\"type\":\"batch\",\"msgs\":["
+                + "{\"type\":\"state\",\"id\":1,\"anim\":\"RUN\"},"
+                + " {\"type\":\"nobody_listens\",\"nested\":{\"a\":[1,2]}} ,"
+                + "{\"type\":\"supply_spawn\",\"dropType\":\"a}b]c{\\\"\"},"
+                + "{\"type\":\"damage\",\"victim\":2}]}"));
+        assertEquals(List.of("state:1:RUN", "supply:a}b]c{\"", "damage:2"), seen);
+    }
+
+    @Test
+    void largeBatchGrowsBounds() {
+        StringBuilder sb = new StringBuilder("{\"type\":\"batch\",\"msgs\":[");
+        for (int i = 0; i < 50; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"type\":\"leave\",\"id\":").append(i).append('}');
+        }
+        assertTrue(dispatcher.dispatch(sb.append("]}")));
+        assertEquals(50, seen.size());
+        assertEquals("leave:0", seen.get(0));
+        assertEquals("leave:49", seen.get(49));
+    }
+
+    @Test
+    void nestedBatchIsNotExpanded() {
+        assertTrue(dispatcher.dispatch("{\"type\":\"batch\",\"msgs\":["
+                + "{\"type\":\"batch\",\"msgs\":[{\"type\":\"leave\",\"id\":1}]},"
+                + "{\"type\":\"leave\",\"id\":2}]}"));
+        assertEquals(List.of("leave:2"), seen);
+    }
+
+    @Test
+    void malformedBatchIsIgnored() {
+        assertTrue(dispatcher.dispatch("{\"type\":\"batch\",\"msgs\":{\"type\":\"leave\",\"id\":1}}"));
+        assertTrue(dispatcher.dispatch("{\"type\":\"batch\"}"));
+        assertTrue(seen.isEmpty());
+    }
+}
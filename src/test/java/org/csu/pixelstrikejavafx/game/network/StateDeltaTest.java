@@ -0,0 +1,147 @@
+package org.csu.pixelstrikejavafx.game.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateDeltaTest {
+
+    private static StateDelta.Snapshot snap(long seq, double x, double y, String anim) {
+        StateDelta.Snapshot s = new StateDelta.Snapshot();
+        s.set(seq, x, y, 0, 0, true, true, anim, "IDLE");
+        return s;
+    }
+
+    /** 按发送端给出的掩码构造接收端收到的 State：没带的字段故意填成垃圾值 */
+    private static GameMessages.State received(StateDelta.Snapshot s, int mask, boolean keyframe, long baseSeq) {
+        GameMessages.State m = new GameMessages.State();
+        m.seq = s.seq;
+        m.keyframe = keyframe;
+        m.mask = mask;
+        m.baseSeq = baseSeq;
+        m.x = (mask & StateDelta.F_X) != 0 ? s.x : Double.NaN;
+        m.y = (mask & StateDelta.F_Y) != 0 ? s.y : Double.NaN;
+        m.vx = (mask & StateDelta.F_VX) != 0 ? s.vx : Double.NaN;
+        m.vy = (mask & StateDelta.F_VY) != 0 ? s.vy : Double.NaN;
+        if ((mask & StateDelta.F_FLAGS) != 0) { m.facing = s.facing; m.onGround = s.onGround; }
+        m.anim = (mask & StateDelta.F_ANIM) != 0 ? s.anim : null;
+        m.phase = (mask & StateDelta.F_PHASE) != 0 ? s.phase : null;
+        return m;
+    }
+
+    @Test
+    void firstFrameAndEveryIntervalAreKeyframes() {
+        StateDelta.Encoder enc = new StateDelta.Encoder(3);
+        boolean[] expected = {true, false, false, true, false, false, true};
+        for (int i = 0; i < expected.length; i++) {
+            int mask = enc.encode(snap(i, i, 0, "IDLE"));
+            assertEquals(expected[i], enc.isKeyframe(), "frame " + i);
+            if (expected[i]) assertEquals(StateDelta.ALL, mask);
+        }
+    }
+
+    @Test
+    void maskOnlyHasChangedFieldsAfterQuantization() {
+        StateDelta.Encoder enc = new StateDelta.Encoder(100);
+        enc.encode(snap(0, 100, 200, "IDLE"));
+        assertEquals(0, enc.encode(snap(1, 100.1, 200, "IDLE")));               // 不到 1/4 像素
+        assertEquals(StateDelta.F_X, enc.encode(snap(2, 101, 200, "IDLE")));
+        assertEquals(StateDelta.F_Y | StateDelta.F_ANIM, enc.encode(snap(3, 100, 250, "RUN")));
+        assertEquals(0, enc.baselineSeq());   // 没有 ack，一直相对关键帧
+    }
+
+    @Test
+    void ackMovesBaseline() {
+        StateDelta.Encoder enc = new StateDelta.Encoder(100);
+        enc.encode(snap(0, 0, 0, "IDLE"));
+        enc.encode(snap(1, 50, 0, "IDLE"));
+        enc.acknowledge(1);
+        assertEquals(1, enc.baselineSeq());
+        assertEquals(0, enc.encode(snap(2, 50, 0, "IDLE")));
+        enc.acknowledge(0);   // 比当前基线旧的 ack 忽略
+        assertEquals(1, enc.baselineSeq());
+    }
+
+    @Test
+    void resetForcesKeyframe() {
+        StateDelta.Encoder enc = new StateDelta.Encoder(100);
+        enc.encode(snap(0, 0, 0, "IDLE"));
+        enc.encode(snap(1, 0, 0, "IDLE"));
+        enc.reset();
+        assertEquals(StateDelta.ALL, enc.encode(snap(2, 0, 0, "IDLE")));
+        assertTrue(enc.isKeyframe());
+    }
+
+    @Test
+    void rebuildFillsMissingFieldsFromBase() {
+        StateDelta.Baselines bl = new StateDelta.Baselines();
+        StateDelta.Snapshot kf = snap(10, 300, 400, "WALK");
+        assertTrue(bl.rebuild(received(kf, StateDelta.ALL, true, -1)));
+
+        StateDelta.Snapshot next = snap(11, 320, 400, "WALK");
+        GameMessages.State m = received(next, StateDelta.F_X, false, 10);
+        assertTrue(bl.rebuild(m));
+        assertEquals(320, m.x);
+        assertEquals(400, m.y);
+        assertEquals(0, m.vx);
+        assertEquals("WALK", m.anim);
+        assertEquals("IDLE", m.phase);
+        assertTrue(m.facing);
+
+        // 重建出的 11 也能当基线
+        GameMessages.State m2 = received(snap(12, 320, 380, "WALK"), StateDelta.F_Y, false, 11);
+        assertTrue(bl.rebuild(m2));
+        assertEquals(320, m2.x);
+        assertEquals(380, m2.y);
+    }
+
+    @Test
+    void rebuildWithMissingBaseFails() {
+        StateDelta.Baselines bl = new StateDelta.Baselines();
+        // 从没收到过基线
+        assertFalse(bl.rebuild(received(snap(5, 1, 1, "IDLE"), StateDelta.F_X, false, 4)));
+
+        // 基线被环形缓冲里同一槽位的新帧覆盖了（64 帧之后）
+        assertTrue(bl.rebuild(received(snap(4, 0, 0, "IDLE"), StateDelta.ALL, true, -1)));
+        assertTrue(bl.rebuild(received(snap(4 + 64, 0, 0, "IDLE"), StateDelta.ALL, true, -1)));
+        assertFalse(bl.rebuild(received(snap(70, 9, 9, "IDLE"), StateDelta.F_X, false, 4)));
+
+        // 之后的关键帧照常接受
+        assertTrue(bl.rebuild(received(snap(71, 9, 9, "IDLE"), StateDelta.ALL, true, 71)));
+    }
+
+    @Test
+    void encoderAndBaselinesAgreeOverBin1() {
+        StateDelta.Encoder enc = new StateDelta.Encoder(5);
+        StateDelta.Baselines bl = new StateDelta.Baselines();
+        GameMessages msgs = new GameMessages();
+        for (int i = 0; i < 20; i++) {
+            StateDelta.Snapshot s = new StateDelta.Snapshot();
+            s.set(i, 100 + i * 3.5, 200 - (i % 4) * 10, i % 7 * 20, -i, i % 2 == 0, i % 3 == 0,
+                    GameMessages.ANIMS[i % GameMessages.ANIMS.length], GameMessages.PHASES[i % 3]);
+            int mask = enc.encode(s);
+            ByteBuffer b = BinaryProtocol.encodeStateDelta(s, mask, enc.isKeyframe(), enc.baselineSeq(), i);
+            if (i % 2 == 1) enc.acknowledge(i);   // 一半的帧收到 ack
+
+            int[] got = {0};
+            BinaryProtocol.decodeUplink(b, msgs, new BinaryProtocol.UplinkHandler() {
+                @Override public void onState(GameMessages.State m) {
+                    assertTrue(bl.rebuild(m), "frame " + m.seq);
+                    assertEquals(BinaryProtocol.quantPos(s.x), BinaryProtocol.quantPos(m.x));
+                    assertEquals(BinaryProtocol.quantPos(s.y), BinaryProtocol.quantPos(m.y));
+                    assertEquals(BinaryProtocol.quantVel(s.vx), BinaryProtocol.quantVel(m.vx));
+                    assertEquals(s.facing, m.facing);
+                    assertEquals(s.onGround, m.onGround);
+                    assertEquals(s.anim, m.anim);
+                    assertEquals(s.phase, m.phase);
+                    got[0]++;
+                }
+                @Override public void onShot(GameMessages.Shot m) { fail(); }
+                @Override public void onPickupSupply(long dropId) { fail(); }
+            });
+            assertEquals(1, got[0]);
+        }
+    }
+}